@@ -1289,6 +1289,15 @@ public class ClassFileWriter {
         markLabel(theLabel);
     }
 
+    /**
+     * Returns true if the label is already marked, so jumps to it go
+     * backward.
+     */
+    public boolean isLabelMarked(int label)
+    {
+        return getLabelPC(label) != -1;
+    }
+
     private int getLabelPC(int label)
     {
         if (!(label < 0))
@@ -389,6 +389,17 @@ final class Arguments extends IdScriptableObject
       }
     }
 
+    @Override
+    void addFootprint(MemoryFootprint footprint)
+    {
+        super.addFootprint(footprint);
+        footprint.reach(callerObj);
+        footprint.reach(calleeObj);
+        footprint.reach(lengthObj);
+        footprint.reach(activation);
+        footprint.reachArray(MemoryFootprint.OTHER, args);
+    }
+
 // Fields to hold caller, callee and length properties,
 // where NOT_FOUND value tags deleted properties.
 // In addition if callerObj == NULL_VALUE, it tags null for scripts, as
@@ -446,6 +446,13 @@ public class BaseFunction extends IdScriptableObject implements Function
         return "";
     }
 
+    @Override
+    void addFootprint(MemoryFootprint footprint)
+    {
+        super.addFootprint(footprint);
+        footprint.reach(prototypeProperty);
+    }
+
     final Object getPrototypeProperty() {
         Object result = prototypeProperty;
         if (result == null) {
@@ -52,6 +52,8 @@ import org.mozilla.javascript.ast.ScriptNode;
 import org.mozilla.javascript.ast.Jump;
 import org.mozilla.javascript.ast.FunctionNode;
 
+import java.util.List;
+
 /**
  * Generates bytecode for the Interpreter.
  */
@@ -68,6 +70,9 @@ class CodeGenerator extends Icode {
     private InterpreterData itsData;
 
     private ScriptNode scriptOrFn;
+    // Data of the function that encloses a lazily compiled function
+    private InterpreterData enclosingData;
+    private String sourceText;
     private int iCodeTop;
     private int stackDepth;
     private int lineNumber;
@@ -117,11 +122,21 @@ class CodeGenerator extends Icode {
                                       encodedSource,
                                       ((AstRoot)tree).isInStrictMode());
         itsData.topLevel = true;
+        itsData.parentData = enclosingData;
+        sourceText = ((AstRoot)tree).getSourceText();
 
         if (returnFunction) {
             generateFunctionICode();
         } else {
             generateICodeFromTree(scriptOrFn);
+            if (sourceText != null && itsData.loopEntries != null) {
+                // Long running loops can continue in compiled code
+                itsData.functionSource = sourceText;
+                itsData.functionSourceStart = 0;
+                itsData.functionSourceEnd = sourceText.length();
+                itsData.functionBaseLineno = scriptOrFn.getBaseLineno();
+                itsData.profile = new SpeculativeCompiler.Profile();
+            }
         }
         return itsData;
     }
@@ -152,12 +167,21 @@ class CodeGenerator extends Icode {
 
     private void generateICodeFromTree(Node tree)
     {
+        // Nested functions look up variables of enclosing functions
+        itsData.argNames = scriptOrFn.getParamAndVarNames();
+        itsData.argIsConst = scriptOrFn.getParamAndVarConst();
+        itsData.argCount = scriptOrFn.getParamCount();
+        itsData.usesEval = hasEvalCall(tree);
+
         generateNestedFunctions();
 
         generateRegExpLiterals();
 
         visitStatement(tree, 0);
         fixLabelGotos();
+        if (compilerEnv.isSpeculativeCompilation()) {
+            generateLoopEntries(tree);
+        }
         // add RETURN_RESULT only to scripts as function always ends with RETURN
         if (itsData.itsFunctionType == 0) {
             addToken(Token.RETURN_RESULT);
@@ -206,10 +230,6 @@ class CodeGenerator extends Icode {
                                    + itsData.itsMaxLocals
                                    + itsData.itsMaxStack;
 
-        itsData.argNames = scriptOrFn.getParamAndVarNames();
-        itsData.argIsConst = scriptOrFn.getParamAndVarConst();
-        itsData.argCount = scriptOrFn.getParamCount();
-
         itsData.encodedSourceStart = scriptOrFn.getEncodedSourceStart();
         itsData.encodedSourceEnd = scriptOrFn.getEncodedSourceEnd();
 
@@ -228,16 +248,232 @@ class CodeGenerator extends Icode {
         InterpreterData[] array = new InterpreterData[functionCount];
         for (int i = 0; i != functionCount; i++) {
             FunctionNode fn = scriptOrFn.getFunctionNode(i);
-            CodeGenerator gen = new CodeGenerator();
-            gen.compilerEnv = compilerEnv;
-            gen.scriptOrFn = fn;
-            gen.itsData = new InterpreterData(itsData);
-            gen.generateFunctionICode();
-            array[i] = gen.itsData;
+            InterpreterData data;
+            if (isLazyFunction(fn)) {
+                data = generateLazyFunction(fn);
+            } else {
+                if (fn.getSkippedBody() != null) Kit.codeBug();
+                CodeGenerator gen = new CodeGenerator();
+                gen.compilerEnv = compilerEnv;
+                gen.scriptOrFn = fn;
+                gen.sourceText = sourceText;
+                gen.itsData = new InterpreterData(itsData);
+                gen.generateFunctionICode();
+                data = gen.itsData;
+            }
+            // Lazy functions are checked when they are compiled, as
+            // their body may not be parsed yet
+            if (!data.lazy && isSpeculativeFunction(fn, data)) {
+                setFunctionSource(data, fn);
+                data.profile = new SpeculativeCompiler.Profile();
+            }
+            array[i] = data;
         }
         itsData.itsNestedFunctions = array;
     }
 
+    private boolean hasFunctionSource(FunctionNode fn)
+    {
+        // sourceText is only kept with lazy or speculative compilation.
+        // Getters and setters can not be parsed on their own.
+        return sourceText != null
+               && !fn.isGetterOrSetter()
+               && sourceText.startsWith("function",
+                                        fn.getAbsolutePosition());
+    }
+
+    private boolean isLazyFunction(FunctionNode fn)
+    {
+        return compilerEnv.isLazyFunctionCompilation()
+               && hasFunctionSource(fn);
+    }
+
+    /**
+     * Only functions without activation that resolve their name through
+     * the enclosing scope can run as compiled code on behalf of the
+     * interpreted function object.
+     * See {@link SpeculativeCompiler}.
+     */
+    private boolean isSpeculativeFunction(FunctionNode fn,
+                                          InterpreterData data)
+    {
+        if (!compilerEnv.isSpeculativeCompilation()
+            || !hasFunctionSource(fn))
+        {
+            return false;
+        }
+        int type = fn.getFunctionType();
+        if (type != FunctionNode.FUNCTION_STATEMENT
+            && (type != FunctionNode.FUNCTION_EXPRESSION
+                || fn.getFunctionName() != null))
+        {
+            return false;
+        }
+        String fallback = null;
+        if (fn.requiresActivation()) {
+            fallback = Instrumentation.FALLBACK_ACTIVATION;
+        } else if (fn.isGenerator()) {
+            fallback = Instrumentation.FALLBACK_GENERATOR;
+        } else if (data.useDynamicScope) {
+            fallback = Instrumentation.FALLBACK_DYNAMIC_SCOPE;
+        }
+        if (fallback != null) {
+            Context cx = Context.getCurrentContext();
+            if (cx != null && cx.instrumentation != null) {
+                String name = fn.getFunctionName() != null ? fn.getName()
+                                                           : null;
+                cx.instrumentation.interpreterFallback(
+                    cx, data.itsSourceFile, name, fallback);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private void setFunctionSource(InterpreterData data, FunctionNode fn)
+    {
+        int start = fn.getAbsolutePosition();
+        data.functionSource = sourceText;
+        data.functionSourceStart = start;
+        data.functionSourceEnd = start + fn.getLength();
+        data.functionBaseLineno = fn.getBaseLineno();
+    }
+
+    /**
+     * Creates the data for a nested function without generating its icode.
+     * Only what is needed to create the function object is filled in,
+     * the rest is added by {@link #compileLazyFunction} on the first call.
+     */
+    private InterpreterData generateLazyFunction(FunctionNode fn)
+    {
+        InterpreterData data = new InterpreterData(itsData);
+        data.itsICode = null;
+        data.itsStringTable = null;
+        data.itsFunctionType = fn.getFunctionType();
+        data.itsNeedsActivation = fn.requiresActivation();
+        if (fn.getFunctionName() != null) {
+            data.itsName = fn.getName();
+        }
+        if (!fn.getIgnoreDynamicScope()) {
+            if (compilerEnv.isUseDynamicScope()) {
+                data.useDynamicScope = true;
+            }
+        }
+        data.argCount = fn.getParamCount();
+        data.encodedSourceStart = fn.getEncodedSourceStart();
+        data.encodedSourceEnd = fn.getEncodedSourceEnd();
+        setFunctionSource(data, fn);
+        data.lazy = true;
+        return data;
+    }
+
+    /**
+     * Generates icode for a function created by
+     * {@link #generateLazyFunction}. The function source is parsed on its
+     * own, as the parser may have skipped the body, and the result is
+     * copied into <code>data</code> so existing function objects share it.
+     */
+    static void compileLazyFunction(InterpreterData data)
+    {
+        Context cx = Context.getCurrentContext();
+        if (cx != null) {
+            compileLazyFunction(cx, data);
+            return;
+        }
+        // Debuggers and ScriptableOutputStream.addScript may look at the
+        // nested functions of a script outside of an entered Context
+        cx = Context.enter();
+        try {
+            compileLazyFunction(cx, data);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static void compileLazyFunction(Context cx, InterpreterData data)
+    {
+        synchronized (data) {
+            if (!data.lazy) {
+                // Another thread got here first
+                return;
+            }
+            CompilerEnvirons compilerEnv = new CompilerEnvirons();
+            compilerEnv.initFromContext(cx);
+            compilerEnv.setLanguageVersion(data.languageVersion);
+            // Warnings were reported when the enclosing script was compiled
+            compilerEnv.setStrictMode(false);
+            ErrorReporter reporter = compilerEnv.getErrorReporter();
+
+            Parser p = new Parser(compilerEnv, reporter);
+            p.calledByCompileFunction = true;
+            AstRoot ast = p.parse(
+                data.functionSource.substring(data.functionSourceStart,
+                                              data.functionSourceEnd),
+                data.itsSourceFile, data.functionBaseLineno);
+            // The parser sees a function expression, restore the real type
+            ((FunctionNode)ast.getFirstChild())
+                .setFunctionType(data.itsFunctionType);
+            ScriptNode tree = new IRFactory(compilerEnv, reporter)
+                .transformTree(ast);
+            Instrumentation instrumentation = cx.instrumentation;
+            long compileStart = instrumentation == null ? 0
+                                                        : System.nanoTime();
+            CodeGenerator gen = new CodeGenerator();
+            gen.enclosingData = data.parentData;
+            InterpreterData f = gen.compile(
+                compilerEnv, tree, tree.getEncodedSource(), true);
+            if (instrumentation != null) {
+                instrumentation.compiled(cx, data.itsSourceFile, data.itsName,
+                                         -1, System.nanoTime() - compileStart,
+                                         f.getCodeSize());
+            }
+
+            data.itsNeedsActivation = f.itsNeedsActivation;
+            data.itsStringTable = f.itsStringTable;
+            data.itsDoubleTable = f.itsDoubleTable;
+            data.itsRegExpLiterals = f.itsRegExpLiterals;
+            data.itsICode = f.itsICode;
+            data.itsExceptionTable = f.itsExceptionTable;
+            data.itsMaxVars = f.itsMaxVars;
+            data.itsMaxLocals = f.itsMaxLocals;
+            data.itsMaxStack = f.itsMaxStack;
+            data.itsMaxFrameArray = f.itsMaxFrameArray;
+            data.argNames = f.argNames;
+            data.argIsConst = f.argIsConst;
+            data.argCount = f.argCount;
+            data.usesEval = f.usesEval;
+            data.itsMaxCalleeArgs = f.itsMaxCalleeArgs;
+            data.literalIds = f.literalIds;
+            data.longJumps = f.longJumps;
+            data.firstLinePC = f.firstLinePC;
+            data.loopEntries = f.loopEntries;
+            data.itsNestedFunctions = f.itsNestedFunctions;
+            if (data.itsNestedFunctions != null) {
+                for (InterpreterData nested : data.itsNestedFunctions) {
+                    nested.parentData = data;
+                }
+            }
+            if (gen.isSpeculativeFunction(tree.getFunctionNode(0), data)) {
+                data.profile = new SpeculativeCompiler.Profile();
+            } else {
+                data.functionSource = null;
+            }
+            data.lazy = false;
+        }
+    }
+
+    private void generateLoopEntries(Node tree)
+    {
+        List<Node> entries = NodeTransformer.getLoopEntries(tree);
+        if (entries.isEmpty()) return;
+
+        int[] array = new int[entries.size()];
+        for (int i = 0; i != array.length; i++) {
+            array[i] = labelTable[entries.get(i).labelId()];
+        }
+        itsData.loopEntries = array;
+    }
+
     private void generateRegExpLiterals()
     {
         int N = scriptOrFn.getRegexpCount();
@@ -388,6 +624,36 @@ class CodeGenerator extends Icode {
           case Token.IFNE :
             {
                 Node target = ((Jump)node).target;
+                int mode = getVarCompareMode(child);
+                if (mode != -1) {
+                    Node left = child.getFirstChild();
+                    Node right = left.getNext();
+                    if (type == Token.IFEQ) {
+                        mode |= Icode.VAR_CMP_JUMP_IF_TRUE;
+                    }
+                    addGoto(target, Icode_IF_VAR_CMP);
+                    addUint8(mode);
+                    addUint8(scriptOrFn.getIndexForNameNode(left));
+                    if ((mode & Icode.VAR_CMP_RHS_VAR) != 0) {
+                        addUint16(scriptOrFn.getIndexForNameNode(right));
+                    } else {
+                        addUint16((int)right.getDouble() & 0xFFFF);
+                    }
+                    break;
+                }
+                mode = getCompareMode(child);
+                if (mode != -1) {
+                    Node left = child.getFirstChild();
+                    visitExpression(left, 0);
+                    visitExpression(left.getNext(), 0);
+                    if (type == Token.IFEQ) {
+                        mode |= Icode.VAR_CMP_JUMP_IF_TRUE;
+                    }
+                    addGoto(target, Icode_IF_CMP);
+                    addUint8(mode);
+                    stackChange(-2);
+                    break;
+                }
                 visitExpression(child, 0);
                 addGoto(target, type);
                 stackChange(-1);
@@ -426,6 +692,18 @@ class CodeGenerator extends Icode {
           case Token.EXPR_VOID:
           case Token.EXPR_RESULT:
             updateLineNumber(node);
+            if (type == Token.EXPR_VOID && child.getType() == Token.SETVAR) {
+                int index = scriptOrFn.getIndexForNameNode(
+                                child.getFirstChild());
+                if (index < 128) {
+                    if (itsData.itsNeedsActivation) Kit.codeBug();
+                    visitExpression(child.getLastChild(), 0);
+                    addIcode(Icode_SETVAR1_POP);
+                    addUint8(index);
+                    stackChange(-1);
+                    break;
+                }
+            }
             visitExpression(child, 0);
             addIcode((type == Token.EXPR_VOID) ? Icode_POP : Icode_POP_RESULT);
             stackChange(-1);
@@ -549,8 +827,13 @@ class CodeGenerator extends Icode {
             {
                 int fnIndex = node.getExistingIntProp(Node.FUNCTION_PROP);
                 FunctionNode fn = scriptOrFn.getFunctionNode(fnIndex);
-                // See comments in visitStatement for Token.FUNCTION case
-                if (fn.getFunctionType() != FunctionNode.FUNCTION_EXPRESSION) {
+                // See comments in visitStatement for Token.FUNCTION case.
+                // Function statements of functions without activation are
+                // assigned to their variables, see NodeTransformer.
+                if (fn.getFunctionType() != FunctionNode.FUNCTION_EXPRESSION
+                    && (fn.getFunctionType() != FunctionNode.FUNCTION_STATEMENT
+                        || itsData.itsNeedsActivation))
+                {
                     throw Kit.codeBug();
                 }
                 addIndexOp(Icode_CLOSURE_EXPR, fnIndex);
@@ -675,6 +958,17 @@ class CodeGenerator extends Icode {
 
           case Token.GETPROP:
           case Token.GETPROPNOWARN:
+            if (type == Token.GETPROP && child.getType() == Token.GETVAR) {
+                int index = scriptOrFn.getIndexForNameNode(child);
+                if (index < 128) {
+                    if (itsData.itsNeedsActivation) Kit.codeBug();
+                    addStringPrefix(child.getNext().getString());
+                    addIcode(Icode_GETVAR1_PROP);
+                    addUint8(index);
+                    stackChange(1);
+                    break;
+                }
+            }
             visitExpression(child, 0);
             child = child.getNext();
             addStringOp(type, child.getString());
@@ -790,6 +1084,13 @@ class CodeGenerator extends Icode {
           case Token.SETNAME:
             {
                 String name = child.getString();
+                int upvar = type == Token.SETNAME ? getUpvar(name) : -1;
+                if (upvar != -1) {
+                    // No BINDNAME, the value stays on the stack as result
+                    visitExpression(child.getNext(), 0);
+                    addUpvarOp(Icode_SETUPVAR, name, upvar);
+                    break;
+                }
                 visitExpression(child, 0);
                 child = child.getNext();
                 visitExpression(child, 0);
@@ -827,8 +1128,18 @@ class CodeGenerator extends Icode {
             }
             break;
 
-          case Token.BINDNAME:
           case Token.NAME:
+            {
+                String name = node.getString();
+                int upvar = getUpvar(name);
+                if (upvar != -1) {
+                    addUpvarOp(Icode_GETUPVAR, name, upvar);
+                    stackChange(1);
+                    break;
+                }
+            }
+            // fall through
+          case Token.BINDNAME:
           case Token.STRING:
             addStringOp(type, node.getString());
             stackChange(1);
@@ -1010,7 +1321,12 @@ class CodeGenerator extends Icode {
           case Token.NAME: {
             String name = left.getString();
             // stack: ... -> ... function thisObj
-            addStringOp(Icode_NAME_AND_THIS, name);
+            int upvar = getUpvar(name);
+            if (upvar != -1) {
+                addUpvarOp(Icode_UPVAR_AND_THIS, name, upvar);
+            } else {
+                addStringOp(Icode_NAME_AND_THIS, name);
+            }
             stackChange(2);
             break;
           }
@@ -1057,7 +1373,12 @@ class CodeGenerator extends Icode {
           }
           case Token.NAME : {
             String name = child.getString();
-            addStringOp(Icode_NAME_INC_DEC, name);
+            int upvar = getUpvar(name);
+            if (upvar != -1) {
+                addUpvarOp(Icode_UPVAR_INC_DEC, name, upvar);
+            } else {
+                addStringOp(Icode_NAME_INC_DEC, name);
+            }
             addUint8(incrDecrMask);
             stackChange(1);
             break;
@@ -1348,6 +1669,124 @@ class CodeGenerator extends Icode {
         iCodeTop = top + 1 + 2;
     }
 
+    /**
+     * Returns the operand of Icode_IF_CMP to test the condition or -1
+     * if the condition is not a relational comparison.
+     */
+    private static int getCompareMode(Node condition)
+    {
+        int type = condition.getType();
+        if (type != Token.LT && type != Token.LE
+            && type != Token.GT && type != Token.GE)
+        {
+            return -1;
+        }
+        return type;
+    }
+
+    /**
+     * Returns the operand of Icode_IF_VAR_CMP to test the condition or -1
+     * if the condition is not a relational comparison of a variable with
+     * another variable or a small integer.
+     */
+    private int getVarCompareMode(Node condition)
+    {
+        int type = getCompareMode(condition);
+        if (type == -1) {
+            return -1;
+        }
+        Node left = condition.getFirstChild();
+        Node right = left.getNext();
+        if (left.getType() != Token.GETVAR
+            || scriptOrFn.getIndexForNameNode(left) >= 128)
+        {
+            return -1;
+        }
+        if (right.getType() == Token.GETVAR) {
+            if (scriptOrFn.getIndexForNameNode(right) > 0xFFFF) {
+                return -1;
+            }
+            return type | Icode.VAR_CMP_RHS_VAR;
+        }
+        if (right.getType() == Token.NUMBER) {
+            double num = right.getDouble();
+            int inum = (int)num;
+            if (inum == num && (short)inum == inum) {
+                return type;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the variable of an enclosing function activation or the
+     * activation of this function that name refers to as
+     * (function depth << 16) | index of the variable, or -1 if it has to be
+     * looked up by name. Functions that call eval may get other variables
+     * at runtime, and with dynamic scope the scope chain is not lexical.
+     * Scopes of with, catch and let blocks are not known here, the
+     * interpreter checks for them, see Interpreter.findUpvarActivation.
+     */
+    private int getUpvar(String name)
+    {
+        if (name.equals("arguments")) {
+            return -1;
+        }
+        int depth = 0;
+        for (InterpreterData data = itsData;
+             data != null && data.itsFunctionType != 0;
+             data = data.parentData)
+        {
+            if (data.useDynamicScope) {
+                return -1;
+            }
+            for (String argName : data.argNames) {
+                if (argName.equals(name)) {
+                    if (!data.itsNeedsActivation) {
+                        return -1;
+                    }
+                    int index = data.getActivationVarIndexes().get(name, -1);
+                    if (index < 0 || index > 0xFFFF || depth > 0xFF) {
+                        return -1;
+                    }
+                    return (depth << 16) | index;
+                }
+            }
+            if (data.usesEval) {
+                return -1;
+            }
+            ++depth;
+        }
+        return -1;
+    }
+
+    private void addUpvarOp(int op, String name, int upvar)
+    {
+        addStringPrefix(name);
+        addIndexPrefix(upvar & 0xFFFF);
+        addIcode(op);
+        addUint8(upvar >>> 16);
+    }
+
+    private static boolean hasEvalCall(Node node)
+    {
+        for (Node child = node.getFirstChild(); child != null;
+             child = child.getNext())
+        {
+            if (child.getType() == Token.CALL
+                && child.getIntProp(Node.SPECIALCALL_PROP,
+                                    Node.NON_SPECIALCALL)
+                   == Node.SPECIALCALL_EVAL)
+            {
+                return true;
+            }
+            if (hasEvalCall(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void addVarOp(int op, int varIndex)
     {
         switch (op) {
@@ -61,6 +61,10 @@ public class CompilerEnvirons
         warningAsError = false;
         generateObserverCount = false;
         allowSharpComments = false;
+        lazyFunctionCompilation = false;
+        generateFunctionClasses = false;
+        speculativeCompilation = false;
+        generateInstrumentation = false;
     }
 
     public void initFromContext(Context cx)
@@ -87,6 +91,17 @@ public class CompilerEnvirons
         
         // Observer code generation in compiled code :
         generateObserverCount = cx.generateObserverCount;
+
+        // A debugger expects to see every function when a script is compiled
+        lazyFunctionCompilation
+            = cx.hasFeature(Context.FEATURE_LAZY_FUNCTION_COMPILATION)
+              && cx.getDebugger() == null;
+        generateFunctionClasses
+            = cx.hasFeature(Context.FEATURE_FUNCTION_CLASSES);
+        speculativeCompilation
+            = cx.hasFeature(Context.FEATURE_SPECULATIVE_COMPILATION)
+              && cx.getDebugger() == null;
+        generateInstrumentation = cx.instrumentation != null;
     }
 
     public final ErrorReporter getErrorReporter()
@@ -296,6 +311,68 @@ public class CompilerEnvirons
         return allowSharpComments;
     }
 
+    public boolean isLazyFunctionCompilation() {
+        return lazyFunctionCompilation;
+    }
+
+    /**
+     * Turn on or off deferred code generation for nested functions.
+     * When on and the optimization level is -1, the parser skips the body
+     * of a nested function and keeps its source text, and the interpreter
+     * parses the body and generates its code only when it is first called.
+     * Has no effect on JVM byte code generation.
+     * @see Context#FEATURE_LAZY_FUNCTION_COMPILATION
+     */
+    public void setLazyFunctionCompilation(boolean lazy) {
+        lazyFunctionCompilation = lazy;
+    }
+
+    public boolean isGenerateFunctionClasses() {
+        return generateFunctionClasses;
+    }
+
+    /**
+     * Turn on or off generation of a separate class for each function.
+     * When on, the byte code compiler emits a subclass of the script class
+     * per function whose <code>call</code> method invokes the function body
+     * directly. Has no effect in interpreted mode.
+     * @see Context#FEATURE_FUNCTION_CLASSES
+     */
+    public void setGenerateFunctionClasses(boolean generate) {
+        generateFunctionClasses = generate;
+    }
+
+    public boolean isSpeculativeCompilation() {
+        return speculativeCompilation;
+    }
+
+    /**
+     * Turn on or off compilation of frequently called functions to byte
+     * code while they run in the interpreter. When on, the parser keeps
+     * the source text so functions can be compiled on their own.
+     * Has no effect on JVM byte code generation.
+     * @see Context#FEATURE_SPECULATIVE_COMPILATION
+     */
+    public void setSpeculativeCompilation(boolean speculative) {
+        speculativeCompilation = speculative;
+    }
+
+    public boolean isGenerateInstrumentation() {
+        return generateInstrumentation;
+    }
+
+    /**
+     * Turn on or off generation of byte code that reports each call of a
+     * function or script to the {@link Instrumentation} of the Context.
+     * Direct calls between the functions of a script are not generated
+     * then, since they would bypass the reports. The interpreter reports
+     * calls regardless.
+     * @see ContextFactory#setInstrumentation(Instrumentation)
+     */
+    public void setGenerateInstrumentation(boolean generate) {
+        generateInstrumentation = generate;
+    }
+
     /**
      * Returns a {@code CompilerEnvirons} suitable for using Rhino
      * in an IDE environment.  Most features are enabled by default.
@@ -333,5 +410,9 @@ public class CompilerEnvirons
     private boolean warnTrailingComma;
     private boolean ideMode;
     private boolean allowSharpComments;
+    private boolean lazyFunctionCompilation;
+    private boolean generateFunctionClasses;
+    private boolean speculativeCompilation;
+    private boolean generateInstrumentation;
     Set<String> activationNames;
 }
@@ -55,6 +55,8 @@ import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import org.mozilla.javascript.ast.AstRoot;
 import org.mozilla.javascript.ast.ScriptNode;
@@ -315,6 +317,79 @@ public class Context
      */
     public static final int FEATURE_ENHANCED_JAVA_ACCESS = 13;
 
+    /**
+     * Controls whether the interpreter defers code generation for nested
+     * functions until they are first called.
+     * When the feature is on, the parser only scans the body of a function
+     * declared with the <code>function</code> keyword for matching braces
+     * and keeps its source text; the body is parsed and compiled on the
+     * first invocation, so functions that are never called cost neither
+     * a parse tree nor interpreter code. Lexical errors such as unterminated
+     * string literals are still reported when the enclosing script is
+     * compiled, but other syntax errors in a skipped body are only reported
+     * when the function is first called. Bodies containing XML literals,
+     * getters and setters are always parsed up front, as are all bodies in
+     * IDE mode or with strict mode warnings. Each function that was not
+     * called yet keeps the script source alive. The feature saves parse and
+     * code generation time for scripts that define many functions and call
+     * few of them. It has no effect in compiled mode or while a debugger is
+     * attached.
+     * <p>
+     * By default {@link #hasFeature(int)} returns false.
+     * @since 1.7 Release 3
+     */
+    public static final int FEATURE_LAZY_FUNCTION_COMPILATION = 14;
+
+    /**
+     * Controls whether the byte code compiler generates a separate class
+     * for each function.
+     * By default all functions of a script share one class, and its
+     * <code>call</code> method selects the function body with a switch
+     * on the function index. When the feature is on, each function gets
+     * a subclass whose <code>call</code> method invokes its body directly,
+     * so the JVM sees a single receiver class at call sites that always
+     * call the same function. This costs one extra class per function.
+     * The feature has no effect in interpreted mode.
+     * <p>
+     * By default {@link #hasFeature(int)} returns false.
+     * @since 1.7 Release 3
+     */
+    public static final int FEATURE_FUNCTION_CLASSES = 15;
+
+    /**
+     * Controls whether the interpreter compiles frequently called functions
+     * to JVM byte code.
+     * When the feature is on, the interpreter records the argument types
+     * of nested functions that do not need an activation object, and once
+     * a function has been called often enough it is compiled with its
+     * parameters typed as numbers if only numbers were passed so far.
+     * Calls check the argument types first and run the function in the
+     * interpreter when an assumption does not hold; functions that keep
+     * failing these checks are compiled again without the assumption.
+     * Continuations can not be captured while compiled code is on the
+     * stack. The feature has no effect unless the optimization level
+     * is -1 and the byte code compiler is available.
+     * <p>
+     * By default {@link #hasFeature(int)} returns false.
+     * @since 1.7 Release 3
+     */
+    public static final int FEATURE_SPECULATIVE_COMPILATION = 16;
+
+    /**
+     * If hasFeature(FEATURE_RESOURCE_ACCOUNTING) returns true, the CPU
+     * time and the bytes allocated by the thread are accounted from the
+     * time a Context is associated with the thread until it is exited
+     * for the last time, see {@link #getCpuTime()},
+     * {@link #getAllocatedBytes()} and the budgets that can be set with
+     * {@link #setCpuTimeBudget(long)} and
+     * {@link #setAllocationBudget(long)}. The totals can be read by
+     * {@link ContextFactory.Listener#contextReleased(Context)}.
+     * <p>
+     * By default {@link #hasFeature(int)} returns false.
+     * @since 1.7 Release 3
+     */
+    public static final int FEATURE_RESOURCE_ACCOUNTING = 17;
+
     public static final String languageVersionProperty = "language version";
     public static final String errorReporterProperty   = "error reporter";
 
@@ -434,6 +509,15 @@ public class Context
                 }
             }
             VMBridge.instance.setContext(helper, cx);
+            if (cx.hasFeature(FEATURE_RESOURCE_ACCOUNTING)) {
+                cx.startResourceAccounting();
+            }
+            SamplingProfiler profiler = cx.factory.getProfiler();
+            if (profiler != null) {
+                cx.profiler = profiler;
+                profiler.contextEntered(cx);
+            }
+            cx.instrumentation = cx.factory.getInstrumentation();
         }
         ++cx.enterCount;
         return cx;
@@ -460,6 +544,18 @@ public class Context
         }
         if (cx.enterCount < 1) Kit.codeBug();
         if (--cx.enterCount == 0) {
+            cx.setTimeout(0);
+            if (cx.accounting) {
+                cx.stopResourceAccounting();
+            }
+            if (cx.profiler != null) {
+                cx.profiler.contextExited(cx);
+                cx.profiler = null;
+                cx.samplePending = false;
+            }
+            cx.instrumentation = null;
+            cx.interrupted = false;
+            cx.interruptPending = false;
             VMBridge.instance.setContext(helper, null);
             cx.factory.onContextReleased(cx);
         }
@@ -2186,6 +2282,9 @@ public class Context
      * @see #FEATURE_STRICT_MODE
      * @see #FEATURE_WARNING_AS_ERROR
      * @see #FEATURE_ENHANCED_JAVA_ACCESS
+     * @see #FEATURE_LAZY_FUNCTION_COMPILATION
+     * @see #FEATURE_FUNCTION_CLASSES
+     * @see #FEATURE_SPECULATIVE_COMPILATION
      */
     public boolean hasFeature(int featureIndex)
     {
@@ -2234,6 +2333,8 @@ public class Context
      * instruction counts against the threshold.
      * {@link #setGenerateObserverCount} is called with true if
      * <code>threshold</code> is greater than zero, false otherwise.
+     * To only bound the running time of scripts {@link #setTimeout} and
+     * {@link #interrupt} are cheaper.
      * @param threshold The instruction threshold
      */
     public final void setInstructionObserverThreshold(int threshold)
@@ -2284,6 +2385,241 @@ public class Context
         f.observeInstructionCount(this, instructionCount);
     }
 
+    /**
+     * Requests that the script running with this Context stop.
+     * Scripts check for the request at loop back-edges and at function
+     * entries, both interpreted and compiled, and throw
+     * {@link ScriptInterruptedError} once it is made. Unlike instruction
+     * counting this costs scripts next to nothing.
+     * <p>
+     * This method may be called from any thread. The request stays in
+     * effect until {@link #clearInterrupt} is called or the Context is
+     * exited for the last time.
+     */
+    public void interrupt()
+    {
+        interrupted = true;
+        interruptPending = true;
+    }
+
+    /**
+     * Returns true if {@link #interrupt} was called and the request was
+     * not cleared yet.
+     */
+    public boolean isInterrupted()
+    {
+        return interrupted;
+    }
+
+    /**
+     * Withdraws a request made with {@link #interrupt}, so scripts can
+     * run with this Context again.
+     */
+    public void clearInterrupt()
+    {
+        interrupted = false;
+    }
+
+    /**
+     * Interrupts scripts running with this Context once the given time
+     * has passed, see {@link #interrupt}. A new timeout replaces the
+     * previous one, zero cancels it. The timeout is cancelled when the
+     * Context is exited for the last time.
+     *
+     * @param timeoutMillis time in milliseconds from now, or zero
+     */
+    public void setTimeout(long timeoutMillis)
+    {
+        if (timeoutMillis < 0) throw new IllegalArgumentException();
+        if (timeoutTask != null) {
+            timeoutTask.cancel();
+            timeoutTask = null;
+        }
+        if (timeoutMillis != 0) {
+            timeoutTask = new TimerTask() {
+                @Override
+                public void run() {
+                    interrupt();
+                }
+            };
+            getTimer().schedule(timeoutTask, timeoutMillis);
+        }
+    }
+
+    /**
+     * Returns the CPU time in nanoseconds the thread spent since this
+     * Context was associated with it. After the Context was exited for
+     * the last time the total of that period is returned.
+     * Returns -1 unless {@link #FEATURE_RESOURCE_ACCOUNTING} is enabled
+     * and the JVM supports measuring thread CPU time.
+     */
+    public final long getCpuTime()
+    {
+        if (accounting) {
+            return elapsed(cpuTimeStart, ThreadResources.cpuTime());
+        }
+        return cpuTime;
+    }
+
+    /**
+     * Returns the number of bytes the thread allocated since this Context
+     * was associated with it. After the Context was exited for the last
+     * time the total of that period is returned.
+     * Returns -1 unless {@link #FEATURE_RESOURCE_ACCOUNTING} is enabled
+     * and the JVM supports measuring allocation by thread.
+     */
+    public final long getAllocatedBytes()
+    {
+        if (accounting) {
+            return elapsed(allocatedBytesStart,
+                           ThreadResources.allocatedBytes());
+        }
+        return allocatedBytes;
+    }
+
+    public final long getCpuTimeBudget()
+    {
+        return cpuTimeBudget;
+    }
+
+    /**
+     * Sets the CPU time, in nanoseconds, after which scripts running with
+     * this Context throw {@link ResourceBudgetException}, see
+     * {@link #getCpuTime()}. The budget is checked at most every
+     * {@link #BUDGET_CHECK_INTERVAL} milliseconds at loop back-edges and
+     * function entries. Zero means no budget.
+     * Budgets need {@link #FEATURE_RESOURCE_ACCOUNTING}.
+     */
+    public final void setCpuTimeBudget(long nanos)
+    {
+        if (sealed) onSealedMutation();
+        if (nanos < 0) throw new IllegalArgumentException();
+        cpuTimeBudget = nanos;
+        scheduleBudgetChecks();
+    }
+
+    public final long getAllocationBudget()
+    {
+        return allocationBudget;
+    }
+
+    /**
+     * Sets the number of bytes after whose allocation scripts running
+     * with this Context throw {@link ResourceBudgetException}, see
+     * {@link #getAllocatedBytes()} and {@link #setCpuTimeBudget(long)}.
+     * Zero means no budget.
+     */
+    public final void setAllocationBudget(long bytes)
+    {
+        if (sealed) onSealedMutation();
+        if (bytes < 0) throw new IllegalArgumentException();
+        allocationBudget = bytes;
+        scheduleBudgetChecks();
+    }
+
+    /**
+     * Milliseconds between checks of the budgets set with
+     * {@link #setCpuTimeBudget(long)} and {@link #setAllocationBudget(long)}.
+     */
+    public static final int BUDGET_CHECK_INTERVAL = 10;
+
+    private static long elapsed(long start, long now)
+    {
+        return (start < 0 || now < 0) ? -1 : now - start;
+    }
+
+    private void startResourceAccounting()
+    {
+        cpuTimeStart = ThreadResources.cpuTime();
+        allocatedBytesStart = ThreadResources.allocatedBytes();
+        accounting = true;
+        scheduleBudgetChecks();
+    }
+
+    private void stopResourceAccounting()
+    {
+        cpuTime = getCpuTime();
+        allocatedBytes = getAllocatedBytes();
+        accounting = false;
+        if (budgetTask != null) {
+            budgetTask.cancel();
+            budgetTask = null;
+        }
+    }
+
+    private void scheduleBudgetChecks()
+    {
+        if (!accounting || budgetTask != null
+            || (cpuTimeBudget == 0 && allocationBudget == 0))
+        {
+            return;
+        }
+        budgetTask = new TimerTask() {
+            @Override
+            public void run() {
+                budgetCheckPending = true;
+                interruptPending = true;
+            }
+        };
+        getTimer().schedule(budgetTask, BUDGET_CHECK_INTERVAL,
+                            BUDGET_CHECK_INTERVAL);
+    }
+
+    /**
+     * Called by {@link ScriptRuntime#checkInterrupt} when
+     * <code>interruptPending</code> is set.
+     */
+    final void processInterrupt()
+    {
+        // Clear the flag before looking at the requests so none of them
+        // is lost when they come from other threads meanwhile
+        interruptPending = false;
+        if (interrupted) {
+            interruptPending = true;
+            throw new ScriptInterruptedError("Script interrupted");
+        }
+        if (samplePending) {
+            samplePending = false;
+            SamplingProfiler p = profiler;
+            if (p != null) {
+                p.sample(this);
+            }
+        }
+        if (budgetCheckPending) {
+            budgetCheckPending = false;
+            if (cpuTimeBudget != 0 && getCpuTime() > cpuTimeBudget) {
+                throw new ResourceBudgetException(ScriptRuntime.getMessage1(
+                    "msg.cpu.time.budget", String.valueOf(cpuTimeBudget)));
+            }
+            if (allocationBudget != 0
+                && getAllocatedBytes() > allocationBudget)
+            {
+                throw new ResourceBudgetException(ScriptRuntime.getMessage1(
+                    "msg.allocation.budget",
+                    String.valueOf(allocationBudget)));
+            }
+        }
+    }
+
+    /**
+     * Makes the script running with this Context pass its stack to
+     * its {@link SamplingProfiler} at the next loop back-edge or function
+     * entry. May be called from any thread.
+     */
+    final void requestSample()
+    {
+        samplePending = true;
+        interruptPending = true;
+    }
+
+    static synchronized Timer getTimer()
+    {
+        if (timer == null) {
+            timer = new Timer("Rhino timer", true);
+        }
+        return timer;
+    }
+
     /**
      * Create class loader for generated classes.
      * The method calls {@link ContextFactory#createClassLoader(ClassLoader)}
@@ -2427,9 +2763,19 @@ public class Context
             compiler = createCompiler();
         }
 
+        Instrumentation instrumentation = this.instrumentation;
+        long compileStart = instrumentation == null ? 0 : System.nanoTime();
         Object bytecode = compiler.compile(compilerEnv,
                                            tree, tree.getEncodedSource(),
                                            returnFunction);
+        if (instrumentation != null) {
+            long nanos = System.nanoTime() - compileStart;
+            instrumentation.compiled(this, sourceName,
+                returnFunction ? tree.getFunctionNode(0).getName() : null,
+                bytecode instanceof InterpreterData
+                    ? -1 : compilerEnv.getOptimizationLevel(),
+                nanos, getCodeSize(bytecode));
+        }
         if (debugger != null) {
             if (sourceString == null) Kit.codeBug();
             if (bytecode instanceof DebuggableScript) {
@@ -2446,10 +2792,31 @@ public class Context
         } else {
             result = compiler.createScriptObject(bytecode, securityDomain);
         }
+        MemoryFootprint.recordGeneratedCode(result, bytecode);
 
         return result;
     }
 
+    /**
+     * Returns the length of the interpreter code or of the class files
+     * produced by {@link Evaluator#compile}.
+     */
+    static int getCodeSize(Object bytecode)
+    {
+        if (bytecode instanceof InterpreterData) {
+            return ((InterpreterData)bytecode).getCodeSize();
+        }
+        int size = 0;
+        if (bytecode instanceof Object[]) {
+            for (Object part : (Object[])bytecode) {
+                if (part instanceof byte[]) {
+                    size += ((byte[])part).length;
+                }
+            }
+        }
+        return size;
+    }
+
     private static void notifyDebugger_r(Context cx, DebuggableScript dscript,
                                          String debugSource)
     {
@@ -2486,7 +2853,9 @@ public class Context
         Context cx = getCurrentContext();
         if (cx == null)
             return null;
-        if (cx.lastInterpreterFrame != null) {
+        if (cx.lastInterpreterFrame != null
+            && (cx.speculativeCallDepth == 0 || !isCompiledFrameOnTop()))
+        {
             Evaluator evaluator = createInterpreter();
             if (evaluator != null)
                 return evaluator.getSourcePositionFromStack(cx, linep);
@@ -2534,6 +2903,30 @@ public class Context
         return null;
     }
 
+    /**
+     * Checks if compiled script code was entered after the last
+     * interpreter invocation, which happens when the interpreter
+     * runs a function compiled by {@link SpeculativeCompiler}.
+     */
+    private static boolean isCompiledFrameOnTop()
+    {
+        StackTraceElement[] stack = new Throwable().getStackTrace();
+        for (StackTraceElement e : stack) {
+            if ("org.mozilla.javascript.Interpreter".equals(e.getClassName())
+                && "interpretLoop".equals(e.getMethodName()))
+            {
+                return false;
+            }
+            String fileName = e.getFileName();
+            if (e.getLineNumber() >= 0 && fileName != null
+                && !fileName.endsWith(".java"))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     RegExpProxy getRegExpProxy()
     {
         if (regExpProxy == null) {
@@ -2660,10 +3053,42 @@ public class Context
     // interpreter invocations
     ObjArray previousInterpreterInvocations;
 
+    // Interpreter frames that can be reused, see Interpreter.releaseFrame
+    Object interpreterFramePool;
+
+    // Nesting of speculatively compiled functions called by the interpreter
+    int speculativeCallDepth;
+
     // For instruction counting (interpreter only)
     int instructionCount;
     int instructionThreshold;
 
+    // Set with the reasons below, possibly from other threads, and
+    // checked by ScriptRuntime.checkInterrupt
+    volatile boolean interruptPending;
+    private volatile boolean interrupted;
+    private volatile boolean budgetCheckPending;
+    private volatile boolean samplePending;
+    private TimerTask timeoutTask;
+    private static Timer timer;
+
+    // Resource accounting, see FEATURE_RESOURCE_ACCOUNTING
+    private boolean accounting;
+    private long cpuTimeStart;
+    private long allocatedBytesStart;
+    private long cpuTime = -1;
+    private long allocatedBytes = -1;
+    private long cpuTimeBudget;
+    private long allocationBudget;
+    private TimerTask budgetTask;
+
+    // Set while the Context is entered if its factory has a profiler
+    private SamplingProfiler profiler;
+
+    // Set while the Context is entered if its factory has an
+    // instrumentation
+    Instrumentation instrumentation;
+
     // It can be used to return the second index-like result from function
     int scratchIndex;
 
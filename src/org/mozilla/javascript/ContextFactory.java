@@ -150,6 +150,8 @@ public class ContextFactory
     private volatile Object listeners;
     private boolean disabledListening;
     private ClassLoader applicationClassLoader;
+    private volatile SamplingProfiler profiler;
+    private volatile Instrumentation instrumentation;
 
     /**
      * Listener of {@link Context} creation and release events.
@@ -311,6 +313,18 @@ public class ContextFactory
 
           case Context.FEATURE_ENHANCED_JAVA_ACCESS:
             return false;
+
+          case Context.FEATURE_LAZY_FUNCTION_COMPILATION:
+            return false;
+
+          case Context.FEATURE_FUNCTION_CLASSES:
+            return false;
+
+          case Context.FEATURE_SPECULATIVE_COMPILATION:
+            return false;
+
+          case Context.FEATURE_RESOURCE_ACCOUNTING:
+            return false;
         }
         // It is a bug to call the method with unknown featureIndex
         throw new IllegalArgumentException(String.valueOf(featureIndex));
@@ -380,6 +394,47 @@ public class ContextFactory
         });
     }
 
+    /**
+     * Returns the profiler sampling the stacks of scripts running with
+     * Contexts of this factory, or null.
+     */
+    public final SamplingProfiler getProfiler()
+    {
+        return profiler;
+    }
+
+    /**
+     * Sets the profiler that samples the stacks of scripts running with
+     * Contexts of this factory, or null to stop sampling them. Contexts
+     * that are already associated with a thread are only sampled after
+     * they are entered again.
+     * Unlike other settings it can be changed after the factory is sealed.
+     */
+    public final void setProfiler(SamplingProfiler profiler)
+    {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Returns the instrumentation that receives execution and compilation
+     * events of scripts running with Contexts of this factory, or null.
+     */
+    public final Instrumentation getInstrumentation()
+    {
+        return instrumentation;
+    }
+
+    /**
+     * Sets the instrumentation that receives execution and compilation
+     * events of scripts running with Contexts of this factory, or null.
+     * Like {@link #setProfiler(SamplingProfiler)} it applies to Contexts
+     * entered afterwards and can be changed after the factory is sealed.
+     */
+    public final void setInstrumentation(Instrumentation instrumentation)
+    {
+        this.instrumentation = instrumentation;
+    }
+
     /**
      * Get ClassLoader to use when searching for Java classes.
      * Unless it was explicitly initialized with
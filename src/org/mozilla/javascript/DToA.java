@@ -59,6 +59,9 @@
 
 package org.mozilla.javascript;
 
+import org.mozilla.javascript.v8dtoa.FastDtoa;
+import org.mozilla.javascript.v8dtoa.FastDtoaBuilder;
+
 import java.math.BigInteger;
 
 class DToA {
@@ -1171,6 +1174,56 @@ class DToA {
         2,   /* DTOSTR_EXPONENTIAL, */
         2};  /* DTOSTR_PRECISION */
 
+    private static final int NO_FAST_DTOA = Integer.MIN_VALUE;
+
+    /* Try to produce the same digits and decimal point as JS_dtoa using the
+     * Grisu3 algorithm, which only needs 64 bit integer arithmetic. Returns
+     * NO_FAST_DTOA if the result cannot be guaranteed to be correct, in which
+     * case the caller must use JS_dtoa. Exact halfway cases are always
+     * rejected, so the biasUp rounding of JS_dtoa is left to the slow path. */
+    private static int fastDtoa(double d, int mode, int ndigits,
+                                boolean[] sign, StringBuffer buf)
+    {
+        if (d == 0 || d != d || Double.isInfinite(d))
+            return NO_FAST_DTOA;
+        double v = Math.abs(d);
+        FastDtoaBuilder digits = new FastDtoaBuilder();
+        switch (mode) {
+            case 0:
+                if (!FastDtoa.dtoa(v, digits))
+                    return NO_FAST_DTOA;
+                break;
+            case 2:
+                if (ndigits <= 0 || !FastDtoa.dtoa(v, ndigits, digits))
+                    return NO_FAST_DTOA;
+                break;
+            case 3: {
+                /* The number of significant digits depends on the position of
+                   the decimal point, which is only known after rounding, so
+                   start from an estimate and retry once if it was off. */
+                int requested = (int)Math.floor(Math.log10(v)) + 1 + ndigits;
+                for (int attempt = 0; ; attempt++) {
+                    if (requested <= 0 || attempt == 2)
+                        return NO_FAST_DTOA;
+                    digits.reset();
+                    if (!FastDtoa.dtoa(v, requested, digits))
+                        return NO_FAST_DTOA;
+                    int fractionDigits = digits.length()
+                                         - digits.getDecimalPoint();
+                    if (fractionDigits == ndigits)
+                        break;
+                    requested += ndigits - fractionDigits;
+                }
+                break;
+            }
+            default:
+                return NO_FAST_DTOA;
+        }
+        sign[0] = d < 0;
+        buf.append(digits.getDigits());
+        return digits.getDecimalPoint();
+    }
+
     static void
     JS_dtostr(StringBuffer buffer, int mode, int precision, double d)
     {
@@ -1184,7 +1237,10 @@ class DToA {
         if (mode == DTOSTR_FIXED && (d >= 1e21 || d <= -1e21))
             mode = DTOSTR_STANDARD; /* Change mode here rather than below because the buffer may not be large enough to hold a large integer. */
 
-        decPt = JS_dtoa(d, dtoaModes[mode], mode >= DTOSTR_FIXED, precision, sign, buffer);
+        decPt = fastDtoa(d, dtoaModes[mode], precision, sign, buffer);
+        if (decPt == NO_FAST_DTOA) {
+            decPt = JS_dtoa(d, dtoaModes[mode], mode >= DTOSTR_FIXED, precision, sign, buffer);
+        }
         nDigits = buffer.length();
 
         /* If Infinity, -Infinity, or NaN, return the string regardless of the mode. */
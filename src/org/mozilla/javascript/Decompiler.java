@@ -41,7 +41,9 @@
 
 package org.mozilla.javascript;
 
+import org.mozilla.javascript.ast.AstRoot;
 import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.ScriptNode;
 
 /**
  * The following class save decompilation information about the source.
@@ -108,6 +110,14 @@ public class Decompiler
     // the last RC of object literals in case of function expressions
     private static final int FUNCTION_END = Token.LAST_TOKEN + 1;
 
+    // Marker of a function body skipped by the parser, followed by the
+    // language version and the body source. See expandSkippedBodies.
+    private static final int SKIPPED_BODY = Token.LAST_TOKEN + 2;
+
+    // Length of the encoded "function () {" header of an anonymous
+    // function without parameters
+    private static final int EMPTY_HEADER_LENGTH = 6;
+
     String getEncodedSource()
     {
         return sourceToString(0);
@@ -150,6 +160,13 @@ public class Decompiler
         append((char)Token.EOL);
     }
 
+    void addSkippedBody(String body, int languageVersion)
+    {
+        append((char)SKIPPED_BODY);
+        append((char)languageVersion);
+        appendString(body);
+    }
+
     void addName(String str)
     {
         addToken(Token.NAME);
@@ -291,8 +308,9 @@ public class Decompiler
     public static String decompile(String source, int flags,
                                    UintMap properties)
     {
+        if (source.length() == 0) { return ""; }
+        source = expandSkippedBodies(source);
         int length = source.length();
-        if (length == 0) { return ""; }
 
         int indent = properties.getInt(INITIAL_INDENT_PROP, 0);
         if (indent < 0) throw new IllegalArgumentException();
@@ -403,6 +421,11 @@ public class Decompiler
                 // Do nothing
                 break;
 
+            case SKIPPED_BODY:
+                // The body could not be parsed, print it as it is
+                i = printSourceString(source, i + 2, false, result);
+                continue;
+
             case Token.COMMA:
                 result.append(", ");
                 break;
@@ -843,6 +866,85 @@ public class Decompiler
         return result.toString();
     }
 
+    /**
+     * Replaces the markers of function bodies skipped by the parser with
+     * the tokens of the parsed bodies. A body with syntax errors keeps its
+     * marker.
+     */
+    private static String expandSkippedBodies(String source)
+    {
+        if (source.indexOf(SKIPPED_BODY) < 0) {
+            return source;
+        }
+        StringBuilder expanded = null;
+        int copied = 0;
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            switch (source.charAt(i)) {
+              case Token.NAME:
+              case Token.REGEXP:
+              case Token.STRING:
+                i = getSourceStringEnd(source, i + 1);
+                break;
+              case Token.NUMBER:
+                i = printSourceNumber(source, i + 1, null);
+                break;
+              case Token.FUNCTION:
+                // skip function type
+                i += 2;
+                break;
+              case SKIPPED_BODY: {
+                int languageVersion = source.charAt(i + 1);
+                StringBuffer body = new StringBuffer();
+                int end = printSourceString(source, i + 2, false, body);
+                String tokens = encodeBody(body.toString(), languageVersion);
+                if (tokens != null) {
+                    if (expanded == null) {
+                        expanded = new StringBuilder(length);
+                    }
+                    expanded.append(source, copied, i);
+                    expanded.append(tokens);
+                    copied = end;
+                }
+                i = end;
+                break;
+              }
+              default:
+                ++i;
+            }
+        }
+        if (expanded == null) {
+            return source;
+        }
+        expanded.append(source, copied, length);
+        return expanded.toString();
+    }
+
+    /**
+     * Returns the encoded source of the statements of a function body, or
+     * null if the body has syntax errors.
+     */
+    private static String encodeBody(String body, int languageVersion)
+    {
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.setLanguageVersion(languageVersion);
+        Parser p = new Parser(compilerEnv, compilerEnv.getErrorReporter());
+        p.calledByCompileFunction = true;
+        ScriptNode tree;
+        try {
+            AstRoot ast = p.parse("function(){" + body + "}", null, 1);
+            tree = new IRFactory(compilerEnv).transformTree(ast);
+        } catch (EvaluatorException ex) {
+            return null;
+        }
+        FunctionNode fn = tree.getFunctionNode(0);
+        // The statements are followed by the closing brace of the body
+        return tree.getEncodedSource().substring(
+            fn.getEncodedSourceStart() + EMPTY_HEADER_LENGTH,
+            fn.getEncodedSourceEnd() - 1);
+    }
+
     private static int getNext(String source, int length, int i)
     {
         return (i + 1 < length) ? source.charAt(i + 1) : Token.EOF;
@@ -0,0 +1,83 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+/**
+ * Callable object with additional entry points for calls with a small
+ * fixed number of arguments. They behave like
+ * {@link Callable#call(Context, Scriptable, Scriptable, Object[])} with
+ * the given arguments but do not need an arguments array, so callers
+ * should prefer them when the argument count is at most
+ * {@link #MAX_FIXED_ARITY}.
+ */
+public interface FixedArityCallable extends Callable
+{
+    /**
+     * The largest argument count with a fixed arity entry point.
+     */
+    public static final int MAX_FIXED_ARITY = 4;
+
+    /**
+     * Perform the call without arguments.
+     */
+    public Object call0(Context cx, Scriptable scope, Scriptable thisObj);
+
+    /**
+     * Perform the call with one argument.
+     */
+    public Object call1(Context cx, Scriptable scope, Scriptable thisObj,
+                        Object arg0);
+
+    /**
+     * Perform the call with two arguments.
+     */
+    public Object call2(Context cx, Scriptable scope, Scriptable thisObj,
+                        Object arg0, Object arg1);
+
+    /**
+     * Perform the call with three arguments.
+     */
+    public Object call3(Context cx, Scriptable scope, Scriptable thisObj,
+                        Object arg0, Object arg1, Object arg2);
+
+    /**
+     * Perform the call with four arguments.
+     */
+    public Object call4(Context cx, Scriptable scope, Scriptable thisObj,
+                        Object arg0, Object arg1, Object arg2, Object arg3);
+}
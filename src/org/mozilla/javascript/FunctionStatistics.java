@@ -0,0 +1,404 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link Instrumentation} that counts the calls of each function and
+ * the time spent in them, and sums up compilations and fallbacks to the
+ * interpreter. It can be registered as a standard MBean:
+ * <pre>
+ * FunctionStatistics statistics = new FunctionStatistics();
+ * factory.setInstrumentation(statistics);
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(statistics,
+ *     new ObjectName("org.mozilla.javascript:type=FunctionStatistics"));
+ * </pre>
+ * Interpreted functions are told apart by their name, source and first
+ * line. Compiled functions are told apart by their class, name and number
+ * of parameters and variables, and compiled scripts are counted as
+ * anonymous functions. The statistics do not keep scripts or their
+ * classes from being garbage collected, and calls are counted without
+ * locking.
+ */
+public class FunctionStatistics
+    implements Instrumentation, FunctionStatisticsMBean
+{
+    /**
+     * The calls of one function or script.
+     */
+    public static final class Entry
+    {
+        private final String name;
+        private final AtomicLong callCount = new AtomicLong();
+        private final AtomicLong totalTime = new AtomicLong();
+
+        Entry(String name)
+        {
+            this.name = name;
+        }
+
+        Entry copy()
+        {
+            Entry entry = new Entry(name);
+            entry.callCount.set(callCount.get());
+            entry.totalTime.set(totalTime.get());
+            return entry;
+        }
+
+        /**
+         * Returns the name of the function followed by its source name
+         * and line, or the class of a compiled function, in parentheses.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        public long getCallCount()
+        {
+            return callCount.get();
+        }
+
+        /**
+         * Returns the time spent in calls of the function in nanoseconds,
+         * including the calls they made.
+         */
+        public long getTotalTime()
+        {
+            return totalTime.get();
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + ": " + getCallCount() + " calls, "
+                   + getTotalTime() / 1000000 + " ms";
+        }
+    }
+
+    /**
+     * Identifies the code of a function: the InterpreterData of an
+     * interpreted function, or the class and signature of a compiled one.
+     * Keys stored in the map refer to the code weakly, keys used for
+     * lookups strongly, and the two compare equal.
+     */
+    private static final class CodeKey
+    {
+        private final Object code;
+        private final CodeReference reference;
+        private final String functionName;
+        private final int paramCount;
+        private final int paramAndVarCount;
+        private final int hashCode;
+
+        CodeKey(Object code, String functionName, int paramCount,
+                int paramAndVarCount)
+        {
+            this(code, null, functionName, paramCount, paramAndVarCount);
+        }
+
+        private CodeKey(Object code, ReferenceQueue<Object> queue,
+                        String functionName, int paramCount,
+                        int paramAndVarCount)
+        {
+            if (queue == null) {
+                this.code = code;
+                this.reference = null;
+            } else {
+                this.code = null;
+                this.reference = new CodeReference(code, queue, this);
+            }
+            this.functionName = functionName;
+            this.paramCount = paramCount;
+            this.paramAndVarCount = paramAndVarCount;
+            this.hashCode = System.identityHashCode(code) + paramAndVarCount;
+        }
+
+        /**
+         * Returns a copy of this key for storing in the map.
+         */
+        CodeKey toWeakKey(ReferenceQueue<Object> queue)
+        {
+            return new CodeKey(code, queue, functionName, paramCount,
+                               paramAndVarCount);
+        }
+
+        private Object getCode()
+        {
+            return reference == null ? code : reference.get();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof CodeKey)) {
+                return false;
+            }
+            CodeKey other = (CodeKey)obj;
+            Object code = getCode();
+            return code != null && code == other.getCode()
+                && paramCount == other.paramCount
+                && paramAndVarCount == other.paramAndVarCount
+                && (functionName == null ? other.functionName == null
+                    : functionName.equals(other.functionName));
+        }
+    }
+
+    private static final class CodeReference extends WeakReference<Object>
+    {
+        final CodeKey key;
+
+        CodeReference(Object code, ReferenceQueue<Object> queue, CodeKey key)
+        {
+            super(code, queue);
+            this.key = key;
+        }
+    }
+
+    // Entries by name, which outlive the code they count the calls of
+    private volatile ConcurrentMap<String,Entry> entries
+        = new ConcurrentHashMap<String,Entry>();
+    // Entries by code, to find them without computing names
+    private volatile ConcurrentMap<CodeKey,Entry> entriesByCode
+        = new ConcurrentHashMap<CodeKey,Entry>();
+    private final ReferenceQueue<Object> collectedCode
+        = new ReferenceQueue<Object>();
+    private int compilationCount;
+    private long compilationTime;
+    private long compiledCodeSize;
+    private int fallbackCount;
+    private Set<String> fallbacks = new LinkedHashSet<String>();
+
+    public void functionCalled(Context cx, NativeFunction function,
+                               long nanos)
+    {
+        CodeKey key;
+        if (function instanceof InterpretedFunction) {
+            key = new CodeKey(((InterpretedFunction)function).idata,
+                              null, 0, 0);
+        } else {
+            key = new CodeKey(function.getClass(),
+                              function.getFunctionName(),
+                              function.getParamCount(),
+                              function.getParamAndVarCount());
+        }
+        ConcurrentMap<CodeKey,Entry> byCode = entriesByCode;
+        Entry entry = byCode.get(key);
+        if (entry == null) {
+            entry = addEntry(function, key, byCode);
+        }
+        entry.callCount.incrementAndGet();
+        entry.totalTime.addAndGet(nanos);
+    }
+
+    private Entry addEntry(NativeFunction function, CodeKey key,
+                           ConcurrentMap<CodeKey,Entry> byCode)
+    {
+        for (;;) {
+            CodeReference collected = (CodeReference)collectedCode.poll();
+            if (collected == null) {
+                break;
+            }
+            byCode.remove(collected.key);
+        }
+        String name;
+        String id;
+        if (function instanceof InterpretedFunction) {
+            name = getName(((InterpretedFunction)function).idata);
+            id = name;
+        } else {
+            String functionName = function.getFunctionName();
+            name = getName(functionName, function.getClass().getName());
+            id = name + '/' + key.paramCount + '/' + key.paramAndVarCount;
+        }
+        Entry entry = new Entry(name);
+        Entry existing = entries.putIfAbsent(id, entry);
+        if (existing != null) {
+            entry = existing;
+        }
+        existing = byCode.putIfAbsent(key.toWeakKey(collectedCode), entry);
+        return existing != null ? existing : entry;
+    }
+
+    public synchronized void compiled(Context cx, String sourceName,
+                                      String functionName,
+                                      int optimizationLevel, long nanos,
+                                      int codeSize)
+    {
+        ++compilationCount;
+        compilationTime += nanos;
+        compiledCodeSize += codeSize;
+    }
+
+    public synchronized void interpreterFallback(Context cx,
+                                                 String sourceName,
+                                                 String functionName,
+                                                 String reason)
+    {
+        ++fallbackCount;
+        fallbacks.add(getName(functionName, sourceName) + ": " + reason);
+    }
+
+    private static String getName(InterpreterData idata)
+    {
+        String source = idata.itsSourceFile;
+        int[] lines = Interpreter.getLineNumbers(idata);
+        if (lines.length != 0) {
+            int first = lines[0];
+            for (int line : lines) {
+                first = Math.min(first, line);
+            }
+            source += ":" + first;
+        }
+        if (idata.itsFunctionType == 0) {
+            return "(script) (" + source + ")";
+        }
+        return getName(idata.itsName, source);
+    }
+
+    private static String getName(String functionName, String source)
+    {
+        if (functionName == null || functionName.length() == 0) {
+            functionName = "(anonymous)";
+        }
+        return functionName + " (" + source + ")";
+    }
+
+    /**
+     * Returns a copy of the statistics of the functions and scripts that
+     * were called, starting with the one with the largest total time.
+     */
+    public List<Entry> getEntries()
+    {
+        List<Entry> list = new ArrayList<Entry>();
+        for (Entry entry : entries.values()) {
+            list.add(entry.copy());
+        }
+        Collections.sort(list, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                long t1 = e1.getTotalTime();
+                long t2 = e2.getTotalTime();
+                return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+            }
+        });
+        return list;
+    }
+
+    public int getFunctionCount()
+    {
+        return entries.size();
+    }
+
+    public long getCallCount()
+    {
+        long count = 0;
+        for (Entry entry : entries.values()) {
+            count += entry.getCallCount();
+        }
+        return count;
+    }
+
+    public synchronized int getCompilationCount()
+    {
+        return compilationCount;
+    }
+
+    public synchronized long getCompilationTime()
+    {
+        return compilationTime / 1000000;
+    }
+
+    public synchronized long getCompiledCodeSize()
+    {
+        return compiledCodeSize;
+    }
+
+    public synchronized int getFallbackCount()
+    {
+        return fallbackCount;
+    }
+
+    public String[] getFunctions()
+    {
+        List<Entry> entries = getEntries();
+        String[] result = new String[entries.size()];
+        for (int i = 0; i != result.length; ++i) {
+            result[i] = entries.get(i).toString();
+        }
+        return result;
+    }
+
+    public synchronized String[] getFallbacks()
+    {
+        return fallbacks.toArray(new String[fallbacks.size()]);
+    }
+
+    public synchronized void reset()
+    {
+        // Calls that race with this may still be counted in the old maps.
+        // Replacing the names first keeps new code keys from leading to
+        // entries that are no longer reported.
+        entries = new ConcurrentHashMap<String,Entry>();
+        entriesByCode = new ConcurrentHashMap<CodeKey,Entry>();
+        compilationCount = 0;
+        compilationTime = 0;
+        compiledCodeSize = 0;
+        fallbackCount = 0;
+        fallbacks = new LinkedHashSet<String>();
+    }
+}
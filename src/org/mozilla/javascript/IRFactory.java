@@ -48,6 +48,7 @@ import org.mozilla.javascript.ast.*;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Map;
 
 /**
  * This class rewrites the parse tree into an IR suitable for codegen.
@@ -88,6 +89,10 @@ public final class IRFactory extends Parser
         this.inUseStrictDirective = root.isInStrictMode();
         int sourceStartOffset = decompiler.getCurrentOffset();
 
+        // Functions are transformed inner first, but whether a function
+        // needs an activation object depends on its nested functions
+        root.visit(new ClosureAnalysis(root, null));
+
         if (Token.printTrees) {
             System.out.println("IRFactory.transformTree");
             System.out.println(root.debugPrint());
@@ -556,6 +561,11 @@ public final class IRFactory extends Parser
 
             int lineno = fn.getBody().getLineno();
             ++nestingOfFunction;  // only for body, not params
+            String skippedBody = fn.getSkippedBody();
+            if (skippedBody != null) {
+                decompiler.addSkippedBody(skippedBody,
+                                          compilerEnv.getLanguageVersion());
+            }
             Node body = transform(fn.getBody());
 
             if (!fn.isExpressionClosure()) {
@@ -1253,16 +1263,143 @@ public final class IRFactory extends Parser
                         catchCond, stmts, lineno);
     }
 
+    /**
+     * Gives an activation object to each function with a parameter or
+     * variable that a nested function refers to, as nested functions look
+     * up the variables of enclosing functions in the scope chain. Other
+     * functions with nested functions keep their variables in registers,
+     * and their closures get the scope of the function as parent scope.
+     * All enclosing functions get activation objects when a function calls
+     * eval, whose code may refer to any of their variables, or contains a
+     * function whose body was skipped by the parser, and with dynamic scope,
+     * where a nested function may be called from a function that refers to
+     * variables of the enclosing function. Function statements in blocks
+     * are bound in the activation object, so functions containing them
+     * get one as well.
+     * <p>
+     * One visitor is used for each scope, so names are resolved by looking
+     * at the symbol tables of the enclosing scopes.
+     */
+    private final class ClosureAnalysis implements NodeVisitor {
+        private final Scope scope;
+        private final ClosureAnalysis parent;
+        // Innermost function, or null at the top level of the script
+        private final FunctionNode function;
+
+        ClosureAnalysis(Scope scope, ClosureAnalysis parent) {
+            this.scope = scope;
+            this.parent = parent;
+            if (scope instanceof FunctionNode) {
+                function = (FunctionNode)scope;
+            } else {
+                function = parent == null ? null : parent.function;
+            }
+        }
+
+        public boolean visit(AstNode node) {
+            if (node == scope) {
+                return true;
+            }
+            if (node instanceof Scope) {
+                if (node instanceof FunctionNode) {
+                    FunctionNode fn = (FunctionNode)node;
+                    if (fn.getSkippedBody() != null
+                        || compilerEnv.isUseDynamicScope())
+                    {
+                        markFunctions();
+                    } else if (fn.getFunctionType()
+                               == FunctionNode.FUNCTION_EXPRESSION_STATEMENT
+                               && function != null)
+                    {
+                        // Bound in the scope when the statement runs
+                        function.setRequiresActivation();
+                    }
+                }
+                node.visit(new ClosureAnalysis((Scope)node, this));
+                return false;
+            }
+            if (node instanceof Name) {
+                if (isReference((Name)node)) {
+                    resolve(((Name)node).getIdentifier());
+                }
+            } else if (node instanceof FunctionCall) {
+                AstNode target = ((FunctionCall)node).getTarget();
+                if ((target instanceof Name
+                     && "eval".equals(((Name)target).getIdentifier()))
+                    || (target instanceof PropertyGet
+                        && "eval".equals(((PropertyGet)target).getProperty()
+                                             .getIdentifier())))
+                {
+                    markFunctions();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns false for property names, labels and names of functions,
+         * which do not refer to variables.
+         */
+        private boolean isReference(Name name) {
+            AstNode p = name.getParent();
+            if (p instanceof PropertyGet) {
+                return ((PropertyGet)p).getProperty() != name;
+            }
+            if (p instanceof ObjectProperty) {
+                return ((ObjectProperty)p).getLeft() != name;
+            }
+            if (p instanceof FunctionNode) {
+                return ((FunctionNode)p).getFunctionName() != name;
+            }
+            return !(p instanceof BreakStatement
+                     || p instanceof ContinueStatement);
+        }
+
+        private void resolve(String id) {
+            for (ClosureAnalysis a = this; a != null; a = a.parent) {
+                Scope s = a.scope;
+                Map<String,Symbol> symbols = s.getSymbolTable();
+                if ((symbols != null && symbols.containsKey(id))
+                    || isFunctionExpressionName(s, id))
+                {
+                    if (a.function != function && a.function != null) {
+                        a.function.setRequiresActivation();
+                    }
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns true if id is the name of a function expression, which
+         * initFunction defines as a variable of the function.
+         */
+        private boolean isFunctionExpressionName(Scope s, String id) {
+            if (!(s instanceof FunctionNode)) {
+                return false;
+            }
+            FunctionNode fn = (FunctionNode)s;
+            return fn.getFunctionType() == FunctionNode.FUNCTION_EXPRESSION
+                && fn.getFunctionName() != null
+                && id.equals(fn.getName());
+        }
+
+        private void markFunctions() {
+            for (ClosureAnalysis a = this; a != null; a = a.parent) {
+                if (a.function != null) {
+                    a.function.setRequiresActivation();
+                }
+            }
+        }
+    }
+
     private Node initFunction(FunctionNode fnNode, int functionIndex,
                               Node statements, int functionType) {
         fnNode.setFunctionType(functionType);
         fnNode.addChildToBack(statements);
 
-        int functionCount = fnNode.getFunctionCount();
-        if (functionCount != 0) {
-            // Functions containing other functions require activation objects
-            fnNode.setRequiresActivation();
-        }
+        // Functions whose variables are used by nested functions were given
+        // activation objects by ClosureAnalysis
 
         if (functionType == FunctionNode.FUNCTION_EXPRESSION) {
             Name name = fnNode.getFunctionName();
@@ -173,8 +173,27 @@ abstract class Icode {
 
        Icode_DEBUGGER                   = -64,
 
+    // Superinstructions for frequent sequences of getvar/setvar
+       Icode_SETVAR1_POP                = -65,
+       Icode_GETVAR1_PROP               = -66,
+       Icode_IF_VAR_CMP                 = -67,
+       Icode_IF_CMP                     = -68,
+
+    // Access to variables of enclosing function activations by index,
+    // see CodeGenerator.getUpvar
+       Icode_GETUPVAR                   = -69,
+       Icode_SETUPVAR                   = -70,
+       Icode_UPVAR_AND_THIS             = -71,
+       Icode_UPVAR_INC_DEC              = -72,
+
        // Last icode
-        MIN_ICODE                       = -64;
+        MIN_ICODE                       = -72;
+
+    // Flags of Icode_IF_VAR_CMP and Icode_IF_CMP that are combined with
+    // the comparison token
+    static final int
+        VAR_CMP_JUMP_IF_TRUE            = 0x40,
+        VAR_CMP_RHS_VAR                 = 0x80;
 
     static String bytecodeName(int bytecode)
     {
@@ -182,12 +201,12 @@ abstract class Icode {
             throw new IllegalArgumentException(String.valueOf(bytecode));
         }
 
-        if (!Token.printICode) {
+        if (!Token.printICode && !IcodeProfile.enabled) {
             return String.valueOf(bytecode);
         }
 
         if (validTokenCode(bytecode)) {
-            return Token.name(bytecode);
+            return Token.typeToName(bytecode);
         }
 
         switch (bytecode) {
@@ -255,6 +274,14 @@ abstract class Icode {
           case Icode_GENERATOR:        return "GENERATOR";
           case Icode_GENERATOR_END:    return "GENERATOR_END";
           case Icode_DEBUGGER:         return "DEBUGGER";
+          case Icode_SETVAR1_POP:      return "SETVAR1_POP";
+          case Icode_GETVAR1_PROP:     return "GETVAR1_PROP";
+          case Icode_IF_VAR_CMP:       return "IF_VAR_CMP";
+          case Icode_IF_CMP:           return "IF_CMP";
+          case Icode_GETUPVAR:         return "GETUPVAR";
+          case Icode_SETUPVAR:         return "SETUPVAR";
+          case Icode_UPVAR_AND_THIS:   return "UPVAR_AND_THIS";
+          case Icode_UPVAR_INC_DEC:    return "UPVAR_INC_DEC";
         }
 
         // icode without name
@@ -0,0 +1,183 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how often the interpreter runs each instruction and each sequence
+ * of two and three instructions to find candidates for superinstructions.
+ * Profiling is enabled with the system property
+ * <code>rhino.icode.profile</code> set to <code>true</code>, in which case
+ * the counts are printed to System.err when the JVM exits.
+ * <p>
+ * A sequence is counted when its instructions are run one after the other
+ * in the same frame, so it may include a jump and its target.
+ */
+final class IcodeProfile
+{
+    static final boolean enabled = isEnabled();
+
+    // Previous instruction when there is none
+    static final int NO_OP = Integer.MIN_VALUE;
+
+    private static final int OP_COUNT
+        = Token.LAST_BYTECODE_TOKEN - Icode.MIN_ICODE + 1;
+
+    // Number of sequences in the report
+    private static final int REPORT_LIMIT = 40;
+
+    private static long total;
+    private static long[] singles;
+    private static long[] pairs;
+    private static Map<Integer,long[]> triples;
+
+    static {
+        if (enabled) {
+            singles = new long[OP_COUNT];
+            pairs = new long[OP_COUNT * OP_COUNT];
+            triples = new HashMap<Integer,long[]>();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    System.err.print(getReport(REPORT_LIMIT));
+                }
+            });
+        }
+    }
+
+    private IcodeProfile() { }
+
+    private static boolean isEnabled()
+    {
+        try {
+            return "true".equals(SecurityUtilities.getSystemProperty(
+                                     "rhino.icode.profile"));
+        } catch (SecurityException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Records that op was run after prevOp and prevOp2, either of which
+     * can be NO_OP.
+     */
+    static synchronized void record(int prevOp2, int prevOp, int op)
+    {
+        int index = op - Icode.MIN_ICODE;
+        ++total;
+        ++singles[index];
+        if (prevOp != NO_OP) {
+            index += (prevOp - Icode.MIN_ICODE) * OP_COUNT;
+            ++pairs[index];
+            if (prevOp2 != NO_OP) {
+                index += (prevOp2 - Icode.MIN_ICODE) * OP_COUNT * OP_COUNT;
+                Integer key = Integer.valueOf(index);
+                long[] count = triples.get(key);
+                if (count == null) {
+                    count = new long[1];
+                    triples.put(key, count);
+                }
+                ++count[0];
+            }
+        }
+    }
+
+    /**
+     * Returns the instructions and the sequences of two and three
+     * instructions that were run most often.
+     */
+    static synchronized String getReport(int limit)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append("Interpreted instructions: ").append(total).append('\n');
+        List<long[]> list = new ArrayList<long[]>();
+        for (int i = 0; i != OP_COUNT; ++i) {
+            if (singles[i] != 0) {
+                list.add(new long[] { singles[i], i });
+            }
+        }
+        appendCounts(sb, "Instructions", list, 1, limit);
+        list.clear();
+        for (int i = 0; i != OP_COUNT * OP_COUNT; ++i) {
+            if (pairs[i] != 0) {
+                list.add(new long[] { pairs[i], i });
+            }
+        }
+        appendCounts(sb, "Pairs", list, 2, limit);
+        list.clear();
+        for (Map.Entry<Integer,long[]> e: triples.entrySet()) {
+            list.add(new long[] { e.getValue()[0], e.getKey().intValue() });
+        }
+        appendCounts(sb, "Triples", list, 3, limit);
+        return sb.toString();
+    }
+
+    private static void appendCounts(StringBuffer sb, String title,
+                                     List<long[]> counts, int length,
+                                     int limit)
+    {
+        Collections.sort(counts, new Comparator<long[]>() {
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? 1 : a[0] > b[0] ? -1 : 0;
+            }
+        });
+        sb.append(title).append(":\n");
+        for (int i = 0; i < counts.size() && i < limit; ++i) {
+            long[] count = counts.get(i);
+            sb.append("  ").append(count[0]).append(' ');
+            sb.append(count[0] * 1000 / total / 10.0).append('%');
+            int[] ops = new int[length];
+            int index = (int)count[1];
+            for (int j = length; j != 0;) {
+                --j;
+                ops[j] = index % OP_COUNT + Icode.MIN_ICODE;
+                index /= OP_COUNT;
+            }
+            for (int j = 0; j != length; ++j) {
+                sb.append(' ').append(Icode.bytecodeName(ops[j]));
+            }
+            sb.append('\n');
+        }
+    }
+}
@@ -62,6 +62,8 @@ may override scopeInit or fillConstructorProperties methods.
 public abstract class IdScriptableObject extends ScriptableObject
     implements IdFunctionCall
 {
+    static final long serialVersionUID = -8305344746752490335L;
+
     private transient volatile PrototypeValues prototypeValues;
 
     private static final class PrototypeValues implements Serializable
@@ -349,6 +351,18 @@ public abstract class IdScriptableObject extends ScriptableObject
         super.put(name, this, value);
     }
 
+    @Override
+    void addFootprint(MemoryFootprint footprint)
+    {
+        super.addFootprint(footprint);
+        PrototypeValues values = prototypeValues;
+        if (values != null) {
+            footprint.countInstance(MemoryFootprint.OTHER, values);
+            footprint.reachArray(MemoryFootprint.OTHER, values.valueArray);
+            footprint.countArray(MemoryFootprint.OTHER, values.attributeArray);
+        }
+    }
+
     @Override
     public boolean has(String name, Scriptable start)
     {
@@ -389,6 +403,19 @@ public abstract class IdScriptableObject extends ScriptableObject
         return super.get(name, start);
     }
 
+    @Override
+    Object getCacheableSlot(String name)
+    {
+        // Ids shadow slots with the same name
+        if (findInstanceIdInfo(name) != 0) {
+            return null;
+        }
+        if (prototypeValues != null && prototypeValues.findId(name) != 0) {
+            return null;
+        }
+        return super.getCacheableSlot(name);
+    }
+
     @Override
     public void put(String name, Scriptable start, Object value)
     {
@@ -0,0 +1,132 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+/**
+ * Receives events about the execution and compilation of scripts that
+ * run with the Contexts of a {@link ContextFactory}, see
+ * {@link ContextFactory#setInstrumentation(Instrumentation)}.
+ * <p>
+ * Methods are called on the thread that runs the script, while it holds
+ * the locks it held at that point, so they should return quickly and
+ * must not run scripts themselves.
+ *
+ * @see FunctionStatistics
+ */
+public interface Instrumentation
+{
+    /**
+     * Fallback reason: the function needs an activation object for its
+     * variables.
+     */
+    public static final String FALLBACK_ACTIVATION = "requires activation";
+
+    /**
+     * Fallback reason: the function is a generator.
+     */
+    public static final String FALLBACK_GENERATOR = "generator";
+
+    /**
+     * Fallback reason: the function is compiled with dynamic scope.
+     */
+    public static final String FALLBACK_DYNAMIC_SCOPE = "dynamic scope";
+
+    /**
+     * Fallback reason: the function has const variables.
+     */
+    public static final String FALLBACK_CONST = "const variables";
+
+    /**
+     * Fallback reason: compiled code could not run with the security
+     * controller of the function.
+     */
+    public static final String FALLBACK_SECURITY = "security controller";
+
+    /**
+     * Fallback reason: the compiled code was replaced too often because
+     * calls did not match its assumptions about argument types.
+     */
+    public static final String FALLBACK_DEOPTIMIZED = "deoptimized too often";
+
+    /**
+     * Called when a call of an interpreted or compiled function, or the
+     * execution of a script, returns or throws.
+     * <p>
+     * Compiled code only reports calls if it was compiled while the
+     * factory had an instrumentation. Such code does not call or inline
+     * other functions of the same script directly, so none of its calls
+     * are missed.
+     *
+     * @param cx the current Context
+     * @param function the function or script
+     * @param nanos time spent in the call, including the calls it made
+     */
+    public void functionCalled(Context cx, NativeFunction function,
+                               long nanos);
+
+    /**
+     * Called after a script or function was compiled.
+     *
+     * @param cx the current Context
+     * @param sourceName the source name of the script
+     * @param functionName the name of a function compiled on its own, or
+     *        null for a script
+     * @param optimizationLevel -1 for interpreter code, the optimization
+     *        level of generated Java bytecode otherwise
+     * @param nanos time spent generating the code, not including parsing
+     * @param codeSize length in bytes of the interpreter code or of the
+     *        generated class files
+     */
+    public void compiled(Context cx, String sourceName, String functionName,
+                         int optimizationLevel, long nanos, int codeSize);
+
+    /**
+     * Called when a function or loop stays interpreted although it would
+     * be compiled, see {@link Context#FEATURE_SPECULATIVE_COMPILATION}.
+     *
+     * @param cx the current Context
+     * @param sourceName the source name of the script
+     * @param functionName the name of the function, or null for a script
+     *        or an anonymous function
+     * @param reason one of the FALLBACK constants or the message of the
+     *        error that stopped the compilation, such as a method that is
+     *        too large
+     */
+    public void interpreterFallback(Context cx, String sourceName,
+                                    String functionName, String reason);
+}
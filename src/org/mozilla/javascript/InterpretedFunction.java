@@ -50,6 +50,8 @@ final class InterpretedFunction extends NativeFunction implements Script
     SecurityController securityController;
     Object securityDomain;
     Scriptable[] functionRegExps;
+    // Compiled code of this function, see SpeculativeCompiler
+    transient NativeFunction compiledFunction;
 
     private InterpretedFunction(InterpreterData idata,
                                 Object staticSecurityDomain)
@@ -161,6 +163,18 @@ final class InterpretedFunction extends NativeFunction implements Script
         if (!ScriptRuntime.hasTopCall(cx)) {
             return ScriptRuntime.doTopCall(this, cx, scope, thisObj, args);
         }
+        if (idata.profile != null && idata.profile.code != null) {
+            Function f = SpeculativeCompiler.getCompiledFunction(cx, this,
+                                                                 args);
+            if (f != null) {
+                ++cx.speculativeCallDepth;
+                try {
+                    return f.call(cx, scope, thisObj, args);
+                } finally {
+                    --cx.speculativeCallDepth;
+                }
+            }
+        }
         return Interpreter.interpret(this, cx, scope, thisObj, args);
     }
 
@@ -220,6 +234,21 @@ final class InterpretedFunction extends NativeFunction implements Script
         return idata.argNames.length;
     }
 
+    @Override
+    ObjToIntMap getActivationVarIndexes()
+    {
+        return idata.getActivationVarIndexes();
+    }
+
+    @Override
+    void addFootprint(MemoryFootprint footprint)
+    {
+        super.addFootprint(footprint);
+        footprint.reach(idata);
+        footprint.reachArray(MemoryFootprint.OTHER, functionRegExps);
+        footprint.reach(compiledFunction);
+    }
+
     @Override
     protected String getParamOrVarName(int index)
     {
@@ -46,8 +46,15 @@
 
 package org.mozilla.javascript;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -93,6 +100,8 @@ public final class Interpreter extends Icode implements Evaluator
 // stack[emptyStackTop < i < stack.length]: stack data
 // sDbl[i]: if stack[i] is UniqueTag.DOUBLE_MARK, sDbl[i] holds the number value
 
+        // Written by writeObject after the other fields up to the last
+        // used element, see STACK_FORMAT_V1
         Object[] stack;
         int[] stackAttributes;
         double[] sDbl;
@@ -103,6 +112,16 @@ public final class Interpreter extends Icode implements Evaluator
         DebugFrame debuggerFrame;
         boolean useActivation;
         boolean isContinuationsTopFrame;
+        // If true the outermost frame of the chain is a continuations
+        // top frame
+        boolean inContinuationsTopCall;
+
+        // Number of frames in the chain from the outermost frame up to
+        // this one that require enterFrame and exitFrame calls or that
+        // have exception handlers. Continuations use them to skip walking
+        // chains of frames that need neither.
+        int enterExitCount;
+        int handlerCount;
 
         Scriptable thisObj;
         Scriptable[] scriptRegExps;
@@ -120,9 +139,22 @@ public final class Interpreter extends Icode implements Evaluator
         int savedCallOp;
         Object throwable;
 
+        // Jumps back to the start of a loop, see SpeculativeCompiler
+        int backwardJumps;
+
+        // System.nanoTime() at the start of the call if it is reported to
+        // an Instrumentation, otherwise 0
+        transient long callStart;
+
+        // If true the frame is referenced from outside of the frame chain,
+        // by copies that share its variables or by exception stack info,
+        // so it can not be reused, see releaseFrame
+        boolean shared;
+
         CallFrame cloneFrozen()
         {
             if (!frozen) Kit.codeBug();
+            shared = true;
 
             CallFrame copy;
             try {
@@ -141,8 +173,150 @@ public final class Interpreter extends Icode implements Evaluator
             copy.frozen = false;
             return copy;
         }
+
+        private void writeObject(ObjectOutputStream out)
+            throws IOException
+        {
+            // The stack arrays are left null in the field data so readers
+            // can tell this layout from the 1.7R3 one that had them there
+            ObjectOutputStream.PutField fields = out.putFields();
+            try {
+                for (Field field : CallFrame.class.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    String name = field.getName();
+                    if (Modifier.isStatic(modifiers)
+                        || Modifier.isTransient(modifiers)
+                        || name.equals("stack")
+                        || name.equals("stackAttributes")
+                        || name.equals("sDbl"))
+                    {
+                        continue;
+                    }
+                    Class<?> type = field.getType();
+                    if (type == int.class) {
+                        fields.put(name, field.getInt(this));
+                    } else if (type == boolean.class) {
+                        fields.put(name, field.getBoolean(this));
+                    } else if (type == double.class) {
+                        fields.put(name, field.getDouble(this));
+                    } else {
+                        fields.put(name, field.get(this));
+                    }
+                }
+            } catch (IllegalAccessException ex) {
+                throw Kit.initCause(new IllegalStateException(), ex);
+            }
+            out.writeFields();
+            out.writeInt(STACK_FORMAT_V1);
+            int length = stack.length;
+            int used = length;
+            while (used != 0 && stack[used - 1] == null
+                   && stackAttributes[used - 1] == 0)
+            {
+                --used;
+            }
+            boolean hasAttributes = false;
+            for (int i = 0; i != used; ++i) {
+                if (stackAttributes[i] != 0) {
+                    hasAttributes = true;
+                    break;
+                }
+            }
+            out.writeInt(length);
+            out.writeInt(used);
+            out.writeBoolean(hasAttributes);
+            for (int i = 0; i != used; ++i) {
+                Object value = stack[i];
+                if (value == UniqueTag.DOUBLE_MARK) {
+                    out.writeByte(STACK_DOUBLE);
+                    out.writeDouble(sDbl[i]);
+                } else {
+                    ScriptableObject.writeValue(out, value);
+                }
+                if (hasAttributes) {
+                    out.writeInt(stackAttributes[i]);
+                }
+            }
+        }
+
+        private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            if (stack != null) {
+                // Written by 1.7R3, which had no counts of the chain
+                initOldFrame();
+                return;
+            }
+            int format = in.readInt();
+            if (format != STACK_FORMAT_V1) {
+                throw new InvalidObjectException(
+                    "Unknown frame stack format " + format);
+            }
+            int length = in.readInt();
+            int used = in.readInt();
+            boolean hasAttributes = in.readBoolean();
+            stack = new Object[length];
+            stackAttributes = new int[length];
+            sDbl = new double[length];
+            for (int i = 0; i != used; ++i) {
+                int tag = in.readByte();
+                if (tag == STACK_DOUBLE) {
+                    stack[i] = UniqueTag.DOUBLE_MARK;
+                    sDbl[i] = in.readDouble();
+                } else {
+                    stack[i] = ScriptableObject.readValue(in, tag);
+                }
+                if (hasAttributes) {
+                    stackAttributes[i] = in.readInt();
+                }
+            }
+        }
+
+        private void initOldFrame()
+        {
+            inContinuationsTopCall = false;
+            enterExitCount = 0;
+            handlerCount = 0;
+            for (CallFrame f = this; f != null; f = f.parentFrame) {
+                if (f.parentFrame == null) {
+                    inContinuationsTopCall = f.isContinuationsTopFrame;
+                }
+                if (isFrameEnterExitRequired(f)) {
+                    ++enterExitCount;
+                }
+                if (f.idata.itsExceptionTable != null) {
+                    ++handlerCount;
+                }
+            }
+            // Old frames may be shared by continuations read with them
+            shared = true;
+        }
     }
 
+    // Marker written by CallFrame.writeObject in front of the stack data
+    private static final int STACK_FORMAT_V1 = 1;
+
+    // Tag of stack elements with their number value in sDbl, distinct from
+    // the ScriptableObject.writeValue tags
+    private static final int STACK_DOUBLE = -1;
+
+    /**
+     * Frames of finished calls kept by a Context for reuse together with
+     * their stacks, see newFrame and releaseFrame.
+     */
+    private static final class FramePool
+    {
+        final CallFrame[] frames = new CallFrame[MAX_POOLED_FRAMES];
+        int count;
+    }
+
+    // Maximum number of frames in a FramePool
+    private static final int MAX_POOLED_FRAMES = 128;
+
+    // Frames with bigger stacks are not reused to avoid keeping them
+    private static final int MAX_POOLED_FRAME_ARRAY = 1024;
+
     private static final class ContinuationJump implements Serializable
     {
         static final long serialVersionUID = 7687739156004308247L;
@@ -205,6 +379,13 @@ public final class Interpreter extends Icode implements Evaluator
       // now isolate this frame from its previous context
       result.parentFrame = null;
       result.frameIndex = 0;
+      result.inContinuationsTopCall = result.isContinuationsTopFrame;
+      result.enterExitCount = isFrameEnterExitRequired(result) ? 1 : 0;
+      result.handlerCount = result.idata.itsExceptionTable != null ? 1 : 0;
+      // the generator keeps the frame
+      result.shared = true;
+      // only the call that created the generator is reported
+      result.callStart = 0;
 
       return result;
     }
@@ -496,10 +677,47 @@ public final class Interpreter extends Icode implements Evaluator
               case Icode_GETVAR1:
               case Icode_SETVAR1:
               case Icode_SETCONSTVAR1:
+              case Icode_SETVAR1_POP:
+              case Icode_GETVAR1_PROP:
                 indexReg = iCode[pc];
                 out.println(tname+" "+indexReg);
                 ++pc;
                 break;
+              case Icode_IF_VAR_CMP: {
+                int newPC = pc + getShort(iCode, pc) - 1;
+                int mode = 0xFF & iCode[pc + 2];
+                int rhs = getShort(iCode, pc + 4);
+                out.println(tname + " " + newPC
+                            + " " + Token.typeToName(mode & 0x3F)
+                            + ((mode & Icode.VAR_CMP_JUMP_IF_TRUE) != 0
+                               ? " true" : " false")
+                            + " " + iCode[pc + 3]
+                            + ((mode & Icode.VAR_CMP_RHS_VAR) != 0
+                               ? " var " + (rhs & 0xFFFF) : " " + rhs));
+                pc += 6;
+                break;
+              }
+              case Icode_GETUPVAR:
+              case Icode_SETUPVAR:
+              case Icode_UPVAR_AND_THIS:
+                out.println(tname + " " + (0xFF & iCode[pc]));
+                ++pc;
+                break;
+              case Icode_UPVAR_INC_DEC:
+                out.println(tname + " " + (0xFF & iCode[pc])
+                            + " " + iCode[pc + 1]);
+                pc += 2;
+                break;
+              case Icode_IF_CMP: {
+                int newPC = pc + getShort(iCode, pc) - 1;
+                int mode = 0xFF & iCode[pc + 2];
+                out.println(tname + " " + newPC
+                            + " " + Token.typeToName(mode & 0x3F)
+                            + ((mode & Icode.VAR_CMP_JUMP_IF_TRUE) != 0
+                               ? " true" : " false"));
+                pc += 3;
+                break;
+              }
             }
             if (old_pc + icodeLength != pc) Kit.codeBug();
         }
@@ -599,9 +817,30 @@ public final class Interpreter extends Icode implements Evaluator
             case Icode_GETVAR1:
             case Icode_SETVAR1:
             case Icode_SETCONSTVAR1:
+            case Icode_SETVAR1_POP:
+            case Icode_GETVAR1_PROP:
                 // byte var index
                 return 1 + 1;
 
+            case Icode_IF_VAR_CMP:
+                // target pc offset, comparison, byte var index and
+                // ushort var index or short number
+                return 1 + 2 + 1 + 1 + 2;
+
+            case Icode_IF_CMP:
+                // target pc offset and comparison
+                return 1 + 2 + 1;
+
+            case Icode_GETUPVAR:
+            case Icode_SETUPVAR:
+            case Icode_UPVAR_AND_THIS:
+                // function depth
+                return 1 + 1;
+
+            case Icode_UPVAR_INC_DEC:
+                // function depth and type of ++/--
+                return 1 + 1 + 1;
+
             case Icode_LINE :
                 // line number
                 return 1 + 2;
@@ -676,6 +915,8 @@ public final class Interpreter extends Icode implements Evaluator
             while (frame != null) {
                 --linePCIndex;
                 linePC[linePCIndex] = frame.pcSourceLineStart;
+                // The exception keeps the frames for its stack trace
+                frame.shared = true;
                 frame = frame.parentFrame;
             }
         }
@@ -810,6 +1051,52 @@ public final class Interpreter extends Icode implements Evaluator
         return list.toArray(new ScriptStackElement[list.size()][]);
     }
 
+    /**
+     * Returns the frames of the interpreter invocations of the current
+     * thread like {@link #getScriptStackElements(RhinoException)}, without
+     * keeping the frames for later.
+     */
+    static ScriptStackElement[][] getScriptStackElements(Context cx)
+    {
+        if (!(cx.lastInterpreterFrame instanceof CallFrame)) {
+            return null;
+        }
+        ObjArray previous = cx.previousInterpreterInvocations;
+        int previousCount = previous == null ? 0 : previous.size();
+        if (previousCount != 0
+            && previous.peek() == cx.lastInterpreterFrame)
+        {
+            // See captureStackInfo
+            --previousCount;
+        }
+        ScriptStackElement[][] result
+            = new ScriptStackElement[previousCount + 1][];
+        for (int i = 0; i != result.length; ++i) {
+            CallFrame frame = (CallFrame)(i == 0
+                ? cx.lastInterpreterFrame
+                : previous.get(previousCount - i));
+            ScriptStackElement[] group
+                = new ScriptStackElement[frame.frameIndex + 1];
+            for (int j = 0; j != group.length; ++j) {
+                InterpreterData idata = frame.idata;
+                String functionName = null;
+                int lineNumber = -1;
+                if (frame.pcSourceLineStart >= 0) {
+                    lineNumber = getIndex(idata.itsICode,
+                                          frame.pcSourceLineStart);
+                }
+                if (idata.itsName != null && idata.itsName.length() != 0) {
+                    functionName = idata.itsName;
+                }
+                group[j] = new ScriptStackElement(idata.itsSourceFile,
+                                                  functionName, lineNumber);
+                frame = frame.parentFrame;
+            }
+            result[i] = group;
+        }
+        return result;
+    }
+
     static String getEncodedSource(InterpreterData idata)
     {
         if (idata.encodedSource == null) {
@@ -845,10 +1132,11 @@ public final class Interpreter extends Icode implements Evaluator
             }
         }
 
-        CallFrame frame = new CallFrame();
+        CallFrame frame = newFrame(cx);
         initFrame(cx, scope, thisObj, args, null, 0, args.length,
                   ifun, null, frame);
         frame.isContinuationsTopFrame = cx.isContinuationsTopCall;
+        frame.inContinuationsTopCall = cx.isContinuationsTopCall;
         cx.isContinuationsTopCall = false;
 
         return interpretLoop(cx, frame, null);
@@ -914,6 +1202,9 @@ public final class Interpreter extends Icode implements Evaluator
         return interpretLoop(cx, null, cjump);
     }
 
+    // HotSpot does not compile methods longer than 8000 bytes of byte code,
+    // so interpretLoop has to stay below that limit. Code for uncommon
+    // cases belongs in separate methods like do_callSpecial.
     private static Object interpretLoop(Context cx, CallFrame frame,
                                         Object throwable)
     {
@@ -967,6 +1258,10 @@ public final class Interpreter extends Icode implements Evaluator
         Object interpreterResult = null;
         double interpreterResultDbl = 0.0;
 
+        // Previous instructions in the frame for IcodeProfile
+        int profilePrevOp = IcodeProfile.NO_OP;
+        int profilePrevOp2 = IcodeProfile.NO_OP;
+
         StateLoop: for (;;) {
             withoutExceptions: try {
 
@@ -1001,12 +1296,21 @@ public final class Interpreter extends Icode implements Evaluator
                 // Store new frame in cx which is used for error reporting etc.
                 cx.lastInterpreterFrame = frame;
 
+                if (IcodeProfile.enabled) {
+                    profilePrevOp = profilePrevOp2 = IcodeProfile.NO_OP;
+                }
+
                 Loop: for (;;) {
 
                     // Exception handler assumes that PC is already incremented
                     // pass the instruction start when it searches the
                     // exception handler
                     int op = iCode[frame.pc++];
+                    if (IcodeProfile.enabled) {
+                        IcodeProfile.record(profilePrevOp2, profilePrevOp, op);
+                        profilePrevOp2 = profilePrevOp;
+                        profilePrevOp = op;
+                    }
                     jumplessRun: {
 
     // Back indent to ease implementation reading
@@ -1103,22 +1407,7 @@ switch (op) {
                     throw Kit.codeBug();
                 }
             }
-            switch (op) {
-              case Token.GE:
-                valBln = ScriptRuntime.cmp_LE(rhs, lhs);
-                break;
-              case Token.LE:
-                valBln = ScriptRuntime.cmp_LE(lhs, rhs);
-                break;
-              case Token.GT:
-                valBln = ScriptRuntime.cmp_LT(rhs, lhs);
-                break;
-              case Token.LT:
-                valBln = ScriptRuntime.cmp_LT(lhs, rhs);
-                break;
-              default:
-                throw Kit.codeBug();
-            }
+            valBln = do_cmp(op, lhs, rhs);
         }
         stack[stackTop] = ScriptRuntime.wrapBoolean(valBln);
         continue Loop;
@@ -1130,12 +1419,9 @@ switch (op) {
         --stackTop;
         Object lhs = stack[stackTop];
         if (lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-        boolean valBln;
-        if (op == Token.IN) {
-            valBln = ScriptRuntime.in(lhs, rhs, cx);
-        } else {
-            valBln = ScriptRuntime.instanceOf(lhs, rhs, cx);
-        }
+        boolean valBln = (op == Token.IN)
+                         ? ScriptRuntime.in(lhs, rhs, cx)
+                         : ScriptRuntime.instanceOf(lhs, rhs, cx);
         stack[stackTop] = ScriptRuntime.wrapBoolean(valBln);
         continue Loop;
     }
@@ -1343,7 +1629,7 @@ switch (op) {
             lDbl /= rDbl;
             break;
           case Token.MOD:
-            lDbl %= rDbl;
+            lDbl = do_mod(lDbl, rDbl);
             break;
         }
         sDbl[stackTop] = lDbl;
@@ -1538,37 +1824,7 @@ switch (op) {
         if (instructionCounting) {
             cx.instructionCount += INVOCATION_COST;
         }
-        int callType = iCode[frame.pc] & 0xFF;
-        boolean isNew =  (iCode[frame.pc + 1] != 0);
-        int sourceLine = getIndex(iCode, frame.pc + 2);
-
-        // indexReg: number of arguments
-        if (isNew) {
-            // stack change: function arg0 .. argN -> newResult
-            stackTop -= indexReg;
-
-            Object function = stack[stackTop];
-            if (function == DBL_MRK)
-                function = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-            Object[] outArgs = getArgsArray(
-                                   stack, sDbl, stackTop + 1, indexReg);
-            stack[stackTop] = ScriptRuntime.newSpecial(
-                                  cx, function, outArgs, frame.scope, callType);
-        } else {
-            // stack change: function thisObj arg0 .. argN -> result
-            stackTop -= 1 + indexReg;
-
-            // Call code generation ensure that stack here
-            // is ... Callable Scriptable
-            Scriptable functionThis = (Scriptable)stack[stackTop + 1];
-            Callable function = (Callable)stack[stackTop];
-            Object[] outArgs = getArgsArray(
-                                   stack, sDbl, stackTop + 2, indexReg);
-            stack[stackTop] = ScriptRuntime.callSpecial(
-                                  cx, function, functionThis, outArgs,
-                                  frame.scope, frame.thisObj, callType,
-                                  frame.idata.itsSourceFile, sourceLine);
-        }
+        stackTop = do_callSpecial(cx, frame, indexReg, stackTop);
         frame.pc += 4;
         continue Loop;
     }
@@ -1599,9 +1855,12 @@ switch (op) {
         }
         if (fun instanceof InterpretedFunction) {
             InterpretedFunction ifun = (InterpretedFunction)fun;
-            if (frame.fnOrScript.securityDomain == ifun.securityDomain) {
+            // Compiled functions are entered through their call method
+            if (frame.fnOrScript.securityDomain == ifun.securityDomain
+                && !SpeculativeCompiler.isCompiled(ifun.idata))
+            {
                 CallFrame callParentFrame = frame;
-                CallFrame calleeFrame = new CallFrame();
+                CallFrame calleeFrame = newFrame(cx);
                 if (op == Icode_TAIL_CALL) {
                     // In principle tail call can re-use the current
                     // frame and its stack arrays but it is hard to
@@ -1613,11 +1872,8 @@ switch (op) {
                     // in the catch code bellow that unwinds JS stack
                     // on exceptions. Then there is issue about frame release
                     // end exceptions there.
-                    // To avoid frame allocation a released frame
-                    // can be cached for re-use which would also benefit
-                    // non-tail calls but it is not clear that this caching
-                    // would gain in performance due to potentially
-                    // bad interaction with GC.
+                    // Instead the current frame is put to the frame pool
+                    // once the callee frame is initialized.
                     callParentFrame = frame.parentFrame;
                     // Release the current frame. See Bug #344501 to see why
                     // it is being done here.
@@ -1629,6 +1885,8 @@ switch (op) {
                 if (op != Icode_TAIL_CALL) {
                     frame.savedStackTop = stackTop;
                     frame.savedCallOp = op;
+                } else {
+                    releaseFrame(cx, frame);
                 }
                 frame = calleeFrame;
                 continue StateLoop;
@@ -1667,7 +1925,8 @@ switch (op) {
                 Callable applyCallable = ScriptRuntime.getCallable(funThisObj);
                 if (applyCallable instanceof InterpretedFunction) {
                     InterpretedFunction iApplyCallable = (InterpretedFunction)applyCallable;
-                    if (frame.fnOrScript.securityDomain == iApplyCallable.securityDomain) {
+                    if (frame.fnOrScript.securityDomain == iApplyCallable.securityDomain
+                        && !SpeculativeCompiler.isCompiled(iApplyCallable.idata)) {
                         frame = initFrameForApplyOrCall(cx, frame, indexReg,
                                 stack, sDbl, stackTop, op, calleeScope, ifun,
                                 iApplyCallable);
@@ -1698,9 +1957,8 @@ switch (op) {
         cx.lastInterpreterFrame = frame;
         frame.savedCallOp = op;
         frame.savedStackTop = stackTop;
-        stack[stackTop] = fun.call(cx, calleeScope, funThisObj, 
-                getArgsArray(stack, sDbl, stackTop + 2, indexReg));
-
+        stack[stackTop] = callFixedArity(cx, fun, calleeScope, funThisObj,
+                                         stack, sDbl, stackTop + 2, indexReg);
         continue Loop;
     }
     case Token.NEW : {
@@ -1716,7 +1974,7 @@ switch (op) {
             InterpretedFunction f = (InterpretedFunction)lhs;
             if (frame.fnOrScript.securityDomain == f.securityDomain) {
                 Scriptable newInstance = f.createObject(cx, frame.scope);
-                CallFrame calleeFrame = new CallFrame();
+                CallFrame calleeFrame = newFrame(cx);
                 initFrame(cx, frame.scope, newInstance, stack, sDbl,
                           stackTop + 1, indexReg, f, frame,
                           calleeFrame);
@@ -1728,23 +1986,7 @@ switch (op) {
                 continue StateLoop;
             }
         }
-        if (!(lhs instanceof Function)) {
-            if (lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-            throw ScriptRuntime.notFunctionError(lhs);
-        }
-        Function fun = (Function)lhs;
-
-        if (fun instanceof IdFunctionObject) {
-            IdFunctionObject ifun = (IdFunctionObject)fun;
-            if (NativeContinuation.isContinuationConstructor(ifun)) {
-                frame.stack[stackTop] =
-                    captureContinuation(cx, frame.parentFrame, false);
-                continue Loop;
-            }
-        }
-
-        Object[] outArgs = getArgsArray(stack, sDbl, stackTop + 1, indexReg);
-        stack[stackTop] = fun.construct(cx, frame.scope, outArgs);
+        stack[stackTop] = do_construct(cx, frame, lhs, stackTop, indexReg);
         continue Loop;
     }
     case Token.TYPEOF : {
@@ -1784,32 +2026,20 @@ switch (op) {
                                                        cx, iCode[frame.pc]);
         ++frame.pc;
         continue Loop;
+    case Icode_GETUPVAR :
+    case Icode_SETUPVAR :
+    case Icode_UPVAR_AND_THIS :
+    case Icode_UPVAR_INC_DEC :
+        // indexReg: variable index, stringReg: name
+        stackTop = do_upvar(cx, frame, op, iCode[frame.pc], indexReg,
+                            stringReg, stackTop);
+        frame.pc += (op == Icode_UPVAR_INC_DEC) ? 2 : 1;
+        continue Loop;
     case Icode_SETCONSTVAR1:
         indexReg = iCode[frame.pc++];
         // fallthrough
     case Token.SETCONSTVAR :
-        if (!frame.useActivation) {
-            if ((varAttributes[indexReg] & ScriptableObject.READONLY) == 0) {
-                throw Context.reportRuntimeError1("msg.var.redecl",
-                                                  frame.idata.argNames[indexReg]);
-            }
-            if ((varAttributes[indexReg] & ScriptableObject.UNINITIALIZED_CONST)
-                != 0)
-            {
-                vars[indexReg] = stack[stackTop];
-                varAttributes[indexReg] &= ~ScriptableObject.UNINITIALIZED_CONST;
-                varDbls[indexReg] = sDbl[stackTop];
-            }
-        } else {
-            Object val = stack[stackTop];
-            if (val == DBL_MRK) val = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-            stringReg = frame.idata.argNames[indexReg];
-            if (frame.scope instanceof ConstProperties) {
-                ConstProperties cp = (ConstProperties)frame.scope;
-                cp.putConst(stringReg, frame.scope, val);
-            } else
-                throw Kit.codeBug();
-        }
+        do_setConstVar(frame, indexReg, stackTop);
         continue Loop;
     case Icode_SETVAR1:
         indexReg = iCode[frame.pc++];
@@ -1821,10 +2051,7 @@ switch (op) {
                 varDbls[indexReg] = sDbl[stackTop];
             }
         } else {
-            Object val = stack[stackTop];
-            if (val == DBL_MRK) val = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-            stringReg = frame.idata.argNames[indexReg];
-            frame.scope.put(stringReg, frame.scope, val);
+            setVarInScope(frame, indexReg, stack[stackTop], sDbl[stackTop]);
         }
         continue Loop;
     case Icode_GETVAR1:
@@ -1840,32 +2067,48 @@ switch (op) {
             stack[stackTop] = frame.scope.get(stringReg, frame.scope);
         }
         continue Loop;
-    case Icode_VAR_INC_DEC : {
-        // indexReg : varindex
-        ++stackTop;
-        int incrDecrMask = iCode[frame.pc];
+    case Icode_SETVAR1_POP:
+        indexReg = iCode[frame.pc++];
         if (!frame.useActivation) {
-            stack[stackTop] = DBL_MRK;
-            Object varValue = vars[indexReg];
-            double d;
-            if (varValue == DBL_MRK) {
-                d = varDbls[indexReg];
-            } else {
-                d = ScriptRuntime.toNumber(varValue);
-                vars[indexReg] = DBL_MRK;
+            if ((varAttributes[indexReg] & ScriptableObject.READONLY) == 0) {
+                vars[indexReg] = stack[stackTop];
+                varDbls[indexReg] = sDbl[stackTop];
             }
-            double d2 = ((incrDecrMask & Node.DECR_FLAG) == 0)
-                        ? d + 1.0 : d - 1.0;
-            varDbls[indexReg] = d2;
-            sDbl[stackTop] = ((incrDecrMask & Node.POST_FLAG) == 0) ? d2 : d;
         } else {
-            String varName = frame.idata.argNames[indexReg];
-            stack[stackTop] = ScriptRuntime.nameIncrDecr(frame.scope, varName,
-                                                         cx, incrDecrMask);
+            setVarInScope(frame, indexReg, stack[stackTop], sDbl[stackTop]);
         }
-        ++frame.pc;
+        stack[stackTop] = null;
+        --stackTop;
+        continue Loop;
+    case Icode_GETVAR1_PROP : {
+        // stringReg : property name
+        indexReg = iCode[frame.pc++];
+        Object lhs = getVar(frame, indexReg);
+        if (lhs == DBL_MRK) lhs = ScriptRuntime.wrapNumber(varDbls[indexReg]);
+        stack[++stackTop] = ScriptRuntime.getObjectProp(lhs, stringReg, cx,
+                                                         frame.scope);
         continue Loop;
     }
+    case Icode_IF_VAR_CMP :
+        // frame.pc : target offset followed by the comparison
+        if (!do_varCompare(frame, iCode, frame.pc)) {
+            frame.pc += 2 + 1 + 1 + 2;
+            continue Loop;
+        }
+        break jumplessRun;
+    case Icode_IF_CMP :
+        // frame.pc : target offset followed by the comparison
+        stackTop -= 2;
+        if (!do_stackCompare(frame, stackTop + 1, iCode[frame.pc + 2])) {
+            frame.pc += 2 + 1;
+            continue Loop;
+        }
+        break jumplessRun;
+    case Icode_VAR_INC_DEC :
+        // indexReg : varindex
+        do_varIncDec(cx, frame, indexReg, iCode[frame.pc], ++stackTop);
+        ++frame.pc;
+        continue Loop;
     case Icode_ZERO :
         ++stackTop;
         stack[stackTop] = DBL_MRK;
@@ -2206,6 +2449,24 @@ switch (op) {
                     if (instructionCounting) {
                         frame.pcPrevBranch = frame.pc;
                     }
+                    if (offset <= 0) {
+                        // Loop back-edge, long jumps may be one as well
+                        ScriptRuntime.checkInterrupt(cx);
+                    }
+                    if (offset < 0 && frame.idata.loopEntries != null
+                        && frame.idata.profile != null
+                        && stackTop == frame.emptyStackTop
+                        && ++frame.backwardJumps
+                           >= SpeculativeCompiler.LOOP_THRESHOLD)
+                    {
+                        frame.backwardJumps = 0;
+                        Object result = enterCompiledLoop(cx, frame);
+                        if (result != null) {
+                            // The compiled code ran the rest of the frame
+                            frame.result = result;
+                            break Loop;
+                        }
+                    }
                     continue Loop;
 
                 } // end of Loop: for
@@ -2214,6 +2475,7 @@ switch (op) {
                 interpreterResult = frame.result;
                 interpreterResultDbl = frame.resultDbl;
                 if (frame.parentFrame != null) {
+                    CallFrame exitedFrame = frame;
                     frame = frame.parentFrame;
                     if (frame.frozen) {
                         frame = frame.cloneFrozen();
@@ -2221,8 +2483,10 @@ switch (op) {
                     setCallResult(
                         frame, interpreterResult, interpreterResultDbl);
                     interpreterResult = null; // Help GC
+                    releaseFrame(cx, exitedFrame);
                     continue StateLoop;
                 }
+                releaseFrame(cx, frame);
                 break StateLoop;
 
             }  // end of interpreter withoutExceptions: try
@@ -2324,13 +2588,25 @@ switch (op) {
 
                 exitFrame(cx, frame, throwable);
 
+                CallFrame exitedFrame = frame;
                 frame = frame.parentFrame;
+                releaseFrame(cx, exitedFrame);
                 if (frame == null) { break; }
-                if (cjump != null && cjump.branchFrame == frame) {
-                    // Continuation branch point was hit,
-                    // restart the state loop to reenter continuation
-                    indexReg = -1;
-                    continue StateLoop;
+                if (cjump != null) {
+                    if (cjump.branchFrame == frame) {
+                        // Continuation branch point was hit,
+                        // restart the state loop to reenter continuation
+                        indexReg = -1;
+                        continue StateLoop;
+                    }
+                } else if (frame.handlerCount == 0
+                           && frame.enterExitCount == 0
+                           && cx.instrumentation == null)
+                {
+                    // No frame left that can catch the exception
+                    // or has to be exited. With instrumentation every
+                    // frame is exited to report its call.
+                    break;
                 }
             }
 
@@ -2356,17 +2632,7 @@ switch (op) {
 
         // Do cleanups/restorations before the final return or throw
 
-        if (cx.previousInterpreterInvocations != null
-            && cx.previousInterpreterInvocations.size() != 0)
-        {
-            cx.lastInterpreterFrame
-                = cx.previousInterpreterInvocations.pop();
-        } else {
-            // It was the last interpreter frame on the stack
-            cx.lastInterpreterFrame = null;
-            // Force GC of the value cx.previousInterpreterInvocations
-            cx.previousInterpreterInvocations = null;
-        }
+        restoreInterpreterFrame(cx);
 
         if (throwable != null) {
             if (throwable instanceof RuntimeException) {
@@ -2409,7 +2675,7 @@ switch (op) {
         
         // exactly the same as if it's a regular InterpretedFunction
         CallFrame callParentFrame = frame;
-        CallFrame calleeFrame = new CallFrame();
+        CallFrame calleeFrame = newFrame(cx);
         if (op == Icode_TAIL_CALL) {
             callParentFrame = frame.parentFrame;
             exitFrame(cx, frame, null);
@@ -2515,6 +2781,13 @@ switch (op) {
             CallFrame[] enterFrames = null;
 
             CallFrame x = cjump.capturedFrame;
+            if (cjump.branchFrame != null
+                ? x.enterExitCount == cjump.branchFrame.enterExitCount
+                : x.enterExitCount == 0)
+            {
+                // No frame to enter, do not walk them
+                rewindCount = 0;
+            }
             for (int i = 0; i != rewindCount; ++i) {
                 if (!x.frozen) Kit.codeBug();
                 if (isFrameEnterExitRequired(x)) {
@@ -2552,6 +2825,25 @@ switch (op) {
         return frame;
     }
 
+    /**
+     * Restores the frame of the previous interpretLoop invocation when
+     * interpretLoop returns.
+     */
+    private static void restoreInterpreterFrame(Context cx)
+    {
+        if (cx.previousInterpreterInvocations != null
+            && cx.previousInterpreterInvocations.size() != 0)
+        {
+            cx.lastInterpreterFrame
+                = cx.previousInterpreterInvocations.pop();
+        } else {
+            // It was the last interpreter frame on the stack
+            cx.lastInterpreterFrame = null;
+            // Force GC of the value cx.previousInterpreterInvocations
+            cx.previousInterpreterInvocations = null;
+        }
+    }
+
     private static Object freezeGenerator(Context cx, CallFrame frame,
                                           int stackTop,
                                           GeneratorState generatorState)
@@ -2567,6 +2859,7 @@ switch (op) {
           frame.savedStackTop = stackTop;
           frame.pc--; // we want to come back here when we resume
           ScriptRuntime.exitActivationFunction(cx);
+          restoreInterpreterFrame(cx);
           return (frame.result != UniqueTag.DOUBLE_MARK)
               ? frame.result
               : ScriptRuntime.wrapNumber(frame.resultDbl);
@@ -2623,7 +2916,7 @@ switch (op) {
             frame.savedStackTop = stackTop;
             frame.savedCallOp = op;
         }
-        CallFrame calleeFrame = new CallFrame();
+        CallFrame calleeFrame = newFrame(cx);
         if(BaseFunction.isApply(ifun)) {
             Object[] callArgs = indexReg < 2 ? ScriptRuntime.emptyArgs :
                 ScriptRuntime.getApplyArguments(cx, stack[stackTop + 3]);
@@ -2645,6 +2938,93 @@ switch (op) {
         return frame;
     }
 
+    /**
+     * Continues the execution of <code>frame</code> in compiled code if its
+     * pc is at the start of a loop body. Returns the result of the frame
+     * or null if the frame has to stay in the interpreter.
+     * See {@link SpeculativeCompiler#enterLoop}.
+     */
+    private static Object enterCompiledLoop(Context cx, CallFrame frame)
+    {
+        InterpreterData idata = frame.idata;
+        int[] entries = idata.loopEntries;
+        int loopIndex = 0;
+        while (entries[loopIndex] != frame.pc) {
+            if (++loopIndex == entries.length) {
+                return null;
+            }
+        }
+        if (frame.frozen || frame.debuggerFrame != null
+            || frame.useActivation || idata.evalScriptFlag)
+        {
+            return null;
+        }
+        Object[] state;
+        if (idata.itsFunctionType == 0) {
+            // Variables are properties of the scope, pass the result
+            Object result = frame.result;
+            if (result == UniqueTag.DOUBLE_MARK) {
+                result = ScriptRuntime.wrapNumber(frame.resultDbl);
+            }
+            state = new Object[] { result };
+        } else {
+            state = getArgsArray(frame.stack, frame.sDbl, 0,
+                                 idata.getParamAndVarCount());
+        }
+        return SpeculativeCompiler.enterLoop(cx, frame.fnOrScript, loopIndex,
+                                             frame.scope, frame.thisObj,
+                                             state);
+    }
+
+    /**
+     * Returns a frame from the frame pool of cx or a new frame.
+     */
+    private static CallFrame newFrame(Context cx)
+    {
+        FramePool pool = (FramePool)cx.interpreterFramePool;
+        if (pool != null && pool.count != 0) {
+            CallFrame frame = pool.frames[--pool.count];
+            pool.frames[pool.count] = null;
+            return frame;
+        }
+        return new CallFrame();
+    }
+
+    /**
+     * Puts a frame that has finished to the frame pool of cx unless
+     * continuations, generators or exceptions still refer to it.
+     */
+    private static void releaseFrame(Context cx, CallFrame frame)
+    {
+        if (frame.frozen || frame.shared
+            || frame.stack.length > MAX_POOLED_FRAME_ARRAY)
+        {
+            return;
+        }
+        FramePool pool = (FramePool)cx.interpreterFramePool;
+        if (pool == null) {
+            pool = new FramePool();
+            cx.interpreterFramePool = pool;
+        } else if (pool.count == MAX_POOLED_FRAMES) {
+            return;
+        }
+        // Allow to GC the objects the frame refers to
+        Arrays.fill(frame.stack, null);
+        Arrays.fill(frame.stackAttributes, 0);
+        frame.parentFrame = null;
+        frame.fnOrScript = null;
+        frame.idata = null;
+        frame.varSource = null;
+        frame.debuggerFrame = null;
+        frame.isContinuationsTopFrame = false;
+        frame.thisObj = null;
+        frame.scriptRegExps = null;
+        frame.result = null;
+        frame.scope = null;
+        frame.throwable = null;
+        pool.frames[pool.count++] = frame;
+    }
+
     private static void initFrame(Context cx, Scriptable callerScope,
                                   Scriptable thisObj,
                                   Object[] args, double[] argsDbl,
@@ -2652,7 +3032,18 @@ switch (op) {
                                   InterpretedFunction fnOrScript,
                                   CallFrame parentFrame, CallFrame frame)
     {
+        ScriptRuntime.checkInterrupt(cx);
         InterpreterData idata = fnOrScript.idata;
+        if (idata.lazy) {
+            CodeGenerator.compileLazyFunction(idata);
+        }
+        SpeculativeCompiler.Profile profile = idata.profile;
+        if (profile != null && idata.itsFunctionType != 0
+            && profile.calls < SpeculativeCompiler.COMPILE_THRESHOLD)
+        {
+            SpeculativeCompiler.recordCall(cx, fnOrScript, args, argShift,
+                                           argCount);
+        }
 
         boolean useActivation = idata.itsNeedsActivation;
         DebugFrame debuggerFrame = null;
@@ -2691,9 +3082,11 @@ switch (op) {
                                      fnOrScript.idata.evalScriptFlag);
         }
 
-        if (idata.itsNestedFunctions != null) {
-            if (idata.itsFunctionType != 0 && !idata.itsNeedsActivation)
-                Kit.codeBug();
+        // Functions without activation assign function statements to their
+        // variables, see NodeTransformer
+        if (idata.itsNestedFunctions != null
+            && (idata.itsFunctionType == 0 || idata.itsNeedsActivation))
+        {
             for (int i = 0; i < idata.itsNestedFunctions.length; i++) {
                 InterpreterData fdata = idata.itsNestedFunctions[i];
                 if (fdata.itsFunctionType == FunctionNode.FUNCTION_STATEMENT) {
@@ -2710,6 +3103,12 @@ switch (op) {
             // the regexps re-wrapped during each script execution
             if (idata.itsFunctionType != 0) {
                 scriptRegExps = fnOrScript.functionRegExps;
+                if (scriptRegExps == null) {
+                    // Lazily compiled function called for the first time
+                    scriptRegExps = fnOrScript.createRegExpWraps(
+                        cx, fnOrScript.getParentScope());
+                    fnOrScript.functionRegExps = scriptRegExps;
+                }
             } else {
                 scriptRegExps = fnOrScript.createRegExpWraps(cx, scope);
             }
@@ -2784,6 +3183,8 @@ switch (op) {
 
         frame.savedStackTop = emptyStackTop;
         frame.savedCallOp = 0;
+        frame.backwardJumps = 0;
+        frame.callStart = cx.instrumentation == null ? 0 : System.nanoTime();
 
         System.arraycopy(args, argShift, stack, 0, definedArgs);
         if (argsDbl != null) {
@@ -2800,6 +3201,22 @@ switch (op) {
             }
         }
 
+        if (parentFrame == null) {
+            frame.inContinuationsTopCall = false;
+            frame.enterExitCount = 0;
+            frame.handlerCount = 0;
+        } else {
+            frame.inContinuationsTopCall = parentFrame.inContinuationsTopCall;
+            frame.enterExitCount = parentFrame.enterExitCount;
+            frame.handlerCount = parentFrame.handlerCount;
+        }
+        if (isFrameEnterExitRequired(frame)) {
+            ++frame.enterExitCount;
+        }
+        if (idata.itsExceptionTable != null) {
+            ++frame.handlerCount;
+        }
+
         enterFrame(cx, frame, args, false);
     }
 
@@ -2859,6 +3276,14 @@ switch (op) {
     private static void exitFrame(Context cx, CallFrame frame,
                                   Object throwable)
     {
+        if (frame.callStart != 0) {
+            Instrumentation instrumentation = cx.instrumentation;
+            if (instrumentation != null) {
+                instrumentation.functionCalled(
+                    cx, frame.fnOrScript, System.nanoTime() - frame.callStart);
+            }
+            frame.callStart = 0;
+        }
         if (frame.idata.itsNeedsActivation) {
             ScriptRuntime.exitActivationFunction(cx);
         }
@@ -2932,7 +3357,6 @@ switch (op) {
 
         // Make sure that all frames are frozen
         CallFrame x = frame;
-        CallFrame outermost = frame;
         while (x != null && !x.frozen) {
             x.frozen = true;
             // Allow to GC unused stack space
@@ -2950,15 +3374,11 @@ switch (op) {
                 // object so it shall not be cleared: see comments in
                 // setCallResult
             }
-            outermost = x;
             x = x.parentFrame;
         }
         
         if (requireContinuationsTopFrame) {
-            while (outermost.parentFrame != null)
-                outermost = outermost.parentFrame;
-    
-            if (!outermost.isContinuationsTopFrame) {
+            if (!frame.inContinuationsTopCall) {
                 throw new IllegalStateException("Cannot capture continuation " +
                         "from JavaScript code not called directly by " +
                         "executeScriptWithContinuations or " +
@@ -3014,6 +3434,319 @@ switch (op) {
         }
     }
 
+    /**
+     * Returns true if Icode_IF_VAR_CMP with operands at pc has to jump.
+     */
+    private static boolean do_varCompare(CallFrame frame, byte[] iCode,
+                                         int pc)
+    {
+        int mode = 0xFF & iCode[pc + 2];
+        double[] varDbls = frame.varSource.sDbl;
+        Object lhs = getVar(frame, iCode[pc + 3]);
+        double lDbl = varDbls[iCode[pc + 3]];
+        if ((mode & Icode.VAR_CMP_RHS_VAR) == 0) {
+            return do_compare(mode, lhs, lDbl, UniqueTag.DOUBLE_MARK,
+                              getShort(iCode, pc + 4));
+        }
+        int rIndex = getIndex(iCode, pc + 4);
+        return do_compare(mode, lhs, lDbl, getVar(frame, rIndex),
+                          varDbls[rIndex]);
+    }
+
+    /**
+     * Returns true if Icode_IF_CMP with the given mode has to jump when
+     * the operands are on the stack at i and i + 1.
+     */
+    private static boolean do_stackCompare(CallFrame frame, int i, int mode)
+    {
+        Object[] stack = frame.stack;
+        double[] sDbl = frame.sDbl;
+        return do_compare(0xFF & mode, stack[i], sDbl[i],
+                          stack[i + 1], sDbl[i + 1]);
+    }
+
+    /**
+     * Compares two operands in the stack representation for a compare and
+     * branch instruction. Operands that hold int32 values are compared as
+     * ints.
+     */
+    private static boolean do_compare(int mode, Object lhs, double lDbl,
+                                      Object rhs, double rDbl)
+    {
+        boolean valBln;
+        int lInt = (int)lDbl, rInt = (int)rDbl;
+        if (lhs == UniqueTag.DOUBLE_MARK && rhs == UniqueTag.DOUBLE_MARK
+            && lInt == lDbl && rInt == rDbl)
+        {
+            switch (mode & 0x3F) {
+              case Token.GE:
+                valBln = (lInt >= rInt);
+                break;
+              case Token.LE:
+                valBln = (lInt <= rInt);
+                break;
+              case Token.GT:
+                valBln = (lInt > rInt);
+                break;
+              case Token.LT:
+                valBln = (lInt < rInt);
+                break;
+              default:
+                throw Kit.codeBug();
+            }
+        } else if (lhs == UniqueTag.DOUBLE_MARK
+                   || rhs == UniqueTag.DOUBLE_MARK)
+        {
+            if (lhs != UniqueTag.DOUBLE_MARK) lDbl = ScriptRuntime.toNumber(lhs);
+            if (rhs != UniqueTag.DOUBLE_MARK) rDbl = ScriptRuntime.toNumber(rhs);
+            switch (mode & 0x3F) {
+              case Token.GE:
+                valBln = (lDbl >= rDbl);
+                break;
+              case Token.LE:
+                valBln = (lDbl <= rDbl);
+                break;
+              case Token.GT:
+                valBln = (lDbl > rDbl);
+                break;
+              case Token.LT:
+                valBln = (lDbl < rDbl);
+                break;
+              default:
+                throw Kit.codeBug();
+            }
+        } else {
+            valBln = do_cmp(mode & 0x3F, lhs, rhs);
+        }
+        return valBln == ((mode & Icode.VAR_CMP_JUMP_IF_TRUE) != 0);
+    }
+
+    /**
+     * Returns the activation of the function <code>depth</code> levels out
+     * from the running one, or null if the scope chain holds another kind
+     * of scope object before it. A with, catch or let block may bind the
+     * name there, so the variable is looked up by name instead. Activations
+     * of other functions are skipped: CodeGenerator.getUpvar checked that
+     * they do not have the variable, and the debugger gives one to every
+     * function.
+     */
+    private static NativeCall findUpvarActivation(CallFrame frame,
+                                                  int depth)
+    {
+        InterpreterData data = frame.idata;
+        for (int i = 0; i != depth; ++i) {
+            data = data.parentData;
+        }
+        for (Scriptable s = frame.scope; s instanceof NativeCall;
+             s = s.getParentScope())
+        {
+            NativeCall call = (NativeCall)s;
+            if (call.function instanceof InterpretedFunction
+                && ((InterpretedFunction)call.function).idata == data)
+            {
+                return call;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Executes Icode_GETUPVAR, Icode_SETUPVAR, Icode_UPVAR_AND_THIS and
+     * Icode_UPVAR_INC_DEC and returns the new stack top. The variable is
+     * looked up by name when it is not in the array of its activation.
+     */
+    private static int do_upvar(Context cx, CallFrame frame, int op,
+                                int depth, int index, String name,
+                                int stackTop)
+    {
+        Object[] stack = frame.stack;
+        double[] sDbl = frame.sDbl;
+        NativeCall call = findUpvarActivation(frame, 0xFF & depth);
+        Object value = call == null ? Scriptable.NOT_FOUND
+                                    : call.getVar(index);
+        switch (op) {
+          case Icode_GETUPVAR:
+            if (value == Scriptable.NOT_FOUND) {
+                value = ScriptRuntime.name(cx, frame.scope, name);
+            }
+            stack[++stackTop] = value;
+            return stackTop;
+          case Icode_SETUPVAR:
+            value = stack[stackTop];
+            if (value == UniqueTag.DOUBLE_MARK) {
+                value = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+            }
+            if (call == null || !call.setVar(index, value)) {
+                Scriptable bound = ScriptRuntime.bind(cx, frame.scope, name);
+                ScriptRuntime.setName(bound, value, cx, frame.scope, name);
+            }
+            return stackTop;
+          case Icode_UPVAR_AND_THIS:
+            if (value == Scriptable.NOT_FOUND) {
+                stack[++stackTop] = ScriptRuntime.getNameFunctionAndThis(
+                                        name, cx, frame.scope);
+                stack[++stackTop] = ScriptRuntime.lastStoredScriptable(cx);
+                return stackTop;
+            }
+            if (!(value instanceof Callable)) {
+                throw ScriptRuntime.notFunctionError(value, name);
+            }
+            stack[++stackTop] = value;
+            // ECMA 262 requires that this for nested functions
+            // should be top scope
+            stack[++stackTop] = ScriptableObject.getTopLevelScope(call);
+            return stackTop;
+          case Icode_UPVAR_INC_DEC: {
+            int incrDecrMask = frame.idata.itsICode[frame.pc + 1];
+            if (value == Scriptable.NOT_FOUND) {
+                stack[++stackTop] = ScriptRuntime.nameIncrDecr(
+                                        frame.scope, name, cx, incrDecrMask);
+                return stackTop;
+            }
+            double d = ScriptRuntime.toNumber(value);
+            double d2 = ((incrDecrMask & Node.DECR_FLAG) == 0)
+                        ? d + 1.0 : d - 1.0;
+            call.setVar(index, ScriptRuntime.wrapNumber(d2));
+            ++stackTop;
+            stack[stackTop] = UniqueTag.DOUBLE_MARK;
+            sDbl[stackTop] = ((incrDecrMask & Node.POST_FLAG) == 0) ? d2 : d;
+            return stackTop;
+          }
+        }
+        throw Kit.codeBug();
+    }
+
+    /**
+     * Icode_VAR_INC_DEC: pushes the old or new value of the variable.
+     */
+    private static void do_varIncDec(Context cx, CallFrame frame,
+                                     int indexReg, int incrDecrMask,
+                                     int stackTop)
+    {
+        Object[] stack = frame.stack;
+        double[] sDbl = frame.sDbl;
+        if (frame.useActivation) {
+            String varName = frame.idata.argNames[indexReg];
+            stack[stackTop] = ScriptRuntime.nameIncrDecr(frame.scope, varName,
+                                                         cx, incrDecrMask);
+            return;
+        }
+        Object[] vars = frame.varSource.stack;
+        double[] varDbls = frame.varSource.sDbl;
+        stack[stackTop] = UniqueTag.DOUBLE_MARK;
+        Object varValue = vars[indexReg];
+        double d;
+        if (varValue == UniqueTag.DOUBLE_MARK) {
+            d = varDbls[indexReg];
+        } else {
+            d = ScriptRuntime.toNumber(varValue);
+            vars[indexReg] = UniqueTag.DOUBLE_MARK;
+        }
+        double d2;
+        int i = (int)d;
+        if (i == d && i != Integer.MIN_VALUE && i != Integer.MAX_VALUE) {
+            // Loop counters: stay in int arithmetic
+            d2 = ((incrDecrMask & Node.DECR_FLAG) == 0) ? i + 1 : i - 1;
+        } else {
+            d2 = ((incrDecrMask & Node.DECR_FLAG) == 0) ? d + 1.0 : d - 1.0;
+        }
+        varDbls[indexReg] = d2;
+        sDbl[stackTop] = ((incrDecrMask & Node.POST_FLAG) == 0) ? d2 : d;
+    }
+
+    /**
+     * Compares objects that are not DOUBLE_MARK with the relational
+     * operator op.
+     */
+    private static boolean do_cmp(int op, Object lhs, Object rhs)
+    {
+        switch (op) {
+          case Token.GE:
+            return ScriptRuntime.cmp_LE(rhs, lhs);
+          case Token.LE:
+            return ScriptRuntime.cmp_LE(lhs, rhs);
+          case Token.GT:
+            return ScriptRuntime.cmp_LT(rhs, lhs);
+          case Token.LT:
+            return ScriptRuntime.cmp_LT(lhs, rhs);
+        }
+        throw Kit.codeBug();
+    }
+
+    private static void do_setConstVar(CallFrame frame, int indexReg,
+                                       int stackTop)
+    {
+        Object[] stack = frame.stack;
+        double[] sDbl = frame.sDbl;
+        if (!frame.useActivation) {
+            Object[] vars = frame.varSource.stack;
+            int[] varAttributes = frame.varSource.stackAttributes;
+            if ((varAttributes[indexReg] & ScriptableObject.READONLY) == 0) {
+                throw Context.reportRuntimeError1("msg.var.redecl",
+                                                  frame.idata.argNames[indexReg]);
+            }
+            if ((varAttributes[indexReg] & ScriptableObject.UNINITIALIZED_CONST)
+                != 0)
+            {
+                vars[indexReg] = stack[stackTop];
+                varAttributes[indexReg] &= ~ScriptableObject.UNINITIALIZED_CONST;
+                frame.varSource.sDbl[indexReg] = sDbl[stackTop];
+            }
+        } else {
+            Object val = stack[stackTop];
+            if (val == UniqueTag.DOUBLE_MARK) {
+                val = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+            }
+            String name = frame.idata.argNames[indexReg];
+            if (frame.scope instanceof ConstProperties) {
+                ConstProperties cp = (ConstProperties)frame.scope;
+                cp.putConst(name, frame.scope, val);
+            } else
+                throw Kit.codeBug();
+        }
+    }
+
+    /**
+     * Sets the variable with the given index in a frame that uses an
+     * activation object.
+     */
+    private static void setVarInScope(CallFrame frame, int index,
+                                      Object val, double valDbl)
+    {
+        if (val == UniqueTag.DOUBLE_MARK) {
+            val = ScriptRuntime.wrapNumber(valDbl);
+        }
+        String name = frame.idata.argNames[index];
+        frame.scope.put(name, frame.scope, val);
+    }
+
+    /**
+     * Returns the value of the variable with the given index, which is
+     * DOUBLE_MARK if the value is in frame.varDbls.
+     */
+    private static Object getVar(CallFrame frame, int index)
+    {
+        if (!frame.useActivation) {
+            return frame.varSource.stack[index];
+        }
+        String name = frame.idata.argNames[index];
+        return frame.scope.get(name, frame.scope);
+    }
+
+    /**
+     * Computes lDbl % rDbl with integer division when both are integers
+     * and the result can not be negative zero.
+     */
+    private static double do_mod(double lDbl, double rDbl)
+    {
+        int lInt = (int)lDbl;
+        int rInt = (int)rDbl;
+        if (lInt == lDbl && rInt == rDbl && lInt > 0 && rInt != 0) {
+            return lInt % rInt;
+        }
+        return lDbl % rDbl;
+    }
+
     private static void do_add(Object[] stack, double[] sDbl, int stackTop,
                               Context cx)
     {
@@ -3098,6 +3831,127 @@ switch (op) {
         return args;
     }
 
+    private static Object getArg(Object[] stack, double[] sDbl, int index)
+    {
+        Object val = stack[index];
+        if (val == UniqueTag.DOUBLE_MARK) {
+            val = ScriptRuntime.wrapNumber(sDbl[index]);
+        }
+        return val;
+    }
+
+    /**
+     * Constructs a new object with the function lhs at stack[stackTop]
+     * and the indexReg arguments that follow it.
+     */
+    private static Object do_construct(Context cx, CallFrame frame,
+                                       Object lhs, int stackTop, int indexReg)
+    {
+        Object[] stack = frame.stack;
+        double[] sDbl = frame.sDbl;
+        if (!(lhs instanceof Function)) {
+            if (lhs == UniqueTag.DOUBLE_MARK) {
+                lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+            }
+            throw ScriptRuntime.notFunctionError(lhs);
+        }
+        Function fun = (Function)lhs;
+
+        if (fun instanceof IdFunctionObject) {
+            IdFunctionObject ifun = (IdFunctionObject)fun;
+            if (NativeContinuation.isContinuationConstructor(ifun)) {
+                return captureContinuation(cx, frame.parentFrame, false);
+            }
+        }
+
+        Object[] outArgs = getArgsArray(stack, sDbl, stackTop + 1, indexReg);
+        return fun.construct(cx, frame.scope, outArgs);
+    }
+
+    /**
+     * Runs Icode_CALLSPECIAL with indexReg arguments and returns the new
+     * stack top.
+     */
+    private static int do_callSpecial(Context cx, CallFrame frame,
+                                      int indexReg, int stackTop)
+    {
+        Object[] stack = frame.stack;
+        double[] sDbl = frame.sDbl;
+        byte[] iCode = frame.idata.itsICode;
+        int callType = iCode[frame.pc] & 0xFF;
+        boolean isNew =  (iCode[frame.pc + 1] != 0);
+        int sourceLine = getIndex(iCode, frame.pc + 2);
+
+        // indexReg: number of arguments
+        if (isNew) {
+            // stack change: function arg0 .. argN -> newResult
+            stackTop -= indexReg;
+
+            Object function = stack[stackTop];
+            if (function == UniqueTag.DOUBLE_MARK)
+                function = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+            Object[] outArgs = getArgsArray(
+                                   stack, sDbl, stackTop + 1, indexReg);
+            stack[stackTop] = ScriptRuntime.newSpecial(
+                                  cx, function, outArgs, frame.scope, callType);
+        } else {
+            // stack change: function thisObj arg0 .. argN -> result
+            stackTop -= 1 + indexReg;
+
+            // Call code generation ensure that stack here
+            // is ... Callable Scriptable
+            Scriptable functionThis = (Scriptable)stack[stackTop + 1];
+            Callable function = (Callable)stack[stackTop];
+            Object[] outArgs = getArgsArray(
+                                   stack, sDbl, stackTop + 2, indexReg);
+            stack[stackTop] = ScriptRuntime.callSpecial(
+                                  cx, function, functionThis, outArgs,
+                                  frame.scope, frame.thisObj, callType,
+                                  frame.idata.itsSourceFile, sourceLine);
+        }
+        return stackTop;
+    }
+
+    /**
+     * Call fun with the count arguments from stack[shift], without an
+     * arguments array if fun is a {@link FixedArityCallable}.
+     */
+    private static Object callFixedArity(Context cx, Callable callable,
+                                         Scriptable scope, Scriptable thisObj,
+                                         Object[] stack, double[] sDbl,
+                                         int shift, int count)
+    {
+        if (!(callable instanceof FixedArityCallable)) {
+            return callable.call(cx, scope, thisObj,
+                                 getArgsArray(stack, sDbl, shift, count));
+        }
+        FixedArityCallable fun = (FixedArityCallable)callable;
+        switch (count) {
+          case 0:
+            return fun.call0(cx, scope, thisObj);
+          case 1:
+            return fun.call1(cx, scope, thisObj,
+                             getArg(stack, sDbl, shift));
+          case 2:
+            return fun.call2(cx, scope, thisObj,
+                             getArg(stack, sDbl, shift),
+                             getArg(stack, sDbl, shift + 1));
+          case 3:
+            return fun.call3(cx, scope, thisObj,
+                             getArg(stack, sDbl, shift),
+                             getArg(stack, sDbl, shift + 1),
+                             getArg(stack, sDbl, shift + 2));
+          case 4:
+            return fun.call4(cx, scope, thisObj,
+                             getArg(stack, sDbl, shift),
+                             getArg(stack, sDbl, shift + 1),
+                             getArg(stack, sDbl, shift + 2),
+                             getArg(stack, sDbl, shift + 3));
+        }
+        return fun.call(cx, scope, thisObj,
+                        getArgsArray(stack, sDbl, shift, count));
+    }
+
     private static void addInstructionCount(Context cx, CallFrame frame,
                                             int extra)
     {
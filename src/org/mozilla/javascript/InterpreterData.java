@@ -124,6 +124,44 @@ final class InterpreterData implements Serializable, DebuggableScript
 
     boolean evalScriptFlag; // true if script corresponds to eval() code
 
+    // Source text holding the function and its position, kept for
+    // functions that may be compiled again on their own.
+    String functionSource;
+    int functionSourceStart;
+    int functionSourceEnd;
+    int functionBaseLineno;
+
+    // True until the icode of a function is generated on its first call.
+    // See CodeGenerator.compileLazyFunction.
+    volatile boolean lazy;
+
+    // PCs at which loops in the icode start, see
+    // NodeTransformer.getLoopEntries
+    int[] loopEntries;
+
+    // Call profile of a function that may be compiled to byte code.
+    // See SpeculativeCompiler.
+    transient SpeculativeCompiler.Profile profile;
+
+    // Shared by all function objects, see
+    // NativeFunction.getActivationVarIndexes
+    transient volatile ObjToIntMap activationVarIndexes;
+
+    // True if the code calls eval, which may add variables to its
+    // activation. See CodeGenerator.getUpvar.
+    boolean usesEval;
+
+    ObjToIntMap getActivationVarIndexes()
+    {
+        ObjToIntMap indexes = activationVarIndexes;
+        if (indexes == null) {
+            indexes = NativeCall.createVarIndexes(argNames, argIsConst,
+                                                  argCount);
+            activationVarIndexes = indexes;
+        }
+        return indexes;
+    }
+
     public boolean isTopLevel()
     {
         return topLevel;
@@ -146,16 +184,19 @@ final class InterpreterData implements Serializable, DebuggableScript
 
     public int getParamAndVarCount()
     {
+        compileIfLazy();
         return argNames.length;
     }
 
     public String getParamOrVarName(int index)
     {
+        compileIfLazy();
         return argNames[index];
     }
 
     public boolean getParamOrVarConst(int index)
     {
+        compileIfLazy();
         return argIsConst[index];
     }
 
@@ -171,16 +212,19 @@ final class InterpreterData implements Serializable, DebuggableScript
 
     public int[] getLineNumbers()
     {
+        compileIfLazy();
         return Interpreter.getLineNumbers(this);
     }
 
     public int getFunctionCount()
     {
+        compileIfLazy();
         return (itsNestedFunctions == null) ? 0 : itsNestedFunctions.length;
     }
 
     public DebuggableScript getFunction(int index)
     {
+        compileIfLazy();
         return itsNestedFunctions[index];
     }
 
@@ -188,4 +232,85 @@ final class InterpreterData implements Serializable, DebuggableScript
     {
          return parentData;
     }
+
+    /**
+     * Returns the length of the icode of this script or function and of
+     * the nested functions that are already compiled.
+     */
+    int getCodeSize()
+    {
+        int size = itsICode == null ? 0 : itsICode.length;
+        if (itsNestedFunctions != null) {
+            for (InterpreterData nested : itsNestedFunctions) {
+                size += nested.getCodeSize();
+            }
+        }
+        return size;
+    }
+
+    void addFootprint(MemoryFootprint footprint)
+    {
+        String category = MemoryFootprint.INTERPRETER_DATA;
+        footprint.count(category, footprint.instanceSize(getClass()));
+        footprint.countArray(category, itsStringTable);
+        if (itsStringTable != null) {
+            for (String str : itsStringTable) {
+                footprint.countString(category, str);
+            }
+        }
+        footprint.countArray(category, itsDoubleTable);
+        footprint.countArray(category, itsICode);
+        footprint.countArray(category, itsExceptionTable);
+        footprint.countArray(category, argNames);
+        if (argNames != null) {
+            for (String name : argNames) {
+                footprint.countString(category, name);
+            }
+        }
+        footprint.countArray(category, argIsConst);
+        footprint.countArray(category, loopEntries);
+        footprint.countArray(category, itsRegExpLiterals);
+        if (itsRegExpLiterals != null) {
+            for (Object re : itsRegExpLiterals) {
+                footprint.countInstance(category, re);
+            }
+        }
+        footprint.countArray(category, literalIds);
+        if (literalIds != null) {
+            for (Object ids : literalIds) {
+                footprint.countArray(category, ids);
+            }
+        }
+        footprint.countString(MemoryFootprint.SOURCE, encodedSource);
+        footprint.countString(MemoryFootprint.SOURCE, functionSource);
+        footprint.countArray(category, itsNestedFunctions);
+        if (itsNestedFunctions != null) {
+            for (InterpreterData nested : itsNestedFunctions) {
+                footprint.reach(nested);
+            }
+        }
+        footprint.reach(parentData);
+        SpeculativeCompiler.Profile profile = this.profile;
+        if (profile != null) {
+            if (profile.code != null) {
+                footprint.reachGeneratedCode(profile.code.functionClass);
+            }
+            if (profile.loopCode != null) {
+                for (SpeculativeCompiler.CompiledCode code : profile.loopCode) {
+                    if (code != null) {
+                        footprint.reachGeneratedCode(code.functionClass);
+                    }
+                }
+            }
+        }
+    }
+
+    // The nested functions and variables of a lazily compiled function
+    // are only known once its icode is generated.
+    private void compileIfLazy()
+    {
+        if (lazy) {
+            CodeGenerator.compileLazyFunction(this);
+        }
+    }
 }
@@ -0,0 +1,486 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Estimates the heap retained by a graph of script objects, broken down by
+ * the kind of data that occupies it. For example, the memory used by the
+ * variables a script defined in a scope that inherits shared standard
+ * objects is
+ * <pre>
+ * MemoryFootprint footprint = MemoryFootprint.measure(scope, sharedScope);
+ * System.out.println(footprint);
+ * </pre>
+ * The graph contains everything reachable from the measured objects
+ * through prototypes, parent scopes, properties, array elements,
+ * activations and function code. It does not contain the Java objects
+ * wrapped by NativeJavaObject, associated values or other objects outside
+ * of the engine. Data shared by several objects is counted once, in the
+ * category of the first object that reaches it.
+ * <p>
+ * Sizes are estimated from the fields of each class with the layout of a
+ * 64 bit JVM with compressed references, the default for heaps of less
+ * than 32 GB. Generated classes are counted with the size of their class
+ * files. The graph should not be modified while it is measured.
+ */
+public class MemoryFootprint
+{
+    /**
+     * Category of the script objects themselves, without their slots.
+     */
+    public static final String OBJECTS = "objects";
+
+    /**
+     * Category of the slot tables of ScriptableObject, the slots and the
+     * property names.
+     */
+    public static final String SLOTS = "slots";
+
+    /**
+     * Category of the dense element storage of NativeArray.
+     */
+    public static final String DENSE_ARRAYS = "dense arrays";
+
+    /**
+     * Category of the code and constant tables of interpreted functions
+     * and scripts.
+     */
+    public static final String INTERPRETER_DATA = "interpreter data";
+
+    /**
+     * Category of the classes generated for compiled functions and
+     * scripts.
+     */
+    public static final String GENERATED_CLASSES = "generated classes";
+
+    /**
+     * Category of the encoded source of interpreted functions, used by
+     * Function.prototype.toString, and of the source kept to compile
+     * functions on their first call.
+     */
+    public static final String SOURCE = "source";
+
+    /**
+     * Category of strings used as values.
+     */
+    public static final String STRINGS = "strings";
+
+    /**
+     * Category of boxed numbers.
+     */
+    public static final String NUMBERS = "numbers";
+
+    /**
+     * Category of other engine data, such as the variables of activations
+     * and the built-in members of standard objects.
+     */
+    public static final String OTHER = "other";
+
+    private static final String[] CATEGORIES = {
+        OBJECTS, SLOTS, DENSE_ARRAYS, INTERPRETER_DATA, GENERATED_CLASSES,
+        SOURCE, STRINGS, NUMBERS, OTHER
+    };
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int ALIGNMENT = 8;
+
+    // Since Java 9 strings of Latin-1 characters use a byte per character
+    private static final boolean COMPACT_STRINGS = hasField(String.class,
+                                                            "coder");
+
+    // Class file sizes of each compilation, by the loader of its classes
+    private static final Map<ClassLoader,Long> generatedCodeSizes
+        = new WeakHashMap<ClassLoader,Long>();
+
+    private final Map<String,Long> bytes = new LinkedHashMap<String,Long>();
+    private final Map<Object,Object> seen
+        = new IdentityHashMap<Object,Object>();
+    private final ObjArray pending = new ObjArray();
+    private final Map<Class<?>,Long> instanceSizes
+        = new HashMap<Class<?>,Long>();
+    private int objectCount;
+    private boolean excluding;
+
+    public MemoryFootprint()
+    {
+        for (String category : CATEGORIES) {
+            bytes.put(category, Long.valueOf(0));
+        }
+    }
+
+    /**
+     * Measures the graph reachable from a scope.
+     */
+    public static MemoryFootprint measure(Scriptable scope)
+    {
+        MemoryFootprint footprint = new MemoryFootprint();
+        footprint.add(scope);
+        return footprint;
+    }
+
+    /**
+     * Measures the graph reachable from a scope but not from a shared
+     * scope, such as the sealed standard objects the scope inherits.
+     */
+    public static MemoryFootprint measure(Scriptable scope,
+                                          Scriptable sharedScope)
+    {
+        MemoryFootprint footprint = new MemoryFootprint();
+        footprint.exclude(sharedScope);
+        footprint.add(scope);
+        return footprint;
+    }
+
+    /**
+     * Adds the objects reachable from root that were not measured or
+     * excluded yet.
+     *
+     * @param root a script object, function or value
+     */
+    public void add(Object root)
+    {
+        reach(root);
+        drain();
+    }
+
+    /**
+     * Excludes the objects reachable from root from the objects added
+     * later, without counting them.
+     */
+    public void exclude(Object root)
+    {
+        excluding = true;
+        try {
+            reach(root);
+            drain();
+        } finally {
+            excluding = false;
+        }
+    }
+
+    /**
+     * Returns the estimated bytes of one of the categories.
+     *
+     * @param category one of the category constants such as {@link #SLOTS}
+     */
+    public long getBytes(String category)
+    {
+        Long value = bytes.get(category);
+        if (value == null) throw new IllegalArgumentException(category);
+        return value.longValue();
+    }
+
+    /**
+     * Returns the estimated bytes of each category, in the order of the
+     * category constants.
+     */
+    public Map<String,Long> getBytesByCategory()
+    {
+        return Collections.unmodifiableMap(bytes);
+    }
+
+    public long getTotalBytes()
+    {
+        long total = 0;
+        for (Long value : bytes.values()) {
+            total += value.longValue();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of script objects that were measured.
+     */
+    public int getObjectCount()
+    {
+        return objectCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String,Long> entry : bytes.entrySet()) {
+            sb.append(entry.getKey()).append(": ")
+              .append(entry.getValue()).append('\n');
+        }
+        sb.append("total: ").append(getTotalBytes())
+          .append(" bytes in ").append(objectCount).append(" objects");
+        return sb.toString();
+    }
+
+    /**
+     * Records the size of the classes of a compiled script or function
+     * to count it with the functions that use them.
+     *
+     * @param compiled the script or function created from bytecode
+     * @param bytecode the result of {@link Evaluator#compile}
+     */
+    static void recordGeneratedCode(Object compiled, Object bytecode)
+    {
+        if (bytecode instanceof InterpreterData) {
+            return;
+        }
+        ClassLoader loader = compiled.getClass().getClassLoader();
+        if (loader == null) {
+            return;
+        }
+        long size = Context.getCodeSize(bytecode);
+        synchronized (generatedCodeSizes) {
+            Long previous = generatedCodeSizes.get(loader);
+            if (previous != null) {
+                size += previous.longValue();
+            }
+            generatedCodeSizes.put(loader, Long.valueOf(size));
+        }
+    }
+
+    /**
+     * Counts the generated classes that contain a class, if the class was
+     * generated.
+     */
+    void reachGeneratedCode(Class<?> cl)
+    {
+        ClassLoader loader = cl.getClassLoader();
+        if (loader == null) {
+            return;
+        }
+        Long size;
+        synchronized (generatedCodeSizes) {
+            size = generatedCodeSizes.get(loader);
+        }
+        if (size != null && markSeen(loader)) {
+            count(GENERATED_CLASSES, size.longValue());
+        }
+    }
+
+    /**
+     * Queues an object to be measured unless it was seen before.
+     */
+    void reach(Object obj)
+    {
+        if (obj != null && markSeen(obj)) {
+            pending.push(obj);
+        }
+    }
+
+    /**
+     * Counts an array and reaches its elements.
+     */
+    void reachArray(String category, Object[] array)
+    {
+        if (array != null && markSeen(array)) {
+            count(category, sizeOf(array));
+            for (Object element : array) {
+                reach(element);
+            }
+        }
+    }
+
+    /**
+     * Counts an array that holds no references.
+     */
+    void countArray(String category, Object array)
+    {
+        if (array != null && markSeen(array)) {
+            count(category, sizeOf(array));
+        }
+    }
+
+    /**
+     * Counts a string in a category other than {@link #STRINGS}.
+     */
+    void countString(String category, String str)
+    {
+        if (str != null && markSeen(str)) {
+            count(category, sizeOf(str));
+        }
+    }
+
+    /**
+     * Counts an object without reaching its fields.
+     */
+    void countInstance(String category, Object obj)
+    {
+        if (obj != null && markSeen(obj)) {
+            count(category, instanceSize(obj.getClass()));
+        }
+    }
+
+    void count(String category, long size)
+    {
+        if (!excluding) {
+            bytes.put(category,
+                      Long.valueOf(bytes.get(category).longValue() + size));
+        }
+    }
+
+    long instanceSize(Class<?> cl)
+    {
+        Long cached = instanceSizes.get(cl);
+        if (cached != null) {
+            return cached.longValue();
+        }
+        long size = OBJECT_HEADER;
+        for (Class<?> c = cl; c != null; c = c.getSuperclass()) {
+            Field[] fields;
+            try {
+                fields = c.getDeclaredFields();
+            } catch (SecurityException ex) {
+                continue;
+            }
+            for (Field field : fields) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    size += fieldSize(field.getType());
+                }
+            }
+        }
+        size = align(size);
+        instanceSizes.put(cl, Long.valueOf(size));
+        return size;
+    }
+
+    private boolean markSeen(Object obj)
+    {
+        return seen.put(obj, Boolean.TRUE) == null;
+    }
+
+    private void drain()
+    {
+        while (!pending.isEmpty()) {
+            measure(pending.pop());
+        }
+    }
+
+    private void measure(Object obj)
+    {
+        if (obj instanceof ScriptableObject) {
+            countObject(obj);
+            ((ScriptableObject)obj).addFootprint(this);
+        } else if (obj instanceof Scriptable) {
+            countObject(obj);
+            Scriptable scriptable = (Scriptable)obj;
+            reach(scriptable.getPrototype());
+            reach(scriptable.getParentScope());
+        } else if (obj instanceof String) {
+            count(STRINGS, sizeOf((String)obj));
+        } else if (obj instanceof Number) {
+            count(NUMBERS, instanceSize(obj.getClass()));
+        } else if (obj instanceof InterpreterData) {
+            ((InterpreterData)obj).addFootprint(this);
+        }
+        // Other objects, such as Boolean, Undefined or host objects, are
+        // either shared or not owned by the engine
+    }
+
+    private void countObject(Object obj)
+    {
+        if (!excluding) {
+            ++objectCount;
+        }
+        count(OBJECTS, instanceSize(obj.getClass()));
+    }
+
+    private static long sizeOf(Object array)
+    {
+        int length = Array.getLength(array);
+        return align(ARRAY_HEADER
+                     + (long)length * fieldSize(array.getClass()
+                                                     .getComponentType()));
+    }
+
+    private long sizeOf(String str)
+    {
+        int length = str.length();
+        int charSize = 2;
+        if (COMPACT_STRINGS) {
+            charSize = 1;
+            for (int i = 0; i != length; ++i) {
+                if (str.charAt(i) > 0xFF) {
+                    charSize = 2;
+                    break;
+                }
+            }
+        }
+        return instanceSize(String.class)
+               + align(ARRAY_HEADER + (long)length * charSize);
+    }
+
+    private static int fieldSize(Class<?> type)
+    {
+        if (!type.isPrimitive()) {
+            return REFERENCE;
+        } else if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size)
+    {
+        return (size + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    private static boolean hasField(Class<?> cl, String name)
+    {
+        try {
+            cl.getDeclaredField(name);
+            return true;
+        } catch (NoSuchFieldException ex) {
+            return false;
+        } catch (SecurityException ex) {
+            return false;
+        }
+    }
+}
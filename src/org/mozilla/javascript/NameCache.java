@@ -0,0 +1,145 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Cache for looking up one name from compiled code, either in a top level
+ * scope or, with one cache per access site, as a property of an object.
+ * <p>
+ * The cache remembers the object and the property slot where the name was
+ * last found. A later lookup in the same object reads or writes the slot
+ * directly instead of searching the property table, as long as the
+ * property has not been deleted or turned into an accessor. Only own data
+ * properties are cached; properties found on a prototype, ids of built-in
+ * objects and objects with their own get or put always take the generic
+ * path. When the object changes the cache is filled again; after too many
+ * misses it stops trying, and all lookups take the generic path.
+ *
+ * @see ScriptRuntime#name(Context, Scriptable, NameCache)
+ * @see ScriptRuntime#getObjectProp(Object, NameCache, Context, Scriptable)
+ */
+public final class NameCache
+{
+    private static final int MAX_MISSES = 8;
+
+    private final String name;
+    private volatile Entry entry;
+    private volatile int misses;
+
+    public NameCache(String name)
+    {
+        this.name = name;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the value of the own property of obj with the cached name,
+     * or NOT_FOUND if the cache cannot tell.
+     */
+    Object get(Scriptable obj)
+    {
+        Entry e = entry;
+        if (e != null && e.holder.get() == obj) {
+            Object value = ScriptableObject.getCachedSlotValue(e.slot);
+            if (value != Scriptable.NOT_FOUND) {
+                return value;
+            }
+        }
+        e = fill(obj, e);
+        if (e == null) {
+            return Scriptable.NOT_FOUND;
+        }
+        return ScriptableObject.getCachedSlotValue(e.slot);
+    }
+
+    /**
+     * Stores value in the own property of obj with the cached name and
+     * returns true, or returns false if the cache cannot do the assignment.
+     */
+    boolean put(Scriptable obj, Object value)
+    {
+        Entry e = entry;
+        if (e != null && e.holder.get() == obj
+            && ScriptableObject.putCachedSlotValue((ScriptableObject)obj,
+                                                   e.slot, value))
+        {
+            return true;
+        }
+        e = fill(obj, e);
+        return e != null
+            && ScriptableObject.putCachedSlotValue((ScriptableObject)obj,
+                                                   e.slot, value);
+    }
+
+    private Entry fill(Scriptable obj, Entry old)
+    {
+        if (misses >= MAX_MISSES || !(obj instanceof ScriptableObject)) {
+            return null;
+        }
+        Object slot = ((ScriptableObject)obj).getCacheableSlot(name);
+        if (old != null || slot == null) {
+            // Races between threads only lose counts
+            misses++;
+        }
+        if (slot == null) {
+            return null;
+        }
+        Entry e = new Entry(obj, slot);
+        entry = e;
+        return e;
+    }
+
+    private static final class Entry
+    {
+        // Compiled scripts may outlive the objects they run with
+        final WeakReference<Scriptable> holder;
+        final Object slot;
+
+        Entry(Scriptable holder, Object slot)
+        {
+            this.holder = new WeakReference<Scriptable>(holder);
+            this.slot = slot;
+        }
+    }
+}
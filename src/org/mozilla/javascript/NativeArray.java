@@ -633,6 +633,13 @@ public class NativeArray extends IdScriptableObject implements List
         this.denseOnly = denseOnly;
     }
 
+    @Override
+    void addFootprint(MemoryFootprint footprint)
+    {
+        super.addFootprint(footprint);
+        footprint.reachArray(MemoryFootprint.DENSE_ARRAYS, dense);
+    }
+
     private void setLength(Object val) {
         /* XXX do we satisfy this?
          * 15.4.5.1 [[Put]](P, V):
@@ -43,6 +43,16 @@ package org.mozilla.javascript;
  * This class implements the activation object.
  *
  * See ECMA 10.1.6
+ * <p>
+ * The parameters and variables of the function are kept in an array
+ * instead of property slots, see {@link #createVarIndexes}. They are
+ * moved to slots only if their attributes are changed. Nested
+ * functions read and write the variables of enclosing functions by index,
+ * see {@link #getVar} and {@link #setVar}. The arguments
+ * object is only created when the <code>arguments</code> property is read,
+ * {@link ScriptRuntime#getArgumentsElem} and
+ * {@link ScriptRuntime#getArgumentsLength} use the arguments directly
+ * while it does not exist.
  *
  * @see org.mozilla.javascript.Arguments
  * @author Norris Boyd
@@ -71,36 +81,341 @@ public final class NativeCall extends IdScriptableObject
         this.originalArgs = (args == null) ? ScriptRuntime.emptyArgs : args;
 
         // initialize values of arguments
+        varIndexes = function.getActivationVarIndexes();
         int paramAndVarCount = function.getParamAndVarCount();
         int paramCount = function.getParamCount();
         if (paramAndVarCount != 0) {
+            vars = new Object[paramAndVarCount];
             for (int i = 0; i < paramCount; ++i) {
-                String name = function.getParamOrVarName(i);
-                Object val = i < args.length ? args[i]
-                                             : Undefined.instance;
-                defineProperty(name, val, PERMANENT);
+                vars[i] = i < args.length ? args[i] : Undefined.instance;
+            }
+            for (int i = paramCount; i < paramAndVarCount; ++i) {
+                vars[i] = Undefined.instance;
             }
         }
 
-        // initialize "arguments" property but only if it was not overridden by
-        // the parameter with the same name
-        if (!super.has("arguments", this)) {
-            defineProperty("arguments", new Arguments(this), PERMANENT);
-        }
+        // "arguments" property is defined on first access but only if it
+        // was not overridden by the parameter with the same name
+        lazyArguments = !varIndexes.has("arguments");
 
         if (paramAndVarCount != 0) {
             for (int i = paramCount; i < paramAndVarCount; ++i) {
-                String name = function.getParamOrVarName(i);
-                if (!super.has(name, this)) {
-                    if (function.getParamOrVarConst(i))
+                if (function.getParamOrVarConst(i)) {
+                    String name = function.getParamOrVarName(i);
+                    if (!has(name, this)) {
                         defineProperty(name, Undefined.instance, CONST);
-                    else
-                        defineProperty(name, Undefined.instance, PERMANENT);
+                    }
                 }
             }
         }
     }
 
+    /**
+     * Returns the indexes of the parameters and variables of
+     * <code>function</code> that its activation objects keep in an array.
+     * When several parameters have the same name, the last one is used.
+     * Const variables and variables named like a parameter or
+     * <code>arguments</code> are not included, as the constructor does not
+     * define properties for them or defines them with other attributes.
+     */
+    static ObjToIntMap createVarIndexes(NativeFunction function)
+    {
+        int paramAndVarCount = function.getParamAndVarCount();
+        String[] names = new String[paramAndVarCount];
+        boolean[] isConst = new boolean[paramAndVarCount];
+        for (int i = 0; i < paramAndVarCount; ++i) {
+            names[i] = function.getParamOrVarName(i);
+            isConst[i] = function.getParamOrVarConst(i);
+        }
+        return createVarIndexes(names, isConst, function.getParamCount());
+    }
+
+    /**
+     * Returns the indexes like {@link #createVarIndexes(NativeFunction)}
+     * for a function with the given parameters and variables. Compiled
+     * functions use them to access the variables of enclosing functions,
+     * see {@link ScriptRuntime#getUpvar}.
+     */
+    public static ObjToIntMap createVarIndexes(String[] names, boolean[] isConst,
+                                        int paramCount)
+    {
+        int paramAndVarCount = names.length;
+        ObjToIntMap indexes = new ObjToIntMap(paramAndVarCount);
+        for (int i = 0; i < paramCount; ++i) {
+            indexes.put(names[i], i);
+        }
+        for (int i = paramCount; i < paramAndVarCount; ++i) {
+            String name = names[i];
+            if (!isConst[i] && !indexes.has(name)
+                && !name.equals("arguments"))
+            {
+                indexes.put(name, i);
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Returns the value of the variable at an index from
+     * {@link #createVarIndexes}, or NOT_FOUND if it was moved to a slot
+     * or the activation keeps all variables in slots.
+     */
+    Object getVar(int index)
+    {
+        if (vars == null) {
+            // Read from a stream written before the array was added
+            return NOT_FOUND;
+        }
+        return vars[index];
+    }
+
+    /**
+     * Sets the variable at an index from {@link #createVarIndexes}.
+     * Returns false if it was moved to a slot and has to be set by name.
+     */
+    boolean setVar(int index, Object value)
+    {
+        if (vars == null || vars[index] == MOVED) {
+            return false;
+        }
+        vars[index] = value;
+        return true;
+    }
+
+    /**
+     * Returns the index in <code>vars</code> of a parameter or variable
+     * that has not been moved to a slot, or -1.
+     */
+    private int varIndex(String name)
+    {
+        if (varIndexes == null) {
+            // The prototype or an object created with new Call()
+            return -1;
+        }
+        int index = varIndexes.get(name, -1);
+        if (index >= 0 && vars[index] == MOVED) {
+            return -1;
+        }
+        return index;
+    }
+
+    private boolean isLazyArguments(String name)
+    {
+        return lazyArguments && name.equals("arguments");
+    }
+
+    /**
+     * Defines the "arguments" property with the given value or a new
+     * arguments object.
+     */
+    private Object initArguments(Object value)
+    {
+        lazyArguments = false;
+        if (value == null) {
+            value = new Arguments(this);
+        }
+        super.defineProperty("arguments", value, PERMANENT);
+        return value;
+    }
+
+    /**
+     * Returns arguments[id] if it can be read without the arguments
+     * object, otherwise NOT_FOUND.
+     */
+    Object getArgument(Object id)
+    {
+        if (!lazyArguments || !(id instanceof Number)) {
+            return NOT_FOUND;
+        }
+        double d = ((Number)id).doubleValue();
+        int index = (int)d;
+        if (index != d || index < 0 || index >= originalArgs.length) {
+            return NOT_FOUND;
+        }
+        if (index < function.getParamCount()) {
+            String name = function.getParamOrVarName(index);
+            if (varIndexes.get(name, -1) == index) {
+                // Shared with the parameter
+                Object value = vars[index];
+                return value == MOVED ? NOT_FOUND : value;
+            }
+        }
+        return originalArgs[index];
+    }
+
+    /**
+     * Returns arguments.length if it can be read without the arguments
+     * object, otherwise NOT_FOUND.
+     */
+    Object getArgumentsLength()
+    {
+        if (!lazyArguments) {
+            return NOT_FOUND;
+        }
+        return Integer.valueOf(originalArgs.length);
+    }
+
+    /**
+     * Moves a variable to a property slot so its attributes can change.
+     */
+    private void moveToSlot(String name)
+    {
+        if (isLazyArguments(name)) {
+            initArguments(null);
+            return;
+        }
+        int index = varIndex(name);
+        if (index >= 0) {
+            Object value = vars[index];
+            vars[index] = MOVED;
+            super.defineProperty(name, value, PERMANENT);
+        }
+    }
+
+    @Override
+    public boolean has(String name, Scriptable start)
+    {
+        if (varIndex(name) >= 0 || isLazyArguments(name)) {
+            return true;
+        }
+        return super.has(name, start);
+    }
+
+    @Override
+    public Object get(String name, Scriptable start)
+    {
+        int index = varIndex(name);
+        if (index >= 0) {
+            return vars[index];
+        }
+        if (isLazyArguments(name)) {
+            return initArguments(null);
+        }
+        return super.get(name, start);
+    }
+
+    @Override
+    public void put(String name, Scriptable start, Object value)
+    {
+        if (start == this) {
+            int index = varIndex(name);
+            if (index >= 0) {
+                vars[index] = value;
+                return;
+            }
+            if (isLazyArguments(name)) {
+                initArguments(value);
+                return;
+            }
+        }
+        super.put(name, start, value);
+    }
+
+    @Override
+    public void delete(String name)
+    {
+        if (varIndex(name) >= 0 || isLazyArguments(name)) {
+            // Variables and arguments are PERMANENT
+            return;
+        }
+        super.delete(name);
+    }
+
+    @Override
+    public void defineProperty(String propertyName, Object value,
+                               int attributes)
+    {
+        int index = varIndex(propertyName);
+        if (attributes == PERMANENT) {
+            if (index >= 0) {
+                vars[index] = value;
+                return;
+            }
+            if (isLazyArguments(propertyName)) {
+                initArguments(value);
+                return;
+            }
+        }
+        moveToSlot(propertyName);
+        super.defineProperty(propertyName, value, attributes);
+    }
+
+    @Override
+    public void putConst(String name, Scriptable start, Object value)
+    {
+        moveToSlot(name);
+        super.putConst(name, start, value);
+    }
+
+    @Override
+    public void defineConst(String name, Scriptable start)
+    {
+        moveToSlot(name);
+        super.defineConst(name, start);
+    }
+
+    @Override
+    public boolean isConst(String name)
+    {
+        if (varIndex(name) >= 0) {
+            return false;
+        }
+        return super.isConst(name);
+    }
+
+    @Override
+    public int getAttributes(String name)
+    {
+        if (varIndex(name) >= 0 || isLazyArguments(name)) {
+            return PERMANENT;
+        }
+        return super.getAttributes(name);
+    }
+
+    @Override
+    public void setAttributes(String name, int attributes)
+    {
+        moveToSlot(name);
+        super.setAttributes(name, attributes);
+    }
+
+    @Override
+    Object[] getIds(boolean getAll)
+    {
+        Object[] ids = super.getIds(getAll);
+        int count = lazyArguments ? 1 : 0;
+        if (vars != null) {
+            for (int i = 0; i != vars.length; ++i) {
+                if (isArrayVar(i)) {
+                    ++count;
+                }
+            }
+        }
+        if (count == 0) {
+            return ids;
+        }
+        Object[] result = new Object[count + ids.length];
+        int offset = 0;
+        if (vars != null) {
+            for (int i = 0; i != vars.length; ++i) {
+                if (isArrayVar(i)) {
+                    result[offset++] = function.getParamOrVarName(i);
+                }
+            }
+        }
+        if (lazyArguments) {
+            result[offset] = "arguments";
+        }
+        System.arraycopy(ids, 0, result, count, ids.length);
+        return result;
+    }
+
+    private boolean isArrayVar(int index)
+    {
+        return vars[index] != MOVED
+            && varIndexes.get(function.getParamOrVarName(index), -1) == index;
+    }
+
     @Override
     public String getClassName()
     {
@@ -146,13 +461,32 @@ public final class NativeCall extends IdScriptableObject
         throw new IllegalArgumentException(String.valueOf(id));
     }
 
+    @Override
+    void addFootprint(MemoryFootprint footprint)
+    {
+        super.addFootprint(footprint);
+        footprint.reach(function);
+        footprint.reachArray(MemoryFootprint.OTHER, originalArgs);
+        footprint.reachArray(MemoryFootprint.OTHER, vars);
+        footprint.reach(parentActivationCall);
+    }
+
     private static final int
         Id_constructor   = 1,
         MAX_PROTOTYPE_ID = 1;
 
+    // Marks a variable that has been moved to a slot
+    private static final Object MOVED = UniqueTag.NOT_FOUND;
+
     NativeFunction function;
     Object[] originalArgs;
 
+    // Values of the parameters and variables in varIndexes
+    private Object[] vars;
+    private ObjToIntMap varIndexes;
+    // True while the arguments object has not been created
+    private boolean lazyArguments;
+
     transient NativeCall parentActivationCall;
 }
 
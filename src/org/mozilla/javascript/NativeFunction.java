@@ -50,7 +50,9 @@ import org.mozilla.javascript.debug.DebuggableScript;
  * @author Norris Boyd
  */
 public abstract class NativeFunction extends BaseFunction
+    implements FixedArityCallable
 {
+    static final long serialVersionUID = 8713897114082216401L;
 
     public final void initScriptFunction(Context cx, Scriptable scope)
     {
@@ -75,6 +77,41 @@ public abstract class NativeFunction extends BaseFunction
         }
     }
 
+    /**
+     * Calls {@link #call(Context, Scriptable, Scriptable, Object[])}.
+     * Compiled functions override the fixed arity calls so they do not
+     * need the arguments array.
+     */
+    public Object call0(Context cx, Scriptable scope, Scriptable thisObj)
+    {
+        return call(cx, scope, thisObj, ScriptRuntime.emptyArgs);
+    }
+
+    public Object call1(Context cx, Scriptable scope, Scriptable thisObj,
+                        Object arg0)
+    {
+        return call(cx, scope, thisObj, new Object[] { arg0 });
+    }
+
+    public Object call2(Context cx, Scriptable scope, Scriptable thisObj,
+                        Object arg0, Object arg1)
+    {
+        return call(cx, scope, thisObj, new Object[] { arg0, arg1 });
+    }
+
+    public Object call3(Context cx, Scriptable scope, Scriptable thisObj,
+                        Object arg0, Object arg1, Object arg2)
+    {
+        return call(cx, scope, thisObj, new Object[] { arg0, arg1, arg2 });
+    }
+
+    public Object call4(Context cx, Scriptable scope, Scriptable thisObj,
+                        Object arg0, Object arg1, Object arg2, Object arg3)
+    {
+        return call(cx, scope, thisObj,
+                    new Object[] { arg0, arg1, arg2, arg3 });
+    }
+
     @Override
     public int getLength()
     {
@@ -119,6 +156,27 @@ public abstract class NativeFunction extends BaseFunction
         return null;
     }
 
+    /**
+     * Returns the parameters and variables that activation objects of the
+     * function keep in an array, see {@link NativeCall#createVarIndexes}.
+     */
+    ObjToIntMap getActivationVarIndexes()
+    {
+        ObjToIntMap indexes = activationVarIndexes;
+        if (indexes == null) {
+            indexes = NativeCall.createVarIndexes(this);
+            activationVarIndexes = indexes;
+        }
+        return indexes;
+    }
+
+    @Override
+    void addFootprint(MemoryFootprint footprint)
+    {
+        super.addFootprint(footprint);
+        footprint.reachGeneratedCode(getClass());
+    }
+
     /**
      * Resume execution of a suspended generator.
      * @param cx The current context
@@ -168,5 +226,7 @@ public abstract class NativeFunction extends BaseFunction
         // from earlier Rhino versions. See Bugzilla #396117.
         return false;
     }
+
+    private transient volatile ObjToIntMap activationVarIndexes;
 }
 
@@ -397,6 +397,10 @@ public class NativeGlobal implements Serializable, IdFunctionCall
         if (exponent != -1 && !exponentValid) {
             i = exponent;
         }
+        double d = ScriptRuntime.decimalToNumber(s, start, i);
+        if (d == d) {
+            return ScriptRuntime.wrapNumber(d);
+        }
         s = s.substring(start, i);
         try {
             return Double.valueOf(s);
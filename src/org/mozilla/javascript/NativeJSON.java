@@ -42,19 +42,26 @@ package org.mozilla.javascript;
 
 import org.mozilla.javascript.json.JsonParser;
 
+import java.lang.reflect.Array;
 import java.util.Stack;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Arrays;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Map;
 
 /**
  * This class implements the JSON native object.
  * See ECMA 15.12.
+ * <p>
+ * Besides JavaScript values, {@link #stringify} also accepts Java
+ * <code>Map</code>, <code>Collection</code> and array instances, either
+ * wrapped or unwrapped, and serializes them directly as JSON objects and
+ * arrays.
  * @author Matthew Crumley, Raphael Speyer
  */
-final class NativeJSON extends IdScriptableObject
+public final class NativeJSON extends IdScriptableObject
 {
     static final long serialVersionUID = -4567599697595654984L;
 
@@ -139,7 +146,7 @@ final class NativeJSON extends IdScriptableObject
         }
     }
 
-    private static Object parse(Context cx, Scriptable scope, String jtext) {
+    public static Object parse(Context cx, Scriptable scope, String jtext) {
       try {
         return new JsonParser(cx, scope).parseValue(jtext);
       } catch (JsonParser.ParseException ex) {
@@ -221,7 +228,7 @@ final class NativeJSON extends IdScriptableObject
             this.space = space;
         }
 
-        Stack<Scriptable> stack = new Stack<Scriptable>();
+        Stack<Object> stack = new Stack<Object>();
         String indent;
         String gap;
         Callable replacer;
@@ -297,6 +304,18 @@ final class NativeJSON extends IdScriptableObject
         } else {
             value = getProperty(holder, ((Number) key).intValue());
         }
+        return str(key, value, holder, state);
+    }
+
+    private static Object str(Object key, Object value, Object holder,
+                              StringifyState state)
+    {
+        if (value instanceof Wrapper) {
+            Object unwrapped = ((Wrapper) value).unwrap();
+            if (isJavaContainer(unwrapped)) {
+                value = unwrapped;
+            }
+        }
 
         if (value instanceof Scriptable) {
             Object toJSON = getProperty((Scriptable) value, "toJSON");
@@ -307,7 +326,11 @@ final class NativeJSON extends IdScriptableObject
         }
 
         if (state.replacer != null) {
-            value = state.replacer.call(state.cx, state.scope, holder,
+            Scriptable thisObj = holder instanceof Scriptable
+                ? (Scriptable) holder
+                : (Scriptable) state.cx.getWrapFactory().wrap(
+                        state.cx, state.scope, holder, null);
+            value = state.replacer.call(state.cx, state.scope, thisObj,
                                         new Object[] { key, value });
         }
 
@@ -339,6 +362,28 @@ final class NativeJSON extends IdScriptableObject
             }
         }
 
+        if (value instanceof Character) {
+            return quote(value.toString());
+        }
+
+        if (value instanceof Map) {
+            return jm((Map<?,?>) value, state);
+        }
+
+        if (value instanceof Collection || (value != null &&
+                                            value.getClass().isArray())) {
+            return jl(value, state);
+        }
+
+        if (value != null && !(value instanceof Scriptable)
+                && value != Undefined.instance
+                && !(value instanceof UniqueTag)) {
+            // Any other Java object is serialized through its wrapper,
+            // same as if it had been passed in from script code.
+            value = state.cx.getWrapFactory().wrap(state.cx, state.scope,
+                                                   value, null);
+        }
+
         if (value instanceof Scriptable && !(value instanceof Callable)) {
             if (value instanceof NativeArray) {
                 return ja((NativeArray) value, state);
@@ -349,6 +394,11 @@ final class NativeJSON extends IdScriptableObject
         return Undefined.instance;
     }
 
+    private static boolean isJavaContainer(Object value) {
+        return value instanceof Map || value instanceof Collection
+            || (value != null && value.getClass().isArray());
+    }
+
     private static String join(Collection<Object> objs, String delimiter) {
         if (objs == null || objs.isEmpty()) {
             return "";
@@ -363,9 +413,7 @@ final class NativeJSON extends IdScriptableObject
     }
 
     private static String jo(Scriptable value, StringifyState state) {
-        if (state.stack.search(value) != -1) {
-            throw ScriptRuntime.typeError0("msg.cyclic.value");
-        }
+        checkCycle(value, state);
         state.stack.push(value);
 
         String stepback = state.indent;
@@ -412,9 +460,7 @@ final class NativeJSON extends IdScriptableObject
     }
 
     private static String ja(NativeArray value, StringifyState state) {
-        if (state.stack.search(value) != -1) {
-            throw ScriptRuntime.typeError0("msg.cyclic.value");
-        }
+        checkCycle(value, state);
         state.stack.push(value);
 
         String stepback = state.indent;
@@ -450,6 +496,113 @@ final class NativeJSON extends IdScriptableObject
         return finalValue;
     }
 
+    private static String jm(Map<?,?> value, StringifyState state) {
+        checkCycle(value, state);
+        state.stack.push(value);
+
+        String stepback = state.indent;
+        state.indent = state.indent + state.gap;
+        List<Object> partial = new LinkedList<Object>();
+
+        if (state.propertyList != null) {
+            for (Object p : state.propertyList) {
+                String name = p.toString();
+                if (value.containsKey(name)) {
+                    addMember(partial, name, str(p, value.get(name), value,
+                                                 state), state);
+                }
+            }
+        } else {
+            for (Map.Entry<?,?> entry : value.entrySet()) {
+                String name = String.valueOf(entry.getKey());
+                addMember(partial, name, str(name, entry.getValue(), value,
+                                             state), state);
+            }
+        }
+
+        final String finalValue;
+
+        if (partial.isEmpty()) {
+            finalValue = "{}";
+        } else {
+            if (state.gap.length() == 0) {
+                finalValue = '{' + join(partial, ",") + '}';
+            } else {
+                String separator = ",\n" + state.indent;
+                String properties = join(partial, separator);
+                finalValue = "{\n" + state.indent + properties + '\n' +
+                    stepback + '}';
+            }
+        }
+
+        state.stack.pop();
+        state.indent = stepback;
+        return finalValue;
+    }
+
+    private static void addMember(List<Object> partial, String name,
+                                  Object strP, StringifyState state)
+    {
+        if (strP != Undefined.instance) {
+            String member = quote(name) + ":";
+            if (state.gap.length() > 0) {
+                member = member + " ";
+            }
+            partial.add(member + strP);
+        }
+    }
+
+    private static String jl(Object value, StringifyState state) {
+        checkCycle(value, state);
+        state.stack.push(value);
+
+        String stepback = state.indent;
+        state.indent = state.indent + state.gap;
+        List<Object> partial = new LinkedList<Object>();
+
+        if (value instanceof Collection) {
+            int index = 0;
+            for (Object element : (Collection<?>) value) {
+                Object strP = str(index++, element, value, state);
+                partial.add(strP == Undefined.instance ? "null" : strP);
+            }
+        } else {
+            int len = Array.getLength(value);
+            for (int index = 0; index < len; index++) {
+                Object strP = str(index, Array.get(value, index), value,
+                                  state);
+                partial.add(strP == Undefined.instance ? "null" : strP);
+            }
+        }
+
+        final String finalValue;
+
+        if (partial.isEmpty()) {
+            finalValue = "[]";
+        } else {
+            if (state.gap.length() == 0) {
+                finalValue = '[' + join(partial, ",") + ']';
+            } else {
+                String separator = ",\n" + state.indent;
+                String properties = join(partial, separator);
+                finalValue = "[\n" + state.indent + properties + '\n' + stepback + ']';
+            }
+        }
+
+        state.stack.pop();
+        state.indent = stepback;
+        return finalValue;
+    }
+
+    private static void checkCycle(Object value, StringifyState state) {
+        // compare by identity, Java collections implement equals() by value
+        for (Object o : state.stack) {
+            if (o == value) {
+                throw ScriptRuntime.typeError0("msg.cyclic.value");
+            }
+        }
+    }
+
     private static String quote(String string) {
         StringBuffer product = new StringBuffer(string.length()+2); // two extra chars for " on either side
         product.append('"');
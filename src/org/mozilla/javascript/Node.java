@@ -97,7 +97,9 @@ public class Node implements Iterable<Node>
         JSDOC_PROP           = 24,
         EXPRESSION_CLOSURE_PROP = 25, // JS 1.8 expression closure pseudo-return 
         DESTRUCTURING_SHORTHAND = 26, // JS 1.8 destructuring shorthand
-        LAST_PROP            = 26;
+        NUMBER_PARAMS_PROP   = 27, // bit set of parameters known to be numbers
+        LOOP_ENTRY_PROP      = 28, // index of the loop where code starts
+        LAST_PROP            = 28;
 
     // values of ISNUMBER_PROP to specify
     // which of the children are Number types
@@ -448,6 +450,8 @@ public class Node implements Iterable<Node>
                                            return "destructuring_array_length";
                 case DESTRUCTURING_NAMES:  return "destructuring_names";
                 case DESTRUCTURING_PARAMS: return "destructuring_params";
+                case NUMBER_PARAMS_PROP:   return "number_params";
+                case LOOP_ENTRY_PROP:      return "loop_entry";
 
                 default: Kit.codeBug();
             }
@@ -86,6 +86,9 @@ public class NodeTransformer
         boolean createScopeObjects = tree.getType() != Token.FUNCTION ||
                                   ((FunctionNode)tree).requiresActivation();
         tree.flattenSymbolTable(!createScopeObjects);
+        if (!createScopeObjects) {
+            bindFunctionStatements(tree);
+        }
 
         //uncomment to print tree before transformation
         if (Token.printTrees) System.out.println(tree.toStringTree(tree));
@@ -95,6 +98,29 @@ public class NodeTransformer
                                    inStrictMode);
     }
 
+    /**
+     * Assigns the function statements of a function without activation
+     * object to their variables at the start of the function, where
+     * functions with activation objects define them in the activation.
+     */
+    private static void bindFunctionStatements(ScriptNode tree)
+    {
+        Node body = tree.getLastChild();
+        for (int i = tree.getFunctionCount() - 1; i >= 0; --i) {
+            FunctionNode fn = tree.getFunctionNode(i);
+            if (fn.getFunctionType() != FunctionNode.FUNCTION_STATEMENT) {
+                continue;
+            }
+            String name = fn.getName();
+            Node function = Node.newString(Token.FUNCTION, name);
+            function.putIntProp(Node.FUNCTION_PROP, i);
+            Node binding = new Node(Token.SETNAME,
+                                    Node.newString(Token.BINDNAME, name),
+                                    function);
+            body.addChildToFront(new Node(Token.EXPR_VOID, binding));
+        }
+    }
+
     private void transformCompilationUnit_r(final ScriptNode tree,
                                             final Node parent,
                                             Scope scope,
@@ -438,6 +464,43 @@ public class NodeTransformer
         }
     }
 
+    /**
+     * Returns the targets at which the bodies of loops start, in tree
+     * order. Only loops at statement level of <code>tree</code> are
+     * included, not those inside try, with or block scope statements, so
+     * no temporaries of the enclosing statements are live at the targets.
+     * @param tree the body of a function or a script
+     */
+    public static List<Node> getLoopEntries(Node tree)
+    {
+        List<Node> entries = new ArrayList<Node>();
+        addLoopEntries(tree, entries);
+        return entries;
+    }
+
+    private static void addLoopEntries(Node parent, List<Node> entries)
+    {
+        for (Node node = parent.getFirstChild(); node != null;
+             node = node.getNext())
+        {
+            switch (node.getType()) {
+              case Token.LOOP:
+                for (Node n = node.getFirstChild(); n != null; n = n.getNext()) {
+                    // The jump back to the start of the body
+                    if (n.getType() == Token.IFEQ) {
+                        entries.add(((Jump)n).target);
+                    }
+                }
+                addLoopEntries(node, entries);
+                break;
+              case Token.BLOCK:
+              case Token.LABEL:
+                addLoopEntries(node, entries);
+                break;
+            }
+        }
+    }
+
     protected void visitNew(Node node, ScriptNode tree) {
     }
 
@@ -115,6 +115,8 @@ public class Parser
     private LabeledStatement currentLabel;
     private boolean inDestructuringAssignment;
     protected boolean inUseStrictDirective;
+    // Set while skipFunctionBody scans a body, errors then only stop it
+    private boolean skippingBody;
 
     // The following are per function variables and should be saved/restored
     // during function parsing.  See PerFunctionVariables class below.
@@ -189,6 +191,7 @@ public class Parser
     void addWarning(String messageId, String messageArg,
                     int position, int length)
     {
+        if (skippingBody) return;
         String message = lookupMessage(messageId, messageArg);
         if (compilerEnv.reportWarningAsError()) {
             addError(messageId, messageArg, position, length);
@@ -215,6 +218,7 @@ public class Parser
 
     void addError(String messageId, String messageArg, int position, int length)
     {
+        if (skippingBody) throw new ParserException();
         ++syntaxErrorCount;
         String message = lookupMessage(messageId, messageArg);
         if (errorCollector != null) {
@@ -503,7 +507,12 @@ public class Parser
         }
         this.ts = new TokenStream(this, null, sourceString, lineno);
         try {
-            return parse();
+            AstRoot root = parse();
+            if (compilerEnv.isLazyFunctionCompilation()
+                || compilerEnv.isSpeculativeCompilation()) {
+                root.setSourceText(sourceString);
+            }
+            return root;
         } catch (IOException iox) {
             // Should never happen
             throw new IllegalStateException();
@@ -521,7 +530,9 @@ public class Parser
         throws IOException
     {
         if (parseFinished) throw new IllegalStateException("parser reused");
-        if (compilerEnv.isIdeMode()) {
+        if (compilerEnv.isIdeMode()
+            || compilerEnv.isLazyFunctionCompilation()
+            || compilerEnv.isSpeculativeCompilation()) {
             return parse(readFully(sourceReader), sourceURI, lineno);
         }
         try {
@@ -616,7 +627,7 @@ public class Parser
         return root;
     }
 
-    private AstNode parseFunctionBody()
+    private AstNode parseFunctionBody(FunctionNode fnNode, boolean canSkip)
         throws IOException
     {
         if (!matchToken(Token.LC)) {
@@ -634,8 +645,9 @@ public class Parser
         // Don't set 'inUseStrictDirective' to false: inherit strict mode.
         
         pn.setLineno(ts.lineno);
+        boolean skipped = canSkip && skipFunctionBody(fnNode);
         try {
-            bodyLoop: for (;;) {
+            bodyLoop: while (!skipped) {
                 AstNode n;
                 int tt = peekToken();
                 switch (tt) {
@@ -677,6 +689,129 @@ public class Parser
         return pn;
     }
     
+    /**
+     * Returns true if the body of a function starting with the function
+     * keyword may be skipped. Its source is then parsed on the first call,
+     * see {@link CompilerEnvirons#isLazyFunctionCompilation}. The function
+     * passed to Context.compileFunction is always parsed.
+     */
+    private boolean canSkipFunctionBody()
+    {
+        return compilerEnv.isLazyFunctionCompilation()
+               && compilerEnv.getOptimizationLevel() < 0
+               && !compilerEnv.isIdeMode()
+               && !compilerEnv.isStrictMode()
+               && !(calledByCompileFunction && nestingOfFunction == 0);
+    }
+
+    /**
+     * Scans the tokens of a function body up to its closing brace without
+     * parsing them and keeps the body source in <code>fnNode</code>.
+     * The stream then continues at the closing brace. Returns false and
+     * leaves the stream unchanged if the scan finds a lexical error or an
+     * XML literal, so the body is parsed as usual and errors are reported.
+     */
+    private boolean skipFunctionBody(FunctionNode fnNode)
+        throws IOException
+    {
+        TokenStream scanner = new TokenStream(this, ts);
+        int bodyStart = ts.cursor;
+        int braceDepth = 0;
+        // Whether the open parentheses follow if, while, for or with, so
+        // a slash after the closing one starts a regular expression
+        boolean[] conditions = new boolean[8];
+        int parenDepth = 0;
+        int prev = Token.LC;
+        skippingBody = true;
+        try {
+            for (;;) {
+                int tt = scanner.getToken();
+                switch (tt) {
+                  case Token.EOL:
+                  case Token.COMMENT:
+                    continue;
+                  case Token.EOF:
+                  case Token.ERROR:
+                    return false;
+                  case Token.LC:
+                    ++braceDepth;
+                    break;
+                  case Token.RC:
+                    if (braceDepth == 0) {
+                        fnNode.setSkippedBody(ts.getSourceString()
+                            .substring(bodyStart, scanner.tokenBeg));
+                        ts.skipTo(scanner);
+                        return true;
+                    }
+                    --braceDepth;
+                    break;
+                  case Token.LP:
+                    if (parenDepth == conditions.length) {
+                        boolean[] tmp = new boolean[parenDepth * 2];
+                        System.arraycopy(conditions, 0, tmp, 0, parenDepth);
+                        conditions = tmp;
+                    }
+                    conditions[parenDepth++] = prev == Token.IF
+                                               || prev == Token.WHILE
+                                               || prev == Token.FOR
+                                               || prev == Token.WITH;
+                    break;
+                  case Token.RP:
+                    if (parenDepth == 0) {
+                        return false;
+                    }
+                    if (conditions[--parenDepth]) {
+                        // A statement follows
+                        tt = Token.SEMI;
+                    }
+                    break;
+                  case Token.DIV:
+                  case Token.ASSIGN_DIV:
+                    if (startsOperand(prev)) {
+                        scanner.readRegExp(tt);
+                        tt = Token.REGEXP;
+                    }
+                    break;
+                  case Token.LT:
+                    if (startsOperand(prev)) {
+                        // An XML literal
+                        return false;
+                    }
+                    break;
+                }
+                prev = tt;
+            }
+        } catch (ParserException e) {
+            return false;
+        } finally {
+            skippingBody = false;
+        }
+    }
+
+    /**
+     * Returns true if an operand and not an operator follows the token
+     * <code>prev</code> in a function body scanned by skipFunctionBody.
+     */
+    private static boolean startsOperand(int prev)
+    {
+        switch (prev) {
+          case Token.NAME:
+          case Token.NUMBER:
+          case Token.STRING:
+          case Token.REGEXP:
+          case Token.RP:
+          case Token.RB:
+          case Token.THIS:
+          case Token.TRUE:
+          case Token.FALSE:
+          case Token.NULL:
+          case Token.INC:
+          case Token.DEC:
+            return false;
+        }
+        return true;
+    }
+
     private String getDirective(AstNode n) {
         if (n instanceof ExpressionStatement) {
             AstNode e = ((ExpressionStatement) n).getExpression();
@@ -773,6 +908,9 @@ public class Parser
         int syntheticType = type;
         int baseLineno = ts.lineno;  // line number where source starts
         int functionSourceStart = ts.tokenBeg;  // start of "function" kwd
+        // Getters and setters do not start with the keyword
+        boolean canSkip = currentToken == Token.FUNCTION
+                          && canSkipFunctionBody();
         Name name = null;
         AstNode memberExprNode = null;
 
@@ -834,7 +972,7 @@ public class Parser
         PerFunctionVariables savedVars = new PerFunctionVariables(fnNode);
         try {
             parseFunctionParams(fnNode);
-            fnNode.setBody(parseFunctionBody());
+            fnNode.setBody(parseFunctionBody(fnNode, canSkip));
             fnNode.setEncodedSourceBounds(functionSourceStart, ts.tokenEnd);
             fnNode.setLength(ts.tokenEnd - functionSourceStart);
 
@@ -56,6 +56,7 @@ import java.util.regex.Pattern;
  */
 public abstract class RhinoException extends RuntimeException
 {
+    static final long serialVersionUID = 1883500631321581169L;
 
     RhinoException()
     {
@@ -273,26 +274,52 @@ public abstract class RhinoException extends RuntimeException
      * @since 1.7R3
      */
     public ScriptStackElement[] getScriptStack() {
-        List<ScriptStackElement> list = new ArrayList<ScriptStackElement>();
         ScriptStackElement[][] interpreterStack = null;
         if (interpreterStackInfo != null) {
             Evaluator interpreter = Context.createInterpreter();
             if (interpreter instanceof Interpreter)
                 interpreterStack = ((Interpreter) interpreter).getScriptStackElements(this);
         }
+        return getScriptStack(getStackTrace(), interpreterStack);
+    }
+
+    // Pattern to recover function name from java method name -
+    // see Codegen.getBodyMethodName()
+    // kudos to Marc Guillemot for coming up with this
+    private static final Pattern pattern = Pattern.compile("_c_(.*)_\\d+");
+    // Large bodies are split into chained methods ending in "_partN",
+    // only the innermost of the chain is reported
+    private static final Pattern partPattern = Pattern.compile("_part\\d+$");
+
+    /**
+     * Merges the frames of compiled scripts in a Java stack trace with
+     * the frames of the interpreter invocations on it, innermost first.
+     */
+    static ScriptStackElement[] getScriptStack(
+        StackTraceElement[] stack, ScriptStackElement[][] interpreterStack)
+    {
+        List<ScriptStackElement> list = new ArrayList<ScriptStackElement>();
         int interpreterStackIndex = 0;
-        StackTraceElement[] stack = getStackTrace();
-        // Pattern to recover function name from java method name -
-        // see Codegen.getBodyMethodName()
-        // kudos to Marc Guillemot for coming up with this
-        Pattern pattern = Pattern.compile("_c_(.*)_\\d+");
-        for (StackTraceElement e : stack) {
+        String chainMethod = null;
+        int chainIndex = -1;
+        for (int i = 0; i < stack.length; i++) {
+            StackTraceElement e = stack[i];
             String fileName = e.getFileName();
             if (e.getMethodName().startsWith("_c_")
                     && e.getLineNumber() > -1
                     && fileName != null
                     && !fileName.endsWith(".java")) {
-                String methodName = e.getMethodName();
+                Matcher part = partPattern.matcher(e.getMethodName());
+                boolean isPart = part.find();
+                String methodName = isPart
+                        ? e.getMethodName().substring(0, part.start())
+                        : e.getMethodName();
+                if (i == chainIndex + 1 && methodName.equals(chainMethod)) {
+                    chainIndex = isPart ? i : -1;
+                    continue;
+                }
+                chainMethod = methodName;
+                chainIndex = isPart ? i : -1;
                 Matcher match = pattern.matcher(methodName);
                 // the method representing the main script is always "_c_script_0" -
                 // at least we hope so
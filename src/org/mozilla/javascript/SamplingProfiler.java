@@ -0,0 +1,343 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+/**
+ * Samples the JavaScript stacks of scripts running with the Contexts of
+ * a {@link ContextFactory} and counts how often each stack was seen.
+ * <p>
+ * When a sample is due the script records its own stack at the next
+ * loop back-edge or function entry, where it also checks for
+ * {@link Context#interrupt()}. Stacks contain both interpreted and
+ * compiled functions, see {@link RhinoException#getScriptStack()};
+ * compiled functions only show if they were compiled with debug
+ * information.
+ * The result can be written as collapsed stacks, one line per stack
+ * with its frames from the outermost and the number of samples, or
+ * as an SVG flame graph.
+ * <pre>
+ * SamplingProfiler profiler = new SamplingProfiler(10);
+ * factory.setProfiler(profiler);
+ * profiler.start();
+ * ...
+ * profiler.stop();
+ * profiler.writeFlameGraph(writer);
+ * </pre>
+ */
+public class SamplingProfiler
+{
+    private final int intervalMillis;
+    private boolean lineNumbers;
+    private final Set<Context> contexts = new HashSet<Context>();
+    private TimerTask task;
+    private Map<String,int[]> stacks = new TreeMap<String,int[]>();
+    private int sampleCount;
+
+    /**
+     * @param intervalMillis milliseconds between samples of each Context
+     */
+    public SamplingProfiler(int intervalMillis)
+    {
+        if (intervalMillis <= 0) throw new IllegalArgumentException();
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Starts taking samples.
+     */
+    public synchronized void start()
+    {
+        if (task != null) {
+            return;
+        }
+        task = new TimerTask() {
+            @Override
+            public void run() {
+                Context[] array;
+                synchronized (contexts) {
+                    array = contexts.toArray(new Context[contexts.size()]);
+                }
+                for (Context cx : array) {
+                    cx.requestSample();
+                }
+            }
+        };
+        Context.getTimer().schedule(task, intervalMillis, intervalMillis);
+    }
+
+    /**
+     * Stops taking samples. The samples taken so far are kept.
+     */
+    public synchronized void stop()
+    {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public synchronized boolean isRunning()
+    {
+        return task != null;
+    }
+
+    /**
+     * If true, frames include the line the function was executing, so
+     * the samples of a function are split by line.
+     */
+    public synchronized void setLineNumbers(boolean lineNumbers)
+    {
+        this.lineNumbers = lineNumbers;
+    }
+
+    public synchronized int getSampleCount()
+    {
+        return sampleCount;
+    }
+
+    /**
+     * Discards the samples taken so far.
+     */
+    public synchronized void reset()
+    {
+        stacks = new TreeMap<String,int[]>();
+        sampleCount = 0;
+    }
+
+    /**
+     * Returns the number of samples for each stack. Stacks are the names
+     * of their frames from the outermost separated by semicolons.
+     */
+    public synchronized Map<String,Integer> getStacks()
+    {
+        Map<String,Integer> result = new TreeMap<String,Integer>();
+        for (Map.Entry<String,int[]> e : stacks.entrySet()) {
+            result.put(e.getKey(), Integer.valueOf(e.getValue()[0]));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the samples in the collapsed stack format read by flame
+     * graph tools: each stack followed by a space and its sample count.
+     */
+    public void writeCollapsedStacks(Writer out) throws IOException
+    {
+        for (Map.Entry<String,Integer> e : getStacks().entrySet()) {
+            out.write(e.getKey());
+            out.write(' ');
+            out.write(e.getValue().toString());
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    private static final int GRAPH_WIDTH = 1200;
+    private static final int FRAME_HEIGHT = 16;
+
+    /**
+     * Writes the samples as an SVG flame graph: the outermost frames are
+     * at the bottom and the width of a frame is proportional to the
+     * number of samples it appears in.
+     */
+    public void writeFlameGraph(Writer out) throws IOException
+    {
+        FrameNode root = new FrameNode("all");
+        for (Map.Entry<String,Integer> e : getStacks().entrySet()) {
+            int count = e.getValue().intValue();
+            FrameNode node = root;
+            node.count += count;
+            for (String name : e.getKey().split(";")) {
+                node = node.getChild(name);
+                node.count += count;
+            }
+        }
+        int depth = root.getDepth();
+        int height = depth * FRAME_HEIGHT;
+        out.write("<?xml version=\"1.0\" standalone=\"no\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\""
+                  + GRAPH_WIDTH + "\" height=\"" + height
+                  + "\" font-family=\"Verdana\" font-size=\"12\">\n");
+        if (root.count != 0) {
+            writeFrame(out, root, 0, height - FRAME_HEIGHT,
+                       (double)GRAPH_WIDTH / root.count, root.count);
+        }
+        out.write("</svg>\n");
+        out.flush();
+    }
+
+    private static void writeFrame(Writer out, FrameNode node, double x,
+                                   int y, double scale, int total)
+        throws IOException
+    {
+        double width = node.count * scale;
+        if (width < 0.5) {
+            return;
+        }
+        String name = escape(node.name);
+        int hash = node.name.hashCode() & 0x7fffffff;
+        out.write("<g><title>" + name + " (" + node.count + " samples, "
+                  + (node.count * 1000L / total) / 10.0 + "%)</title>");
+        out.write("<rect x=\"" + round(x) + "\" y=\"" + y
+                  + "\" width=\"" + round(width) + "\" height=\""
+                  + (FRAME_HEIGHT - 1) + "\" fill=\"rgb("
+                  + (205 + hash % 50) + "," + (80 + hash / 50 % 120) + ","
+                  + (hash / 6000 % 55) + ")\"/>");
+        int chars = (int)(width / 7);
+        if (chars > 2) {
+            String text = node.name.length() <= chars
+                          ? node.name
+                          : node.name.substring(0, chars - 2) + "..";
+            out.write("<text x=\"" + round(x + 3) + "\" y=\""
+                      + (y + FRAME_HEIGHT - 4) + "\">" + escape(text)
+                      + "</text>");
+        }
+        out.write("</g>\n");
+        for (FrameNode child : node.children.values()) {
+            writeFrame(out, child, x, y - FRAME_HEIGHT, scale, total);
+            x += child.count * scale;
+        }
+    }
+
+    private static String round(double value)
+    {
+        return String.valueOf(Math.round(value * 10) / 10.0);
+    }
+
+    private static String escape(String s)
+    {
+        return s.replace("&", "&amp;").replace("<", "&lt;")
+                .replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static final class FrameNode
+    {
+        final String name;
+        int count;
+        final Map<String,FrameNode> children
+            = new TreeMap<String,FrameNode>();
+
+        FrameNode(String name)
+        {
+            this.name = name;
+        }
+
+        FrameNode getChild(String childName)
+        {
+            FrameNode child = children.get(childName);
+            if (child == null) {
+                child = new FrameNode(childName);
+                children.put(childName, child);
+            }
+            return child;
+        }
+
+        int getDepth()
+        {
+            int max = 0;
+            for (FrameNode child : children.values()) {
+                max = Math.max(max, child.getDepth());
+            }
+            return max + 1;
+        }
+    }
+
+    void contextEntered(Context cx)
+    {
+        synchronized (contexts) {
+            contexts.add(cx);
+        }
+    }
+
+    void contextExited(Context cx)
+    {
+        synchronized (contexts) {
+            contexts.remove(cx);
+        }
+    }
+
+    /**
+     * Called by a script running with <code>cx</code> on its own thread
+     * after {@link Context#requestSample()}.
+     */
+    void sample(Context cx)
+    {
+        ScriptStackElement[] stack = RhinoException.getScriptStack(
+            new Throwable().getStackTrace(),
+            Interpreter.getScriptStackElements(cx));
+        if (stack.length == 0) {
+            return;
+        }
+        boolean withLines;
+        synchronized (this) {
+            withLines = lineNumbers;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = stack.length; i != 0;) {
+            ScriptStackElement e = stack[--i];
+            sb.append(e.functionName != null ? e.functionName
+                                             : "(anonymous)");
+            sb.append(" (").append(e.fileName);
+            if (withLines && e.lineNumber > -1) {
+                sb.append(':').append(e.lineNumber);
+            }
+            sb.append(')');
+            if (i != 0) {
+                sb.append(';');
+            }
+        }
+        String key = sb.toString().replace('\n', ' ');
+        synchronized (this) {
+            int[] count = stacks.get(key);
+            if (count == null) {
+                stacks.put(key, new int[] { 1 });
+            } else {
+                ++count[0];
+            }
+            ++sampleCount;
+        }
+    }
+}
@@ -56,6 +56,7 @@ import java.util.Locale;
 import java.util.ResourceBundle;
 
 import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.v8dtoa.FastDtoa;
 import org.mozilla.javascript.xml.XMLObject;
 import org.mozilla.javascript.xml.XMLLib;
 
@@ -338,7 +339,13 @@ public class ScriptRuntime {
 
     public static Number wrapNumber(double x)
     {
-        if (x != x) {
+        int i = (int)x;
+        if (i == x && (i & ~(SMALL_INTEGER_COUNT - 1)) == 0) {
+            // Check for negative zero
+            if (i != 0 || 1.0 / x > 0.0) {
+                return smallIntegers[i];
+            }
+        } else if (x != x) {
             return ScriptRuntime.NaNobj;
         }
         return new Double(x);
@@ -429,6 +436,17 @@ public class ScriptRuntime {
 
     public static final Double NaNobj = new Double(NaN);
 
+    // Shared wrappers for small non-negative integers, which are the most
+    // common numbers stored in arrays, properties and variables
+    private static final int SMALL_INTEGER_COUNT = 1024;
+    private static final Double[] smallIntegers = new Double[SMALL_INTEGER_COUNT];
+
+    static {
+        for (int i = 0; i != SMALL_INTEGER_COUNT; ++i) {
+            smallIntegers[i] = new Double(i);
+        }
+    }
+
     /*
      * Helper function for toNumber, parseInt, and TokenStream.getToken.
      */
@@ -581,6 +599,61 @@ public class ScriptRuntime {
         return sum;
     }
 
+    private static final double[] exactPowersOfTen = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+        1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22
+    };
+
+    /*
+     * Helper function for toNumber and parseFloat. Converts s[start, end) if
+     * it is a plain decimal number of the form [+-]digits[.digits] whose
+     * significant digits fit into 53 bits and whose fraction has at most 22
+     * digits. Both the significand and the power of ten are then exact
+     * doubles, so a single multiplication or division gives the correctly
+     * rounded result without creating a substring for Double.valueOf().
+     * Returns NaN for any other input, in which case the caller must use
+     * the general conversion.
+     */
+    static double decimalToNumber(String s, int start, int end) {
+        if (start >= end) {
+            return NaN;
+        }
+        boolean negative = false;
+        char c = s.charAt(start);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            start++;
+        }
+        long value = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            c = s.charAt(i);
+            if ('0' <= c && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value >= (1L << 53)) {
+                    return NaN;
+                }
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return NaN;
+            }
+        }
+        if (digits == 0 || fractionDigits >= exactPowersOfTen.length) {
+            return NaN;
+        }
+        double d = value;
+        if (fractionDigits > 0) {
+            d /= exactPowersOfTen[fractionDigits];
+        }
+        return negative ? -d : d;
+    }
 
     /**
      * ToNumber applied to the String type
@@ -635,8 +708,12 @@ public class ScriptRuntime {
                     : Double.POSITIVE_INFINITY;
             return NaN;
         }
-        // A non-hexadecimal, non-infinity number:
-        // just try a normal floating point conversion
+        // A non-hexadecimal, non-infinity number: try the fast path for
+        // plain decimals, then a normal floating point conversion
+        double d = decimalToNumber(s, start, end + 1);
+        if (d == d) {
+            return d;
+        }
         String sub = s.substring(start, end+1);
         if (MSJVM_BUG_WORKAROUNDS) {
             // The MS JVM will accept non-conformant strings
@@ -836,6 +913,16 @@ public class ScriptRuntime {
         if (base != 10) {
             return DToA.JS_dtobasestr(base, d);
         } else {
+            int i = (int) d;
+            if (i == d) {
+                return Integer.toString(i);
+            }
+            // Grisu3 can't convert all numbers, so try it first but fall
+            // back to DToA in case it fails
+            String fast = FastDtoa.numberToString(d);
+            if (fast != null) {
+                return fast;
+            }
             StringBuffer result = new StringBuffer();
             DToA.JS_dtostr(result, DToA.DTOSTR_STANDARD, 0, d);
             return result.toString();
@@ -1483,6 +1570,39 @@ public class ScriptRuntime {
         return result;
     }
 
+    /**
+     * Returns arguments[elem] for the function activation <code>scope</code>
+     * without creating the arguments object when possible.
+     */
+    public static Object getArgumentsElem(Object elem, Context cx,
+                                          Scriptable scope)
+    {
+        if (scope instanceof NativeCall) {
+            Object result = ((NativeCall)scope).getArgument(elem);
+            if (result != Scriptable.NOT_FOUND) {
+                return result;
+            }
+        }
+        return getObjectElem(name(cx, scope, "arguments"), elem, cx, scope);
+    }
+
+    /**
+     * Returns arguments.length for the function activation
+     * <code>scope</code> without creating the arguments object when
+     * possible.
+     */
+    public static Object getArgumentsLength(Context cx, Scriptable scope)
+    {
+        if (scope instanceof NativeCall) {
+            Object result = ((NativeCall)scope).getArgumentsLength();
+            if (result != Scriptable.NOT_FOUND) {
+                return result;
+            }
+        }
+        return getObjectProp(name(cx, scope, "arguments"), "length", cx,
+                             scope);
+    }
+
     /**
      * Version of getObjectElem when elem is a valid JS identifier name.
      */
@@ -1532,6 +1652,34 @@ public class ScriptRuntime {
         return result;
     }
     
+    /**
+     * Version of getObjectProp that tries the cache of the access site
+     * first.
+     */
+    public static Object getObjectProp(Object obj, NameCache cache,
+                                       Context cx, final Scriptable scope)
+    {
+        if (obj instanceof ScriptableObject) {
+            Object result = cache.get((Scriptable)obj);
+            if (result != Scriptable.NOT_FOUND) {
+                return result;
+            }
+        }
+        return getObjectProp(obj, cache.getName(), cx, scope);
+    }
+
+    public static Object getObjectProp(Scriptable obj, NameCache cache,
+                                       Context cx)
+    {
+        if (obj instanceof ScriptableObject) {
+            Object result = cache.get(obj);
+            if (result != Scriptable.NOT_FOUND) {
+                return result;
+            }
+        }
+        return getObjectProp(obj, cache.getName(), cx);
+    }
+
     public static Object getObjectPropNoWarn(Object obj, String property,
                                              Context cx)
     {
@@ -1645,6 +1793,21 @@ public class ScriptRuntime {
         return value;
     }
 
+    /**
+     * Version of setObjectProp that tries the cache of the access site
+     * first.
+     */
+    public static Object setObjectProp(Object obj, NameCache cache,
+                                       Object value, Context cx)
+    {
+        if (obj instanceof ScriptableObject
+            && cache.put((Scriptable)obj, value))
+        {
+            return value;
+        }
+        return setObjectProp(obj, cache.getName(), value, cx);
+    }
+
     /*
      * A cheaper and less general version of the above for well-known argument
      * types.
@@ -1785,6 +1948,126 @@ public class ScriptRuntime {
         return nameOrFunction(cx, scope, parent, name, false);
     }
 
+    /**
+     * Looks up a name like {@link #name(Context, Scriptable, String)},
+     * trying the cache first when scope is a top level scope.
+     */
+    public static Object name(Context cx, Scriptable scope, NameCache cache)
+    {
+        if (!cx.useDynamicScope && scope.getParentScope() == null) {
+            Object result = cache.get(scope);
+            if (result != Scriptable.NOT_FOUND) {
+                return result;
+            }
+        }
+        return name(cx, scope, cache.getName());
+    }
+
+    /**
+     * Looks up a variable of the activation of this or an enclosing
+     * function by index. <code>upvar</code> is (depth &lt;&lt; 16) | index,
+     * where depth is the number of activations on the scope chain before
+     * the one with the variable and index is the index of the variable in
+     * {@link NativeCall#createVarIndexes(String[], boolean[], int)}.
+     * The name is looked up as usual when other scopes come first or
+     * the variable was moved to a property slot.
+     */
+    public static Object getUpvar(Context cx, Scriptable scope, String name,
+                                  int upvar)
+    {
+        NativeCall call = findUpvarActivation(scope, upvar);
+        if (call != null) {
+            Object value = call.getVar(upvar & 0xFFFF);
+            if (value != Scriptable.NOT_FOUND) {
+                return value;
+            }
+        }
+        return name(cx, scope, name);
+    }
+
+    /**
+     * Sets a variable found like in
+     * {@link #getUpvar(Context, Scriptable, String, int)}.
+     */
+    public static Object setUpvar(Object value, Context cx, Scriptable scope,
+                                  String name, int upvar)
+    {
+        NativeCall call = findUpvarActivation(scope, upvar);
+        if (call == null || !call.setVar(upvar & 0xFFFF, value)) {
+            Scriptable bound = bind(cx, scope, name);
+            return setName(bound, value, cx, scope, name);
+        }
+        return value;
+    }
+
+    /**
+     * Prepare for calling a variable found like in
+     * {@link #getUpvar(Context, Scriptable, String, int)}, see
+     * {@link #getNameFunctionAndThis(String, Context, Scriptable)}.
+     */
+    public static Callable getUpvarFunctionAndThis(Context cx,
+                                                   Scriptable scope,
+                                                   String name, int upvar)
+    {
+        NativeCall call = findUpvarActivation(scope, upvar);
+        Object value = call == null ? Scriptable.NOT_FOUND
+                                    : call.getVar(upvar & 0xFFFF);
+        if (value == Scriptable.NOT_FOUND) {
+            return getNameFunctionAndThis(name, cx, scope);
+        }
+        if (!(value instanceof Callable)) {
+            throw notFunctionError(value, name);
+        }
+        // ECMA 262 requires that this for nested functions
+        // should be top scope
+        storeScriptable(cx, ScriptableObject.getTopLevelScope(call));
+        return (Callable)value;
+    }
+
+    /**
+     * Increments or decrements a variable found like in
+     * {@link #getUpvar(Context, Scriptable, String, int)}, see
+     * {@link #nameIncrDecr(Scriptable, String, Context, int)}.
+     */
+    public static Object upvarIncrDecr(Context cx, Scriptable scope,
+                                       String name, int upvar,
+                                       int incrDecrMask)
+    {
+        NativeCall call = findUpvarActivation(scope, upvar);
+        Object value = call == null ? Scriptable.NOT_FOUND
+                                    : call.getVar(upvar & 0xFFFF);
+        if (value == Scriptable.NOT_FOUND) {
+            return nameIncrDecr(scope, name, cx, incrDecrMask);
+        }
+        double number = toNumber(value);
+        double result = ((incrDecrMask & Node.DECR_FLAG) == 0)
+                        ? number + 1.0 : number - 1.0;
+        Number wrapped = wrapNumber(result);
+        if (!call.setVar(upvar & 0xFFFF, wrapped)) {
+            // Moved to a property slot while converting the value
+            setName(bind(cx, scope, name), wrapped, cx, scope, name);
+        }
+        return ((incrDecrMask & Node.POST_FLAG) == 0) ? wrapped
+                                                       : wrapNumber(number);
+    }
+
+    /**
+     * Returns the activation the variable <code>upvar</code> of
+     * {@link #getUpvar(Context, Scriptable, String, int)} belongs to, or
+     * null if the scope chain has other scopes before it.
+     */
+    private static NativeCall findUpvarActivation(Scriptable scope,
+                                                  int upvar)
+    {
+        for (int depth = upvar >>> 16; scope instanceof NativeCall; --depth) {
+            if (depth == 0) {
+                return (NativeCall)scope;
+            }
+            scope = scope.getParentScope();
+        }
+        return null;
+    }
+
     private static Object nameOrFunction(Context cx, Scriptable scope,
                                          Scriptable parentScope, String name,
                                          boolean asFunctionCall)
@@ -2247,6 +2530,26 @@ public class ScriptRuntime {
         return (Callable)nameOrFunction(cx, scope, parent, name, true);
     }
 
+    /**
+     * Prepare for calling name(...) like
+     * {@link #getNameFunctionAndThis(String, Context, Scriptable)}, trying
+     * the cache first when scope is a top level scope.
+     */
+    public static Callable getNameFunctionAndThis(NameCache cache,
+                                                  Context cx,
+                                                  Scriptable scope)
+    {
+        if (!cx.useDynamicScope && scope.getParentScope() == null) {
+            Object result = cache.get(scope);
+            if (result instanceof Callable) {
+                // Top scope is not NativeWith or NativeCall => thisObj == scope
+                storeScriptable(cx, scope);
+                return (Callable)result;
+            }
+        }
+        return getNameFunctionAndThis(cache.getName(), cx, scope);
+    }
+
     /**
      * Prepare for calling obj[id](...): return function corresponding to
      * obj[id] and make obj properly converted to Scriptable available
@@ -2326,6 +2629,26 @@ public class ScriptRuntime {
         return getPropFunctionAndThisHelper(obj, property, cx, thisObj);
     }
     
+    /**
+     * Prepare for calling obj.property(...) like
+     * {@link #getPropFunctionAndThis(Object, String, Context, Scriptable)},
+     * trying the cache of the call site first.
+     */
+    public static Callable getPropFunctionAndThis(Object obj,
+                                                  NameCache cache,
+                                                  Context cx,
+                                                  final Scriptable scope)
+    {
+        if (obj instanceof ScriptableObject) {
+            Object value = cache.get((Scriptable)obj);
+            if (value instanceof Callable) {
+                storeScriptable(cx, (Scriptable)obj);
+                return (Callable)value;
+            }
+        }
+        return getPropFunctionAndThis(obj, cache.getName(), cx, scope);
+    }
+
     private static Callable getPropFunctionAndThisHelper(Object obj,
           String property, Context cx, Scriptable thisObj)
     {
@@ -3214,6 +3537,43 @@ public class ScriptRuntime {
         }
     }
     
+    /**
+     * Called at loop back-edges and function entries of scripts to stop
+     * them once {@link Context#interrupt} was called or a resource budget
+     * is exhausted.
+     */
+    public static void checkInterrupt(Context cx)
+    {
+        if (cx.interruptPending) {
+            cx.processInterrupt();
+        }
+    }
+
+    /**
+     * Called by compiled code generated with
+     * {@link CompilerEnvirons#isGenerateInstrumentation()} when a function
+     * or script is called. Returns the start time to pass to
+     * {@link #exitInstrumentedCall}, or 0 if the call is not reported.
+     */
+    public static long enterInstrumentedCall(Context cx)
+    {
+        return cx.instrumentation == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Reports a call of compiled code that returned or threw to the
+     * {@link Instrumentation} of the Context.
+     */
+    public static void exitInstrumentedCall(NativeFunction function,
+                                            Context cx, long callStart)
+    {
+        Instrumentation instrumentation = cx.instrumentation;
+        if (instrumentation != null && callStart != 0) {
+            instrumentation.functionCalled(cx, function,
+                                           System.nanoTime() - callStart);
+        }
+    }
+
     public static void addInstructionCount(Context cx, int instructionsToAdd)
     {
     	cx.instructionCount += instructionsToAdd;
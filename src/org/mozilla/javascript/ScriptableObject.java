@@ -48,6 +48,7 @@
 package org.mozilla.javascript;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
@@ -61,8 +62,10 @@ import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.mozilla.javascript.debug.DebuggableObject;
+import org.mozilla.javascript.serialize.ScriptableOutputStream;
 import org.mozilla.javascript.annotations.JSConstructor;
 import org.mozilla.javascript.annotations.JSFunction;
 import org.mozilla.javascript.annotations.JSGetter;
@@ -87,6 +90,9 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
                                                   DebuggableObject,
                                                   ConstProperties
 {
+    // The value computed for 1.7R3 before members were added, so objects
+    // serialized by it can still be read
+    static final long serialVersionUID = 2829861078851942586L;
 
     /**
      * The empty property attribute.
@@ -158,6 +164,10 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
 
     private volatile Map<Object,Object> associatedValues;
 
+    // Weak keys so the cache does not keep classes from being unloaded
+    private static final Map<Class<?>,Boolean> cacheableClasses =
+        new WeakHashMap<Class<?>,Boolean>();
+
     private static final int SLOT_QUERY = 1;
     private static final int SLOT_MODIFY = 2;
     private static final int SLOT_MODIFY_CONST = 3;
@@ -2516,6 +2526,92 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         return slot.getValue(start);
     }
 
+    /**
+     * Returns the slot of the own data property name for {@link NameCache},
+     * or null if there is no such property or {@link #get(String,
+     * Scriptable)} or {@link #put(String, Scriptable, Object)} of this
+     * object may not use the slot.
+     */
+    Object getCacheableSlot(String name)
+    {
+        if (!isCacheableClass(getClass())) {
+            return null;
+        }
+        Slot slot = getSlot(name, 0, SLOT_QUERY);
+        if (slot == null || slot instanceof GetterSlot) {
+            return null;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the value of a slot from {@link #getCacheableSlot(String)}, or
+     * NOT_FOUND if the property was deleted or redefined since.
+     */
+    static Object getCachedSlotValue(Object cachedSlot)
+    {
+        Slot slot = (Slot)cachedSlot;
+        // removeSlot sets wasDeleted before clearing the value
+        Object value = slot.value;
+        return slot.wasDeleted ? Scriptable.NOT_FOUND : value;
+    }
+
+    /**
+     * Stores value in a slot from {@link #getCacheableSlot(String)} of obj
+     * and returns true, or returns false if only {@link #put(String,
+     * Scriptable, Object)} can tell what the assignment does.
+     */
+    static boolean putCachedSlotValue(ScriptableObject obj, Object cachedSlot,
+                                      Object value)
+    {
+        Slot slot = (Slot)cachedSlot;
+        if (slot.wasDeleted || (slot.getAttributes() & READONLY) != 0
+            || obj.isSealed())
+        {
+            return false;
+        }
+        slot.value = value;
+        return true;
+    }
+
+    private static boolean isCacheableClass(Class<?> cl)
+    {
+        Boolean cacheable;
+        synchronized (cacheableClasses) {
+            cacheable = cacheableClasses.get(cl);
+        }
+        if (cacheable == null) {
+            cacheable = Boolean.valueOf(
+                isOwnSlotMethod(cl, "get", String.class, Scriptable.class)
+                && isOwnSlotMethod(cl, "put", String.class, Scriptable.class,
+                                   Object.class));
+            synchronized (cacheableClasses) {
+                cacheableClasses.put(cl, cacheable);
+            }
+        }
+        return cacheable.booleanValue();
+    }
+
+    private static boolean isOwnSlotMethod(Class<?> cl, String name,
+                                           Class<?>... parameterTypes)
+    {
+        Class<?> declaringClass;
+        try {
+            declaringClass = cl.getMethod(name, parameterTypes)
+                               .getDeclaringClass();
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (SecurityException e) {
+            return false;
+        }
+        // These look up own slots before anything else. NativeArray.put
+        // only differs for array indexes, which are never cached.
+        return declaringClass == ScriptableObject.class
+            || declaringClass == IdScriptableObject.class
+            || declaringClass == ImporterTopLevel.class
+            || (declaringClass == NativeArray.class && name.equals("put"));
+    }
+
     /**
      *
      * @param name
@@ -2802,6 +2898,32 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         }
     }
 
+    /**
+     * Adds the slots of this object and the objects they reach to a
+     * footprint. Subclasses that keep other data add it after calling
+     * this method.
+     */
+    void addFootprint(MemoryFootprint footprint)
+    {
+        footprint.reach(prototypeObject);
+        footprint.reach(parentScopeObject);
+        Slot[] slots = this.slots;
+        if (slots == null) {
+            return;
+        }
+        footprint.countArray(MemoryFootprint.SLOTS, slots);
+        // Deleted slots stay in the list until getIds removes them
+        for (Slot slot = firstAdded; slot != null; slot = slot.orderedNext) {
+            footprint.countInstance(MemoryFootprint.SLOTS, slot);
+            footprint.countString(MemoryFootprint.SLOTS, slot.name);
+            footprint.reach(slot.value);
+            if (slot instanceof GetterSlot) {
+                footprint.reach(((GetterSlot)slot).getter);
+                footprint.reach(((GetterSlot)slot).setter);
+            }
+        }
+    }
+
     Object[] getIds(boolean getAll) {
         Slot[] s = slots;
         Object[] a = ScriptRuntime.emptyArgs;
@@ -2853,9 +2975,13 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
             // "this" was sealed
             objectsCount = ~objectsCount;
         }
+        boolean compact = out instanceof ScriptableOutputStream;
         if (objectsCount == 0) {
             out.writeInt(0);
         } else {
+            if (compact) {
+                out.writeInt(COMPACT_SLOTS_V1);
+            }
             out.writeInt(slots.length);
             Slot slot = firstAdded; 
             while (slot != null && slot.wasDeleted) {
@@ -2865,7 +2991,11 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
             }
             firstAdded = slot;
             while (slot != null) {
-                out.writeObject(slot);
+                if (compact) {
+                    writeSlot(out, slot);
+                } else {
+                    out.writeObject(slot);
+                }
                 Slot next = slot.orderedNext;
                 while (next != null && next.wasDeleted) {
                     // remove deleted slots
@@ -2883,6 +3013,15 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         in.defaultReadObject();
 
         int tableSize = in.readInt();
+        boolean compact = false;
+        if (tableSize < 0) {
+            if (tableSize != COMPACT_SLOTS_V1) {
+                throw new InvalidObjectException(
+                    "Unknown property format " + tableSize);
+            }
+            compact = true;
+            tableSize = in.readInt();
+        }
         if (tableSize != 0) {
             // If tableSize is not a power of 2 find the closest 
             // power of 2 >= the original size.
@@ -2900,7 +3039,7 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
             }
             Slot prev = null;
             for (int i=0; i != objectsCount; ++i) {
-                lastAdded = (Slot)in.readObject();
+                lastAdded = compact ? readSlot(in) : (Slot)in.readObject();
                 if (i==0) {
                     firstAdded = lastAdded;
                 } else {
@@ -2913,6 +3052,117 @@ public abstract class ScriptableObject implements Scriptable, Serializable,
         }
     }
 
+    // To a ScriptableOutputStream slots are written as typed records
+    // instead of as serialized Slot objects: a flags byte, the name or
+    // index, the attributes and the values, see writeValue. The table size
+    // is then preceded by this marker, which later versions of the format
+    // are to replace with other negative numbers.
+    private static final int COMPACT_SLOTS_V1 = -1;
+
+    private static final int SLOT_NAMED = 1 << 0;
+    private static final int SLOT_GETTER = 1 << 1;
+
+    private static void writeSlot(ObjectOutputStream out, Slot slot)
+        throws IOException
+    {
+        int flags = 0;
+        if (slot.name != null) flags |= SLOT_NAMED;
+        if (slot instanceof GetterSlot) flags |= SLOT_GETTER;
+        out.writeByte(flags);
+        if (slot.name != null) {
+            out.writeObject(slot.name);
+        } else {
+            out.writeInt(slot.indexOrHash);
+        }
+        out.writeShort(slot.getAttributes());
+        writeValue(out, slot.value);
+        if (slot instanceof GetterSlot) {
+            GetterSlot gslot = (GetterSlot)slot;
+            writeValue(out, gslot.getter);
+            writeValue(out, gslot.setter);
+        }
+    }
+
+    private static Slot readSlot(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        int flags = in.readByte();
+        String name = null;
+        int indexOrHash;
+        if ((flags & SLOT_NAMED) != 0) {
+            name = (String)in.readObject();
+            indexOrHash = name.hashCode();
+        } else {
+            indexOrHash = in.readInt();
+        }
+        int attributes = in.readShort();
+        Slot slot;
+        if ((flags & SLOT_GETTER) != 0) {
+            slot = new GetterSlot(name, indexOrHash, attributes);
+        } else {
+            slot = new Slot(name, indexOrHash, attributes);
+        }
+        slot.value = readValue(in);
+        if ((flags & SLOT_GETTER) != 0) {
+            GetterSlot gslot = (GetterSlot)slot;
+            gslot.getter = readValue(in);
+            gslot.setter = readValue(in);
+        }
+        return slot;
+    }
+
+    // Tags of values written by writeValue
+    static final int VALUE_OBJECT = 0;
+    static final int VALUE_NUMBER = 1;
+    static final int VALUE_UNDEFINED = 2;
+    static final int VALUE_TRUE = 3;
+    static final int VALUE_FALSE = 4;
+
+    /**
+     * Writes a property or stack value with a tag byte so numbers, booleans
+     * and undefined take no class descriptors or object handles.
+     */
+    static void writeValue(ObjectOutputStream out, Object value)
+        throws IOException
+    {
+        if (value instanceof Double) {
+            out.writeByte(VALUE_NUMBER);
+            out.writeDouble(((Double)value).doubleValue());
+        } else if (value == Undefined.instance) {
+            out.writeByte(VALUE_UNDEFINED);
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean)value).booleanValue() ? VALUE_TRUE
+                                                          : VALUE_FALSE);
+        } else {
+            out.writeByte(VALUE_OBJECT);
+            out.writeObject(value);
+        }
+    }
+
+    static Object readValue(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        return readValue(in, in.readByte());
+    }
+
+    static Object readValue(ObjectInputStream in, int tag)
+        throws IOException, ClassNotFoundException
+    {
+        switch (tag) {
+          case VALUE_OBJECT:
+            return in.readObject();
+          case VALUE_NUMBER:
+            return ScriptRuntime.wrapNumber(in.readDouble());
+          case VALUE_UNDEFINED:
+            return Undefined.instance;
+          case VALUE_TRUE:
+            return Boolean.TRUE;
+          case VALUE_FALSE:
+            return Boolean.FALSE;
+        }
+        throw new IOException("Unknown value tag " + tag);
+    }
+
     protected ScriptableObject getOwnPropertyDescriptor(Context cx, Object id) {
         Slot slot = getSlot(cx, id, SLOT_QUERY);
         if (slot == null) return null;
@@ -0,0 +1,478 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.lang.reflect.Constructor;
+
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.Name;
+import org.mozilla.javascript.ast.ScriptNode;
+
+/**
+ * Compiles frequently called interpreted functions to JVM byte code.
+ * <p>
+ * The interpreter counts the calls of each eligible function and records
+ * which parameters received something other than a number. When a function
+ * reaches {@link #COMPILE_THRESHOLD} calls, its source is compiled on its
+ * own by the optimizing compiler, with the parameters that only received
+ * numbers so far typed as numbers.
+ * <p>
+ * {@link InterpretedFunction#call} checks those arguments before it runs
+ * the compiled code. If one of them is not a number, the call runs in the
+ * interpreter instead, which is always correct since nothing has been
+ * executed yet. After {@link #MAX_GUARD_FAILURES} such calls the function
+ * is compiled again without the failing assumptions.
+ * <p>
+ * Loops that run for a long time in a single interpreted call are moved
+ * to compiled code as well: after {@link #LOOP_THRESHOLD} jumps back to
+ * the start of a loop body the interpreter passes the values of its
+ * variables to {@link #enterLoop}. It compiles the enclosing function or
+ * script with an entry point that continues at that loop, see
+ * {@link Node#LOOP_ENTRY_PROP}, and runs the rest of the call there.
+ *
+ * @see Context#FEATURE_SPECULATIVE_COMPILATION
+ */
+final class SpeculativeCompiler
+{
+    // Interpreted calls before a function is compiled
+    static final int COMPILE_THRESHOLD = 1000;
+
+    // Jumps back to the start of a loop before it continues in compiled code
+    static final int LOOP_THRESHOLD = 10000;
+
+    // Failed argument checks before compiled code is replaced
+    static final int MAX_GUARD_FAILURES = 100;
+
+    // Compilations of a function before it stays interpreted
+    static final int MAX_COMPILATIONS = 4;
+
+    // Parameters are tracked in the bits of an int
+    private static final int MAX_SPECULATED_PARAMS = 32;
+
+    private static final Class<?> codegenClass = Kit.classOrNull(
+                             "org.mozilla.javascript.optimizer.Codegen");
+
+    /**
+     * Call statistics of a function, shared by all its function objects.
+     */
+    static final class Profile
+    {
+        int calls;
+        // Parameters that received a value other than a number
+        int nonNumberParams;
+        int guardFailures;
+        int compilations;
+        volatile CompiledCode code;
+        // Code entered from the loops, indexed like loopEntries
+        CompiledCode[] loopCode;
+        boolean loopCompilationFailed;
+    }
+
+    static final class CompiledCode
+    {
+        CompiledCode(Constructor<?> ctor, int numberParams)
+        {
+            this.functionClass = ctor.getDeclaringClass();
+            this.ctor = ctor;
+            this.numberParams = numberParams;
+        }
+
+        final Class<?> functionClass;
+        final Constructor<?> ctor;
+        // Parameters the compiled code expects to be numbers
+        final int numberParams;
+    }
+
+    private SpeculativeCompiler()
+    {
+    }
+
+    static boolean isCompiled(InterpreterData idata)
+    {
+        Profile profile = idata.profile;
+        return profile != null && profile.code != null;
+    }
+
+    /**
+     * Records the arguments of a call made by the interpreter and compiles
+     * the function when it has been called often enough.
+     */
+    static void recordCall(Context cx, InterpretedFunction fn,
+                           Object[] args, int argShift, int argCount)
+    {
+        Profile profile = fn.idata.profile;
+        profile.nonNumberParams |= nonNumberArgs(fn.idata, args, argShift,
+                                                 argCount);
+        if (++profile.calls >= COMPILE_THRESHOLD) {
+            synchronized (profile) {
+                if (profile.compilations == 0) {
+                    compile(cx, fn, profile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the compiled function to run for <code>fn</code> with the
+     * given arguments, or null if the call has to be interpreted.
+     */
+    static Function getCompiledFunction(Context cx, InterpretedFunction fn,
+                                        Object[] args)
+    {
+        Profile profile = fn.idata.profile;
+        CompiledCode code = profile.code;
+        if (code == null) {
+            return null;
+        }
+        int numberParams = code.numberParams;
+        for (int i = 0; numberParams != 0; ++i, numberParams >>>= 1) {
+            if ((numberParams & 1) != 0
+                && (i >= args.length || !(args[i] instanceof Number)))
+            {
+                guardFailed(cx, fn, profile, code, args);
+                return null;
+            }
+        }
+        NativeFunction f = fn.compiledFunction;
+        if (f == null || f.getClass() != code.functionClass) {
+            try {
+                f = (NativeFunction)code.ctor.newInstance(
+                    fn.getParentScope(), cx, Integer.valueOf(0));
+            } catch (Exception ex) {
+                throw new RuntimeException(
+                    "Unable to instantiate compiled class:" + ex.toString());
+            }
+            fn.compiledFunction = f;
+        }
+        return f;
+    }
+
+    private static void guardFailed(Context cx, InterpretedFunction fn,
+                                    Profile profile, CompiledCode code,
+                                    Object[] args)
+    {
+        synchronized (profile) {
+            if (profile.code != code) {
+                // Replaced by another thread
+                return;
+            }
+            profile.nonNumberParams |= nonNumberArgs(fn.idata, args, 0,
+                                                     args.length);
+            if (++profile.guardFailures < MAX_GUARD_FAILURES) {
+                return;
+            }
+            profile.guardFailures = 0;
+            profile.code = null;
+            if (profile.compilations < MAX_COMPILATIONS) {
+                compile(cx, fn, profile);
+            } else {
+                reportFallback(cx, fn.idata,
+                               Instrumentation.FALLBACK_DEOPTIMIZED);
+            }
+        }
+    }
+
+    private static int nonNumberArgs(InterpreterData idata, Object[] args,
+                                     int argShift, int argCount)
+    {
+        int paramCount = Math.min(idata.argCount, MAX_SPECULATED_PARAMS);
+        int mask = 0;
+        for (int i = 0; i != paramCount; ++i) {
+            if (i >= argCount) {
+                // Missing arguments are undefined
+                mask |= -1 << i;
+                break;
+            }
+            Object arg = args[argShift + i];
+            if (arg != UniqueTag.DOUBLE_MARK && !(arg instanceof Number)) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Parses the function source again and compiles it with the current
+     * assumptions. Must be called with the lock on <code>profile</code>.
+     */
+    private static void compile(Context cx, InterpretedFunction fn,
+                                Profile profile)
+    {
+        ++profile.compilations;
+        InterpreterData idata = fn.idata;
+        if (codegenClass == null || fn.securityController != null) {
+            // Compiled code could not run in the function's security domain
+            profile.compilations = MAX_COMPILATIONS;
+            if (codegenClass != null) {
+                reportFallback(cx, idata, Instrumentation.FALLBACK_SECURITY);
+            }
+            return;
+        }
+        int paramCount = Math.min(idata.argCount, MAX_SPECULATED_PARAMS);
+        int paramMask = paramCount == 32 ? -1 : (1 << paramCount) - 1;
+        int numberParams = paramMask & ~profile.nonNumberParams;
+        try {
+            CompilerEnvirons compilerEnv = initCompilerEnv(cx, idata);
+            if (compilerEnv == null) {
+                profile.compilations = MAX_COMPILATIONS;
+                reportFallback(cx, idata,
+                               Instrumentation.FALLBACK_DYNAMIC_SCOPE);
+                return;
+            }
+            ScriptNode tree = parse(compilerEnv, idata);
+            tree.getFunctionNode(0).putIntProp(Node.NUMBER_PARAMS_PROP,
+                                               numberParams);
+
+            Evaluator compiler = (Evaluator)Kit.newInstanceOrNull(codegenClass);
+            long compileStart = System.nanoTime();
+            Object bytecode = compiler.compile(compilerEnv, tree,
+                                               tree.getEncodedSource(), true);
+            reportCompiled(cx, idata, compileStart, bytecode);
+            NativeFunction f = (NativeFunction)compiler.createFunctionObject(
+                cx, fn.getParentScope(), bytecode, null);
+            MemoryFootprint.recordGeneratedCode(f, bytecode);
+            fn.compiledFunction = f;
+            profile.code = new CompiledCode(
+                f.getClass().getConstructors()[0], numberParams);
+        } catch (RuntimeException ex) {
+            profile.compilations = MAX_COMPILATIONS;
+            reportFallback(cx, idata, ex.toString());
+        } catch (LinkageError er) {
+            profile.compilations = MAX_COMPILATIONS;
+            reportFallback(cx, idata, er.toString());
+        }
+    }
+
+    /**
+     * Continues an interpreted call at the start of a loop body in compiled
+     * code and returns the result of the call, or null if the loop can not
+     * be compiled.
+     * @param fnOrScript the function or script the interpreter runs
+     * @param loopIndex the index of the loop in
+     *        {@link InterpreterData#loopEntries}
+     * @param state the values of the parameters and variables of a function
+     *        or the result computed so far by a script
+     */
+    static Object enterLoop(Context cx, InterpretedFunction fnOrScript,
+                            int loopIndex, Scriptable scope,
+                            Scriptable thisObj, Object[] state)
+    {
+        InterpreterData idata = fnOrScript.idata;
+        Profile profile = idata.profile;
+        CompiledCode code;
+        synchronized (profile) {
+            if (profile.loopCompilationFailed) {
+                return null;
+            }
+            if (profile.loopCode == null) {
+                profile.loopCode = new CompiledCode[idata.loopEntries.length];
+            }
+            code = profile.loopCode[loopIndex];
+            if (code == null) {
+                code = compileLoop(cx, fnOrScript, loopIndex);
+                if (code == null) {
+                    profile.loopCompilationFailed = true;
+                    return null;
+                }
+                profile.loopCode[loopIndex] = code;
+            }
+        }
+        NativeFunction f;
+        try {
+            if (idata.itsFunctionType == 0) {
+                f = (NativeFunction)code.ctor.newInstance();
+            } else {
+                f = (NativeFunction)code.ctor.newInstance(
+                    fnOrScript.getParentScope(), cx, Integer.valueOf(0));
+            }
+        } catch (Exception ex) {
+            throw new RuntimeException(
+                "Unable to instantiate compiled class:" + ex.toString());
+        }
+        ++cx.speculativeCallDepth;
+        try {
+            return f.call(cx, scope, thisObj, state);
+        } finally {
+            --cx.speculativeCallDepth;
+        }
+    }
+
+    private static CompiledCode compileLoop(Context cx,
+                                            InterpretedFunction fnOrScript,
+                                            int loopIndex)
+    {
+        InterpreterData idata = fnOrScript.idata;
+        if (codegenClass == null) {
+            return null;
+        }
+        if (fnOrScript.securityController != null) {
+            reportFallback(cx, idata, Instrumentation.FALLBACK_SECURITY);
+            return null;
+        }
+        if (idata.argIsConst != null) {
+            for (boolean isConst : idata.argIsConst) {
+                if (isConst) {
+                    // The interpreter does not tell if it is initialized
+                    reportFallback(cx, idata, Instrumentation.FALLBACK_CONST);
+                    return null;
+                }
+            }
+        }
+        try {
+            CompilerEnvirons compilerEnv = initCompilerEnv(cx, idata);
+            if (compilerEnv == null) {
+                reportFallback(cx, idata,
+                               Instrumentation.FALLBACK_DYNAMIC_SCOPE);
+                return null;
+            }
+            ScriptNode tree = parse(compilerEnv, idata);
+            boolean isFunction = idata.itsFunctionType != 0;
+            ScriptNode entryNode = isFunction ? tree.getFunctionNode(0)
+                                              : tree;
+            entryNode.putIntProp(Node.LOOP_ENTRY_PROP, loopIndex);
+
+            Evaluator compiler = (Evaluator)Kit.newInstanceOrNull(codegenClass);
+            long compileStart = System.nanoTime();
+            Object bytecode = compiler.compile(compilerEnv, tree,
+                                               tree.getEncodedSource(),
+                                               isFunction);
+            reportCompiled(cx, idata, compileStart, bytecode);
+            Object compiled;
+            Constructor<?> ctor;
+            if (isFunction) {
+                compiled = compiler.createFunctionObject(
+                    cx, fnOrScript.getParentScope(), bytecode, null);
+                ctor = compiled.getClass().getConstructors()[0];
+            } else {
+                compiled = compiler.createScriptObject(bytecode, null);
+                ctor = compiled.getClass().getConstructor();
+            }
+            MemoryFootprint.recordGeneratedCode(compiled, bytecode);
+            return new CompiledCode(ctor, 0);
+        } catch (NoSuchMethodException ex) {
+            reportFallback(cx, idata, ex.toString());
+            return null;
+        } catch (RuntimeException ex) {
+            reportFallback(cx, idata, ex.toString());
+            return null;
+        } catch (LinkageError er) {
+            reportFallback(cx, idata, er.toString());
+            return null;
+        }
+    }
+
+    private static void reportCompiled(Context cx, InterpreterData idata,
+                                       long compileStart, Object bytecode)
+    {
+        Instrumentation instrumentation = cx.instrumentation;
+        if (instrumentation != null) {
+            instrumentation.compiled(cx, idata.itsSourceFile,
+                                     getFunctionName(idata), 9,
+                                     System.nanoTime() - compileStart,
+                                     Context.getCodeSize(bytecode));
+        }
+    }
+
+    private static void reportFallback(Context cx, InterpreterData idata,
+                                       String reason)
+    {
+        Instrumentation instrumentation = cx.instrumentation;
+        if (instrumentation != null) {
+            instrumentation.interpreterFallback(cx, idata.itsSourceFile,
+                                                getFunctionName(idata),
+                                                reason);
+        }
+    }
+
+    private static String getFunctionName(InterpreterData idata)
+    {
+        if (idata.itsFunctionType == 0 || idata.itsName == null
+            || idata.itsName.length() == 0)
+        {
+            return null;
+        }
+        return idata.itsName;
+    }
+
+    private static CompilerEnvirons initCompilerEnv(Context cx,
+                                                    InterpreterData idata)
+    {
+        CompilerEnvirons compilerEnv = new CompilerEnvirons();
+        compilerEnv.initFromContext(cx);
+        compilerEnv.setLanguageVersion(idata.languageVersion);
+        compilerEnv.setOptimizationLevel(9);
+        // Warnings were reported when the enclosing script was compiled
+        compilerEnv.setStrictMode(false);
+        if (compilerEnv.isUseDynamicScope()) {
+            // Compiled on its own a function would use dynamic scope
+            return null;
+        }
+        return compilerEnv;
+    }
+
+    /**
+     * Parses the source of a function or script again. The tree of a
+     * function is the script that only contains the function.
+     */
+    private static ScriptNode parse(CompilerEnvirons compilerEnv,
+                                    InterpreterData idata)
+    {
+        ErrorReporter reporter = compilerEnv.getErrorReporter();
+        Parser p = new Parser(compilerEnv, reporter);
+        String source = idata.functionSource.substring(
+            idata.functionSourceStart, idata.functionSourceEnd);
+        if (idata.itsFunctionType == 0) {
+            AstRoot ast = p.parse(source, idata.itsSourceFile,
+                                  idata.functionBaseLineno);
+            return new IRFactory(compilerEnv, reporter).transformTree(ast);
+        }
+        p.calledByCompileFunction = true;
+        AstRoot ast = p.parse(source, idata.itsSourceFile,
+                              idata.functionBaseLineno);
+        FunctionNode fnNode = (FunctionNode)ast.getFirstChild();
+        // A named function expression binds its own name to itself,
+        // but the name must keep referring to the interpreted function
+        Name name = fnNode.getFunctionName();
+        fnNode.setFunctionName(null);
+        ScriptNode tree = new IRFactory(compilerEnv, reporter)
+            .transformTree(ast);
+        fnNode.setFunctionName(name);
+        return tree;
+    }
+}
@@ -0,0 +1,116 @@
+/* -*- Mode: java; tab-width: 8; indent-tabs-mode: nil; c-basic-offset: 4 -*-
+ *
+ * ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is Rhino code, released
+ * May 6, 1999.
+ *
+ * The Initial Developer of the Original Code is
+ * Netscape Communications Corporation.
+ * Portions created by the Initial Developer are Copyright (C) 1997-2000
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * the GNU General Public License Version 2 or later (the "GPL"), in which
+ * case the provisions of the GPL are applicable instead of those above. If
+ * you wish to allow use of your version of this file only under the terms of
+ * the GPL and not to allow others to use your version of this file under the
+ * MPL, indicate your decision by deleting the provisions above and replacing
+ * them with the notice and other provisions required by the GPL. If you do
+ * not delete the provisions above, a recipient may use your version of this
+ * file under either the MPL or the GPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package org.mozilla.javascript;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * CPU time and allocated bytes of the current thread, see
+ * {@link Context#FEATURE_RESOURCE_ACCOUNTING}.
+ */
+final class ThreadResources
+{
+    private static final ThreadMXBean threads;
+    private static final boolean cpuTimeSupported;
+    // com.sun.management.ThreadMXBean.getThreadAllocatedBytes(long) if the
+    // JVM provides it
+    private static final Method allocatedBytesMethod;
+
+    static {
+        ThreadMXBean bean = null;
+        boolean cpuTime = false;
+        Method allocatedBytes = null;
+        try {
+            bean = ManagementFactory.getThreadMXBean();
+            cpuTime = bean.isCurrentThreadCpuTimeSupported()
+                      && bean.isThreadCpuTimeEnabled();
+            Class<?> sunBean = Kit.classOrNull(
+                "com.sun.management.ThreadMXBean");
+            if (sunBean != null && sunBean.isInstance(bean)) {
+                Method supported = sunBean.getMethod(
+                    "isThreadAllocatedMemorySupported");
+                Method enabled = sunBean.getMethod(
+                    "isThreadAllocatedMemoryEnabled");
+                if (Boolean.TRUE.equals(supported.invoke(bean))
+                    && Boolean.TRUE.equals(enabled.invoke(bean)))
+                {
+                    allocatedBytes = sunBean.getMethod(
+                        "getThreadAllocatedBytes", Long.TYPE);
+                }
+            }
+        } catch (Exception ex) {
+            // Accounting is not available
+        } catch (LinkageError ex) {
+            // java.lang.management is missing
+        }
+        threads = bean;
+        cpuTimeSupported = cpuTime;
+        allocatedBytesMethod = allocatedBytes;
+    }
+
+    private ThreadResources() { }
+
+    /**
+     * Returns the CPU time of the current thread in nanoseconds or -1 if
+     * it is not available.
+     */
+    static long cpuTime()
+    {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far or -1 if
+     * they are not available.
+     */
+    static long allocatedBytes()
+    {
+        if (allocatedBytesMethod == null) {
+            return -1;
+        }
+        try {
+            Long id = Long.valueOf(Thread.currentThread().getId());
+            return ((Long)allocatedBytesMethod.invoke(threads, id))
+                .longValue();
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+}
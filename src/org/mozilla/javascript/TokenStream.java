@@ -89,6 +89,38 @@ class TokenStream
         this.sourceCursor = this.cursor = 0;
     }
 
+    /**
+     * Creates a stream that scans the string of <code>ts</code> from its
+     * current position, see Parser.skipFunctionBody.
+     */
+    TokenStream(Parser parser, TokenStream ts)
+    {
+        if (ts.sourceString == null || ts.ungetCursor != 0) Kit.codeBug();
+        this.parser = parser;
+        this.sourceString = ts.sourceString;
+        this.sourceEnd = ts.sourceEnd;
+        this.sourceCursor = this.cursor = ts.cursor;
+        this.lineno = ts.lineno;
+        this.lineStart = ts.lineStart;
+        this.lineEndChar = ts.lineEndChar;
+        this.dirtyLine = ts.dirtyLine;
+    }
+
+    /**
+     * Continues scanning at the start of the last token of
+     * <code>ts</code>, a stream created from this one.
+     */
+    void skipTo(TokenStream ts)
+    {
+        if (ts.sourceString != sourceString) Kit.codeBug();
+        this.sourceCursor = this.cursor = ts.tokenBeg;
+        this.lineno = ts.lineno;
+        this.lineStart = ts.lineStart;
+        this.lineEndChar = -1;
+        this.ungetCursor = 0;
+        this.dirtyLine = true;
+    }
+
     /* This function uses the cached op, string and number fields in
      * TokenStream; if getToken has been called since the passed token
      * was scanned, the op or string printed may be incorrect.
@@ -58,6 +58,7 @@ public class AstRoot extends ScriptNode {
 
     private SortedSet<Comment> comments;
     private boolean inStrictMode;
+    private String sourceText;
 
     {
         type = Token.SCRIPT;
@@ -116,6 +117,20 @@ public class AstRoot extends ScriptNode {
         return inStrictMode;
     }
 
+    /**
+     * Returns the source text this tree was parsed from, or {@code null}
+     * if the parser did not keep it.  The text is only kept when
+     * {@link org.mozilla.javascript.CompilerEnvirons#isLazyFunctionCompilation}
+     * is on, so nested functions can be parsed on their first call.
+     */
+    public String getSourceText() {
+        return sourceText;
+    }
+
+    public void setSourceText(String sourceText) {
+        this.sourceText = sourceText;
+    }
+
     /**
      * Visits the comment nodes in the order they appear in the source code.
      * The comments are not visited by the {@link #visit} function - you must
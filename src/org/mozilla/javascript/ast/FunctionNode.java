@@ -111,6 +111,7 @@ public class FunctionNode extends ScriptNode {
     private Form functionForm = Form.FUNCTION;
     private int lp = -1;
     private int rp = -1;
+    private String skippedBody;
 
     // codegen variables
     private int functionType;
@@ -281,6 +282,23 @@ public class FunctionNode extends ScriptNode {
         this.rp = rp;
     }
 
+    /**
+     * Returns the source text between the braces of the body if the parser
+     * skipped it, in which case the body node is empty and the function is
+     * parsed on its first call, otherwise {@code null}.
+     * @see org.mozilla.javascript.CompilerEnvirons#isLazyFunctionCompilation
+     */
+    public String getSkippedBody() {
+        return skippedBody;
+    }
+
+    /**
+     * Sets the source text of a body skipped by the parser.
+     */
+    public void setSkippedBody(String skippedBody) {
+        this.skippedBody = skippedBody;
+    }
+
     /**
      * Returns whether this is a 1.8 function closure
      */
@@ -350,15 +368,6 @@ public class FunctionNode extends ScriptNode {
         liveLocals.put(node, locals);
     }
 
-    @Override
-    public int addFunction(FunctionNode fnNode) {
-        int result = super.addFunction(fnNode);
-        if (getFunctionCount() > 0) {
-            needsActivation = true;
-        }
-        return result;
-    }
-
     /**
      * Returns the function type (statement, expr, statement expr)
      */
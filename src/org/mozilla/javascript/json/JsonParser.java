@@ -41,11 +41,17 @@
 package org.mozilla.javascript.json;
 
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.NativeArray;
+import org.mozilla.javascript.NativeObject;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.TopLevel;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class converts a stream of JSON tokens into a JSON value.
@@ -62,6 +68,18 @@ public class JsonParser {
     private int pos;
     private int length;
     private String src;
+    private boolean javaValues;
+
+    // Resolved once per parse instead of once per created object
+    private Scriptable topScope;
+    private Scriptable objectProto;
+    private Scriptable arrayProto;
+
+    // Key layout of the last object parsed at each nesting depth. Sibling
+    // objects with the same keys, such as the rows of tabular data, share
+    // the key strings instead of decoding and hashing them again.
+    private ArrayList<KeyLayout> layouts = new ArrayList<KeyLayout>();
+    private int depth;
 
     public JsonParser(Context cx, Scriptable scope) {
         this.cx = cx;
@@ -69,12 +87,49 @@ public class JsonParser {
     }
 
     public synchronized Object parseValue(String json) throws ParseException {
+        javaValues = false;
+        topScope = ScriptableObject.getTopLevelScope(scope);
+        objectProto = TopLevel.getBuiltinPrototype(topScope,
+                                                   TopLevel.Builtins.Object);
+        arrayProto = TopLevel.getBuiltinPrototype(topScope,
+                                                  TopLevel.Builtins.Array);
+        try {
+            return parse(json);
+        } finally {
+            topScope = objectProto = arrayProto = null;
+        }
+    }
+
+    /**
+     * Parse a JSON text into plain Java values without creating any
+     * JavaScript objects. Objects are returned as
+     * <code>java.util.Map&lt;String,Object&gt;</code> instances that
+     * preserve the property order of the source, arrays as
+     * <code>java.util.List&lt;Object&gt;</code>, and primitives as
+     * String, Integer, Double, Boolean or null.
+     * <p>
+     * This method does not use the Context and scope passed to the
+     * constructor, so they may be null if this is the only method called.
+     * @param json the JSON text
+     * @return the parsed value
+     * @throws ParseException if the text is not valid JSON
+     */
+    public synchronized Object parseJavaValue(String json)
+        throws ParseException
+    {
+        javaValues = true;
+        return parse(json);
+    }
+
+    private Object parse(String json) throws ParseException {
         if (json == null) {
             throw new ParseException("Input string may not be null");
         }
         pos = 0;
         length = json.length();
         src = json;
+        depth = 0;
+        layouts.clear();
         Object value = readValue();
         consumeWhitespace();
         if (pos < length) {
@@ -120,8 +175,14 @@ public class JsonParser {
     }
 
     private Object readObject() throws ParseException {
-        Scriptable object = cx.newObject(scope);
-        String id;
+        if (javaValues) {
+            return readJavaObject();
+        }
+        NativeObject object = new NativeObject();
+        object.setParentScope(topScope);
+        object.setPrototype(objectProto);
+        KeyLayout layout = enterObject();
+        int keyCount = 0;
         Object value;
         boolean needsComma = false;
         consumeWhitespace();
@@ -129,6 +190,7 @@ public class JsonParser {
             char c = src.charAt(pos++);
             switch(c) {
                 case '}':
+                    depth--;
                     return object;
                 case ',':
                     if (!needsComma) {
@@ -140,16 +202,15 @@ public class JsonParser {
                     if (needsComma) {
                         throw new ParseException("Missing comma in object literal");
                     }
-                    id = readString();
+                    int n = keyCount++;
+                    String id = readKey(layout, n);
                     consume(':');
                     value = readValue();
 
-                    double d = ScriptRuntime.toNumber(id);
-                    int index = (int) d;
-                    if (d != index) {
-                      object.put(id, object, value);
+                    if (layout.isIndex[n]) {
+                      object.put(layout.indexes[n], object, value);
                     } else {
-                      object.put(index, object, value);
+                      object.put(id, object, value);
                     }
 
                     needsComma = true;
@@ -162,6 +223,77 @@ public class JsonParser {
         throw new ParseException("Unterminated object literal");
     }
 
+    private KeyLayout enterObject() {
+        KeyLayout layout;
+        if (depth < layouts.size()) {
+            layout = layouts.get(depth);
+        } else {
+            layout = new KeyLayout();
+            layouts.add(layout);
+        }
+        depth++;
+        return layout;
+    }
+
+    /**
+     * Read the n-th property name of an object, reusing the String of the
+     * n-th key of the previous object at the same depth if the source text
+     * is identical.
+     */
+    private String readKey(KeyLayout layout, int n) throws ParseException {
+        String key = n < layout.size ? layout.keys[n] : null;
+        if (key != null) {
+            int keyLength = key.length();
+            if (pos + keyLength < length
+                    && src.charAt(pos + keyLength) == '"'
+                    && src.regionMatches(pos, key, 0, keyLength)) {
+                pos += keyLength + 1;
+                return key;
+            }
+        }
+        int start = pos;
+        key = readString();
+        // Only keys without escape sequences can be matched against the
+        // raw source text later on.
+        layout.set(n, key, pos - start - 1 == key.length());
+        return key;
+    }
+
+    private Object readJavaObject() throws ParseException {
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        KeyLayout layout = enterObject();
+        int keyCount = 0;
+        boolean needsComma = false;
+        consumeWhitespace();
+        while (pos < length) {
+            char c = src.charAt(pos++);
+            switch(c) {
+                case '}':
+                    depth--;
+                    return object;
+                case ',':
+                    if (!needsComma) {
+                        throw new ParseException("Unexpected comma in object literal");
+                    }
+                    needsComma = false;
+                    break;
+                case '"':
+                    if (needsComma) {
+                        throw new ParseException("Missing comma in object literal");
+                    }
+                    String id = readKey(layout, keyCount++);
+                    consume(':');
+                    object.put(id, readValue());
+                    needsComma = true;
+                    break;
+                default:
+                    throw new ParseException("Unexpected token in object literal");
+            }
+            consumeWhitespace();
+        }
+        throw new ParseException("Unterminated object literal");
+    }
+
     private Object readArray() throws ParseException {
         List<Object> list = new ArrayList<Object>();
         boolean needsComma = false;
@@ -171,7 +303,13 @@ public class JsonParser {
             switch(c) {
                 case ']':
                     pos += 1;
-                    return cx.newArray(scope, list.toArray());
+                    if (javaValues) {
+                        return list;
+                    }
+                    NativeArray array = new NativeArray(list.toArray());
+                    array.setParentScope(topScope);
+                    array.setPrototype(arrayProto);
+                    return array;
                 case ',':
                     if (!needsComma) {
                         throw new ParseException("Unexpected comma in array literal");
@@ -360,6 +498,36 @@ public class JsonParser {
         }
     }
 
+    private static class KeyLayout {
+        String[] keys = new String[8];
+        boolean[] isIndex = new boolean[8];
+        int[] indexes = new int[8];
+        int size;
+
+        void set(int n, String key, boolean shareable) {
+            if (n == keys.length) {
+                int newLength = n * 2;
+                String[] newKeys = new String[newLength];
+                boolean[] newIsIndex = new boolean[newLength];
+                int[] newIndexes = new int[newLength];
+                System.arraycopy(keys, 0, newKeys, 0, n);
+                System.arraycopy(isIndex, 0, newIsIndex, 0, n);
+                System.arraycopy(indexes, 0, newIndexes, 0, n);
+                keys = newKeys;
+                isIndex = newIsIndex;
+                indexes = newIndexes;
+            }
+            double d = ScriptRuntime.toNumber(key);
+            int index = (int) d;
+            keys[n] = shareable ? key : null;
+            isIndex[n] = d == index;
+            indexes[n] = index;
+            if (n >= size) {
+                size = n + 1;
+            }
+        }
+    }
+
     public static class ParseException extends Exception {
         ParseException(String message) {
             super(message);
@@ -94,9 +94,11 @@ class Block
         int paramCount = fn.fnode.getParamCount();
         int varCount = fn.fnode.getParamAndVarCount();
         int[] varTypes = new int[varCount];
-        // If the variable is a parameter, it could have any type.
+        // If the variable is a parameter, it could have any type unless
+        // the caller checks that it is a number.
         for (int i = 0; i != paramCount; ++i) {
-            varTypes[i] = Optimizer.AnyType;
+            varTypes[i] = fn.isNumberParameter(i) ? Optimizer.NumberType
+                                                  : Optimizer.AnyType;
         }
         // If the variable is from a "var" statement, its typeEvent will be set
         // when we see the setVar node.
@@ -126,7 +128,7 @@ class Block
             }
         }
 
-        for (int i = paramCount; i != varCount; i++) {
+        for (int i = 0; i != varCount; i++) {
             if (varTypes[i] == Optimizer.NumberType) {
                 fn.setIsNumberVar(i);
             }
@@ -319,7 +321,7 @@ class Block
         'undefined'-ness of that variable.
 */
 
-        theBlocks[0].markAnyTypeVariables(varTypes);
+        theBlocks[0].markAnyTypeVariables(fn, varTypes);
     }
 
     private static void typeFlow(OptFunctionNode fn, Node[] statementNodes, Block theBlocks[], int[] varTypes)
@@ -363,10 +365,11 @@ class Block
         return type != (varTypes[index] |= type);
     }
 
-    private void markAnyTypeVariables(int[] varTypes)
+    private void markAnyTypeVariables(OptFunctionNode fn, int[] varTypes)
     {
         for (int i = 0; i != varTypes.length; i++) {
-            if (itsLiveOnEntrySet.test(i)) {
+            // Number parameters are defined on entry
+            if (itsLiveOnEntrySet.test(i) && !fn.isNumberParameter(i)) {
                 assignType(varTypes, i, Optimizer.AnyType);
             }
         }
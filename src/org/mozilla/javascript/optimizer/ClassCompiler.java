@@ -155,7 +155,10 @@ public class ClassCompiler
      * @return array where elements with even indexes specifies class name
      *         and the following odd index gives class file body as byte[]
      *         array. The initial element of the array always holds
-     *         mainClassName and array[1] holds its byte code.
+     *         mainClassName and array[1] holds its byte code. When
+     *         {@link CompilerEnvirons#isGenerateFunctionClasses()} is set
+     *         the classes generated for individual functions follow the
+     *         script class.
      */
     public Object[] compileToClassFiles(String source,
                                         String sourceLocation,
@@ -189,8 +192,17 @@ public class ClassCompiler
                                          tree, tree.getEncodedSource(),
                                          false);
 
+        Object[] functionClassFiles = codegen.getFunctionClassFiles();
         if (isPrimary) {
-            return new Object[] { scriptClassName, scriptClassBytes };
+            if (functionClassFiles == null) {
+                return new Object[] { scriptClassName, scriptClassBytes };
+            }
+            Object[] result = new Object[2 + functionClassFiles.length];
+            result[0] = scriptClassName;
+            result[1] = scriptClassBytes;
+            System.arraycopy(functionClassFiles, 0, result, 2,
+                             functionClassFiles.length);
+            return result;
         }
         int functionCount = tree.getFunctionCount();
         ObjToIntMap functionNames = new ObjToIntMap(functionCount);
@@ -209,8 +221,18 @@ public class ClassCompiler
                 functionNames, mainClassName,
                 superClass, interfaces, scriptClassName);
 
-        return new Object[] { mainClassName, mainClassBytes,
-                              scriptClassName, scriptClassBytes };
+        if (functionClassFiles == null) {
+            return new Object[] { mainClassName, mainClassBytes,
+                                  scriptClassName, scriptClassBytes };
+        }
+        Object[] result = new Object[4 + functionClassFiles.length];
+        result[0] = mainClassName;
+        result[1] = mainClassBytes;
+        result[2] = scriptClassName;
+        result[3] = scriptClassBytes;
+        System.arraycopy(functionClassFiles, 0, result, 4,
+                         functionClassFiles.length);
+        return result;
     }
 
     private String mainMethodClassName;
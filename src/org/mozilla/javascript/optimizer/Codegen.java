@@ -106,13 +106,31 @@ public class Codegen implements Evaluator
                                                    tree, encodedSource,
                                                    returnFunction);
 
-        return new Object[] { mainClassName, mainClassBytes };
+        if (functionClassFiles == null) {
+            return new Object[] { mainClassName, mainClassBytes };
+        }
+        Object[] result = new Object[2 + functionClassFiles.size()];
+        result[0] = mainClassName;
+        result[1] = mainClassBytes;
+        functionClassFiles.toArray(result, 2);
+        return result;
+    }
+
+    /**
+     * Returns the class name and byte code pairs of the function classes
+     * generated by the last call to compileToClassFile, or null if
+     * function classes were not requested.
+     */
+    Object[] getFunctionClassFiles()
+    {
+        return functionClassFiles == null ? null
+                                          : functionClassFiles.toArray();
     }
 
     public Script createScriptObject(Object bytecode,
                                      Object staticSecurityDomain)
     {
-        Class<?> cl = defineClass(bytecode, staticSecurityDomain);
+        Class<?> cl = defineClasses(bytecode, staticSecurityDomain)[0];
 
         Script script;
         try {
@@ -128,7 +146,9 @@ public class Codegen implements Evaluator
                                          Object bytecode,
                                          Object staticSecurityDomain)
     {
-        Class<?> cl = defineClass(bytecode, staticSecurityDomain);
+        Class<?>[] classes = defineClasses(bytecode, staticSecurityDomain);
+        // Prefer the class generated for the function itself, if any
+        Class<?> cl = classes[classes.length > 1 ? 1 : 0];
 
         NativeFunction f;
         try {
@@ -142,12 +162,15 @@ public class Codegen implements Evaluator
         return f;
     }
 
-    private Class<?> defineClass(Object bytecode,
-                                 Object staticSecurityDomain)
+    /**
+     * Define the main class and any function classes in one loader, so
+     * function classes can extend the main class and call its package
+     * private body methods.
+     */
+    private Class<?>[] defineClasses(Object bytecode,
+                                     Object staticSecurityDomain)
     {
-        Object[] nameBytesPair = (Object[])bytecode;
-        String className = (String)nameBytesPair[0];
-        byte[] classBytes = (byte[])nameBytesPair[1];
+        Object[] nameBytesPairs = (Object[])bytecode;
 
         // The generated classes in this case refer only to Rhino classes
         // which must be accessible through this class loader
@@ -157,9 +180,16 @@ public class Codegen implements Evaluator
                                                  staticSecurityDomain);
         Exception e;
         try {
-            Class<?> cl = loader.defineClass(className, classBytes);
-            loader.linkClass(cl);
-            return cl;
+            Class<?>[] classes = new Class<?>[nameBytesPairs.length / 2];
+            for (int i = 0; i != classes.length; ++i) {
+                String className = (String)nameBytesPairs[2 * i];
+                byte[] classBytes = (byte[])nameBytesPairs[2 * i + 1];
+                classes[i] = loader.defineClass(className, classBytes);
+            }
+            for (int i = 0; i != classes.length; ++i) {
+                loader.linkClass(classes[i]);
+            }
+            return classes;
         } catch (SecurityException x) {
             e = x;
         } catch (IllegalArgumentException x) {
@@ -193,7 +223,21 @@ public class Codegen implements Evaluator
             = ClassFileWriter.classNameToSignature(mainClassName);
 
         try {
-            return generateCode(encodedSource);
+            byte[] mainClassBytes = generateCode(encodedSource);
+            functionClassFiles = null;
+            if (compilerEnv.isGenerateFunctionClasses()) {
+                functionClassFiles = new ObjArray();
+                for (int i = 0; i != scriptOrFnNodes.length; ++i) {
+                    ScriptNode n = scriptOrFnNodes[i];
+                    if (n.getType() == Token.FUNCTION) {
+                        String className = getFunctionClassName(n);
+                        functionClassFiles.add(className);
+                        functionClassFiles.add(generateFunctionClass(
+                            className, n));
+                    }
+                }
+            }
+            return mainClassBytes;
         } catch (ClassFileWriter.ClassFileFormatException e) {
             throw reportClassFileFormatException(scriptOrFn, e.getMessage());
         }
@@ -213,12 +257,17 @@ public class Codegen implements Evaluator
 
     private void transform(ScriptNode tree)
     {
-        initOptFunctions_r(tree);
+        if (tree instanceof FunctionNode) {
+            markLargeFunction((FunctionNode)tree);
+        }
+        markLargeFunctions_r(tree);
+        initOptFunctions_r(tree, null);
 
         int optLevel = compilerEnv.getOptimizationLevel();
 
         Map<String,OptFunctionNode> possibleDirectCalls = null;
-        if (optLevel > 0) {
+        // Direct calls would bypass the call methods that report calls
+        if (optLevel > 0 && !compilerEnv.isGenerateInstrumentation()) {
            /*
             * Collect all of the contained functions into a hashtable
             * so that the call optimizer can access the class name & parameter
@@ -256,12 +305,62 @@ public class Codegen implements Evaluator
         }
     }
 
-    private static void initOptFunctions_r(ScriptNode scriptOrFn)
+    // Functions with more tree nodes than this are given an activation so
+    // their body can be split. The densest code seen takes about 10 bytes
+    // of bytecode per node, so this stays well below the 64K method limit.
+    private static final int MAX_REGISTER_FUNCTION_NODES = 3000;
+
+    /**
+     * Functions that keep their variables in JVM locals can not be split
+     * into several methods, so functions too large for a single method
+     * keep their variables in an activation object instead. Their body can
+     * then be split between statements like the body of a script, see
+     * BodyCodegen.canSplitBody.  This must happen before the functions are
+     * transformed, as the transformation depends on where variables live.
+     */
+    private static void markLargeFunctions_r(ScriptNode scriptOrFn)
+    {
+        for (int i = 0, N = scriptOrFn.getFunctionCount(); i != N; ++i) {
+            FunctionNode fn = scriptOrFn.getFunctionNode(i);
+            markLargeFunction(fn);
+            markLargeFunctions_r(fn);
+        }
+    }
+
+    private static void markLargeFunction(FunctionNode fn)
+    {
+        if (!fn.requiresActivation()
+            && countNodes(fn.getLastChild(), MAX_REGISTER_FUNCTION_NODES)
+               > MAX_REGISTER_FUNCTION_NODES)
+        {
+            fn.setRequiresActivation();
+        }
+    }
+
+    /**
+     * Counts the nodes of a tree, stopping once the count exceeds limit.
+     * Nested functions are counted as a single node.
+     */
+    private static int countNodes(Node node, int limit)
+    {
+        int count = 1;
+        if (node.getType() != Token.FUNCTION) {
+            for (Node child = node.getFirstChild();
+                 child != null && count <= limit;
+                 child = child.getNext())
+            {
+                count += countNodes(child, limit - count);
+            }
+        }
+        return count;
+    }
+
+    private static void initOptFunctions_r(ScriptNode scriptOrFn,
+                                           OptFunctionNode parent)
     {
         for (int i = 0, N = scriptOrFn.getFunctionCount(); i != N; ++i) {
             FunctionNode fn = scriptOrFn.getFunctionNode(i);
-            new OptFunctionNode(fn);
-            initOptFunctions_r(fn);
+            initOptFunctions_r(fn, new OptFunctionNode(fn, parent));
         }
     }
 
@@ -511,20 +610,125 @@ public class Codegen implements Evaluator
         cfw.stopMethod((short)6);
     }
 
+    /**
+     * Generate call and the fixed arity calls of
+     * {@link FixedArityCallable}.
+     */
     private void generateCallMethod(ClassFileWriter cfw)
     {
-        cfw.startMethod("call",
-                        "(Lorg/mozilla/javascript/Context;" +
-                        "Lorg/mozilla/javascript/Scriptable;" +
-                        "Lorg/mozilla/javascript/Scriptable;" +
-                        "[Ljava/lang/Object;)Ljava/lang/Object;",
-                        (short)(ClassFileWriter.ACC_PUBLIC
-                                | ClassFileWriter.ACC_FINAL));
+        for (int arity = -1; arity <= FixedArityCallable.MAX_FIXED_ARITY;
+             ++arity)
+        {
+            generateCallMethod(cfw, arity);
+        }
+    }
+
+    private static String getCallMethodName(int arity)
+    {
+        return arity < 0 ? "call" : "call" + arity;
+    }
 
+    private static String getCallMethodSignature(int arity)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append("(Lorg/mozilla/javascript/Context;"
+                  +"Lorg/mozilla/javascript/Scriptable;"
+                  +"Lorg/mozilla/javascript/Scriptable;");
+        if (arity < 0) {
+            sb.append("[Ljava/lang/Object;");
+        } else {
+            for (int i = 0; i != arity; ++i) {
+                sb.append("Ljava/lang/Object;");
+            }
+        }
+        sb.append(")Ljava/lang/Object;");
+        return sb.toString();
+    }
+
+    /**
+     * Returns the number of locals of a call method: this, cx, scope,
+     * js this and args[] or the arity arguments.
+     */
+    private static short getCallMethodLocals(int arity)
+    {
+        return (short)(arity < 0 ? 5 : 4 + arity);
+    }
+
+    /**
+     * Returns the number of locals of a call method including the start
+     * time of an instrumented call, which follows the arguments.
+     */
+    private short getCallMethodMaxLocals(int arity)
+    {
+        short locals = getCallMethodLocals(arity);
+        if (compilerEnv.isGenerateInstrumentation()) {
+            locals += 2;
+        }
+        return locals;
+    }
+
+    /**
+     * Generate call if arity is negative, otherwise the fixed arity call
+     * with the arity arguments in locals 4 and up.
+     */
+    private void generateCallMethod(ClassFileWriter cfw, int arity)
+    {
+        // With separate function classes the subclasses override call
+        short callFlags = ClassFileWriter.ACC_PUBLIC;
+        if (!compilerEnv.isGenerateFunctionClasses()) {
+            callFlags |= ClassFileWriter.ACC_FINAL;
+        }
+        cfw.startMethod(getCallMethodName(arity),
+                        getCallMethodSignature(arity),
+                        callFlags);
+
+        generateTopCallCheck(cfw, arity);
+
+        // Now generate switch to call the real methods
+        cfw.addALoad(0);
+        cfw.addALoad(1);
+        cfw.addALoad(2);
+        cfw.addALoad(3);
+        if (arity < 0) {
+            cfw.addALoad(4);
+        }
+
+        int end = scriptOrFnNodes.length;
+        boolean generateSwitch = (2 <= end);
+
+        int switchStart = 0;
+        int switchStackTop = 0;
+        if (generateSwitch) {
+            cfw.addLoadThis();
+            cfw.add(ByteCode.GETFIELD, cfw.getClassName(), ID_FIELD_NAME, "I");
+            // do switch from (1,  end - 1) mapping 0 to
+            // the default case
+            switchStart = cfw.addTableSwitch(1, end - 1);
+        }
+
+        for (int i = 0; i != end; ++i) {
+            ScriptNode n = scriptOrFnNodes[i];
+            if (generateSwitch) {
+                if (i == 0) {
+                    cfw.markTableSwitchDefault(switchStart);
+                    switchStackTop = cfw.getStackTop();
+                } else {
+                    cfw.markTableSwitchCase(switchStart, i - 1,
+                                            switchStackTop);
+                }
+            }
+            generateBodyCall(cfw, n, arity);
+        }
+        cfw.stopMethod(getCallMethodMaxLocals(arity));
+    }
+
+    private static void generateTopCallCheck(ClassFileWriter cfw, int arity)
+    {
         // Generate code for:
         // if (!ScriptRuntime.hasTopCall(cx)) {
         //     return ScriptRuntime.doTopCall(this, cx, scope, thisObj, args);
         // }
+        // where args are created from the arguments of fixed arity calls
 
         int nonTopCallLabel = cfw.acquireLabel();
         cfw.addALoad(1); //cx
@@ -538,7 +742,7 @@ public class Codegen implements Evaluator
         cfw.addALoad(1);
         cfw.addALoad(2);
         cfw.addALoad(3);
-        cfw.addALoad(4);
+        pushCallArgs(cfw, arity);
         cfw.addInvoke(ByteCode.INVOKESTATIC,
                       "org/mozilla/javascript/ScriptRuntime",
                       "doTopCall",
@@ -550,76 +754,196 @@ public class Codegen implements Evaluator
                       +")Ljava/lang/Object;");
         cfw.add(ByteCode.ARETURN);
         cfw.markLabel(nonTopCallLabel);
+    }
 
-        // Now generate switch to call the real methods
-        cfw.addALoad(0);
-        cfw.addALoad(1);
-        cfw.addALoad(2);
-        cfw.addALoad(3);
-        cfw.addALoad(4);
-
-        int end = scriptOrFnNodes.length;
-        boolean generateSwitch = (2 <= end);
-
-        int switchStart = 0;
-        int switchStackTop = 0;
-        if (generateSwitch) {
-            cfw.addLoadThis();
-            cfw.add(ByteCode.GETFIELD, cfw.getClassName(), ID_FIELD_NAME, "I");
-            // do switch from (1,  end - 1) mapping 0 to
-            // the default case
-            switchStart = cfw.addTableSwitch(1, end - 1);
+    /**
+     * Push the args[] of a call method, which is created from the
+     * arguments of fixed arity calls.
+     */
+    private static void pushCallArgs(ClassFileWriter cfw, int arity)
+    {
+        if (arity < 0) {
+            cfw.addALoad(4);
+        } else if (arity == 0) {
+            cfw.add(ByteCode.GETSTATIC,
+                    "org/mozilla/javascript/ScriptRuntime",
+                    "emptyArgs", "[Ljava/lang/Object;");
+        } else {
+            cfw.addPush(arity);
+            cfw.add(ByteCode.ANEWARRAY, "java/lang/Object");
+            for (int i = 0; i != arity; ++i) {
+                cfw.add(ByteCode.DUP);
+                cfw.addPush(i);
+                cfw.addALoad(4 + i);
+                cfw.add(ByteCode.AASTORE);
+            }
         }
+    }
 
-        for (int i = 0; i != end; ++i) {
-            ScriptNode n = scriptOrFnNodes[i];
-            if (generateSwitch) {
-                if (i == 0) {
-                    cfw.markTableSwitchDefault(switchStart);
-                    switchStackTop = cfw.getStackTop();
-                } else {
-                    cfw.markTableSwitchCase(switchStart, i - 1,
-                                            switchStackTop);
+    /**
+     * Generate the invocation of the body method of n from a call method
+     * of the given arity. The stack must hold this, cx, scope and js this,
+     * which are in locals 0-3, and for call also args[] from local 4.
+     * Fixed arity calls of direct call targets pass their arguments
+     * without an array.
+     */
+    private void generateBodyInvoke(ClassFileWriter cfw, ScriptNode n,
+                                    int arity)
+    {
+        if (arity >= 0) {
+            if (n.getType() == Token.FUNCTION
+                && OptFunctionNode.get(n).isTargetOfDirectCall())
+            {
+                int pcount = n.getParamCount();
+                for (int p = 0; p != pcount; ++p) {
+                    if (p < arity) {
+                        cfw.addALoad(4 + p);
+                    } else {
+                        pushUndefined(cfw);
+                    }
+                    cfw.addPush(0.0);
                 }
+                pushCallArgs(cfw, 0);
+            } else {
+                pushCallArgs(cfw, arity);
             }
-            if (n.getType() == Token.FUNCTION) {
-                OptFunctionNode ofn = OptFunctionNode.get(n);
-                if (ofn.isTargetOfDirectCall()) {
-                    int pcount = ofn.fnode.getParamCount();
-                    if (pcount != 0) {
-                        // loop invariant:
-                        // stack top == arguments array from addALoad4()
-                        for (int p = 0; p != pcount; ++p) {
-                            cfw.add(ByteCode.ARRAYLENGTH);
-                            cfw.addPush(p);
-                            int undefArg = cfw.acquireLabel();
-                            int beyond = cfw.acquireLabel();
-                            cfw.add(ByteCode.IF_ICMPLE, undefArg);
-                            // get array[p]
-                            cfw.addALoad(4);
-                            cfw.addPush(p);
-                            cfw.add(ByteCode.AALOAD);
-                            cfw.add(ByteCode.GOTO, beyond);
-                            cfw.markLabel(undefArg);
-                            pushUndefined(cfw);
-                            cfw.markLabel(beyond);
-                            // Only one push
-                            cfw.adjustStackTop(-1);
-                            cfw.addPush(0.0);
-                            // restore invariant
-                            cfw.addALoad(4);
-                        }
+        } else if (n.getType() == Token.FUNCTION) {
+            OptFunctionNode ofn = OptFunctionNode.get(n);
+            if (ofn.isTargetOfDirectCall()) {
+                int pcount = ofn.fnode.getParamCount();
+                if (pcount != 0) {
+                    // loop invariant:
+                    // stack top == arguments array from addALoad4()
+                    for (int p = 0; p != pcount; ++p) {
+                        cfw.add(ByteCode.ARRAYLENGTH);
+                        cfw.addPush(p);
+                        int undefArg = cfw.acquireLabel();
+                        int beyond = cfw.acquireLabel();
+                        cfw.add(ByteCode.IF_ICMPLE, undefArg);
+                        // get array[p]
+                        cfw.addALoad(4);
+                        cfw.addPush(p);
+                        cfw.add(ByteCode.AALOAD);
+                        cfw.add(ByteCode.GOTO, beyond);
+                        cfw.markLabel(undefArg);
+                        pushUndefined(cfw);
+                        cfw.markLabel(beyond);
+                        // Only one push
+                        cfw.adjustStackTop(-1);
+                        cfw.addPush(0.0);
+                        // restore invariant
+                        cfw.addALoad(4);
                     }
                 }
             }
-            cfw.addInvoke(ByteCode.INVOKESTATIC,
-                          mainClassName,
-                          getBodyMethodName(n),
-                          getBodyMethodSignature(n));
+        }
+        cfw.addInvoke(ByteCode.INVOKESTATIC,
+                      mainClassName,
+                      getBodyMethodName(n),
+                      getBodyMethodSignature(n));
+    }
+
+    /**
+     * Generate the invocation of the body method of n from a call method
+     * like generateBodyInvoke and return its result. Instrumented calls
+     * pass their start time to ScriptRuntime.exitInstrumentedCall whether
+     * the body returns or throws.
+     */
+    private void generateBodyCall(ClassFileWriter cfw, ScriptNode n,
+                                  int arity)
+    {
+        if (!compilerEnv.isGenerateInstrumentation()) {
+            generateBodyInvoke(cfw, n, arity);
             cfw.add(ByteCode.ARETURN);
+            return;
+        }
+        short callStartLocal = getCallMethodLocals(arity);
+        cfw.addALoad(1);
+        cfw.addInvoke(ByteCode.INVOKESTATIC,
+                      "org/mozilla/javascript/ScriptRuntime",
+                      "enterInstrumentedCall",
+                      "(Lorg/mozilla/javascript/Context;)J");
+        cfw.addLStore(callStartLocal);
+
+        int startLabel = cfw.acquireLabel();
+        int endLabel = cfw.acquireLabel();
+        int handlerLabel = cfw.acquireLabel();
+        cfw.markLabel(startLabel);
+        generateBodyInvoke(cfw, n, arity);
+        cfw.markLabel(endLabel);
+        generateExitInstrumentedCall(cfw, callStartLocal);
+        cfw.add(ByteCode.ARETURN);
+
+        // The exception stays on the stack below the arguments
+        cfw.markHandler(handlerLabel);
+        generateExitInstrumentedCall(cfw, callStartLocal);
+        cfw.add(ByteCode.ATHROW);
+        cfw.addExceptionHandler(startLabel, endLabel, handlerLabel, null);
+    }
+
+    private static void generateExitInstrumentedCall(ClassFileWriter cfw,
+                                                     short callStartLocal)
+    {
+        cfw.addALoad(0);
+        cfw.addALoad(1);
+        cfw.addLLoad(callStartLocal);
+        cfw.addInvoke(ByteCode.INVOKESTATIC,
+                      "org/mozilla/javascript/ScriptRuntime",
+                      "exitInstrumentedCall",
+                      "(Lorg/mozilla/javascript/NativeFunction;"
+                      +"Lorg/mozilla/javascript/Context;"
+                      +"J)V");
+    }
+
+    /**
+     * Generate a final subclass of the main class for function n whose
+     * call method invokes the body of n without the switch on the
+     * function index.
+     */
+    private byte[] generateFunctionClass(String className, ScriptNode n)
+    {
+        String sourceFile = null;
+        if (compilerEnv.isGenerateDebugInfo()) {
+            sourceFile = scriptOrFnNodes[0].getSourceName();
         }
-        cfw.stopMethod((short)5);
-        // 5: this, cx, scope, js this, args[]
+
+        ClassFileWriter cfw = new ClassFileWriter(className, mainClassName,
+                                                  sourceFile);
+        cfw.setFlags((short)(ClassFileWriter.ACC_PUBLIC
+                             | ClassFileWriter.ACC_FINAL));
+
+        cfw.startMethod("<init>", FUNCTION_CONSTRUCTOR_SIGNATURE,
+                        ClassFileWriter.ACC_PUBLIC);
+        cfw.addALoad(0);
+        cfw.addALoad(1);
+        cfw.addALoad(2);
+        cfw.addILoad(3);
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, mainClassName,
+                      "<init>", FUNCTION_CONSTRUCTOR_SIGNATURE);
+        cfw.add(ByteCode.RETURN);
+        // 4 = this + scope + context + id
+        cfw.stopMethod((short)4);
+
+        for (int arity = -1; arity <= FixedArityCallable.MAX_FIXED_ARITY;
+             ++arity)
+        {
+            cfw.startMethod(getCallMethodName(arity),
+                            getCallMethodSignature(arity),
+                            (short)(ClassFileWriter.ACC_PUBLIC
+                                    | ClassFileWriter.ACC_FINAL));
+            generateTopCallCheck(cfw, arity);
+            cfw.addALoad(0);
+            cfw.addALoad(1);
+            cfw.addALoad(2);
+            cfw.addALoad(3);
+            if (arity < 0) {
+                cfw.addALoad(4);
+            }
+            generateBodyCall(cfw, n, arity);
+            cfw.stopMethod(getCallMethodMaxLocals(arity));
+        }
+
+        return cfw.toByteArray();
     }
 
     private void generateMain(ClassFileWriter cfw)
@@ -1067,7 +1391,9 @@ public class Codegen implements Evaluator
     private void emitConstantDudeInitializers(ClassFileWriter cfw)
     {
         int N = itsConstantListSize;
-        if (N == 0)
+        int nameCacheCount = nameCacheNames == null ? 0
+                                                    : nameCacheNames.size();
+        if (N == 0 && nameCacheCount == 0)
             return;
 
         cfw.startMethod("<clinit>", "()V",
@@ -1096,10 +1422,80 @@ public class Codegen implements Evaluator
                     constantName, constantType);
         }
 
+        for (int i = 0; i != nameCacheCount; ++i) {
+            String fieldName = "_nc" + i;
+            cfw.addField(fieldName, NAME_CACHE_TYPE,
+                         (short)(ClassFileWriter.ACC_STATIC
+                                 | ClassFileWriter.ACC_PRIVATE
+                                 | ClassFileWriter.ACC_FINAL));
+            cfw.add(ByteCode.NEW, "org/mozilla/javascript/NameCache");
+            cfw.add(ByteCode.DUP);
+            cfw.addPush((String)nameCacheNames.get(i));
+            cfw.addInvoke(ByteCode.INVOKESPECIAL,
+                          "org/mozilla/javascript/NameCache",
+                          "<init>", "(Ljava/lang/String;)V");
+            cfw.add(ByteCode.PUTSTATIC, mainClassName,
+                    fieldName, NAME_CACHE_TYPE);
+        }
+
         cfw.add(ByteCode.RETURN);
         cfw.stopMethod((short)0);
     }
 
+    /**
+     * Push the cache shared by all lookups of name in this class, or name
+     * itself when the class has too many caches, and return the type of
+     * the pushed value.
+     */
+    String pushNameCache(ClassFileWriter cfw, String name)
+    {
+        if (nameCacheIndexes == null) {
+            nameCacheIndexes = new ObjToIntMap();
+        }
+        int index = nameCacheIndexes.get(name, -1);
+        if (index < 0) {
+            index = addNameCache(name);
+            if (index < 0) {
+                cfw.addPush(name);
+                return "Ljava/lang/String;";
+            }
+            nameCacheIndexes.put(name, index);
+        }
+        cfw.add(ByteCode.GETSTATIC, mainClassName, "_nc" + index,
+                NAME_CACHE_TYPE);
+        return NAME_CACHE_TYPE;
+    }
+
+    /**
+     * Push a new cache for one property access site, or name itself when
+     * the class has too many caches, and return the type of the pushed
+     * value.
+     */
+    String pushPropertyCache(ClassFileWriter cfw, String name)
+    {
+        int index = addNameCache(name);
+        if (index < 0) {
+            cfw.addPush(name);
+            return "Ljava/lang/String;";
+        }
+        cfw.add(ByteCode.GETSTATIC, mainClassName, "_nc" + index,
+                NAME_CACHE_TYPE);
+        return NAME_CACHE_TYPE;
+    }
+
+    private int addNameCache(String name)
+    {
+        if (nameCacheNames == null) {
+            nameCacheNames = new ObjArray();
+        }
+        // Same limit as for number constants, see pushNumberAsObject
+        if (nameCacheNames.size() >= 2000) {
+            return -1;
+        }
+        nameCacheNames.add(name);
+        return nameCacheNames.size() - 1;
+    }
+
     void pushRegExpArray(ClassFileWriter cfw, ScriptNode n,
                          int contextArg, int scopeArg)
     {
@@ -1251,6 +1647,30 @@ public class Codegen implements Evaluator
         return "_c_" + cleanName(n) + "_" + getIndex(n);
     }
 
+    /**
+     * Gets the name of the class to instantiate for function n.
+     */
+    String getFunctionClassName(ScriptNode n)
+    {
+        if (!compilerEnv.isGenerateFunctionClasses()) {
+            return mainClassName;
+        }
+        return mainClassName + "$" + cleanName(n) + "_" + getIndex(n);
+    }
+
+    /**
+     * Gets the access flags of body methods. Function classes
+     * call body methods of the main class, so these cannot be private.
+     */
+    short getBodyMethodFlags()
+    {
+        if (compilerEnv.isGenerateFunctionClasses()) {
+            return ClassFileWriter.ACC_STATIC;
+        }
+        return (short)(ClassFileWriter.ACC_STATIC
+                       | ClassFileWriter.ACC_PRIVATE);
+    }
+
     /**
      * Gets a Java-compatible "informative" name for the the ScriptOrFnNode
      */
@@ -1318,6 +1738,7 @@ public class Codegen implements Evaluator
         = "org.mozilla.javascript.NativeFunction";
 
     static final String DIRECT_CALL_PARENT_FIELD = "_dcp";
+    static final String NAME_CACHE_TYPE = "Lorg/mozilla/javascript/NameCache;";
     private static final String ID_FIELD_NAME = "_id";
 
     private static final String REGEXP_INIT_METHOD_NAME = "_reInit";
@@ -1343,6 +1764,7 @@ public class Codegen implements Evaluator
     private CompilerEnvirons compilerEnv;
 
     private ObjArray directCallTargets;
+    private ObjArray functionClassFiles;
     ScriptNode[] scriptOrFnNodes;
     private ObjToIntMap scriptOrFnIndexes;
 
@@ -1353,6 +1775,8 @@ public class Codegen implements Evaluator
 
     private double[] itsConstantList;
     private int itsConstantListSize;
+    private ObjArray nameCacheNames;
+    private ObjToIntMap nameCacheIndexes;
 }
 
 
@@ -1382,8 +1806,7 @@ class BodyCodegen
         } else {
             cfw.startMethod(codegen.getBodyMethodName(scriptOrFn),
                     codegen.getBodyMethodSignature(scriptOrFn),
-                    (short)(ClassFileWriter.ACC_STATIC
-                            | ClassFileWriter.ACC_PRIVATE));
+                    codegen.getBodyMethodFlags());
         }
 
         generatePrologue();
@@ -1393,8 +1816,12 @@ class BodyCodegen
         } else {
             treeTop = scriptOrFn;
         }
-        generateStatement(treeTop);
-        generateEpilogue();
+        if (canSplitBody(treeTop)) {
+            generateSplitBody(treeTop);
+        } else {
+            generateStatement(treeTop);
+            generateEpilogue();
+        }
 
         cfw.stopMethod((short)(localsMax + 1));
 
@@ -1405,14 +1832,165 @@ class BodyCodegen
         }
     }
 
+    /**
+     * Bodies of scripts and of functions that keep their variables in an
+     * activation object can be split between top-level statements: all
+     * state shared by the statements lives in the variable object, and
+     * jumps never leave the statement they belong to.
+     */
+    private boolean canSplitBody(Node treeTop)
+    {
+        if (isGenerator || hasVarsInRegs || osrEntry != null) {
+            return false;
+        }
+        int type = treeTop.getType();
+        return type == Token.SCRIPT || type == Token.BLOCK;
+    }
+
+    /**
+     * Generates the top-level statements of the body, continuing in a new
+     * method whenever the current one grows beyond SPLIT_METHOD_SIZE.
+     * Each method ends by calling the next one and returning its result,
+     * so methods stay under both the 64K class file limit and the size
+     * limit above which HotSpot refuses to JIT-compile them. A single
+     * statement is never split.
+     */
+    private void generateSplitBody(Node treeTop)
+    {
+        updateLineNumber(treeTop);
+        if (compilerEnv.isGenerateObserverCount()) {
+            addInstructionCount(1);
+        }
+        int part = 0;
+        for (Node child = treeTop.getFirstChild(); child != null;
+             child = child.getNext())
+        {
+            if (cfw.getCurrentCodeOffset() > SPLIT_METHOD_SIZE) {
+                String partName = codegen.getBodyMethodName(scriptOrFn)
+                                  + "_part" + (++part);
+                generatePartCall(partName);
+                if (part == 1) {
+                    generateEpilogue();
+                } else {
+                    generatePartEpilogue();
+                }
+                cfw.stopMethod((short)(localsMax + 1));
+                generatePartPrologue(partName);
+            }
+            generateStatement(child);
+        }
+        if (part == 0) {
+            generateEpilogue();
+        } else {
+            generatePartEpilogue();
+        }
+    }
+
+    private void generatePartCall(String partName)
+    {
+        cfw.addALoad(funObjLocal);
+        cfw.addALoad(contextLocal);
+        cfw.addALoad(variableObjectLocal);
+        cfw.addALoad(thisObjLocal);
+        if (popvLocal >= 0) {
+            cfw.addALoad(popvLocal);
+        } else {
+            cfw.add(ByteCode.ACONST_NULL);
+        }
+        if (scriptRegexpLocal >= 0) {
+            cfw.addALoad(scriptRegexpLocal);
+        } else {
+            cfw.add(ByteCode.ACONST_NULL);
+        }
+        cfw.addInvoke(ByteCode.INVOKESTATIC, codegen.mainClassName,
+                      partName, getPartMethodSignature());
+        if (fnCurrent == null) {
+            // Scripts return the value of the last expression statement
+            cfw.addAStore(popvLocal);
+        }
+        cfw.add(ByteCode.GOTO, epilogueLabel);
+    }
+
+    private String getPartMethodSignature()
+    {
+        return "(" + codegen.mainClassSignature
+               + "Lorg/mozilla/javascript/Context;"
+               + "Lorg/mozilla/javascript/Scriptable;"
+               + "Lorg/mozilla/javascript/Scriptable;"
+               + "Ljava/lang/Object;"
+               + "[Ljava/lang/Object;"
+               + ")Ljava/lang/Object;";
+    }
+
+    /**
+     * Starts a method continuing the body.  The variable object is passed
+     * in place of the parent scope, followed by the current result of a
+     * script and its regexp array.  The activation, if any, was entered by
+     * the first method, which also exits it when the last part returns or
+     * throws.
+     */
+    private void generatePartPrologue(String partName)
+    {
+        cfw.startMethod(partName, getPartMethodSignature(),
+                        (short)(ClassFileWriter.ACC_STATIC
+                                | ClassFileWriter.ACC_PRIVATE));
+        locals = new int[MAX_LOCALS];
+        inlineParameterLocalsTop = inlineParameterLocalsCount = 0;
+        firstFreeLocal = 6;
+        localsMax = 6;
+        popvLocal = (fnCurrent == null) ? (short)4 : -1;
+        if (scriptRegexpLocal >= 0) {
+            scriptRegexpLocal = 5;
+        }
+        itsZeroArgArray = -1;
+        itsOneArgArray = -1;
+        epilogueLabel = cfw.acquireLabel();
+
+        if (compilerEnv.isGenerateObserverCount())
+            saveCurrentCodeOffset();
+
+        if (compilerEnv.isGenerateDebugInfo()) {
+            cfw.addVariableDescriptor(fnCurrent == null ? "global"
+                                                        : "activation",
+                    "Lorg/mozilla/javascript/Scriptable;",
+                    cfw.getCurrentCodeOffset(), variableObjectLocal);
+        }
+
+        if (fnCurrent != null) {
+            if (fnCurrent.itsContainsCalls0) {
+                itsZeroArgArray = getNewWordLocal();
+                cfw.add(ByteCode.GETSTATIC,
+                        "org/mozilla/javascript/ScriptRuntime",
+                        "emptyArgs", "[Ljava/lang/Object;");
+                cfw.addAStore(itsZeroArgArray);
+            }
+            if (fnCurrent.itsContainsCalls1) {
+                itsOneArgArray = getNewWordLocal();
+                cfw.addPush(1);
+                cfw.add(ByteCode.ANEWARRAY, "java/lang/Object");
+                cfw.addAStore(itsOneArgArray);
+            }
+        }
+    }
+
+    private void generatePartEpilogue()
+    {
+        if (compilerEnv.isGenerateObserverCount())
+            addInstructionCount();
+        cfw.markLabel(epilogueLabel);
+        if (fnCurrent == null) {
+            cfw.addALoad(popvLocal);
+        }
+        cfw.add(ByteCode.ARETURN);
+    }
+
     // This creates a the user-facing function that returns a NativeGenerator
     // object.
     private void generateGenerator()
     {
         cfw.startMethod(codegen.getBodyMethodName(scriptOrFn),
                         codegen.getBodyMethodSignature(scriptOrFn),
-                        (short)(ClassFileWriter.ACC_STATIC
-                                | ClassFileWriter.ACC_PRIVATE));
+                        codegen.getBodyMethodFlags());
 
         initBodyGeneration();
         argsLocal = firstFreeLocal++;
@@ -1445,14 +2023,20 @@ class BodyCodegen
         cfw.addAStore(variableObjectLocal);
 
         // create a function object
-        cfw.add(ByteCode.NEW, codegen.mainClassName);
+        String fnClassName = codegen.getFunctionClassName(scriptOrFn);
+        cfw.add(ByteCode.NEW, fnClassName);
         // Call function constructor
         cfw.add(ByteCode.DUP);
         cfw.addALoad(variableObjectLocal);
         cfw.addALoad(contextLocal);           // load 'cx'
         cfw.addPush(scriptOrFnIndex);
-        cfw.addInvoke(ByteCode.INVOKESPECIAL, codegen.mainClassName,
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, fnClassName,
                       "<init>", Codegen.FUNCTION_CONSTRUCTOR_SIGNATURE);
+        if (compilerEnv.isGenerateFunctionClasses()) {
+            // Keep the main class as the static type so stack map frames
+            // never need to merge two function classes
+            cfw.add(ByteCode.CHECKCAST, codegen.mainClassName);
+        }
 
         // Init mainScript field
         cfw.add(ByteCode.DUP);
@@ -1486,6 +2070,10 @@ class BodyCodegen
 
     private void generateNestedFunctionInits()
     {
+        if (hasVarsInRegs) {
+            // Function statements are assigned to their variables
+            return;
+        }
         int functionCount = scriptOrFn.getFunctionCount();
         for (int i = 0; i != functionCount; i++) {
             OptFunctionNode ofn = OptFunctionNode.get(scriptOrFn, i);
@@ -1520,6 +2108,7 @@ class BodyCodegen
         }
 
         locals = new int[MAX_LOCALS];
+        inlineParameterLocalsTop = inlineParameterLocalsCount = 0;
 
         funObjLocal = 0;
         contextLocal = 1;
@@ -1536,6 +2125,16 @@ class BodyCodegen
         epilogueLabel = -1;
         enterAreaStartLabel = -1;
         generatorStateLocal = -1;
+
+        osrEntry = null;
+        int loopIndex = scriptOrFn.getIntProp(Node.LOOP_ENTRY_PROP, -1);
+        if (loopIndex != -1) {
+            if (fnCurrent != null && (!hasVarsInRegs || inDirectCallFunction))
+                Codegen.badTree();
+            Node treeTop = fnCurrent != null ? scriptOrFn.getLastChild()
+                                             : scriptOrFn;
+            osrEntry = NodeTransformer.getLoopEntries(treeTop).get(loopIndex);
+        }
     }
 
     /**
@@ -1543,6 +2142,9 @@ class BodyCodegen
      */
     private void generatePrologue()
     {
+        // Function entries and loop back-edges stop the script after
+        // Context.interrupt
+        addInterruptCheck();
         if (inDirectCallFunction) {
             int directParameterCount = scriptOrFn.getParamCount();
             // 0 is reserved for function Object 'this'
@@ -1674,13 +2276,21 @@ class BodyCodegen
             short firstUndefVar = -1;
             for (int i = 0; i != varCount; ++i) {
                 short reg = -1;
-                if (i < paramCount) {
+                if (i < paramCount || osrEntry != null) {
                     if (!inDirectCallFunction) {
-                        reg = getNewWordLocal();
+                        boolean isNumber = fnCurrent.isNumberVar(i);
+                        reg = isNumber ? getNewWordPairLocal(false)
+                                       : getNewWordLocal();
                         cfw.addALoad(argsLocal);
                         cfw.addPush(i);
                         cfw.add(ByteCode.AALOAD);
-                        cfw.addAStore(reg);
+                        if (isNumber) {
+                            addScriptRuntimeInvoke("toNumber",
+                                                   "(Ljava/lang/Object;)D");
+                            cfw.addDStore(reg);
+                        } else {
+                            cfw.addAStore(reg);
+                        }
                     }
                 } else if (fnCurrent.isNumberVar(i)) {
                     reg = getNewWordPairLocal(constDeclarations[i]);
@@ -1717,6 +2327,11 @@ class BodyCodegen
                 }
             }
 
+            if (osrEntry != null) {
+                // Continue in the loop the interpreter has left
+                cfw.add(ByteCode.GOTO, getTargetLabel(osrEntry));
+            }
+
             // Skip creating activation object.
             return;
         }
@@ -1746,7 +2361,7 @@ class BodyCodegen
                                    "(Lorg/mozilla/javascript/Context;"
                                    +"Lorg/mozilla/javascript/Scriptable;"
                                    +")V");
-        } else {
+        } else if (osrEntry == null) {
             debugVariableName = "global";
             cfw.addALoad(funObjLocal);
             cfw.addALoad(thisObjLocal);
@@ -1760,13 +2375,18 @@ class BodyCodegen
                                    +"Lorg/mozilla/javascript/Scriptable;"
                                    +"Z"
                                    +")V");
+        } else {
+            // The interpreter has already initialized the script
+            debugVariableName = "global";
         }
 
         enterAreaStartLabel = cfw.acquireLabel();
         epilogueLabel = cfw.acquireLabel();
         cfw.markLabel(enterAreaStartLabel);
 
-        generateNestedFunctionInits();
+        if (osrEntry == null) {
+            generateNestedFunctionInits();
+        }
 
         // default is to generate debug info
         if (compilerEnv.isGenerateDebugInfo()) {
@@ -1785,6 +2405,16 @@ class BodyCodegen
             if (linenum != -1)
               cfw.addLineNumberEntry((short)linenum);
 
+            if (osrEntry != null) {
+                // Continue in the loop the interpreter has left with the
+                // result it has computed so far
+                cfw.addALoad(argsLocal);
+                cfw.addPush(0);
+                cfw.add(ByteCode.AALOAD);
+                cfw.addAStore(popvLocal);
+                cfw.add(ByteCode.GOTO, getTargetLabel(osrEntry));
+            }
+
         } else {
             if (fnCurrent.itsContainsCalls0) {
                 itsZeroArgArray = getNewWordLocal();
@@ -2172,6 +2802,8 @@ class BodyCodegen
               case Token.IFNE:
                 if (compilerEnv.isGenerateObserverCount())
                     addInstructionCount(); 
+                if (type != Token.JSR && isBackwardJump((Jump)node))
+                    addInterruptCheck();
                 visitGoto((Jump)node, type, child);
                 break;
 
@@ -2267,10 +2899,15 @@ class BodyCodegen
                     OptFunctionNode ofn = OptFunctionNode.get(scriptOrFn,
                                                              fnIndex);
                     int t = ofn.fnode.getFunctionType();
-                    if (t != FunctionNode.FUNCTION_EXPRESSION) {
+                    // Function statements of functions without activation
+                    // are assigned to their variables, see NodeTransformer
+                    if (t != FunctionNode.FUNCTION_EXPRESSION
+                        && (t != FunctionNode.FUNCTION_STATEMENT
+                            || !hasVarsInRegs))
+                    {
                         throw Codegen.badTree();
                     }
-                    visitFunction(ofn, t);
+                    visitFunction(ofn, FunctionNode.FUNCTION_EXPRESSION);
                 }
                 break;
 
@@ -2278,12 +2915,25 @@ class BodyCodegen
                 {
                     cfw.addALoad(contextLocal);
                     cfw.addALoad(variableObjectLocal);
-                    cfw.addPush(node.getString());
+                    String name = node.getString();
+                    int upvar = getUpvar(name);
+                    if (upvar >= 0) {
+                        cfw.addPush(name);
+                        cfw.addPush(upvar);
+                        addScriptRuntimeInvoke(
+                            "getUpvar",
+                            "(Lorg/mozilla/javascript/Context;"
+                            +"Lorg/mozilla/javascript/Scriptable;"
+                            +"Ljava/lang/String;"
+                            +"I)Ljava/lang/Object;");
+                        break;
+                    }
+                    String nameType = codegen.pushNameCache(cfw, name);
                     addScriptRuntimeInvoke(
                         "name",
                         "(Lorg/mozilla/javascript/Context;"
                         +"Lorg/mozilla/javascript/Scriptable;"
-                        +"Ljava/lang/String;"
+                        +nameType
                         +")Ljava/lang/Object;");
                 }
                 break;
@@ -2630,6 +3280,22 @@ class BodyCodegen
                 break;
 
               case Token.GETELEM:
+                if (isArgumentsName(child)) {
+                    // arguments[id], may not need the arguments object
+                    generateExpression(child.getNext(), node);
+                    if (node.getIntProp(Node.ISNUMBER_PROP, -1) != -1) {
+                        addDoubleWrap();
+                    }
+                    cfw.addALoad(contextLocal);
+                    cfw.addALoad(variableObjectLocal);
+                    addScriptRuntimeInvoke(
+                        "getArgumentsElem",
+                        "(Ljava/lang/Object;"
+                        +"Lorg/mozilla/javascript/Context;"
+                        +"Lorg/mozilla/javascript/Scriptable;"
+                        +")Ljava/lang/Object;");
+                    break;
+                }
                 generateExpression(child, node); // object
                 generateExpression(child.getNext(), node);  // id
                 cfw.addALoad(contextLocal);
@@ -3042,14 +3708,20 @@ class BodyCodegen
     private void visitFunction(OptFunctionNode ofn, int functionType)
     {
         int fnIndex = codegen.getIndex(ofn.fnode);
-        cfw.add(ByteCode.NEW, codegen.mainClassName);
+        String fnClassName = codegen.getFunctionClassName(ofn.fnode);
+        cfw.add(ByteCode.NEW, fnClassName);
         // Call function constructor
         cfw.add(ByteCode.DUP);
         cfw.addALoad(variableObjectLocal);
         cfw.addALoad(contextLocal);           // load 'cx'
         cfw.addPush(fnIndex);
-        cfw.addInvoke(ByteCode.INVOKESPECIAL, codegen.mainClassName,
+        cfw.addInvoke(ByteCode.INVOKESPECIAL, fnClassName,
                       "<init>", Codegen.FUNCTION_CONSTRUCTOR_SIGNATURE);
+        if (compilerEnv.isGenerateFunctionClasses()) {
+            // Keep the main class as the static type so stack map frames
+            // never need to merge two function classes
+            cfw.add(ByteCode.CHECKCAST, codegen.mainClassName);
+        }
 
         // Init mainScript field;
         cfw.add(ByteCode.DUP);
@@ -3137,6 +3809,19 @@ class BodyCodegen
         }
     }
 
+    private boolean isBackwardJump(Jump node)
+    {
+        int labelId = node.target.labelId();
+        return labelId != -1 && cfw.isLabelMarked(labelId);
+    }
+
+    private void addInterruptCheck()
+    {
+        cfw.addALoad(contextLocal);
+        addScriptRuntimeInvoke("checkInterrupt",
+                               "(Lorg/mozilla/javascript/Context;)V");
+    }
+
     private void addGotoWithReturn(Node target) {
         FinallyReturnPoint ret = finallys.get(target);
         cfw.addLoadConstant(ret.jsrPoints.size());
@@ -3305,16 +3990,26 @@ class BodyCodegen
         Node firstArgChild = child.getNext();
         int childType = child.getType();
 
-        String methodName;
-        String signature;
+        String methodName;
+        String signature;
+
+        int argCount = 0;
+        for (Node arg = firstArgChild; arg != null; arg = arg.getNext()) {
+            ++argCount;
+        }
+
+        // Variables of enclosing functions are found by index in
+        // generateFunctionAndThisObj
+        boolean isNameCall = childType == Token.NAME
+                             && getUpvar(child.getString()) < 0;
 
         if (firstArgChild == null) {
-            if (childType == Token.NAME) {
+            if (isNameCall) {
                 // name() call
                 String name = child.getString();
-                cfw.addPush(name);
+                String nameType = codegen.pushNameCache(cfw, name);
                 methodName = "callName0";
-                signature = "(Ljava/lang/String;"
+                signature = "(" + nameType
                             +"Lorg/mozilla/javascript/Context;"
                             +"Lorg/mozilla/javascript/Scriptable;"
                             +")Ljava/lang/Object;";
@@ -3324,10 +4019,10 @@ class BodyCodegen
                 generateExpression(propTarget, node);
                 Node id = propTarget.getNext();
                 String property = id.getString();
-                cfw.addPush(property);
+                String cacheType = codegen.pushPropertyCache(cfw, property);
                 methodName = "callProp0";
                 signature = "(Ljava/lang/Object;"
-                            +"Ljava/lang/String;"
+                            +cacheType
                             +"Lorg/mozilla/javascript/Context;"
                             +"Lorg/mozilla/javascript/Scriptable;"
                             +")Ljava/lang/Object;";
@@ -3343,44 +4038,42 @@ class BodyCodegen
                             +")Ljava/lang/Object;";
             }
 
-        } else if (childType == Token.NAME) {
+        } else if (isNameCall) {
             // XXX: this optimization is only possible if name
             // resolution
             // is not affected by arguments evaluation and currently
             // there are no checks for it
             String name = child.getString();
-            generateCallArgArray(node, firstArgChild, false);
-            cfw.addPush(name);
-            methodName = "callName";
-            signature = "([Ljava/lang/Object;"
-                        +"Ljava/lang/String;"
-                        +"Lorg/mozilla/javascript/Context;"
-                        +"Lorg/mozilla/javascript/Scriptable;"
-                        +")Ljava/lang/Object;";
-        } else {
-            int argCount = 0;
-            for (Node arg = firstArgChild; arg != null; arg = arg.getNext()) {
-                ++argCount;
-            }
-            generateFunctionAndThisObj(child, node);
-            // stack: ... functionObj thisObj
-            if (argCount == 1) {
-                generateExpression(firstArgChild, node);
-                methodName = "call1";
-                signature = "(Lorg/mozilla/javascript/Callable;"
+            if (argCount <= FixedArityCallable.MAX_FIXED_ARITY) {
+                // callName1 .. callName4 call without an arguments array
+                String argTypes = generateCallArgs(node, firstArgChild);
+                String nameType = codegen.pushNameCache(cfw, name);
+                methodName = "callName" + argCount;
+                signature = "(" + argTypes
+                            +nameType
+                            +"Lorg/mozilla/javascript/Context;"
                             +"Lorg/mozilla/javascript/Scriptable;"
-                            +"Ljava/lang/Object;"
+                            +")Ljava/lang/Object;";
+            } else {
+                generateCallArgArray(node, firstArgChild, false);
+                String nameType = codegen.pushNameCache(cfw, name);
+                methodName = "callName";
+                signature = "([Ljava/lang/Object;"
+                            +nameType
                             +"Lorg/mozilla/javascript/Context;"
                             +"Lorg/mozilla/javascript/Scriptable;"
                             +")Ljava/lang/Object;";
-            } else if (argCount == 2) {
-                generateExpression(firstArgChild, node);
-                generateExpression(firstArgChild.getNext(), node);
-                methodName = "call2";
+            }
+        } else {
+            generateFunctionAndThisObj(child, node);
+            // stack: ... functionObj thisObj
+            if (argCount <= FixedArityCallable.MAX_FIXED_ARITY) {
+                // call1 .. call4 call without an arguments array
+                String argTypes = generateCallArgs(node, firstArgChild);
+                methodName = "call" + argCount;
                 signature = "(Lorg/mozilla/javascript/Callable;"
                             +"Lorg/mozilla/javascript/Scriptable;"
-                            +"Ljava/lang/Object;"
-                            +"Ljava/lang/Object;"
+                            + argTypes
                             +"Lorg/mozilla/javascript/Context;"
                             +"Lorg/mozilla/javascript/Scriptable;"
                             +")Ljava/lang/Object;";
@@ -3460,6 +4153,138 @@ class BodyCodegen
 
         // stack: ... functionObj directFunct
         short stackHeight = cfw.getStackTop();
+        Node inlineExpr = null;
+        if (type == Token.CALL && !compilerEnv.isGenerateObserverCount()) {
+            inlineExpr = target.getInlineExpression();
+        }
+        if (inlineExpr != null) {
+            cfw.add(ByteCode.POP2);
+            generateInlinedCall(node, target, inlineExpr, firstArgChild);
+        } else {
+            generateDirectCall(node, target, type, firstArgChild,
+                               thisObjLocal);
+        }
+
+        cfw.add(ByteCode.GOTO, beyond);
+
+        cfw.markLabel(regularCall, stackHeight);
+        // stack: ... functionObj directFunct
+        cfw.add(ByteCode.POP);
+        cfw.addALoad(contextLocal);
+        cfw.addALoad(variableObjectLocal);
+        // stack: ... functionObj cx scope
+        if (type != Token.NEW) {
+            cfw.addALoad(thisObjLocal);
+            releaseWordLocal(thisObjLocal);
+            // stack: ... functionObj cx scope thisObj
+        }
+        // XXX: this will generate code for the child array the second time,
+        // so expression code generation better not to alter tree structure...
+        generateCallArgArray(node, firstArgChild, true);
+
+        if (type == Token.NEW) {
+            addScriptRuntimeInvoke(
+                "newObject",
+                "(Ljava/lang/Object;"
+                +"Lorg/mozilla/javascript/Context;"
+                +"Lorg/mozilla/javascript/Scriptable;"
+                +"[Ljava/lang/Object;"
+                +")Lorg/mozilla/javascript/Scriptable;");
+        } else {
+            cfw.addInvoke(ByteCode.INVOKEINTERFACE,
+                "org/mozilla/javascript/Callable",
+                "call",
+                "(Lorg/mozilla/javascript/Context;"
+                +"Lorg/mozilla/javascript/Scriptable;"
+                +"Lorg/mozilla/javascript/Scriptable;"
+                +"[Ljava/lang/Object;"
+                +")Ljava/lang/Object;");
+        }
+
+        cfw.markLabel(beyond);
+    }
+
+    /**
+     * Generates the expression returned by <code>target</code> in place of
+     * a direct call to it. The arguments are stored in locals the way the
+     * target receives them as a direct call, so the code for the
+     * expression is generated as if it were in the body of the target.
+     * @see OptFunctionNode#getInlineExpression()
+     */
+    private void generateInlinedCall(Node node, OptFunctionNode target,
+                                     Node expr, Node firstArgChild)
+    {
+        int paramCount = target.fnode.getParamCount();
+        short[] registers = new short[paramCount];
+        Node argChild = firstArgChild;
+        for (int i = 0; i != paramCount; ++i) {
+            int dcp_register = nodeIsDirectCallParameter(argChild);
+            if (dcp_register >= 0) {
+                cfw.addALoad(dcp_register);
+                cfw.addDLoad(dcp_register + 1);
+            } else if (argChild.getIntProp(Node.ISNUMBER_PROP, -1)
+                       == Node.BOTH)
+            {
+                cfw.add(ByteCode.GETSTATIC,
+                        "java/lang/Void",
+                        "TYPE",
+                        "Ljava/lang/Class;");
+                generateExpression(argChild, node);
+            } else {
+                generateExpression(argChild, node);
+                cfw.addPush(0.0);
+            }
+            short reg = getNewDirectCallParameterLocal();
+            cfw.addDStore(reg + 1);
+            cfw.addAStore(reg);
+            registers[i] = reg;
+            argChild = argChild.getNext();
+        }
+        boolean forcedObjectParameters = !target.getParameterNumberContext();
+        if (forcedObjectParameters) {
+            // Same as the prologue of the target
+            for (int i = 0; i != paramCount; ++i) {
+                short reg = registers[i];
+                cfw.addALoad(reg);
+                cfw.add(ByteCode.GETSTATIC,
+                        "java/lang/Void",
+                        "TYPE",
+                        "Ljava/lang/Class;");
+                int isObjectLabel = cfw.acquireLabel();
+                cfw.add(ByteCode.IF_ACMPNE, isObjectLabel);
+                cfw.addDLoad(reg + 1);
+                addDoubleWrap();
+                cfw.addAStore(reg);
+                cfw.markLabel(isObjectLabel);
+            }
+        }
+
+        OptFunctionNode savedFnCurrent = fnCurrent;
+        short[] savedVarRegisters = varRegisters;
+        boolean savedHasVarsInRegs = hasVarsInRegs;
+        boolean savedInDirectCallFunction = inDirectCallFunction;
+        boolean savedForcedObjectParameters = itsForcedObjectParameters;
+        fnCurrent = target;
+        varRegisters = registers;
+        hasVarsInRegs = true;
+        inDirectCallFunction = true;
+        itsForcedObjectParameters = forcedObjectParameters;
+
+        generateExpression(expr, node);
+
+        fnCurrent = savedFnCurrent;
+        varRegisters = savedVarRegisters;
+        hasVarsInRegs = savedHasVarsInRegs;
+        inDirectCallFunction = savedInDirectCallFunction;
+        itsForcedObjectParameters = savedForcedObjectParameters;
+        inlineParameterLocalsTop -= paramCount;
+    }
+
+    private void generateDirectCall(Node node, OptFunctionNode target,
+                                    int type, Node firstArgChild,
+                                    short thisObjLocal)
+    {
+        // stack: ... functionObj directFunct
         cfw.add(ByteCode.SWAP);
         cfw.add(ByteCode.POP);
         // stack: ... directFunct
@@ -3523,44 +4348,20 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                           ? codegen.getDirectCtorName(target.fnode)
                           : codegen.getBodyMethodName(target.fnode),
                       codegen.getBodyMethodSignature(target.fnode));
+    }
 
-        cfw.add(ByteCode.GOTO, beyond);
-
-        cfw.markLabel(regularCall, stackHeight);
-        // stack: ... functionObj directFunct
-        cfw.add(ByteCode.POP);
-        cfw.addALoad(contextLocal);
-        cfw.addALoad(variableObjectLocal);
-        // stack: ... functionObj cx scope
-        if (type != Token.NEW) {
-            cfw.addALoad(thisObjLocal);
-            releaseWordLocal(thisObjLocal);
-            // stack: ... functionObj cx scope thisObj
-        }
-        // XXX: this will generate code for the child array the second time,
-        // so expression code generation better not to alter tree structure...
-        generateCallArgArray(node, firstArgChild, true);
-
-        if (type == Token.NEW) {
-            addScriptRuntimeInvoke(
-                "newObject",
-                "(Ljava/lang/Object;"
-                +"Lorg/mozilla/javascript/Context;"
-                +"Lorg/mozilla/javascript/Scriptable;"
-                +"[Ljava/lang/Object;"
-                +")Lorg/mozilla/javascript/Scriptable;");
-        } else {
-            cfw.addInvoke(ByteCode.INVOKEINTERFACE,
-                "org/mozilla/javascript/Callable",
-                "call",
-                "(Lorg/mozilla/javascript/Context;"
-                +"Lorg/mozilla/javascript/Scriptable;"
-                +"Lorg/mozilla/javascript/Scriptable;"
-                +"[Ljava/lang/Object;"
-                +")Ljava/lang/Object;");
+    /**
+     * Generate the arguments of a call as separate stack values and return
+     * their part of the signature of the called method.
+     */
+    private String generateCallArgs(Node node, Node argChild)
+    {
+        StringBuffer sb = new StringBuffer();
+        for (; argChild != null; argChild = argChild.getNext()) {
+            generateExpression(argChild, node);
+            sb.append("Ljava/lang/Object;");
         }
-
-        cfw.markLabel(beyond);
+        return sb.toString();
     }
 
     private void generateCallArgArray(Node node, Node argChild, boolean directCall)
@@ -3640,13 +4441,13 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             Node id = target.getNext();
             if (type == Token.GETPROP) {
                 String property = id.getString();
-                cfw.addPush(property);
+                String cacheType = codegen.pushPropertyCache(cfw, property);
                 cfw.addALoad(contextLocal);
                 cfw.addALoad(variableObjectLocal);
                 addScriptRuntimeInvoke(
                     "getPropFunctionAndThis",
                     "(Ljava/lang/Object;"
-                    +"Ljava/lang/String;"
+                    +cacheType
                     +"Lorg/mozilla/javascript/Context;"
                     +"Lorg/mozilla/javascript/Scriptable;"
                     +")Lorg/mozilla/javascript/Callable;");
@@ -3668,12 +4469,26 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
 
           case Token.NAME: {
             String name = node.getString();
-            cfw.addPush(name);
+            int upvar = getUpvar(name);
+            if (upvar >= 0) {
+                cfw.addALoad(contextLocal);
+                cfw.addALoad(variableObjectLocal);
+                cfw.addPush(name);
+                cfw.addPush(upvar);
+                addScriptRuntimeInvoke(
+                    "getUpvarFunctionAndThis",
+                    "(Lorg/mozilla/javascript/Context;"
+                    +"Lorg/mozilla/javascript/Scriptable;"
+                    +"Ljava/lang/String;"
+                    +"I)Lorg/mozilla/javascript/Callable;");
+                break;
+            }
+            String nameType = codegen.pushNameCache(cfw, name);
             cfw.addALoad(contextLocal);
             cfw.addALoad(variableObjectLocal);
             addScriptRuntimeInvoke(
                 "getNameFunctionAndThis",
-                "(Ljava/lang/String;"
+                "(" + nameType
                 +"Lorg/mozilla/javascript/Context;"
                 +"Lorg/mozilla/javascript/Scriptable;"
                 +")Lorg/mozilla/javascript/Callable;");
@@ -4061,9 +4876,24 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                 break;
             }
             break;
-          case Token.NAME:
+          case Token.NAME: {
+            String name = child.getString();
+            int upvar = getUpvar(name);
+            if (upvar >= 0) {
+                cfw.addALoad(contextLocal);
+                cfw.addALoad(variableObjectLocal);
+                cfw.addPush(name);
+                cfw.addPush(upvar);
+                cfw.addPush(incrDecrMask);
+                addScriptRuntimeInvoke("upvarIncrDecr",
+                    "(Lorg/mozilla/javascript/Context;"
+                    +"Lorg/mozilla/javascript/Scriptable;"
+                    +"Ljava/lang/String;"
+                    +"II)Ljava/lang/Object;");
+                break;
+            }
             cfw.addALoad(variableObjectLocal);
-            cfw.addPush(child.getString());          // push name
+            cfw.addPush(name);                       // push name
             cfw.addALoad(contextLocal);
             cfw.addPush(incrDecrMask);
             addScriptRuntimeInvoke("nameIncrDecr",
@@ -4072,6 +4902,7 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                 +"Lorg/mozilla/javascript/Context;"
                 +"I)Ljava/lang/Object;");
             break;
+          }
           case Token.GETPROPNOWARN:
             throw Kit.codeBug();
           case Token.GETPROP: {
@@ -4471,6 +5302,23 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
     private void visitSetName(Node node, Node child)
     {
         String name = node.getFirstChild().getString();
+        int upvar = getUpvar(name);
+        if (upvar >= 0 && child.getType() == Token.BINDNAME) {
+            // The variable is set by index without binding the name
+            generateExpression(child.getNext(), node);
+            cfw.addALoad(contextLocal);
+            cfw.addALoad(variableObjectLocal);
+            cfw.addPush(name);
+            cfw.addPush(upvar);
+            addScriptRuntimeInvoke(
+                "setUpvar",
+                "(Ljava/lang/Object;"
+                +"Lorg/mozilla/javascript/Context;"
+                +"Lorg/mozilla/javascript/Scriptable;"
+                +"Ljava/lang/String;"
+                +"I)Ljava/lang/Object;");
+            return;
+        }
         while (child != null) {
             generateExpression(child, node);
             child = child.getNext();
@@ -4488,6 +5336,51 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             +")Ljava/lang/Object;");
     }
 
+    /**
+     * Returns the variable of the activation of this or an enclosing
+     * function that name refers to as (depth &lt;&lt; 16) | index, see
+     * ScriptRuntime.getUpvar, or -1 if it has to be looked up by name.
+     * Like CodeGenerator.getUpvar, functions that call eval may get other
+     * variables at runtime and with dynamic scope the scope chain is not
+     * lexical. Direct calls and inlined calls do not get the scope of the
+     * function. Functions without activations do not add one to the
+     * scope chain, so they are not counted in depth. Scopes of with,
+     * catch and let blocks are checked at runtime.
+     */
+    private int getUpvar(String name)
+    {
+        if (fnCurrent == null || inDirectCallFunction
+            || compilerEnv.isUseDynamicScope() || name.equals("arguments"))
+        {
+            return -1;
+        }
+        int depth = 0;
+        for (OptFunctionNode ofn = fnCurrent; ofn != null;
+             ofn = ofn.getParent())
+        {
+            FunctionNode fn = ofn.fnode;
+            for (String varName : fn.getParamAndVarNames()) {
+                if (varName.equals(name)) {
+                    if (!fn.requiresActivation()) {
+                        return -1;
+                    }
+                    int index = ofn.getActivationVarIndexes().get(name, -1);
+                    if (index < 0 || index > 0xFFFF || depth > 0x7FFF) {
+                        return -1;
+                    }
+                    return (depth << 16) | index;
+                }
+            }
+            if (ofn.hasEvalCall()) {
+                return -1;
+            }
+            if (fn.requiresActivation()) {
+                ++depth;
+            }
+        }
+        return -1;
+    }
+
     private void visitStrictSetName(Node node, Node child)
     {
         String name = node.getFirstChild().getString();
@@ -4652,12 +5545,37 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         cfw.markLabel(beyond);
     }
 
+    /**
+     * Returns true if node reads "arguments" from the activation of the
+     * current function.
+     */
+    private boolean isArgumentsName(Node node)
+    {
+        return fnCurrent != null && !hasVarsInRegs
+            && node.getType() == Token.NAME
+            && "arguments".equals(node.getString());
+    }
+
     private void visitGetProp(Node node, Node child)
     {
-        generateExpression(child, node); // object
         Node nameChild = child.getNext();
-        generateExpression(nameChild, node);  // the name
+        if (node.getType() == Token.GETPROP && isArgumentsName(child)
+            && nameChild.getType() == Token.STRING
+            && "length".equals(nameChild.getString()))
+        {
+            // arguments.length, may not need the arguments object
+            cfw.addALoad(contextLocal);
+            cfw.addALoad(variableObjectLocal);
+            addScriptRuntimeInvoke(
+                "getArgumentsLength",
+                "(Lorg/mozilla/javascript/Context;"
+                +"Lorg/mozilla/javascript/Scriptable;"
+                +")Ljava/lang/Object;");
+            return;
+        }
+        generateExpression(child, node); // object
         if (node.getType() == Token.GETPROPNOWARN) {
+            generateExpression(nameChild, node);  // the name
             cfw.addALoad(contextLocal);
             addScriptRuntimeInvoke(
                 "getObjectPropNoWarn",
@@ -4667,6 +5585,7 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                 +")Ljava/lang/Object;");
             return;
         }
+        String nameType = pushPropertyName(nameChild, node);
         /*
             for 'this.foo' we call getObjectProp(Scriptable...) which can
             skip some casting overhead.
@@ -4677,7 +5596,7 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             addScriptRuntimeInvoke(
                 "getObjectProp",
                 "(Lorg/mozilla/javascript/Scriptable;"
-                +"Ljava/lang/String;"
+                +nameType
                 +"Lorg/mozilla/javascript/Context;"
                 +")Ljava/lang/Object;");
         } else {
@@ -4686,7 +5605,7 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             addScriptRuntimeInvoke(
                 "getObjectProp",
                 "(Ljava/lang/Object;"
-                +"Ljava/lang/String;"
+                +nameType
                 +"Lorg/mozilla/javascript/Context;"
                 +"Lorg/mozilla/javascript/Scriptable;"
                 +")Ljava/lang/Object;");
@@ -4702,7 +5621,7 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
             cfw.add(ByteCode.DUP);
         }
         Node nameChild = child;
-        generateExpression(child, node);
+        String nameType = pushPropertyName(child, node);
         child = child.getNext();
         if (type == Token.SETPROP_OP) {
             // stack: ... object object name -> ... object name object name
@@ -4716,16 +5635,18 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                 addScriptRuntimeInvoke(
                     "getObjectProp",
                     "(Lorg/mozilla/javascript/Scriptable;"
-                    +"Ljava/lang/String;"
+                    +nameType
                     +"Lorg/mozilla/javascript/Context;"
                     +")Ljava/lang/Object;");
             } else {
                 cfw.addALoad(contextLocal);
+                cfw.addALoad(variableObjectLocal);
                 addScriptRuntimeInvoke(
                     "getObjectProp",
                     "(Ljava/lang/Object;"
-                    +"Ljava/lang/String;"
+                    +nameType
                     +"Lorg/mozilla/javascript/Context;"
+                    +"Lorg/mozilla/javascript/Scriptable;"
                     +")Ljava/lang/Object;");
             }
         }
@@ -4734,12 +5655,26 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
         addScriptRuntimeInvoke(
             "setObjectProp",
             "(Ljava/lang/Object;"
-            +"Ljava/lang/String;"
+            +nameType
             +"Ljava/lang/Object;"
             +"Lorg/mozilla/javascript/Context;"
             +")Ljava/lang/Object;");
     }
 
+    /**
+     * Push the property name of a GETPROP or SETPROP node, as the cache of
+     * this access site when the name is a constant, and return the type of
+     * the pushed value.
+     */
+    private String pushPropertyName(Node nameChild, Node parent)
+    {
+        if (nameChild.getType() == Token.STRING) {
+            return codegen.pushPropertyCache(cfw, nameChild.getString());
+        }
+        generateExpression(nameChild, parent);
+        return "Ljava/lang/String;";
+    }
+
     private void visitSetElem(int type, Node node, Node child)
     {
         generateExpression(child, node);
@@ -5013,6 +5948,63 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
                                          "(out of locals)");
     }
 
+    /**
+     * Returns the slots for a parameter of an inlined direct call, one for
+     * the object value followed by two for the double value. The slots are
+     * never given back to the other locals: a catch scope or another object
+     * local in the same slot would not merge with the double at an exception
+     * handler. Inlined calls that follow each other reuse them instead, as
+     * they always hold the same types. The caller frees them by lowering
+     * inlineParameterLocalsTop.
+     */
+    private short getNewDirectCallParameterLocal()
+    {
+        if (inlineParameterLocalsTop < inlineParameterLocalsCount) {
+            return inlineParameterLocals[inlineParameterLocalsTop++];
+        }
+        short result = allocateDirectCallParameterLocal();
+        if (inlineParameterLocals == null) {
+            inlineParameterLocals = new short[8];
+        } else if (inlineParameterLocals.length
+                   == inlineParameterLocalsCount)
+        {
+            short[] tmp = new short[inlineParameterLocalsCount * 2];
+            System.arraycopy(inlineParameterLocals, 0, tmp, 0,
+                             inlineParameterLocalsCount);
+            inlineParameterLocals = tmp;
+        }
+        inlineParameterLocals[inlineParameterLocalsCount++] = result;
+        inlineParameterLocalsTop = inlineParameterLocalsCount;
+        return result;
+    }
+
+    private short allocateDirectCallParameterLocal()
+    {
+        short result = getConsecutiveSlots(3, false);
+        if (result < (MAX_LOCALS - 3)) {
+            locals[result] = 1;
+            locals[result + 1] = 1;
+            locals[result + 2] = 1;
+            if (localsMax < result + 3)
+                localsMax = (short) (result + 3);
+            if (result == firstFreeLocal) {
+                for (int i = firstFreeLocal + 3; i < MAX_LOCALS; i++) {
+                    if (locals[i] == 0) {
+                        firstFreeLocal = (short) i;
+                        if (localsMax < firstFreeLocal)
+                            localsMax = firstFreeLocal;
+                        return result;
+                    }
+                }
+            }
+            else {
+                return result;
+            }
+        }
+        throw Context.reportRuntimeError("Program too complex " +
+                                         "(out of locals)");
+    }
+
     private short getConsecutiveSlots(int count, boolean isConst) {
         if (isConst)
             count++;
@@ -5055,6 +6047,11 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
     static final int GENERATOR_START = 0;
     static final int GENERATOR_YIELD_START = 1;
 
+    // Code size after which a body continues in a new method. HotSpot
+    // does not compile methods above 8000 bytes, this leaves room for
+    // the statement that crosses the limit.
+    private static final int SPLIT_METHOD_SIZE = 5000;
+
     ClassFileWriter cfw;
     Codegen codegen;
     CompilerEnvirons compilerEnv;
@@ -5068,6 +6065,11 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
     private static final int MAX_LOCALS = 256;
     private int[] locals;
     private short firstFreeLocal;
+    // Slots for parameters of inlined calls, see
+    // getNewDirectCallParameterLocal
+    private short[] inlineParameterLocals;
+    private int inlineParameterLocalsTop;
+    private int inlineParameterLocalsCount;
     private short localsMax;
 
     private int itsLineNumber;
@@ -5093,6 +6095,10 @@ Else pass the JS object in the aReg and 0.0 in the dReg.
     private short scriptRegexpLocal;
     private short generatorStateLocal;
 
+    // Start of the loop body where the code continues after the
+    // prologue, see Node.LOOP_ENTRY_PROP
+    private Node osrEntry;
+
     private boolean isGenerator;
     private int generatorSwitch;
     private int maxLocals = 0;
@@ -45,9 +45,10 @@ import org.mozilla.javascript.ast.ScriptNode;
 
 final class OptFunctionNode
 {
-    OptFunctionNode(FunctionNode fnode)
+    OptFunctionNode(FunctionNode fnode, OptFunctionNode parent)
     {
         this.fnode = fnode;
+        this.parent = parent;
         fnode.setCompilerData(this);
     }
 
@@ -100,10 +101,25 @@ final class OptFunctionNode
         return varIndex < fnode.getParamCount();
     }
 
+    /**
+     * Returns true if the caller guarantees that the parameter holds
+     * a number on entry. Set when an interpreted function is compiled
+     * speculatively, see Node.NUMBER_PARAMS_PROP.
+     */
+    boolean isNumberParameter(int varIndex)
+    {
+        if (varIndex >= 32 || !isParameter(varIndex)
+            || isTargetOfDirectCall())
+        {
+            return false;
+        }
+        int numberParams = fnode.getIntProp(Node.NUMBER_PARAMS_PROP, 0);
+        return (numberParams & (1 << varIndex)) != 0;
+    }
+
     boolean isNumberVar(int varIndex)
     {
-        varIndex -= fnode.getParamCount();
-        if (varIndex >= 0 && numberVarFlags != null) {
+        if (numberVarFlags != null) {
             return numberVarFlags[varIndex];
         }
         return false;
@@ -111,16 +127,69 @@ final class OptFunctionNode
 
     void setIsNumberVar(int varIndex)
     {
-        varIndex -= fnode.getParamCount();
-        // Can only be used with non-parameters
-        if (varIndex < 0) Kit.codeBug();
+        // Can only be used with non-parameters or known number parameters
+        if (isParameter(varIndex) && !isNumberParameter(varIndex))
+            Kit.codeBug();
         if (numberVarFlags == null) {
-            int size = fnode.getParamAndVarCount() - fnode.getParamCount();
+            int size = fnode.getParamAndVarCount();
             numberVarFlags = new boolean[size];
         }
         numberVarFlags[varIndex] = true;
     }
 
+    /**
+     * Returns the function this function is nested in, or null.
+     */
+    OptFunctionNode getParent()
+    {
+        return parent;
+    }
+
+    /**
+     * Returns the indexes of the variables that activations of the
+     * function keep in an array, see NativeCall.createVarIndexes.
+     */
+    ObjToIntMap getActivationVarIndexes()
+    {
+        if (activationVarIndexes == null) {
+            activationVarIndexes = NativeCall.createVarIndexes(
+                fnode.getParamAndVarNames(), fnode.getParamAndVarConst(),
+                fnode.getParamCount());
+        }
+        return activationVarIndexes;
+    }
+
+    /**
+     * Returns true if the function body calls eval, which can define
+     * variables in the activation of the function.
+     */
+    boolean hasEvalCall()
+    {
+        if (evalCallState == 0) {
+            evalCallState = hasEvalCall(fnode.getLastChild()) ? 1 : -1;
+        }
+        return evalCallState > 0;
+    }
+
+    private static boolean hasEvalCall(Node node)
+    {
+        for (Node child = node.getFirstChild(); child != null;
+             child = child.getNext())
+        {
+            if (child.getType() == Token.CALL
+                && child.getIntProp(Node.SPECIALCALL_PROP,
+                                    Node.NON_SPECIALCALL)
+                   == Node.SPECIALCALL_EVAL)
+            {
+                return true;
+            }
+            if (hasEvalCall(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     int getVarIndex(Node n)
     {
         int index = n.getIntProp(Node.VARIABLE_PROP, -1);
@@ -142,7 +211,100 @@ final class OptFunctionNode
         return index;
     }
 
+    /**
+     * Returns the expression returned by the function if a direct call to
+     * it can be replaced with the expression, otherwise null. That is the
+     * case for small functions without variables whose body is a single
+     * return statement that only uses the parameters, constants and
+     * property gets, so it neither calls other functions nor needs a scope
+     * of its own.
+     */
+    Node getInlineExpression()
+    {
+        if (fnode.requiresActivation() || fnode.isGenerator()
+            || fnode.getParamAndVarCount() != fnode.getParamCount()
+            || fnode.getFunctionCount() != 0 || fnode.getRegexpCount() != 0)
+        {
+            return null;
+        }
+        Node body = fnode.getLastChild();
+        Node statement = body.getFirstChild();
+        if (body.getType() != Token.BLOCK || statement == null
+            || statement.getNext() != null
+            || statement.getType() != Token.RETURN)
+        {
+            return null;
+        }
+        Node expr = statement.getFirstChild();
+        if (expr == null || countInlineNodes(expr, 0) > MAX_INLINE_NODES) {
+            return null;
+        }
+        return expr;
+    }
+
+    private static int countInlineNodes(Node node, int count)
+    {
+        switch (node.getType()) {
+          case Token.NUMBER:
+          case Token.STRING:
+          case Token.TRUE:
+          case Token.FALSE:
+          case Token.NULL:
+          case Token.GETVAR:
+          case Token.ADD:
+          case Token.SUB:
+          case Token.MUL:
+          case Token.DIV:
+          case Token.MOD:
+          case Token.BITAND:
+          case Token.BITOR:
+          case Token.BITXOR:
+          case Token.LSH:
+          case Token.RSH:
+          case Token.URSH:
+          case Token.NEG:
+          case Token.POS:
+          case Token.NOT:
+          case Token.BITNOT:
+          case Token.LT:
+          case Token.LE:
+          case Token.GT:
+          case Token.GE:
+          case Token.EQ:
+          case Token.NE:
+          case Token.SHEQ:
+          case Token.SHNE:
+          case Token.AND:
+          case Token.OR:
+          case Token.HOOK:
+          case Token.GETPROP:
+          case Token.GETELEM:
+          case Token.TO_OBJECT:
+          case Token.TO_DOUBLE:
+            break;
+          default:
+            return Integer.MAX_VALUE;
+        }
+        ++count;
+        for (Node child = node.getFirstChild(); child != null;
+             child = child.getNext())
+        {
+            count = countInlineNodes(child, count);
+            if (count > MAX_INLINE_NODES) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    // Largest expression a direct call is replaced with
+    private static final int MAX_INLINE_NODES = 24;
+
     FunctionNode fnode;
+    private OptFunctionNode parent;
+    private ObjToIntMap activationVarIndexes;
+    // 0 if not known yet, 1 if the body calls eval, -1 otherwise
+    private int evalCallState;
     private boolean[] numberVarFlags;
     private int directTargetIndex = -1;
     private boolean itsParameterNumberContext;
@@ -54,6 +54,9 @@ public final class OptRuntime extends ScriptRuntime
     public static Object call0(Callable fun, Scriptable thisObj,
                                Context cx, Scriptable scope)
     {
+        if (fun instanceof FixedArityCallable) {
+            return ((FixedArityCallable)fun).call0(cx, scope, thisObj);
+        }
         return fun.call(cx, scope, thisObj, ScriptRuntime.emptyArgs);
     }
 
@@ -63,6 +66,9 @@ public final class OptRuntime extends ScriptRuntime
     public static Object call1(Callable fun, Scriptable thisObj, Object arg0,
                                Context cx, Scriptable scope)
     {
+        if (fun instanceof FixedArityCallable) {
+            return ((FixedArityCallable)fun).call1(cx, scope, thisObj, arg0);
+        }
         return fun.call(cx, scope, thisObj, new Object[] { arg0 } );
     }
 
@@ -73,9 +79,43 @@ public final class OptRuntime extends ScriptRuntime
                                Object arg0, Object arg1,
                                Context cx, Scriptable scope)
     {
+        if (fun instanceof FixedArityCallable) {
+            return ((FixedArityCallable)fun).call2(cx, scope, thisObj,
+                                                   arg0, arg1);
+        }
         return fun.call(cx, scope, thisObj, new Object[] { arg0, arg1 });
     }
 
+    /**
+     * Implement ....(arg0, arg1, arg2) call shrinking optimizer code.
+     */
+    public static Object call3(Callable fun, Scriptable thisObj,
+                               Object arg0, Object arg1, Object arg2,
+                               Context cx, Scriptable scope)
+    {
+        if (fun instanceof FixedArityCallable) {
+            return ((FixedArityCallable)fun).call3(cx, scope, thisObj,
+                                                   arg0, arg1, arg2);
+        }
+        return fun.call(cx, scope, thisObj,
+                        new Object[] { arg0, arg1, arg2 });
+    }
+
+    /**
+     * Implement ....(arg0, arg1, arg2, arg3) call shrinking optimizer code.
+     */
+    public static Object call4(Callable fun, Scriptable thisObj,
+                               Object arg0, Object arg1, Object arg2,
+                               Object arg3, Context cx, Scriptable scope)
+    {
+        if (fun instanceof FixedArityCallable) {
+            return ((FixedArityCallable)fun).call4(cx, scope, thisObj,
+                                                   arg0, arg1, arg2, arg3);
+        }
+        return fun.call(cx, scope, thisObj,
+                        new Object[] { arg0, arg1, arg2, arg3 });
+    }
+
     /**
      * Implement ....(arg0, arg1, ...) call shrinking optimizer code.
      */
@@ -105,9 +145,163 @@ public final class OptRuntime extends ScriptRuntime
     {
         Callable f = getNameFunctionAndThis(name, cx, scope);
         Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call0(cx, scope, thisObj);
+        }
+        return f.call(cx, scope, thisObj, ScriptRuntime.emptyArgs);
+    }
+
+    /**
+     * Implement name(args) call with a name cache.
+     */
+    public static Object callName(Object[] args, NameCache cache,
+                                  Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(cache, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        return f.call(cx, scope, thisObj, args);
+    }
+
+    /**
+     * Implement name() call with a name cache.
+     */
+    public static Object callName0(NameCache cache,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(cache, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call0(cx, scope, thisObj);
+        }
         return f.call(cx, scope, thisObj, ScriptRuntime.emptyArgs);
     }
 
+    /**
+     * Implement name(arg0) call shrinking optimizer code.
+     */
+    public static Object callName1(Object arg0, String name,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(name, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call1(cx, scope, thisObj,
+                                                 arg0);
+        }
+        return f.call(cx, scope, thisObj, new Object[] { arg0 });
+    }
+
+    /**
+     * Implement name(arg0) call with a name cache.
+     */
+    public static Object callName1(Object arg0, NameCache cache,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(cache, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call1(cx, scope, thisObj,
+                                                 arg0);
+        }
+        return f.call(cx, scope, thisObj, new Object[] { arg0 });
+    }
+
+    /**
+     * Implement name(arg0, arg1) call shrinking optimizer code.
+     */
+    public static Object callName2(Object arg0, Object arg1, String name,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(name, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call2(cx, scope, thisObj,
+                                                 arg0, arg1);
+        }
+        return f.call(cx, scope, thisObj, new Object[] { arg0, arg1 });
+    }
+
+    /**
+     * Implement name(arg0, arg1) call with a name cache.
+     */
+    public static Object callName2(Object arg0, Object arg1, NameCache cache,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(cache, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call2(cx, scope, thisObj,
+                                                 arg0, arg1);
+        }
+        return f.call(cx, scope, thisObj, new Object[] { arg0, arg1 });
+    }
+
+    /**
+     * Implement name(arg0, arg1, arg2) call shrinking optimizer code.
+     */
+    public static Object callName3(Object arg0, Object arg1, Object arg2,
+                                   String name,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(name, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call3(cx, scope, thisObj,
+                                                 arg0, arg1, arg2);
+        }
+        return f.call(cx, scope, thisObj, new Object[] { arg0, arg1, arg2 });
+    }
+
+    /**
+     * Implement name(arg0, arg1, arg2) call with a name cache.
+     */
+    public static Object callName3(Object arg0, Object arg1, Object arg2,
+                                   NameCache cache,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(cache, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call3(cx, scope, thisObj,
+                                                 arg0, arg1, arg2);
+        }
+        return f.call(cx, scope, thisObj, new Object[] { arg0, arg1, arg2 });
+    }
+
+    /**
+     * Implement name(arg0, arg1, arg2, arg3) call shrinking optimizer code.
+     */
+    public static Object callName4(Object arg0, Object arg1, Object arg2,
+                                   Object arg3, String name,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(name, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call4(cx, scope, thisObj,
+                                                 arg0, arg1, arg2, arg3);
+        }
+        return f.call(cx, scope, thisObj,
+                      new Object[] { arg0, arg1, arg2, arg3 });
+    }
+
+    /**
+     * Implement name(arg0, arg1, arg2, arg3) call with a name cache.
+     */
+    public static Object callName4(Object arg0, Object arg1, Object arg2,
+                                   Object arg3, NameCache cache,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getNameFunctionAndThis(cache, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call4(cx, scope, thisObj,
+                                                 arg0, arg1, arg2, arg3);
+        }
+        return f.call(cx, scope, thisObj,
+                      new Object[] { arg0, arg1, arg2, arg3 });
+    }
+
     /**
      * Implement x.property() call shrinking optimizer code.
      */
@@ -116,6 +310,23 @@ public final class OptRuntime extends ScriptRuntime
     {
         Callable f = getPropFunctionAndThis(value, property, cx, scope);
         Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call0(cx, scope, thisObj);
+        }
+        return f.call(cx, scope, thisObj, ScriptRuntime.emptyArgs);
+    }
+
+    /**
+     * Implement x.property() call with a property cache.
+     */
+    public static Object callProp0(Object value, NameCache cache,
+                                   Context cx, Scriptable scope)
+    {
+        Callable f = getPropFunctionAndThis(value, cache, cx, scope);
+        Scriptable thisObj = lastStoredScriptable(cx);
+        if (f instanceof FixedArityCallable) {
+            return ((FixedArityCallable)f).call0(cx, scope, thisObj);
+        }
         return f.call(cx, scope, thisObj, ScriptRuntime.emptyArgs);
     }
 
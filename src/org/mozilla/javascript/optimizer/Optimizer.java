@@ -63,7 +63,8 @@ class Optimizer
 
     private void optimizeFunction(OptFunctionNode theFunction)
     {
-        if (theFunction.fnode.requiresActivation()) return;
+        // Generators keep the operand stack in objects across yields
+        if (theFunction.fnode.isGenerator()) return;
 
         inDirectCallFunction = theFunction.isTargetOfDirectCall();
         this.theFunction = theFunction;
@@ -73,23 +74,24 @@ class Optimizer
         Node[] theStatementNodes = new Node[statementsArray.size()];
         statementsArray.toArray(theStatementNodes);
 
-        Block.runFlowAnalyzes(theFunction, theStatementNodes);
-
+        // The variables of functions with activation objects are properties
+        // of the activation, so only expressions can be typed
         if (!theFunction.fnode.requiresActivation()) {
-            /*
-             * Now that we know which local vars are in fact always
-             * Numbers, we re-write the tree to take advantage of
-             * that. Any arithmetic or assignment op involving just
-             * Number typed vars is marked so that the codegen will
-             * generate non-object code.
-             */
-            parameterUsedInNumberContext = false;
-            for (int i = 0; i < theStatementNodes.length; i++) {
-                rewriteForNumberVariables(theStatementNodes[i], NumberType);
-            }
-            theFunction.setParameterNumberContext(parameterUsedInNumberContext);
+            Block.runFlowAnalyzes(theFunction, theStatementNodes);
         }
 
+        /*
+         * Now that we know which local vars are in fact always
+         * Numbers, we re-write the tree to take advantage of
+         * that. Any arithmetic or assignment op involving just
+         * Number typed vars is marked so that the codegen will
+         * generate non-object code.
+         */
+        parameterUsedInNumberContext = false;
+        for (int i = 0; i < theStatementNodes.length; i++) {
+            rewriteForNumberVariables(theStatementNodes[i], NumberType);
+        }
+        theFunction.setParameterNumberContext(parameterUsedInNumberContext);
     }
 
 
@@ -43,8 +43,13 @@
 package org.mozilla.javascript.serialize;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.mozilla.javascript.*;
+import org.mozilla.javascript.debug.DebuggableScript;
 
 /**
  * Class ScriptableInputStream is used to read in a JavaScript
@@ -75,6 +80,38 @@ public class ScriptableInputStream extends ObjectInputStream {
         }
     }
 
+    /**
+     * Create a ScriptableInputStream that reads from a channel through
+     * a buffer. The buffer may read ahead of the serialized data.
+     * @param channel the channel to read from.
+     * @param scope the top-level scope to create the object in.
+     */
+    public ScriptableInputStream(ReadableByteChannel channel,
+                                 Scriptable scope)
+        throws IOException
+    {
+        this(new BufferedInputStream(Channels.newInputStream(channel)),
+             scope);
+    }
+
+    /**
+     * Adds the script that references written for the script added
+     * with the same id to {@link ScriptableOutputStream#addScript} are
+     * replaced with. The script must be compiled from the same source.
+     *
+     * @param id the id of the script.
+     * @param script a script compiled with interpreter mode.
+     * @throws IllegalArgumentException if the script is not interpreted.
+     */
+    public void addScript(String id, Script script) {
+        DebuggableScript view = Context.getDebuggableView(script);
+        if (view == null) {
+            throw new IllegalArgumentException(
+                "Script " + id + " is not interpreted");
+        }
+        scripts.put(id, view);
+    }
+
     @Override
     protected Class<?> resolveClass(ObjectStreamClass desc)
         throws IOException, ClassNotFoundException
@@ -90,6 +127,59 @@ public class ScriptableInputStream extends ObjectInputStream {
         return super.resolveClass(desc);
     }
 
+    @Override
+    protected void readStreamHeader()
+        throws IOException
+    {
+        short magic = readShort();
+        short version = readShort();
+        if (magic != STREAM_MAGIC) {
+            throw new StreamCorruptedException(
+                "invalid stream header: " + Integer.toHexString(magic));
+        }
+        if (version == ScriptableOutputStream.COMPACT_STREAM_VERSION) {
+            compactFormat = true;
+        } else if (version != STREAM_VERSION) {
+            throw new StreamCorruptedException(
+                "unsupported stream version: " + version);
+        }
+    }
+
+    @Override
+    protected ObjectStreamClass readClassDescriptor()
+        throws IOException, ClassNotFoundException
+    {
+        if (!compactFormat) {
+            // Written by an ObjectOutputStream or an older
+            // ScriptableOutputStream
+            return super.readClassDescriptor();
+        }
+        String name = readUTF();
+        long serialVersionUID = readLong();
+        Class<?> cl = null;
+        if (classLoader != null) {
+            try {
+                cl = Class.forName(name, false, classLoader);
+            } catch (ClassNotFoundException ex) {
+                // fall through to default loading
+            }
+        }
+        if (cl == null) {
+            cl = Class.forName(name, false,
+                               ScriptableInputStream.class.getClassLoader());
+        }
+        ObjectStreamClass desc = ObjectStreamClass.lookup(cl);
+        if (desc == null) {
+            throw new InvalidClassException(name, "not serializable");
+        }
+        if (desc.getSerialVersionUID() != serialVersionUID) {
+            throw new InvalidClassException(name,
+                "stream serialVersionUID " + serialVersionUID +
+                " does not match local " + desc.getSerialVersionUID());
+        }
+        return desc;
+    }
+
     @Override
     protected Object resolveObject(Object obj)
         throws IOException
@@ -101,6 +191,19 @@ public class ScriptableInputStream extends ObjectInputStream {
                 throw new IOException("Object " + name + " not found upon " +
                                       "deserialization.");
             }
+        }else if (obj instanceof ScriptableOutputStream.ScriptReference) {
+            ScriptableOutputStream.ScriptReference ref
+                = (ScriptableOutputStream.ScriptReference)obj;
+            DebuggableScript script = scripts.get(ref.getId());
+            if (script == null) {
+                throw new IOException("Script " + ref.getId() +
+                                      " not found upon deserialization.");
+            }
+            obj = ref.resolve(script);
+            if (obj == null) {
+                throw new IOException("Script " + ref.getId() +
+                                      " does not match the serialized one.");
+            }
         }else if (obj instanceof UniqueTag) {
             obj = ((UniqueTag)obj).readResolve();
         }else if (obj instanceof Undefined) {
@@ -111,4 +214,9 @@ public class ScriptableInputStream extends ObjectInputStream {
 
     private Scriptable scope;
     private ClassLoader classLoader;
+    // Set by readStreamHeader while the superclass is constructed, so it
+    // must not have an initializer
+    private boolean compactFormat;
+    private Map<String,DebuggableScript> scripts =
+        new HashMap<String,DebuggableScript>();
 }
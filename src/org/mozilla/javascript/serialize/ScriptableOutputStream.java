@@ -41,10 +41,14 @@ package org.mozilla.javascript.serialize;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.StringTokenizer;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 import org.mozilla.javascript.*;
+import org.mozilla.javascript.debug.DebuggableScript;
 
 /**
  * Class ScriptableOutputStream is an ObjectOutputStream used
@@ -58,6 +62,16 @@ import org.mozilla.javascript.*;
  * are looked up during deserialization. This approach avoids
  * the creation of duplicate copies of standard objects
  * during deserialization.
+ * <p>
+ * Interpreted scripts registered with {@link #addScript} are written
+ * as references to their id instead of with their compiled code, and
+ * the reading side supplies the same scripts to
+ * {@link ScriptableInputStream#addScript}. Class descriptors are written
+ * as the class name and serialVersionUID only, and the properties of
+ * objects in a compact format. The stream header carries its own version
+ * for this, so streams can only be read by a ScriptableInputStream that
+ * has the same classes available. A ScriptableInputStream still reads
+ * streams written in the standard format.
  *
  * @author Norris Boyd
  */
@@ -84,6 +98,41 @@ public class ScriptableOutputStream extends ObjectOutputStream {
         enableReplaceObject(true);
         excludeStandardObjectNames(); // XXX
     }
+
+    /**
+     * Creates a ScriptableOutputStream that writes to a channel through
+     * a buffer. {@link #flush} writes out the buffered data.
+     *
+     * @param channel the channel to write to.
+     * @param scope the scope containing the object.
+     */
+    public ScriptableOutputStream(WritableByteChannel channel,
+                                  Scriptable scope)
+        throws IOException
+    {
+        this(new BufferedOutputStream(Channels.newOutputStream(channel)),
+             scope);
+    }
+
+    /**
+     * Adds an interpreted script whose code is not to be written out.
+     * The script and the functions it defines are written as references
+     * to <code>id</code>, and the stream must be read by a
+     * ScriptableInputStream to which a script compiled from the same
+     * source was added with the same id.
+     *
+     * @param id the id of the script, unique in this stream.
+     * @param script a script compiled with interpreter mode.
+     * @throws IllegalArgumentException if the script is not interpreted.
+     */
+    public void addScript(String id, Script script) {
+        DebuggableScript view = Context.getDebuggableView(script);
+        if (view == null) {
+            throw new IllegalArgumentException(
+                "Script " + id + " is not interpreted");
+        }
+        scripts.put(view, id);
+    }
     
     public void excludeAllIds(Object[] ids) {
         for (Object id: ids) {
@@ -205,16 +254,123 @@ public class ScriptableOutputStream extends ObjectOutputStream {
         private String name;
     }
 
+    static class ScriptReference implements Serializable
+    {
+        static final long serialVersionUID = 4130916546390257254L;
+
+        ScriptReference(String id, int[] path, DebuggableScript script) {
+            this.id = id;
+            this.path = path;
+            this.functionName = script.getFunctionName();
+            this.paramCount = script.getParamCount();
+        }
+
+        /**
+         * Returns the function of <code>script</code> this refers to or
+         * null if it does not match the one that was written.
+         */
+        DebuggableScript resolve(DebuggableScript script) {
+            for (int index : path) {
+                if (index >= script.getFunctionCount())
+                    return null;
+                script = script.getFunction(index);
+            }
+            String name = script.getFunctionName();
+            if (functionName == null ? name != null
+                                     : !functionName.equals(name))
+            {
+                return null;
+            }
+            return script.getParamCount() == paramCount ? script : null;
+        }
+
+        String getId() { return id; }
+
+        private String id;
+        // Indexes of the nested functions leading from the script
+        private int[] path;
+        private String functionName;
+        private int paramCount;
+    }
+
+    /**
+     * Returns the reference to write for code of an added script, or null
+     * if the code does not belong to one.
+     */
+    private ScriptReference getScriptReference(DebuggableScript script)
+    {
+        ScriptReference ref = scriptRefs.get(script);
+        if (ref != null)
+            return ref;
+        int depth = 0;
+        DebuggableScript root = script;
+        while (root.getParent() != null) {
+            root = root.getParent();
+            ++depth;
+        }
+        String id = scripts.get(root);
+        if (id == null)
+            return null;
+        int[] path = new int[depth];
+        DebuggableScript child = script;
+        while (depth != 0) {
+            DebuggableScript parent = child.getParent();
+            int index = parent.getFunctionCount();
+            do {
+                if (index == 0)
+                    return null;
+                --index;
+            } while (parent.getFunction(index) != child);
+            path[--depth] = index;
+            child = parent;
+        }
+        ref = new ScriptReference(id, path, script);
+        scriptRefs.put(script, ref);
+        return ref;
+    }
+
     @Override
     protected Object replaceObject(Object obj) throws IOException
     {
         if (false) throw new IOException(); // suppress warning
+        if (obj instanceof DebuggableScript && !scripts.isEmpty()) {
+            ScriptReference ref = getScriptReference((DebuggableScript)obj);
+            if (ref != null)
+                return ref;
+        }
         String name = table.get(obj);
         if (name == null)
             return obj;
         return new PendingLookup(name);
     }
 
+    /**
+     * Version written in the stream header instead of
+     * {@link ObjectStreamConstants#STREAM_VERSION}: class descriptors and
+     * properties are written in the compact format.
+     */
+    static final short COMPACT_STREAM_VERSION = 0x5201;
+
+    @Override
+    protected void writeStreamHeader()
+        throws IOException
+    {
+        writeShort(STREAM_MAGIC);
+        writeShort(COMPACT_STREAM_VERSION);
+    }
+
+    @Override
+    protected void writeClassDescriptor(ObjectStreamClass desc)
+        throws IOException
+    {
+        writeUTF(desc.getName());
+        writeLong(desc.getSerialVersionUID());
+    }
+
     private Scriptable scope;
     private Map<Object,String> table;
+    private Map<DebuggableScript,String> scripts =
+        new IdentityHashMap<DebuggableScript,String>();
+    private Map<DebuggableScript,ScriptReference> scriptRefs =
+        new IdentityHashMap<DebuggableScript,ScriptReference>();
 }
@@ -0,0 +1,124 @@
+// Copyright 2010 the V8 project authors. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+//     * Redistributions of source code must retain the above copyright
+//       notice, this list of conditions and the following disclaimer.
+//     * Redistributions in binary form must reproduce the above
+//       copyright notice, this list of conditions and the following
+//       disclaimer in the documentation and/or other materials provided
+//       with the distribution.
+//     * Neither the name of Google Inc. nor the names of its
+//       contributors may be used to endorse or promote products derived
+//       from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+// Ported to Java from the fast-dtoa (Grisu3) code of the V8 project.
+
+package org.mozilla.javascript.v8dtoa;
+
+/**
+ * Precomputed normalized powers of ten from 10^-348 to 10^340 in steps of
+ * 10^8, used to scale doubles into the target exponent range of Grisu3.
+ */
+class CachedPowers {
+
+    static final double kD_1_LOG2_10 = 0.30102999566398114;  //  1 / lg(10)
+
+    static class CachedPower {
+        long significand;
+        short binaryExponent;
+        short decimalExponent;
+
+        CachedPower(long significand, short binaryExponent, short decimalExponent) {
+            this.significand = significand;
+            this.binaryExponent = binaryExponent;
+            this.decimalExponent = decimalExponent;
+        }
+    }
+
+    static int getCachedPower(int e, int alpha, int gamma, DiyFp c_mk) {
+        int kQ = DiyFp.kSignificandSize;
+        double k = Math.ceil((alpha - e + kQ - 1) * kD_1_LOG2_10);
+        int index = (GRISU_CACHE_OFFSET + (int) k - 1) / CACHED_POWERS_SPACING + 1;
+        CachedPower cachedPower = CACHED_POWERS[index];
+
+        c_mk.setF(cachedPower.significand);
+        c_mk.setE(cachedPower.binaryExponent);
+        assert ((alpha <= c_mk.e() + e) && (c_mk.e() + e <= gamma));
+        return cachedPower.decimalExponent;
+    }
+
+    // interval between decimal exponents of the powers cache below
+    static final int CACHED_POWERS_SPACING = 8;
+
+    // 64 bit significands of 10^-348, 10^-340, ... 10^340, rounded to nearest
+    private static final long[] SIGNIFICANDS = {
+        0xfa8fd5a0081c0288L, 0xbaaee17fa23ebf76L, 0x8b16fb203055ac76L,
+        0xcf42894a5dce35eaL, 0x9a6bb0aa55653b2dL, 0xe61acf033d1a45dfL,
+        0xab70fe17c79ac6caL, 0xff77b1fcbebcdc4fL, 0xbe5691ef416bd60cL,
+        0x8dd01fad907ffc3cL, 0xd3515c2831559a83L, 0x9d71ac8fada6c9b5L,
+        0xea9c227723ee8bcbL, 0xaecc49914078536dL, 0x823c12795db6ce57L,
+        0xc21094364dfb5637L, 0x9096ea6f3848984fL, 0xd77485cb25823ac7L,
+        0xa086cfcd97bf97f4L, 0xef340a98172aace5L, 0xb23867fb2a35b28eL,
+        0x84c8d4dfd2c63f3bL, 0xc5dd44271ad3cdbaL, 0x936b9fcebb25c996L,
+        0xdbac6c247d62a584L, 0xa3ab66580d5fdaf6L, 0xf3e2f893dec3f126L,
+        0xb5b5ada8aaff80b8L, 0x87625f056c7c4a8bL, 0xc9bcff6034c13053L,
+        0x964e858c91ba2655L, 0xdff9772470297ebdL, 0xa6dfbd9fb8e5b88fL,
+        0xf8a95fcf88747d94L, 0xb94470938fa89bcfL, 0x8a08f0f8bf0f156bL,
+        0xcdb02555653131b6L, 0x993fe2c6d07b7facL, 0xe45c10c42a2b3b06L,
+        0xaa242499697392d3L, 0xfd87b5f28300ca0eL, 0xbce5086492111aebL,
+        0x8cbccc096f5088ccL, 0xd1b71758e219652cL, 0x9c40000000000000L,
+        0xe8d4a51000000000L, 0xad78ebc5ac620000L, 0x813f3978f8940984L,
+        0xc097ce7bc90715b3L, 0x8f7e32ce7bea5c70L, 0xd5d238a4abe98068L,
+        0x9f4f2726179a2245L, 0xed63a231d4c4fb27L, 0xb0de65388cc8ada8L,
+        0x83c7088e1aab65dbL, 0xc45d1df942711d9aL, 0x924d692ca61be758L,
+        0xda01ee641a708deaL, 0xa26da3999aef774aL, 0xf209787bb47d6b85L,
+        0xb454e4a179dd1877L, 0x865b86925b9bc5c2L, 0xc83553c5c8965d3dL,
+        0x952ab45cfa97a0b3L, 0xde469fbd99a05fe3L, 0xa59bc234db398c25L,
+        0xf6c69a72a3989f5cL, 0xb7dcbf5354e9beceL, 0x88fcf317f22241e2L,
+        0xcc20ce9bd35c78a5L, 0x98165af37b2153dfL, 0xe2a0b5dc971f303aL,
+        0xa8d9d1535ce3b396L, 0xfb9b7cd9a4a7443cL, 0xbb764c4ca7a44410L,
+        0x8bab8eefb6409c1aL, 0xd01fef10a657842cL, 0x9b10a4e5e9913129L,
+        0xe7109bfba19c0c9dL, 0xac2820d9623bf429L, 0x80444b5e7aa7cf85L,
+        0xbf21e44003acdd2dL, 0x8e679c2f5e44ff8fL, 0xd433179d9c8cb841L,
+        0x9e19db92b4e31ba9L, 0xeb96bf6ebadf77d9L, 0xaf87023b9bf0ee6bL
+    };
+
+    private static final short[] BINARY_EXPONENTS = {
+        -1220, -1193, -1166, -1140, -1113, -1087, -1060, -1034, -1007, -980,
+        -954, -927, -901, -874, -847, -821, -794, -768, -741, -715,
+        -688, -661, -635, -608, -582, -555, -529, -502, -475, -449,
+        -422, -396, -369, -343, -316, -289, -263, -236, -210, -183,
+        -157, -130, -103, -77, -50, -24, 3, 30, 56, 83,
+        109, 136, 162, 189, 216, 242, 269, 295, 322, 348,
+        375, 402, 428, 455, 481, 508, 534, 561, 588, 614,
+        641, 667, 694, 720, 747, 774, 800, 827, 853, 880,
+        907, 933, 960, 986, 1013, 1039, 1066
+    };
+
+    private static final int GRISU_CACHE_OFFSET = 348;
+
+    static final CachedPower[] CACHED_POWERS =
+        new CachedPower[SIGNIFICANDS.length];
+
+    static {
+        for (int i = 0; i < SIGNIFICANDS.length; i++) {
+            CACHED_POWERS[i] = new CachedPower(SIGNIFICANDS[i],
+                BINARY_EXPONENTS[i],
+                (short) (i * CACHED_POWERS_SPACING - GRISU_CACHE_OFFSET));
+        }
+    }
+}
@@ -0,0 +1,678 @@
+// Copyright 2010 the V8 project authors. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+//     * Redistributions of source code must retain the above copyright
+//       notice, this list of conditions and the following disclaimer.
+//     * Redistributions in binary form must reproduce the above
+//       copyright notice, this list of conditions and the following
+//       disclaimer in the documentation and/or other materials provided
+//       with the distribution.
+//     * Neither the name of Google Inc. nor the names of its
+//       contributors may be used to endorse or promote products derived
+//       from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+// Ported to Java from the fast-dtoa (Grisu3) code of the V8 project.
+
+package org.mozilla.javascript.v8dtoa;
+
+/**
+ * Fast double to decimal conversion using the Grisu3 algorithm by
+ * Florian Loitsch, "Printing Floating-Point Numbers Quickly and Accurately
+ * with Integers". The conversion only uses 64 bit integer arithmetic, but
+ * fails for about 0.5% of all doubles, in which case callers have to fall
+ * back to a bignum based algorithm such as {@link org.mozilla.javascript
+ * DToA}.
+ */
+public class FastDtoa {
+
+    // FastDtoa will produce at most kFastDtoaMaximalLength digits.
+    static final int kFastDtoaMaximalLength = 17;
+
+    // The minimal and maximal target exponent define the range of w's binary
+    // exponent, where 'w' is the result of multiplying the input by a cached
+    // power of ten.
+    //
+    // A different range might be chosen on a different platform, to optimize
+    // digit generation, but a smaller range requires more powers of ten to be
+    // cached.
+    static final int minimal_target_exponent = -60;
+    static final int maximal_target_exponent = -32;
+
+
+    // Adjusts the last digit of the generated number, and screens out
+    // generated solutions that may be inaccurate. A solution may be
+    // inaccurate if it is outside the safe interval, or if we cannot prove
+    // that it is closer to the input than a neighboring representation of
+    // the same length.
+    //
+    // Input: * buffer containing the digits of too_high / 10^kappa
+    //        * distance_too_high_w == (too_high - w).f() * unit
+    //        * unsafe_interval == (too_high - too_low).f() * unit
+    //        * rest = (too_high - buffer * 10^kappa).f() * unit
+    //        * ten_kappa = 10^kappa * unit
+    //        * unit = the common multiplier
+    // Output: returns true if the buffer is guaranteed to contain the closest
+    //    representable number to the input.
+    //  Modifies the generated digits in the buffer to approach (round towards)
+    //  w.
+    static boolean roundWeed(FastDtoaBuilder buffer,
+                             long distance_too_high_w,
+                             long unsafe_interval,
+                             long rest,
+                             long ten_kappa,
+                             long unit) {
+        long small_distance = distance_too_high_w - unit;
+        long big_distance = distance_too_high_w + unit;
+        // Let w_low  = too_high - big_distance, and
+        //     w_high = too_high - small_distance.
+        // Note: w_low < w < w_high
+        //
+        // The real w (* unit) must lie somewhere inside the interval
+        // ]w_low; w_low[ (often written as "(w_low; w_low)")
+
+        // Basically the buffer currently contains a number in the unsafe
+        // interval ]too_low; too_high[ with too_low < w < too_high
+        //
+        // We need to do the following tests in this order to avoid over- and
+        // underflows.
+        while (uint64_lt(rest, small_distance) &&                // Negated condition 1
+               uint64_gte(unsafe_interval - rest, ten_kappa) &&  // Negated condition 2
+               (uint64_lt(rest + ten_kappa, small_distance) ||   // buffer{-1} > w_high
+                uint64_gte(small_distance - rest, rest + ten_kappa - small_distance))) {
+            buffer.decreaseLast();
+            rest += ten_kappa;
+        }
+
+        // We have approached w+ from below. Now we have to check if w- is
+        // potentially closer, in which case we cannot decide which of the
+        // two representations is the closest.
+        if (uint64_lt(rest, big_distance) &&
+            uint64_gte(unsafe_interval - rest, ten_kappa) &&
+            (uint64_lt(rest + ten_kappa, big_distance) ||
+             uint64_gt(big_distance - rest, rest + ten_kappa - big_distance))) {
+            return false;
+        }
+
+        // Weeding test.
+        //   The safe interval is [too_low + 2 ulp; too_high - 2 ulp]
+        //   Since too_low = too_high - unsafe_interval this is equivalent to
+        //      [too_high - unsafe_interval + 4 ulp; too_high - 2 ulp]
+        //   Conceptually we have: rest ~= too_high - buffer
+        return uint64_lte(2 * unit, rest) &&
+               uint64_lte(rest, unsafe_interval - 4 * unit);
+    }
+
+    // Rounds the buffer upwards if the result is closer to v by possibly
+    // adding 1 to the buffer. If the precision of the calculation is not
+    // sufficient to round correctly, return false.
+    //
+    // The rounding might shift the whole buffer in which case the kappa is
+    // adjusted. For example "99", kappa = 3 might become "10", kappa = 4.
+    //
+    // If 2*rest > ten_kappa then the buffer needs to be round up.
+    // rest can have an error of +/- 1 unit. This function accounts for the
+    // imprecision and returns false, if the rounding direction cannot be
+    // unambiguously determined. In particular exact halfway cases are
+    // always rejected, so callers that need a specific tie-breaking rule can
+    // rely on their fallback for those.
+    //
+    // Precondition: rest < ten_kappa.
+    // Returns the adjustment to kappa (0 or 1) or -1 if rounding failed.
+    static int roundWeedCounted(FastDtoaBuilder buffer,
+                                long rest,
+                                long ten_kappa,
+                                long unit) {
+        assert uint64_lt(rest, ten_kappa);
+        // The following tests are done in a specific order to avoid overflows.
+        // They will work correctly with any uint64 values of rest < ten_kappa
+        // and unit.
+        //
+        // If the unit is too big, then we don't know which way to round. For
+        // example a unit of 50 means that the real number lies within
+        // rest +/- 50. If 10^kappa == 40 then there is no way to tell which
+        // way to round.
+        if (uint64_gte(unit, ten_kappa)) return -1;
+        // Even if unit is just half the size of 10^kappa we are already
+        // completely lost. (And after the previous test we know that the
+        // expression will not over/underflow.)
+        if (uint64_lte(ten_kappa - unit, unit)) return -1;
+        // If 2 * (rest + unit) <= 10^kappa we can safely round down.
+        if (uint64_gt(ten_kappa - rest, rest) &&
+            uint64_gte(ten_kappa - 2 * rest, 2 * unit)) {
+            return 0;
+        }
+        // If 2 * (rest - unit) >= 10^kappa, then we can safely round up.
+        if (uint64_gt(rest, unit) &&
+            uint64_lte(ten_kappa - (rest - unit), rest - unit)) {
+            // Increment the last digit recursively until we find a non '9'
+            // digit.
+            char[] chars = buffer.chars;
+            int length = buffer.end;
+            chars[length - 1]++;
+            for (int i = length - 1; i > 0; --i) {
+                if (chars[i] != '0' + 10) break;
+                chars[i] = '0';
+                chars[i - 1]++;
+            }
+            // If the first digit is now '0'+ 10 we had a buffer with all '9's.
+            // With the exception of the first digit all digits are now '0'.
+            // Simply switch the first digit to '1' and adjust the kappa.
+            // Example: "99" becomes "60" and then "10".
+            if (chars[0] == '0' + 10) {
+                chars[0] = '1';
+                return 1;
+            }
+            return 0;
+        }
+        return -1;
+    }
+
+    static final int kTen4 = 10000;
+    static final int kTen5 = 100000;
+    static final int kTen6 = 1000000;
+    static final int kTen7 = 10000000;
+    static final int kTen8 = 100000000;
+    static final int kTen9 = 1000000000;
+
+    // Returns the biggest power of ten that is less than or equal than the
+    // given number. We furthermore receive the maximum number of bits 'number'
+    // has.
+    // The power is returned in the upper and the exponent in the lower 32
+    // bits of the result. If number is 0 then the power is 0 and the
+    // exponent -1. The number of bits must be <= 32.
+    // Precondition: number < (1 << number_bits).
+    static long biggestPowerTen(long number,
+                                int number_bits) {
+        int power, exponent;
+        switch (number_bits) {
+            case 32:
+            case 31:
+            case 30:
+                if (kTen9 <= number) {
+                    power = kTen9;
+                    exponent = 9;
+                    break;
+                }  // else fallthrough
+            case 29:
+            case 28:
+            case 27:
+                if (kTen8 <= number) {
+                    power = kTen8;
+                    exponent = 8;
+                    break;
+                }  // else fallthrough
+            case 26:
+            case 25:
+            case 24:
+                if (kTen7 <= number) {
+                    power = kTen7;
+                    exponent = 7;
+                    break;
+                }  // else fallthrough
+            case 23:
+            case 22:
+            case 21:
+            case 20:
+                if (kTen6 <= number) {
+                    power = kTen6;
+                    exponent = 6;
+                    break;
+                }  // else fallthrough
+            case 19:
+            case 18:
+            case 17:
+                if (kTen5 <= number) {
+                    power = kTen5;
+                    exponent = 5;
+                    break;
+                }  // else fallthrough
+            case 16:
+            case 15:
+            case 14:
+                if (kTen4 <= number) {
+                    power = kTen4;
+                    exponent = 4;
+                    break;
+                }  // else fallthrough
+            case 13:
+            case 12:
+            case 11:
+            case 10:
+                if (1000 <= number) {
+                    power = 1000;
+                    exponent = 3;
+                    break;
+                }  // else fallthrough
+            case 9:
+            case 8:
+            case 7:
+                if (100 <= number) {
+                    power = 100;
+                    exponent = 2;
+                    break;
+                }  // else fallthrough
+            case 6:
+            case 5:
+            case 4:
+                if (10 <= number) {
+                    power = 10;
+                    exponent = 1;
+                    break;
+                }  // else fallthrough
+            case 3:
+            case 2:
+            case 1:
+                if (1 <= number) {
+                    power = 1;
+                    exponent = 0;
+                    break;
+                }  // else fallthrough
+            case 0:
+                power = 0;
+                exponent = -1;
+                break;
+            default:
+                // Following assignments are here to silence compiler warnings.
+                power = 0;
+                exponent = 0;
+                // UNREACHABLE();
+        }
+        return ((long) power << 32) | (0xffffffffL & exponent);
+    }
+
+    // Generates the digits of input number w.
+    // w is a floating-point number (DiyFp), consisting of a significand and an
+    // exponent. Its exponent is bounded by minimal_target_exponent and
+    // maximal_target_exponent.
+    //       Hence -60 <= w.e() <= -32.
+    //
+    // Returns false if it fails, in which case the generated digits in the
+    // buffer should not be used.
+    // Preconditions:
+    //  * low, w and high are correct up to 1 ulp (unit in the last place).
+    //    That is, their error must be less that a unit of their last digits.
+    //  * low.e() == w.e() == high.e()
+    //  * low < w < high, and taking into account their error: low~ <= high~
+    //  * minimal_target_exponent <= w.e() <= maximal_target_exponent
+    // Postconditions: returns false if procedure fails.
+    //   otherwise:
+    //     * buffer is not null-terminated, but len contains the number of
+    //       digits.
+    //     * buffer contains the shortest possible decimal digit-sequence
+    //       such that LOW < buffer * 10^kappa < HIGH, where LOW and HIGH are
+    //       the correct values of low and high (without their error).
+    //     * if more than one decimal representation gives the minimal number
+    //       of decimal digits then the one closest to W (where W is the
+    //       correct value of w) is chosen.
+    // Remark: this procedure takes into account the imprecision of its input
+    //   numbers. If the precision is not enough to guarantee all the
+    //   postconditions then false is returned. This usually happens rarely
+    //   (~0.5%).
+    //
+    // Say, for the sake of example, that
+    //   w.e() == -48, and w.f() == 0x1234567890abcdef
+    // w's value can be computed by w.f() * 2^w.e()
+    // We can obtain w's integral digits by simply shifting w.f() by -w.e().
+    //  -> w's integral part is 0x1234
+    //  w's fractional part is therefore 0x567890abcdef.
+    // Printing w's integral part is easy (simply print 0x1234 in decimal).
+    // In order to print its fraction we repeatedly multiply the fraction by 10
+    // and get each digit. Example the first digit after the point would be
+    // computed by (0x567890abcdef * 10) >> 48. -> 3
+    // The whole thing becomes slightly more complicated because we want to
+    // stop once we have enough digits. That is, once the digits inside the
+    // buffer represent 'w' we can stop. Everything inside the interval low -
+    // high represents w. However we have to pay attention to low, high and w's
+    // imprecision.
+    static boolean digitGen(DiyFp low,
+                            DiyFp w,
+                            DiyFp high,
+                            FastDtoaBuilder buffer,
+                            int mk) {
+        assert (low.e() == w.e() && w.e() == high.e());
+        assert uint64_lte(low.f() + 1, high.f() - 1);
+        assert (minimal_target_exponent <= w.e() && w.e() <= maximal_target_exponent);
+        // low, w and high are imprecise, but by less than one ulp (unit in the
+        // last place).
+        // If we remove (resp. add) 1 ulp from low (resp. high) we are certain
+        // that the new numbers are outside of the interval we want the final
+        // representation to lie in.
+        // Inversely adding (resp. removing) 1 ulp from low (resp. high) would
+        // yield numbers that are certain to lie in the interval. We will use
+        // this fact later on.
+        // We will now start by generating the digits within the uncertain
+        // interval. Later we will weed out representations that lie outside
+        // the safe interval and thus _might_ lie outside the correct interval.
+        long unit = 1;
+        DiyFp too_low = new DiyFp(low.f() - unit, low.e());
+        DiyFp too_high = new DiyFp(high.f() + unit, high.e());
+        // too_low and too_high are guaranteed to lie outside the interval we
+        // want the generated number in.
+        DiyFp unsafe_interval = DiyFp.minus(too_high, too_low);
+        // We now cut the input number into two parts; the integral part and
+        // the fractionals. We will not write any decimal separator though, but
+        // adapt kappa instead.
+        // Reminder: we are currently computing the digits (stored inside the
+        // buffer) such that: too_low < buffer * 10^kappa < too_high
+        // We use too_high for the digit_generation and stop as soon as
+        // possible. If we stop early we effectively round down.
+        DiyFp one = new DiyFp(1L << -w.e(), w.e());
+        // Division by one is a shift.
+        long integrals = too_high.f() >>> -one.e();
+        // Modulo by one is an and.
+        long fractionals = too_high.f() & (one.f() - 1);
+        long result = biggestPowerTen(integrals, DiyFp.kSignificandSize - (-one.e()));
+        long divider = (result >>> 32) & 0xffffffffL;
+        int divider_exponent = (int) (result & 0xffffffffL);
+        int kappa = divider_exponent + 1;
+        // Loop invariant: buffer = too_high / 10^kappa  (integer division)
+        // The invariant holds for the first iteration: kappa has been
+        // initialized with the divider exponent + 1. And the divider is the
+        // biggest power of ten that is smaller than integrals.
+        while (kappa > 0) {
+            int digit = (int) (integrals / divider);
+            buffer.append((char) ('0' + digit));
+            integrals %= divider;
+            kappa--;
+            // Note that kappa now equals the exponent of the divider and that
+            // the invariant thus holds again.
+            long rest = (integrals << -one.e()) + fractionals;
+            // Invariant: too_high = buffer * 10^kappa + DiyFp(rest, one.e())
+            // Reminder: unsafe_interval.e() == one.e()
+            if (uint64_lt(rest, unsafe_interval.f())) {
+                // Rounding down (by not emitting the remaining digits) yields
+                // a number that lies within the unsafe interval.
+                buffer.point = buffer.end - mk + kappa;
+                return roundWeed(buffer, DiyFp.minus(too_high, w).f(),
+                        unsafe_interval.f(), rest,
+                        divider << -one.e(), unit);
+            }
+            divider /= 10;
+        }
+
+        // The integrals have been generated. We are at the point of the
+        // decimal separator. In the following loop we simply multiply the
+        // remaining digits by 10 and divide by one. We just need to pay
+        // attention to multiply associated data (like the interval or 'unit'),
+        // too. Instead of multiplying by 10 we multiply by 5 (= 10 / 2) and
+        // adjust its exponent. Hence the interval stays the same. It's just
+        // the unit, and hence the number of valid decimal digits, that
+        // changes.
+        for (;;) {
+            fractionals *= 5;
+            unit *= 5;
+            unsafe_interval.setF(unsafe_interval.f() * 5);
+            unsafe_interval.setE(unsafe_interval.e() + 1);  // Will be optimized out.
+            one.setF(one.f() >>> 1);
+            one.setE(one.e() + 1);
+            // Integer division by one.
+            int digit = (int) ((fractionals >>> -one.e()) & 0xffffffffL);
+            buffer.append((char) ('0' + digit));
+            fractionals &= one.f() - 1;  // Modulo by one.
+            kappa--;
+            if (uint64_lt(fractionals, unsafe_interval.f())) {
+                buffer.point = buffer.end - mk + kappa;
+                return roundWeed(buffer, DiyFp.minus(too_high, w).f() * unit,
+                        unsafe_interval.f(), fractionals, one.f(), unit);
+            }
+        }
+    }
+
+    // Generates (at most) requested_digits digits of input number w.
+    // w is a floating-point number (DiyFp), consisting of a significand and an
+    // exponent. Its exponent is bounded by minimal_target_exponent and
+    // maximal_target_exponent.
+    //       Hence -60 <= w.e() <= -32.
+    //
+    // Returns false if it fails, in which case the generated digits in the
+    // buffer should not be used.
+    // Preconditions:
+    //  * w is correct up to 1 ulp (unit in the last place). That
+    //    is, its error must be strictly less than a unit of its last digit.
+    //  * minimal_target_exponent <= w.e() <= maximal_target_exponent
+    //
+    // Postconditions: returns false if procedure fails.
+    //   otherwise:
+    //     * buffer contains exactly requested_digits digits, correctly
+    //       rounded from the exact value of w (up to trailing zeroes).
+    static boolean digitGenCounted(DiyFp w,
+                                   int requested_digits,
+                                   FastDtoaBuilder buffer,
+                                   int mk) {
+        assert (minimal_target_exponent <= w.e() && w.e() <= maximal_target_exponent);
+        long w_error = 1;
+        // We cut the input number into two parts; the integral part and the
+        // fractionals. We don't emit any decimal separator, but adapt kappa
+        // instead. Example: instead of writing "1.2" we put "12" into the
+        // buffer and increase kappa by 1.
+        DiyFp one = new DiyFp(1L << -w.e(), w.e());
+        // Division by one is a shift.
+        long integrals = w.f() >>> -one.e();
+        // Modulo by one is an and.
+        long fractionals = w.f() & (one.f() - 1);
+        long result = biggestPowerTen(integrals, DiyFp.kSignificandSize - (-one.e()));
+        long divider = (result >>> 32) & 0xffffffffL;
+        int divider_exponent = (int) (result & 0xffffffffL);
+        int kappa = divider_exponent + 1;
+        // Loop invariant: buffer = w / 10^kappa  (integer division)
+        while (kappa > 0) {
+            int digit = (int) (integrals / divider);
+            buffer.append((char) ('0' + digit));
+            requested_digits--;
+            integrals %= divider;
+            kappa--;
+            if (requested_digits == 0) break;
+            divider /= 10;
+        }
+
+        if (requested_digits == 0) {
+            long rest = (integrals << -one.e()) + fractionals;
+            int carry = roundWeedCounted(buffer, rest,
+                    divider << -one.e(), w_error);
+            buffer.point = buffer.end - mk + kappa + carry;
+            return carry >= 0;
+        }
+
+        // The integrals have been generated. We are at the point of the
+        // decimal separator. In the following loop we simply multiply the
+        // remaining digits by 10 and divide by one. We just need to pay
+        // attention to multiply associated data (the 'unit'), too.
+        // Note that the multiplication by 10 does not overflow, because
+        // w.e >= -60 and thus one.e >= -60.
+        assert (one.e() >= -60);
+        assert uint64_lt(fractionals, one.f());
+        while (requested_digits > 0 && uint64_gt(fractionals, w_error)) {
+            fractionals *= 10;
+            w_error *= 10;
+            // Integer division by one.
+            int digit = (int) (fractionals >>> -one.e());
+            buffer.append((char) ('0' + digit));
+            requested_digits--;
+            fractionals &= one.f() - 1;  // Modulo by one.
+            kappa--;
+        }
+        if (requested_digits != 0) return false;
+        int carry = roundWeedCounted(buffer, fractionals, one.f(), w_error);
+        buffer.point = buffer.end - mk + kappa + carry;
+        return carry >= 0;
+    }
+
+    // Provides a decimal representation of v.
+    // Returns true if it succeeds, otherwise the result cannot be trusted.
+    // There will be *length digits inside the buffer (not null-terminated).
+    // If the function returns true then
+    //        v == (double) (buffer * 10^decimal_exponent).
+    // The digits in the buffer are the shortest representation possible (no
+    // 0.09999999999999999 instead of 0.1). The shorter representation will
+    // even be chosen even if the longer one would be closer to v.
+    // The last digit will be closest to the actual v. That is, even if
+    // several digits might correctly yield 'v' when read again, the closest
+    // will be computed.
+    static boolean grisu3(double v, FastDtoaBuilder buffer) {
+        long bits = Double.doubleToLongBits(v);
+        DiyFp w = DoubleHelper.asNormalizedDiyFp(bits);
+        // boundary_minus and boundary_plus are the boundaries between v and
+        // its closest floating-point neighbors. Any number strictly between
+        // boundary_minus and boundary_plus will round to v when convert to a
+        // double. Grisu3 will never output representations that lie exactly
+        // on a boundary.
+        DiyFp boundary_minus = new DiyFp(), boundary_plus = new DiyFp();
+        DoubleHelper.normalizedBoundaries(bits, boundary_minus, boundary_plus);
+        assert (boundary_plus.e() == w.e());
+        DiyFp ten_mk = new DiyFp();  // Cached power of ten: 10^-k
+        int mk = CachedPowers.getCachedPower(w.e() + DiyFp.kSignificandSize,
+                minimal_target_exponent, maximal_target_exponent, ten_mk);
+        assert (minimal_target_exponent <= w.e() + ten_mk.e() +
+                DiyFp.kSignificandSize &&
+                maximal_target_exponent >= w.e() + ten_mk.e() +
+                        DiyFp.kSignificandSize);
+        // Note that ten_mk is only an approximation of 10^-k. A DiyFp only
+        // contains a 64 bit significand and ten_mk is thus only precise up to
+        // 64 bits.
+
+        // The DiyFp::Times procedure rounds its result, and ten_mk is
+        // approximated too. The variable scaled_w (as well as
+        // scaled_boundary_minus/plus) are now off by a small amount.
+        // In fact: scaled_w - w*10^k < 1ulp (unit in the last place) of
+        // scaled_w.
+        // In other words: let f = scaled_w.f() and e = scaled_w.e(), then
+        //           (f-1) * 2^e < w*10^k < (f+1) * 2^e
+        DiyFp scaled_w = DiyFp.times(w, ten_mk);
+        assert (scaled_w.e() ==
+                boundary_plus.e() + ten_mk.e() + DiyFp.kSignificandSize);
+        // In theory it would be possible to avoid some recomputations by
+        // computing the difference between w and boundary_minus/plus
+        // (a power of 2) and to compute scaled_boundary_minus/plus by
+        // subtracting/adding from scaled_w. However the code becomes much
+        // less readable and the speed enhancements are not terriffic.
+        DiyFp scaled_boundary_minus = DiyFp.times(boundary_minus, ten_mk);
+        DiyFp scaled_boundary_plus = DiyFp.times(boundary_plus, ten_mk);
+
+        // DigitGen will generate the digits of scaled_w. Therefore we have
+        // v == (double) (scaled_w * 10^-mk).
+        // Set decimal_exponent == -mk and pass it to DigitGen. If scaled_w is
+        // not an integer than it will be updated. For instance if scaled_w ==
+        // 1.23 then the buffer will be filled with "123" und the
+        // decimal_exponent will be decreased by 2.
+        return digitGen(scaled_boundary_minus, scaled_w, scaled_boundary_plus,
+                buffer, mk);
+    }
+
+    // The "counted" version of grisu3 (see above) only generates
+    // requested_digits number of digits. This version does not generate the
+    // shortest representation, and with enough requested digits 0.1 will at
+    // some point print as 0.9999999...
+    // Grisu3 is too imprecise for real halfway cases (1.5 will not work) and
+    // therefore the rounding strategy for halfway cases is irrelevant.
+    static boolean grisu3Counted(double v,
+                                 int requested_digits,
+                                 FastDtoaBuilder buffer) {
+        long bits = Double.doubleToLongBits(v);
+        DiyFp w = DoubleHelper.asNormalizedDiyFp(bits);
+        DiyFp ten_mk = new DiyFp();  // Cached power of ten: 10^-k
+        int mk = CachedPowers.getCachedPower(w.e() + DiyFp.kSignificandSize,
+                minimal_target_exponent, maximal_target_exponent, ten_mk);
+        // Note that ten_mk is only an approximation of 10^-k. A DiyFp only
+        // contains a 64 bit significand and ten_mk is thus only precise up to
+        // 64 bits.
+
+        // The DiyFp::Times procedure rounds its result, and ten_mk is
+        // approximated too. The variable scaled_w is now off by a small
+        // amount: scaled_w - w*10^k < 1ulp of scaled_w.
+        DiyFp scaled_w = DiyFp.times(w, ten_mk);
+
+        // We now have (double) (scaled_w * 10^-mk).
+        // DigitGen will generate the first requested_digits digits of
+        // scaled_w and return together with a kappa such that
+        // scaled_w ~= buffer * 10^kappa. (It will not always be exactly the
+        // same since DigitGenCounted only produces a limited number of
+        // digits.)
+        return digitGenCounted(scaled_w, requested_digits, buffer, mk);
+    }
+
+    /**
+     * Generate the shortest digit sequence that converts back to the given
+     * number. The number must be finite and positive.
+     * @return true if the conversion succeeded, false if the caller has to
+     * fall back to an exact algorithm
+     */
+    public static boolean dtoa(double v, FastDtoaBuilder buffer) {
+        assert (v > 0);
+        assert (!Double.isNaN(v));
+        assert (!Double.isInfinite(v));
+
+        return grisu3(v, buffer);
+    }
+
+    /**
+     * Generate the given number of digits, correctly rounded, of the given
+     * number. The number must be finite and positive. Exact halfway cases
+     * are always rejected.
+     * @return true if the conversion succeeded, false if the caller has to
+     * fall back to an exact algorithm
+     */
+    public static boolean dtoa(double v, int requestedDigits,
+                               FastDtoaBuilder buffer) {
+        assert (v > 0);
+        assert (!Double.isNaN(v));
+        assert (!Double.isInfinite(v));
+        assert (requestedDigits > 0);
+
+        if (requestedDigits > kFastDtoaMaximalLength) {
+            return false;
+        }
+        return grisu3Counted(v, requestedDigits, buffer);
+    }
+
+    /**
+     * Convert a number to a String as specified by ECMA 9.8.1, or return
+     * null if the fast algorithm fails for this number.
+     */
+    public static String numberToString(double v) {
+        FastDtoaBuilder buffer = new FastDtoaBuilder();
+        return numberToString(v, buffer) ? buffer.format() : null;
+    }
+
+    /**
+     * Convert a number to shortest digits in the given buffer, prefixed
+     * with a minus sign if the number is negative.
+     */
+    public static boolean numberToString(double v, FastDtoaBuilder buffer) {
+        buffer.reset();
+        if (v < 0) {
+            buffer.append('-');
+            v = -v;
+        }
+        return dtoa(v, buffer);
+    }
+
+    private static boolean uint64_lt(long a, long b) {
+        return (a + Long.MIN_VALUE) < (b + Long.MIN_VALUE);
+    }
+
+    private static boolean uint64_lte(long a, long b) {
+        return (a + Long.MIN_VALUE) <= (b + Long.MIN_VALUE);
+    }
+
+    private static boolean uint64_gt(long a, long b) {
+        return (a + Long.MIN_VALUE) > (b + Long.MIN_VALUE);
+    }
+
+    private static boolean uint64_gte(long a, long b) {
+        return (a + Long.MIN_VALUE) >= (b + Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,169 @@
+// Copyright 2010 the V8 project authors. All rights reserved.
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are
+// met:
+//
+//     * Redistributions of source code must retain the above copyright
+//       notice, this list of conditions and the following disclaimer.
+//     * Redistributions in binary form must reproduce the above
+//       copyright notice, this list of conditions and the following
+//       disclaimer in the documentation and/or other materials provided
+//       with the distribution.
+//     * Neither the name of Google Inc. nor the names of its
+//       contributors may be used to endorse or promote products derived
+//       from this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+// "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+// LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+// A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+// OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+// SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+// LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+// DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+// THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+// (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+// OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+// Ported to Java from the fast-dtoa (Grisu3) code of the V8 project.
+
+package org.mozilla.javascript.v8dtoa;
+
+import java.util.Arrays;
+
+/**
+ * Collects the decimal digits produced by {@link FastDtoa} along with the
+ * position of the decimal point, and formats them the way ECMA 9.8.1
+ * requires for Number to String conversion.
+ */
+public class FastDtoaBuilder {
+
+    // allocate buffer for generated digits + extra notation + padding zeroes
+    final char[] chars = new char[FastDtoa.kFastDtoaMaximalLength + 8];
+    int end = 0;
+    int point;
+    boolean formatted = false;
+
+    void append(char c) {
+        chars[end++] = c;
+    }
+
+    void decreaseLast() {
+        chars[end - 1]--;
+    }
+
+    public void reset() {
+        end = 0;
+        formatted = false;
+    }
+
+    /**
+     * Returns the number of generated digits.
+     */
+    public int length() {
+        return end;
+    }
+
+    /**
+     * Returns the position of the decimal point relative to the first
+     * generated digit.
+     */
+    public int getDecimalPoint() {
+        return point;
+    }
+
+    /**
+     * Returns the generated digits without trailing zeroes.
+     */
+    public String getDigits() {
+        int len = end;
+        while (len > 1 && chars[len - 1] == '0') {
+            len--;
+        }
+        return new String(chars, 0, len);
+    }
+
+    @Override
+    public String toString() {
+        return "[chars:" + new String(chars, 0, end) + ", point:" + point + "]";
+    }
+
+    /**
+     * Format the generated digits as ECMA 9.8.1 ToString. The digits must
+     * have been generated in shortest mode.
+     */
+    public String format() {
+        if (!formatted) {
+            // check for minus sign
+            int firstDigit = chars[0] == '-' ? 1 : 0;
+            int decPoint = point - firstDigit;
+            if (decPoint < -5 || decPoint > 21) {
+                toExponentialFormat(firstDigit, decPoint);
+            } else {
+                toFixedFormat(firstDigit, decPoint);
+            }
+            formatted = true;
+        }
+        return new String(chars, 0, end);
+
+    }
+
+    private void toFixedFormat(int firstDigit, int decPoint) {
+        if (point < end) {
+            // insert decimal point
+            if (decPoint > 0) {
+                // >= 1, split decimals and insert point
+                System.arraycopy(chars, point, chars, point + 1, end - point);
+                chars[point] = '.';
+                end++;
+            } else {
+                // < 1,
+                int target = firstDigit + 2 - decPoint;
+                System.arraycopy(chars, firstDigit, chars, target, end - firstDigit);
+                chars[firstDigit] = '0';
+                chars[firstDigit + 1] = '.';
+                if (decPoint < 0) {
+                    Arrays.fill(chars, firstDigit + 2, target, '0');
+                }
+                end += 2 - decPoint;
+            }
+        } else if (point > end) {
+            // large integer, add trailing zeroes
+            Arrays.fill(chars, end, point, '0');
+            end += point - end;
+        }
+    }
+
+    private void toExponentialFormat(int firstDigit, int decPoint) {
+        if (end - firstDigit > 1) {
+            // insert decimal point if more than one digit was produced
+            int dot = firstDigit + 1;
+            System.arraycopy(chars, dot, chars, dot + 1, end - dot);
+            chars[dot] = '.';
+            end++;
+        }
+        chars[end++] = 'e';
+        char sign = '+';
+        int exp = decPoint - 1;
+        if (exp < 0) {
+            sign = '-';
+            exp = -exp;
+        }
+        chars[end++] = sign;
+
+        int charPos = exp > 99 ? end + 2 : exp > 9 ? end + 1 : end;
+        end = charPos + 1;
+
+        // code below is needed because Integer.getChars() is not public
+        for (;;) {
+            int r = exp % 10;
+            chars[charPos--] = digits[r];
+            exp = exp / 10;
+            if (exp == 0) break;
+        }
+    }
+
+    final static char[] digits = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9'
+    };
+}
@@ -0,0 +1,108 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Operations on dense NativeArrays.
+ */
+public class ArrayBenchmark extends ScriptBenchmark
+{
+    private Function push;
+    private Function write;
+    private Function read;
+    private Function join;
+    private Function sort;
+    private Function slice;
+    private Function mapFilter;
+
+    @Override
+    protected String getSource()
+    {
+        return
+            "function push(n) {\n" +
+            "  var a = [];\n" +
+            "  for (var i = 0; i < n; i++) a.push(i);\n" +
+            "  return a;\n" +
+            "}\n" +
+            "function write(n) {\n" +
+            "  var a = new Array(n);\n" +
+            "  for (var i = 0; i < n; i++) a[i] = i;\n" +
+            "  return a;\n" +
+            "}\n" +
+            "var data = write(N);\n" +
+            "var shuffled = data.map(function(x) { return (x * 7919) % N; });\n" +
+            "function read() {\n" +
+            "  var a = data, s = 0;\n" +
+            "  for (var i = 0; i < a.length; i++) s += a[i];\n" +
+            "  return s;\n" +
+            "}\n" +
+            "function join() { return data.join(','); }\n" +
+            "function sort() {\n" +
+            "  return shuffled.slice().sort(function(x, y) { return x - y; });\n" +
+            "}\n" +
+            "function slice() { return data.slice(10, N - 10); }\n" +
+            "function mapFilter() {\n" +
+            "  return data.map(function(x) { return x * 2; })\n" +
+            "             .filter(function(x) { return x % 3 == 0; });\n" +
+            "}\n";
+    }
+
+    @Override
+    protected void prepare()
+    {
+        push = getFunction("push");
+        write = getFunction("write");
+        read = getFunction("read");
+        join = getFunction("join");
+        sort = getFunction("sort");
+        slice = getFunction("slice");
+        mapFilter = getFunction("mapFilter");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object push()
+    {
+        return call(push, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object write()
+    {
+        return call(write, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object read()
+    {
+        return call(read);
+    }
+
+    @Benchmark
+    public Object join()
+    {
+        return call(join);
+    }
+
+    @Benchmark
+    public Object sort()
+    {
+        return call(sort);
+    }
+
+    @Benchmark
+    public Object slice()
+    {
+        return call(slice);
+    }
+
+    @Benchmark
+    public Object mapFilter()
+    {
+        return call(mapFilter);
+    }
+}
@@ -0,0 +1,104 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Function calls from scripts and from Java. At -1 they are interpreted,
+ * at 9 calls to top level functions can be direct calls.
+ */
+public class CallBenchmark extends ScriptBenchmark
+{
+    private Function add;
+    private Function callTopLevel;
+    private Function callClosure;
+    private Function callMethod;
+    private Function callApply;
+    private Function fib;
+
+    @Override
+    protected String getSource()
+    {
+        return
+            "function add(a, b) { return a + b; }\n" +
+            "function callTopLevel(n) {\n" +
+            "  var s = 0;\n" +
+            "  for (var i = 0; i < n; i++) s = add(s, i);\n" +
+            "  return s;\n" +
+            "}\n" +
+            "function makeAdder(k) { return function(x) { return x + k; }; }\n" +
+            "var adder = makeAdder(1);\n" +
+            "function callClosure(n) {\n" +
+            "  var s = 0;\n" +
+            "  for (var i = 0; i < n; i++) s = adder(s);\n" +
+            "  return s;\n" +
+            "}\n" +
+            "var counter = { v: 1, inc: function(x) { return x + this.v; } };\n" +
+            "function callMethod(n) {\n" +
+            "  var o = counter, s = 0;\n" +
+            "  for (var i = 0; i < n; i++) s = o.inc(s);\n" +
+            "  return s;\n" +
+            "}\n" +
+            "function callApply(n) {\n" +
+            "  var s = 0;\n" +
+            "  for (var i = 0; i < n; i++) s = add.apply(null, [s, i]);\n" +
+            "  return s;\n" +
+            "}\n" +
+            "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n";
+    }
+
+    @Override
+    protected void prepare()
+    {
+        add = getFunction("add");
+        callTopLevel = getFunction("callTopLevel");
+        callClosure = getFunction("callClosure");
+        callMethod = getFunction("callMethod");
+        callApply = getFunction("callApply");
+        fib = getFunction("fib");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object topLevel()
+    {
+        return call(callTopLevel, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object closure()
+    {
+        return call(callClosure, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object method()
+    {
+        return call(callMethod, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object apply()
+    {
+        return call(callApply, N);
+    }
+
+    /**
+     * fib(15) makes 1973 calls.
+     */
+    @Benchmark
+    public Object recursive()
+    {
+        return call(fib, 15);
+    }
+
+    @Benchmark
+    public Object fromJava()
+    {
+        return call(add, 1, 2);
+    }
+}
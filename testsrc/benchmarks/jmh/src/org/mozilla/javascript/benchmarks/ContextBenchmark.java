@@ -0,0 +1,123 @@
+package org.mozilla.javascript.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation of Contexts and scopes, as done for each request by embeddings
+ * that run short scripts. Unlike the other benchmarks the thread does not
+ * keep a Context entered, so each enter creates a new Context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextBenchmark
+{
+    @Param({"-1", "0", "9"})
+    public int optLevel;
+
+    private ContextFactory factory;
+    private ScriptableObject sharedScope;
+    private Script script;
+
+    @Setup
+    public void setUp()
+    {
+        factory = new ContextFactory();
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            sharedScope = cx.initStandardObjects(null, true);
+            sharedScope.sealObject();
+            script = cx.compileString(
+                "var total = 0;\n" +
+                "for (var i = 0; i < 10; i++) total += i;\n" +
+                "String(total)", "request", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Object enterExit()
+    {
+        Context cx = factory.enterContext();
+        Context.exit();
+        return cx;
+    }
+
+    @Benchmark
+    public Object initStandardObjects()
+    {
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            return cx.initStandardObjects();
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Object initSealedStandardObjects()
+    {
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            return cx.initStandardObjects(null, true);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /**
+     * Runs a precompiled script in a new scope that inherits the sealed
+     * standard objects.
+     */
+    @Benchmark
+    public Object sharedScope()
+    {
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            Scriptable scope = cx.newObject(sharedScope);
+            scope.setPrototype(sharedScope);
+            scope.setParentScope(null);
+            return script.exec(cx, scope);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    @Benchmark
+    public Object compile()
+    {
+        Context cx = factory.enterContext();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            return cx.compileString("function f(a) { return a * 2; } f(21)",
+                                    "request", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+}
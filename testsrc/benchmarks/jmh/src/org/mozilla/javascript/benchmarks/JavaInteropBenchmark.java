@@ -0,0 +1,98 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Calls of Java methods through NativeJavaMethod, including the choice
+ * between overloads.
+ */
+public class JavaInteropBenchmark extends ScriptBenchmark
+{
+    private Function listAdd;
+    private Function listGet;
+    private Function staticCall;
+    private Function overloaded;
+    private Function construct;
+
+    @Override
+    protected String getSource()
+    {
+        return
+            "var JMath = java.lang.Math;\n" +
+            "var ArrayList = java.util.ArrayList;\n" +
+            "var list = new ArrayList();\n" +
+            "for (var i = 0; i < N; i++) list.add(i);\n" +
+            "function listAdd(n) {\n" +
+            "  var l = new ArrayList();\n" +
+            "  for (var i = 0; i < n; i++) l.add('x');\n" +
+            "  return l.size();\n" +
+            "}\n" +
+            "function listGet(n) {\n" +
+            "  var l = list, c = 0;\n" +
+            "  for (var i = 0; i < n; i++) if (l.get(i) != null) c++;\n" +
+            "  return c;\n" +
+            "}\n" +
+            "function staticCall(n) {\n" +
+            "  var s = 0;\n" +
+            "  for (var i = 0; i < n; i++) s += JMath.max(i, 3);\n" +
+            "  return s;\n" +
+            "}\n" +
+            "function overloaded(n) {\n" +
+            "  var sb = new java.lang.StringBuilder();\n" +
+            "  for (var i = 0; i < n; i++) sb.append((i & 1) ? 'x' : i);\n" +
+            "  return sb.length();\n" +
+            "}\n" +
+            "function construct(n) {\n" +
+            "  var o;\n" +
+            "  for (var i = 0; i < n; i++) o = new ArrayList(4);\n" +
+            "  return o;\n" +
+            "}\n";
+    }
+
+    @Override
+    protected void prepare()
+    {
+        listAdd = getFunction("listAdd");
+        listGet = getFunction("listGet");
+        staticCall = getFunction("staticCall");
+        overloaded = getFunction("overloaded");
+        construct = getFunction("construct");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object listAdd()
+    {
+        return call(listAdd, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object listGet()
+    {
+        return call(listGet, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object staticCall()
+    {
+        return call(staticCall, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object overloaded()
+    {
+        return call(overloaded, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object construct()
+    {
+        return call(construct, N);
+    }
+}
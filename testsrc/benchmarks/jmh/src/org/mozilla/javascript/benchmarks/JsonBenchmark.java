@@ -0,0 +1,56 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * NativeJSON parse and stringify of an array of 100 records.
+ */
+public class JsonBenchmark extends ScriptBenchmark
+{
+    private Function parse;
+    private Function stringify;
+    private Function stringifyIndented;
+
+    @Override
+    protected String getSource()
+    {
+        return
+            "var records = [];\n" +
+            "for (var i = 0; i < 100; i++) {\n" +
+            "  records.push({ id: i, name: 'record \"' + i + '\"', score: i / 3,\n" +
+            "                 active: i % 2 == 0, tags: ['a', 'b', 'c'],\n" +
+            "                 nested: { x: i, y: null } });\n" +
+            "}\n" +
+            "var text = JSON.stringify(records);\n" +
+            "function parse() { return JSON.parse(text); }\n" +
+            "function stringify() { return JSON.stringify(records); }\n" +
+            "function stringifyIndented() { return JSON.stringify(records, null, 2); }\n";
+    }
+
+    @Override
+    protected void prepare()
+    {
+        parse = getFunction("parse");
+        stringify = getFunction("stringify");
+        stringifyIndented = getFunction("stringifyIndented");
+    }
+
+    @Benchmark
+    public Object parse()
+    {
+        return call(parse);
+    }
+
+    @Benchmark
+    public Object stringify()
+    {
+        return call(stringify);
+    }
+
+    @Benchmark
+    public Object stringifyIndented()
+    {
+        return call(stringifyIndented);
+    }
+}
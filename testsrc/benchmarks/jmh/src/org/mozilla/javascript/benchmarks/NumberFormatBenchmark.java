@@ -0,0 +1,101 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.ScriptRuntime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Number to string conversions, most of which run through DToA.
+ */
+public class NumberFormatBenchmark extends ScriptBenchmark
+{
+    private Function toStr;
+    private Function toFixed;
+    private Function toPrecision;
+    private Function toExponential;
+    private Function toRadix;
+
+    @Override
+    protected String getSource()
+    {
+        return
+            "var values = [0.1, 1 / 3, 123.456, 1e21, 5e-324, 2.5, 1234567.891, -0.000123];\n" +
+            "function toStr(n) {\n" +
+            "  var l = 0;\n" +
+            "  for (var i = 0; i < n; i++) l += String(values[i & 7]).length;\n" +
+            "  return l;\n" +
+            "}\n" +
+            "function toFixed(n) {\n" +
+            "  var l = 0;\n" +
+            "  for (var i = 0; i < n; i++) l += values[i & 7].toFixed(2).length;\n" +
+            "  return l;\n" +
+            "}\n" +
+            "function toPrecision(n) {\n" +
+            "  var l = 0;\n" +
+            "  for (var i = 0; i < n; i++) l += values[i & 7].toPrecision(6).length;\n" +
+            "  return l;\n" +
+            "}\n" +
+            "function toExponential(n) {\n" +
+            "  var l = 0;\n" +
+            "  for (var i = 0; i < n; i++) l += values[i & 7].toExponential(4).length;\n" +
+            "  return l;\n" +
+            "}\n" +
+            "function toRadix(n) {\n" +
+            "  var l = 0;\n" +
+            "  for (var i = 0; i < n; i++) l += values[i & 7].toString(16).length;\n" +
+            "  return l;\n" +
+            "}\n";
+    }
+
+    @Override
+    protected void prepare()
+    {
+        toStr = getFunction("toStr");
+        toFixed = getFunction("toFixed");
+        toPrecision = getFunction("toPrecision");
+        toExponential = getFunction("toExponential");
+        toRadix = getFunction("toRadix");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object toStr()
+    {
+        return call(toStr, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object toFixed()
+    {
+        return call(toFixed, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object toPrecision()
+    {
+        return call(toPrecision, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object toExponential()
+    {
+        return call(toExponential, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object toRadix()
+    {
+        return call(toRadix, N);
+    }
+
+    @Benchmark
+    public Object numberToStringFromJava()
+    {
+        return ScriptRuntime.numberToString(1.0 / 3.0, 10);
+    }
+}
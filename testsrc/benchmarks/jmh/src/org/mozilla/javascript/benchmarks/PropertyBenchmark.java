@@ -0,0 +1,100 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * Property access on ScriptableObject from scripts and from Java.
+ */
+public class PropertyBenchmark extends ScriptBenchmark
+{
+    private Function getProps;
+    private Function putProps;
+    private Function createObjects;
+    private Function getPrototypeProps;
+    private Scriptable obj;
+
+    @Override
+    protected String getSource()
+    {
+        return
+            "var obj = { a: 1, b: 2, c: 3 };\n" +
+            "function Point(x, y) { this.x = x; this.y = y; }\n" +
+            "Point.prototype.z = 3;\n" +
+            "var point = new Point(1, 2);\n" +
+            "function getProps(n) {\n" +
+            "  var o = obj, s = 0;\n" +
+            "  for (var i = 0; i < n; i++) s += o.a + o.b + o.c;\n" +
+            "  return s;\n" +
+            "}\n" +
+            "function putProps(n) {\n" +
+            "  var o = obj;\n" +
+            "  for (var i = 0; i < n; i++) { o.a = i; o.b = i; o.c = i; }\n" +
+            "  return o;\n" +
+            "}\n" +
+            "function createObjects(n) {\n" +
+            "  var o;\n" +
+            "  for (var i = 0; i < n; i++) { o = {}; o.x = i; o.y = i; o.z = i; }\n" +
+            "  return o;\n" +
+            "}\n" +
+            "function getPrototypeProps(n) {\n" +
+            "  var p = point, s = 0;\n" +
+            "  for (var i = 0; i < n; i++) s += p.x + p.z;\n" +
+            "  return s;\n" +
+            "}\n";
+    }
+
+    @Override
+    protected void prepare()
+    {
+        getProps = getFunction("getProps");
+        putProps = getFunction("putProps");
+        createObjects = getFunction("createObjects");
+        getPrototypeProps = getFunction("getPrototypeProps");
+        obj = (Scriptable)ScriptableObject.getProperty(scope, "obj");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object get()
+    {
+        return call(getProps, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object put()
+    {
+        return call(putProps, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object create()
+    {
+        return call(createObjects, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object getFromPrototype()
+    {
+        return call(getPrototypeProps, N);
+    }
+
+    @Benchmark
+    public Object getFromJava()
+    {
+        return ScriptableObject.getProperty(obj, "b");
+    }
+
+    @Benchmark
+    public Object putFromJava()
+    {
+        ScriptableObject.putProperty(obj, "b", "value");
+        return obj;
+    }
+}
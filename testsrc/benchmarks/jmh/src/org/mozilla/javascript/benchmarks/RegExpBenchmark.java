@@ -0,0 +1,83 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * NativeRegExp matching through RegExp and String methods.
+ */
+public class RegExpBenchmark extends ScriptBenchmark
+{
+    private Function test;
+    private Function exec;
+    private Function replace;
+    private Function replaceFunction;
+    private Function split;
+
+    @Override
+    protected String getSource()
+    {
+        return
+            "var lines = [];\n" +
+            "for (var i = 0; i < 100; i++)\n" +
+            "  lines.push('user' + i + '@host' + (i % 7) + '.com, item ' + i + '-abc');\n" +
+            "var text = lines.join('\\n');\n" +
+            "function test(n) {\n" +
+            "  var re = /(\\d+)-(\\w+)/, c = 0;\n" +
+            "  for (var i = 0; i < n; i++) if (re.test(lines[i % 100])) c++;\n" +
+            "  return c;\n" +
+            "}\n" +
+            "function exec() {\n" +
+            "  var re = /(\\w+)@(\\w+)\\.com/g, m, c = 0;\n" +
+            "  while ((m = re.exec(text)) != null) c += m[2].length;\n" +
+            "  return c;\n" +
+            "}\n" +
+            "function replace() { return text.replace(/item/g, 'entry'); }\n" +
+            "function replaceFunction() {\n" +
+            "  return text.replace(/\\d+/g, function(d) { return d * 2; });\n" +
+            "}\n" +
+            "function split() { return text.split(/,\\s*|\\n/).length; }\n";
+    }
+
+    @Override
+    protected void prepare()
+    {
+        test = getFunction("test");
+        exec = getFunction("exec");
+        replace = getFunction("replace");
+        replaceFunction = getFunction("replaceFunction");
+        split = getFunction("split");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object test()
+    {
+        return call(test, N);
+    }
+
+    @Benchmark
+    public Object exec()
+    {
+        return call(exec);
+    }
+
+    @Benchmark
+    public Object replace()
+    {
+        return call(replace);
+    }
+
+    @Benchmark
+    public Object replaceFunction()
+    {
+        return call(replaceFunction);
+    }
+
+    @Benchmark
+    public Object split()
+    {
+        return call(split);
+    }
+}
@@ -0,0 +1,85 @@
+package org.mozilla.javascript.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base of the benchmarks that call functions of a script. The script is
+ * evaluated in a new scope at the optimization level of the
+ * <code>optLevel</code> parameter, with a Context entered by the thread
+ * running the benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ScriptBenchmark
+{
+    /**
+     * Loop count of the script functions that repeat an operation,
+     * see OperationsPerInvocation.
+     */
+    public static final int N = 1000;
+
+    @Param({"-1", "0", "9"})
+    public int optLevel;
+
+    protected Context cx;
+    protected Scriptable scope;
+
+    /**
+     * Returns the source of the script that defines the functions the
+     * benchmark calls. <code>N</code> is defined when it runs.
+     */
+    protected abstract String getSource();
+
+    /**
+     * Called after the script was evaluated to look up its functions.
+     */
+    protected abstract void prepare();
+
+    @Setup
+    public void setUp()
+    {
+        cx = Context.enter();
+        cx.setOptimizationLevel(optLevel);
+        scope = cx.initStandardObjects();
+        ScriptableObject.putProperty(scope, "N", Integer.valueOf(N));
+        cx.evaluateString(scope, getSource(), getClass().getSimpleName(), 1,
+                          null);
+        prepare();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        Context.exit();
+    }
+
+    protected Function getFunction(String name)
+    {
+        return (Function)ScriptableObject.getProperty(scope, name);
+    }
+
+    protected Object call(Function function, Object... args)
+    {
+        return function.call(cx, scope, scope, args);
+    }
+}
@@ -0,0 +1,82 @@
+package org.mozilla.javascript.benchmarks;
+
+import org.mozilla.javascript.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+
+/**
+ * String concatenation and character access.
+ */
+public class StringBenchmark extends ScriptBenchmark
+{
+    private Function concat;
+    private Function concatNumbers;
+    private Function concatJoin;
+    private Function charCodes;
+
+    @Override
+    protected String getSource()
+    {
+        return
+            "function concat(n) {\n" +
+            "  var s = '';\n" +
+            "  for (var i = 0; i < n; i++) s += 'ab';\n" +
+            "  return s.length;\n" +
+            "}\n" +
+            "function concatNumbers(n) {\n" +
+            "  var s = '';\n" +
+            "  for (var i = 0; i < n; i++) s += i + ',';\n" +
+            "  return s.length;\n" +
+            "}\n" +
+            "function concatJoin(n) {\n" +
+            "  var a = [];\n" +
+            "  for (var i = 0; i < n; i++) a.push('ab');\n" +
+            "  return a.join('').length;\n" +
+            "}\n" +
+            "var text = concatJoin.toString();\n" +
+            "while (text.length < N) text += text;\n" +
+            "text = text.substring(0, N);\n" +
+            "function charCodes() {\n" +
+            "  var s = text, h = 0;\n" +
+            "  for (var i = 0; i < s.length; i++) h = (h * 31 + s.charCodeAt(i)) | 0;\n" +
+            "  return h;\n" +
+            "}\n";
+    }
+
+    @Override
+    protected void prepare()
+    {
+        concat = getFunction("concat");
+        concatNumbers = getFunction("concatNumbers");
+        concatJoin = getFunction("concatJoin");
+        charCodes = getFunction("charCodes");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object concat()
+    {
+        return call(concat, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object concatNumbers()
+    {
+        return call(concatNumbers, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object concatJoin()
+    {
+        return call(concatJoin, N);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public Object charCodes()
+    {
+        return call(charCodes);
+    }
+}
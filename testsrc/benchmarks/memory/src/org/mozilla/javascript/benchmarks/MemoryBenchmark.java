@@ -0,0 +1,254 @@
+package org.mozilla.javascript.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.MemoryFootprint;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Runs reference workloads in scopes that inherit shared standard objects
+ * and reports the memory each scope retains at optimization levels -1, 0
+ * and 9, estimated by {@link MemoryFootprint} and measured as the growth
+ * of the used heap. Generated classes are not in the heap, so the measured
+ * growth of compiled workloads does not include them.
+ * <pre>
+ * java org.mozilla.javascript.benchmarks.MemoryBenchmark [-csv] [workload...]
+ * </pre>
+ * With -csv one line per workload and level is printed for tracking the
+ * numbers across releases.
+ */
+public class MemoryBenchmark
+{
+    private static final int[] OPT_LEVELS = { -1, 0, 9 };
+
+    private static final String[] COLUMNS = {
+        "objects", "slots", "dense", "idata", "classes", "source",
+        "strings", "numbers", "other"
+    };
+
+    static abstract class Workload
+    {
+        final String name;
+
+        Workload(String name)
+        {
+            this.name = name;
+        }
+
+        abstract String getSource();
+    }
+
+    static final Workload[] WORKLOADS = {
+        new Workload("object-literal") {
+            @Override
+            String getSource()
+            {
+                // Statements of 250 literals, a single literal of all items
+                // would exceed the method size limit of compiled code
+                StringBuilder sb = new StringBuilder("var items = [];\n");
+                for (int i = 0; i != 2000; ++i) {
+                    if (i % 250 == 0) {
+                        if (i != 0) sb.append("]);\n");
+                        sb.append("items.push.apply(items, [\n");
+                    }
+                    sb.append("  { id: ").append(i)
+                      .append(", name: 'item ").append(i)
+                      .append("', price: ").append(i).append(".25")
+                      .append(", tags: ['new', 'sale'], active: ")
+                      .append(i % 2 == 0).append(" },\n");
+                }
+                return sb.append("]);\n").toString();
+            }
+        },
+        new Workload("json-document") {
+            @Override
+            String getSource()
+            {
+                StringBuilder sb = new StringBuilder("[");
+                for (int i = 0; i != 2000; ++i) {
+                    if (i != 0) sb.append(',');
+                    sb.append("{\"id\":").append(i)
+                      .append(",\"user\":{\"name\":\"user").append(i)
+                      .append("\",\"email\":\"user").append(i)
+                      .append("@example.com\"},\"scores\":[")
+                      .append(i % 10).append(',').append(i % 7)
+                      .append(',').append(i % 3)
+                      .append("],\"ratio\":").append(i / 7.0).append('}');
+                }
+                sb.append(']');
+                return "var doc = JSON.parse('" + sb + "');\n";
+            }
+        },
+        new Workload("closure-module") {
+            @Override
+            String getSource()
+            {
+                return
+                    "function createModule(id) {\n" +
+                    "  var cache = {}, hits = 0, misses = 0;\n" +
+                    "  function key(k) { return id + ':' + k; }\n" +
+                    "  function get(k) {\n" +
+                    "    var v = cache[key(k)];\n" +
+                    "    if (v === undefined) misses++; else hits++;\n" +
+                    "    return v;\n" +
+                    "  }\n" +
+                    "  function put(k, v) { cache[key(k)] = v; }\n" +
+                    "  function stats() { return { hits: hits, misses: misses }; }\n" +
+                    "  return { id: id, get: get, put: put, stats: stats,\n" +
+                    "           onChange: function(f) { return function() { f(id); }; } };\n" +
+                    "}\n" +
+                    "var modules = [];\n" +
+                    "for (var i = 0; i < 1000; i++) {\n" +
+                    "  var m = createModule(i);\n" +
+                    "  m.put('a', i);\n" +
+                    "  m.listener = m.onChange(function(id) {});\n" +
+                    "  modules.push(m);\n" +
+                    "}\n";
+            }
+        },
+        new Workload("constructors") {
+            @Override
+            String getSource()
+            {
+                return
+                    "function Point(x, y) { this.x = x; this.y = y; }\n" +
+                    "Point.prototype.length = function() {\n" +
+                    "  return Math.sqrt(this.x * this.x + this.y * this.y);\n" +
+                    "};\n" +
+                    "var points = [];\n" +
+                    "for (var i = 0; i < 10000; i++) points.push(new Point(i, i + 1));\n";
+            }
+        },
+        new Workload("dense-arrays") {
+            @Override
+            String getSource()
+            {
+                return
+                    "var ints = [], doubles = [], strings = [];\n" +
+                    "for (var i = 0; i < 20000; i++) {\n" +
+                    "  ints.push(i);\n" +
+                    "  doubles.push(i / 3);\n" +
+                    "  strings.push('s' + i);\n" +
+                    "}\n";
+            }
+        },
+        new Workload("functions") {
+            @Override
+            String getSource()
+            {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i != 300; ++i) {
+                    sb.append("function f").append(i).append("(a, b) {\n")
+                      .append("  var s = 0;\n")
+                      .append("  for (var i = 0; i < a; i++) {\n")
+                      .append("    if (i % ").append(i % 5 + 2)
+                      .append(" == 0) s += b; else s -= i;\n")
+                      .append("  }\n")
+                      .append("  return s + '").append(i).append("';\n")
+                      .append("}\n");
+                }
+                return sb.toString();
+            }
+        }
+    };
+
+    public static void main(String[] args)
+    {
+        boolean csv = false;
+        List<String> names = new ArrayList<String>(Arrays.asList(args));
+        if (names.remove("-csv")) {
+            csv = true;
+        }
+        if (csv) {
+            StringBuilder header = new StringBuilder("workload,opt");
+            for (String column : COLUMNS) {
+                header.append(',').append(column);
+            }
+            System.out.println(header.append(",total,heap"));
+        }
+        for (Workload workload : WORKLOADS) {
+            if (!names.isEmpty() && !names.contains(workload.name)) {
+                continue;
+            }
+            String source = workload.getSource();
+            if (!csv) {
+                System.out.println(workload.name);
+                StringBuilder header = new StringBuilder(
+                    String.format("%5s", "opt"));
+                for (String column : COLUMNS) {
+                    header.append(String.format("%10s", column));
+                }
+                header.append(String.format("%10s%10s", "total", "heap"));
+                System.out.println(header);
+            }
+            for (int optLevel : OPT_LEVELS) {
+                run(workload.name, source, optLevel, csv);
+            }
+            if (!csv) {
+                System.out.println();
+            }
+        }
+    }
+
+    private static void run(String name, String source, int optLevel,
+                            boolean csv)
+    {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            ScriptableObject sharedScope = cx.initStandardObjects(null, true);
+            sharedScope.sealObject();
+
+            long heapBefore = usedHeap();
+            Scriptable scope = cx.newObject(sharedScope);
+            scope.setPrototype(sharedScope);
+            scope.setParentScope(null);
+            cx.evaluateString(scope, source, name, 1, null);
+            long heap = usedHeap() - heapBefore;
+
+            MemoryFootprint footprint = MemoryFootprint.measure(scope,
+                                                                sharedScope);
+            StringBuilder line = new StringBuilder();
+            if (csv) {
+                line.append(name).append(',').append(optLevel);
+            } else {
+                line.append(String.format("%5d", optLevel));
+            }
+            Map<String,Long> bytes = footprint.getBytesByCategory();
+            for (Long value : bytes.values()) {
+                line.append(csv ? "," + value
+                                : String.format("%10d", value));
+            }
+            long total = footprint.getTotalBytes();
+            line.append(csv ? "," + total + "," + heap
+                            : String.format("%10d%10d", total, heap));
+            System.out.println(line);
+            // Keep the scope alive until the heap was measured
+            if (scope.getPrototype() != sharedScope) throw new Error();
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Objects that become unreachable through finalization or cleared
+        // references are only freed by later collections, so a collection
+        // that frees nothing does not mean that the heap is clean.
+        for (int i = 0, stable = 0; i != 20 && stable != 3; ++i) {
+            System.gc();
+            System.runFinalization();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            stable = now < used ? 0 : stable + 1;
+            used = Math.min(used, now);
+        }
+        return used;
+    }
+}
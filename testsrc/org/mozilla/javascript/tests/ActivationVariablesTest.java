@@ -0,0 +1,178 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.IRFactory;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.ScriptNode;
+
+/**
+ * Parameters and variables of functions that need an activation object
+ * behave like properties of that object.
+ */
+public class ActivationVariablesTest extends TestCase
+{
+    private static void assertEvaluates(final Object expected,
+                                        final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "test", 1,
+                                                  null);
+                assertEquals(expected, result);
+                return null;
+            }
+        });
+    }
+
+    public void testClosures()
+    {
+        assertEvaluates("3:2:2,undefined:undefined:2,2,9900",
+            "function a(x, y, x) {\n" +
+            "  var z = 1;\n" +
+            "  function inner() { return x + ':' + y + ':' + z; }\n" +
+            "  z = 2;\n" +
+            "  return inner();\n" +
+            "}\n" +
+            "function mod() {\n" +
+            "  var count = 0;\n" +
+            "  return { inc: function() { return ++count; },\n" +
+            "           get: function() { return count; } };\n" +
+            "}\n" +
+            "var m = mod(); m.inc(); m.inc();\n" +
+            "function sum(n) {\n" +
+            "  var s = 0;\n" +
+            "  for (var i = 0; i < n; i++)\n" +
+            "    s += (function(j) { return j + i; })(i);\n" +
+            "  return s;\n" +
+            "}\n" +
+            "[a(1, 2, 3), a(1), m.get(), sum(100)].join()");
+    }
+
+    public void testArguments()
+    {
+        assertEvaluates("changed2,number,2,function",
+            "function b(p) { arguments[0] = 'changed'; return p + arguments.length; }\n" +
+            "function c(arguments) { return typeof arguments; }\n" +
+            "function d() { var arguments; return arguments.length; }\n" +
+            "function fd() { return typeof inner; function inner() {} }\n" +
+            "[b('orig', 2), c(5), d(1, 2), fd()].join()");
+    }
+
+    public void testEvalAndWith()
+    {
+        assertEvaluates("8falsetrueundefined,1,6,3",
+            "function e(q) {\n" +
+            "  eval('var w = q * 2');\n" +
+            "  return w + '' + (delete q) + (delete w) + typeof w;\n" +
+            "}\n" +
+            "function f(v) { with ({v: 'with'}) { var v = 'set'; } return v; }\n" +
+            "function g() { const k = 3; var r = k; return r + k; }\n" +
+            "function ev(a) { return eval('a + 1') + eval('arguments[0]'); }\n" +
+            "[e(4), f(1), g(), ev(1)].join()");
+    }
+
+    public void testEnclosingVariables()
+    {
+        assertEvaluates("a2b1,5,10,2,catch,with,mid,evaled,7,true,2:1",
+            "function deep(p) {\n" +
+            "  var x = 'a';\n" +
+            "  function mid() {\n" +
+            "    var y = 1;\n" +
+            "    return function() { p++; y--; return x + p + 'b' + (y + 1); };\n" +
+            "  }\n" +
+            "  return mid()();\n" +
+            "}\n" +
+            "function counter() {\n" +
+            "  var n = 0;\n" +
+            "  function add(v) { n += v; return n; }\n" +
+            "  return function(v) { add(v); return n++; };\n" +
+            "}\n" +
+            "var c = counter(); c(1); c(1);\n" +
+            "function rec(d) {\n" +
+            "  var own = d;\n" +
+            "  var f = function() { return own; };\n" +
+            "  return d == 0 ? f() : rec(d - 1) + f() * 10;\n" +
+            "}\n" +
+            "function moved() {\n" +
+            "  var x = 1;\n" +
+            "  var g = function() { return x; };\n" +
+            "  eval('x = 2');\n" +
+            "  return g();\n" +
+            "}\n" +
+            "function shadow() {\n" +
+            "  var x = 'outer', r = [];\n" +
+            "  try { throw 'catch'; } catch (x) {\n" +
+            "    r.push((function() { return x; })());\n" +
+            "  }\n" +
+            "  with ({x: 'with'}) { r.push((function() { return x; })()); }\n" +
+            "  function mid() { var x = 'mid'; return function() { return x; }; }\n" +
+            "  r.push(mid()());\n" +
+            "  function ev() {\n" +
+            "    eval('var x = \\'evaled\\'');\n" +
+            "    return (function() { return x; })();\n" +
+            "  }\n" +
+            "  r.push(ev());\n" +
+            "  return r;\n" +
+            "}\n" +
+            "function redeclared() {\n" +
+            "  var x = 1;\n" +
+            "  eval('function x() { return 7; }');\n" +
+            "  return (function() { return x(); })();\n" +
+            "}\n" +
+            "function self() {\n" +
+            "  var top = this;\n" +
+            "  function h() { return this; }\n" +
+            "  return (function() { return h() === top; })();\n" +
+            "}\n" +
+            "function assign() {\n" +
+            "  var x = 1, y;\n" +
+            "  (function() { x = 2; y = x - 1; })();\n" +
+            "  return x + ':' + y;\n" +
+            "}\n" +
+            "[deep(1), c(1), rec(1), moved(), shadow(), redeclared(),\n" +
+            " self(), assign()].join()");
+    }
+
+    private static ScriptNode transform(String source)
+    {
+        CompilerEnvirons env = new CompilerEnvirons();
+        AstRoot root = new Parser(env).parse(source, "test", 1);
+        return new IRFactory(env).transformTree(root);
+    }
+
+    public void testClosuresWithoutEnclosingVariables()
+    {
+        ScriptNode tree = transform(
+            "function a() { var x = 1; return function() { return 1; }; }\n" +
+            "function b() { var y = 1; return function() { return y; }; }\n" +
+            "function c() { var z = 1; return function() {\n" +
+            "  return function() { return z; }; }; }\n" +
+            "function d() { return function() { return eval('1'); }; }\n");
+        assertFalse(tree.getFunctionNode(0).requiresActivation());
+        assertTrue(tree.getFunctionNode(1).requiresActivation());
+        assertTrue(tree.getFunctionNode(2).requiresActivation());
+        assertFalse(tree.getFunctionNode(2).getFunctionNode(0)
+                    .requiresActivation());
+        assertTrue(tree.getFunctionNode(3).requiresActivation());
+    }
+
+    public void testFunctionStatementsWithoutActivation()
+    {
+        assertEvaluates("3,function,120,2",
+            "function a() { return inner() + 1; function inner() { return 2; } }\n" +
+            "function b() { return typeof inner; function inner() {} }\n" +
+            "function c(n) {\n" +
+            "  function fact(k) { return k <= 1 ? 1 : k * fact(k - 1); }\n" +
+            "  return fact(n);\n" +
+            "}\n" +
+            "function d() { function f() { return 1; } function f() { return 2; } return f(); }\n" +
+            "[a(), b(), c(5), d()].join()");
+    }
+}
@@ -0,0 +1,103 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ScriptInterruptedError;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Scripts stop at loop back-edges and function entries once their
+ * Context is interrupted or its timeout has passed.
+ */
+public class ContextInterruptTest extends TestCase
+{
+    private static void assertTimesOut(final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                cx.setTimeout(50);
+                try {
+                    cx.evaluateString(scope, source, "test", 1, null);
+                    fail("Should throw ScriptInterruptedError");
+                } catch (ScriptInterruptedError e) {
+                    assertTrue(cx.isInterrupted());
+                }
+                cx.clearInterrupt();
+                return null;
+            }
+        });
+    }
+
+    public void testLoops()
+    {
+        assertTimesOut("while (true) {}");
+        assertTimesOut("for (;;) { try { var x = 1; } catch (e) {} }");
+        assertTimesOut("var i = 0; do { i++; } while (i > 0);");
+        assertTimesOut("function f(n) { for (var i = 0; i < n; i++) {} }\n" +
+                       "while (true) f(10);");
+        assertTimesOut("try { for (;;) { continue; } } catch (e) {}");
+    }
+
+    public void testFunctionEntry()
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                cx.evaluateString(scope, "function f() { return 1; }",
+                                  "test", 1, null);
+                cx.interrupt();
+                try {
+                    cx.evaluateString(scope, "f()", "test", 1, null);
+                    fail("Should throw ScriptInterruptedError");
+                } catch (ScriptInterruptedError e) {
+                    // expected
+                }
+                cx.clearInterrupt();
+                assertEquals(1, ((Number)cx.evaluateString(scope, "f()",
+                    "test", 1, null)).intValue());
+                return null;
+            }
+        });
+    }
+
+    public void testInterruptFromOtherThread() throws InterruptedException
+    {
+        final Context[] context = new Context[1];
+        final Object[] result = new Object[1];
+        Thread runner = new Thread() {
+            @Override
+            public void run() {
+                Context cx = Context.enter();
+                try {
+                    Scriptable scope = cx.initStandardObjects();
+                    synchronized (context) {
+                        context[0] = cx;
+                        context.notify();
+                    }
+                    cx.evaluateString(scope,
+                        "function spin() { for (;;) {} } spin()",
+                        "test", 1, null);
+                } catch (ScriptInterruptedError e) {
+                    result[0] = e;
+                } finally {
+                    Context.exit();
+                }
+            }
+        };
+        runner.start();
+        synchronized (context) {
+            while (context[0] == null) {
+                context.wait();
+            }
+        }
+        Thread.sleep(50);
+        context[0].interrupt();
+        runner.join();
+        assertTrue(result[0] instanceof ScriptInterruptedError);
+        // The interrupt ends with the last exit
+        assertFalse(context[0].isInterrupted());
+    }
+}
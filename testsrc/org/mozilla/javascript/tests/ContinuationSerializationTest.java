@@ -0,0 +1,351 @@
+package org.mozilla.javascript.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.ContinuationPending;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.debug.DebuggableScript;
+import org.mozilla.javascript.serialize.ScriptableInputStream;
+import org.mozilla.javascript.serialize.ScriptableOutputStream;
+
+/**
+ * Continuations written with references to their scripts instead of the
+ * compiled code resume after they are read back.
+ */
+public class ContinuationSerializationTest extends TestCase
+{
+    private static final String SOURCE =
+        "function counter(start) {\n" +
+        "  var n = start;\n" +
+        "  return function(step) { n += step; return n; };\n" +
+        "}\n" +
+        "function run(c) {\n" +
+        "  var obj = { label: 'x', flag: true, missing: undefined, count: 0,\n" +
+        "              get twice() { return this.count * 2; } };\n" +
+        "  var total = 0.5;\n" +
+        "  for (var i = 0; i < 3; i++) {\n" +
+        "    obj.count = c(io.suspend(i));\n" +
+        "    total += obj.twice;\n" +
+        "  }\n" +
+        "  return obj.label + obj.flag + obj.missing + total;\n" +
+        "}\n" +
+        "run(counter(10))";
+
+    private Scriptable scope;
+
+    public static class Suspender implements Serializable
+    {
+        private static final long serialVersionUID = -1380219237816544137L;
+
+        public int suspend(int value) {
+            Context cx = Context.getCurrentContext();
+            ContinuationPending pending = cx.captureContinuation();
+            pending.setApplicationState(Integer.valueOf(value));
+            throw pending;
+        }
+    }
+
+    @Override
+    protected void setUp()
+    {
+        Context cx = Context.enter();
+        try {
+            scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "io",
+                Context.javaToJS(new Suspender(), scope));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private Script compile(Context cx, String source)
+    {
+        cx.setOptimizationLevel(-1);
+        return cx.compileString(source, "test", 1, null);
+    }
+
+    private byte[] write(Object continuation, Script script)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScriptableOutputStream out = new ScriptableOutputStream(
+            Channels.newChannel(bytes), scope);
+        if (script != null) {
+            out.addScript("main", script);
+        }
+        out.writeObject(continuation);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private Object read(byte[] data, Script script)
+        throws IOException, ClassNotFoundException
+    {
+        ScriptableInputStream in = new ScriptableInputStream(
+            Channels.newChannel(new ByteArrayInputStream(data)), scope);
+        if (script != null) {
+            in.addScript("main", script);
+        }
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testResumeWithScriptReferences()
+        throws IOException, ClassNotFoundException
+    {
+        Context cx = Context.enter();
+        try {
+            Script script = compile(cx, SOURCE);
+            ContinuationPending pending;
+            try {
+                cx.executeScriptWithContinuations(script, scope);
+                fail("Should throw ContinuationPending");
+                return;
+            } catch (ContinuationPending p) {
+                pending = p;
+            }
+            int embeddedSize = write(pending.getContinuation(), null).length;
+            int referencedSize =
+                write(pending.getContinuation(), script).length;
+            assertTrue(referencedSize + " < " + embeddedSize,
+                       referencedSize < embeddedSize);
+
+            int steps = 0;
+            for (;;) {
+                ++steps;
+                // Each snapshot is read with its own copy of the script
+                Script copy = compile(cx, SOURCE);
+                Object continuation = read(
+                    write(pending.getContinuation(), script), copy);
+                int value = ((Integer)pending.getApplicationState()).intValue();
+                try {
+                    Object result = cx.resumeContinuation(continuation, scope,
+                        Integer.valueOf(value + 1));
+                    assertEquals("xtrueundefined80.5", result);
+                    break;
+                } catch (ContinuationPending p) {
+                    pending = p;
+                    script = copy;
+                }
+            }
+            assertEquals(3, steps);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public void testMissingOrDifferentScript()
+        throws IOException, ClassNotFoundException
+    {
+        Context cx = Context.enter();
+        try {
+            Script script = compile(cx, SOURCE);
+            byte[] data;
+            try {
+                cx.executeScriptWithContinuations(script, scope);
+                fail("Should throw ContinuationPending");
+                return;
+            } catch (ContinuationPending pending) {
+                data = write(pending.getContinuation(), script);
+            }
+            try {
+                read(data, null);
+                fail("Should throw IOException");
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage().startsWith("Script main"));
+            }
+            try {
+                read(data, compile(cx, SOURCE.replace("run(c)", "run(c, d)")));
+                fail("Should throw IOException");
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage().startsWith("Script main"));
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static NativeObject plainObject()
+    {
+        NativeObject inner = new NativeObject();
+        inner.put("flag", inner, Boolean.TRUE);
+        NativeObject obj = new NativeObject();
+        obj.put("n", obj, Double.valueOf(1.5));
+        obj.put("s", obj, "text");
+        obj.put("inner", obj, inner);
+        return obj;
+    }
+
+    private static void assertPlainObject(Object obj)
+    {
+        Scriptable s = (Scriptable)obj;
+        assertEquals(Double.valueOf(1.5), s.get("n", s));
+        assertEquals("text", s.get("s", s));
+        Scriptable inner = (Scriptable)s.get("inner", s);
+        assertEquals(Boolean.TRUE, inner.get("flag", inner));
+    }
+
+    public void testStandardFormatStreams()
+        throws IOException, ClassNotFoundException
+    {
+        // Plain object streams keep the format of earlier versions, and
+        // ScriptableInputStream still reads streams in the standard format
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(plainObject());
+        out.close();
+        byte[] data = bytes.toByteArray();
+        assertTrue(new String(data, "ISO-8859-1").contains(
+            "org.mozilla.javascript.ScriptableObject$Slot"));
+
+        ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream(data));
+        assertPlainObject(in.readObject());
+        in.close();
+        assertPlainObject(read(data, null));
+
+        Context.enter();
+        try {
+            assertPlainObject(read(write(plainObject(), null), null));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public void testContinuationOfEarlierVersion()
+        throws IOException, ClassNotFoundException
+    {
+        // Written by 1.7R3 at the first suspend of SOURCE, with the stack
+        // of its frames in their fields
+        InputStream data = ContinuationSerializationTest.class
+            .getResourceAsStream("continuation-1.7R3.ser");
+        Context cx = Context.enter();
+        try {
+            ScriptableInputStream in = new ScriptableInputStream(data, scope);
+            Object continuation;
+            try {
+                continuation = in.readObject();
+            } finally {
+                in.close();
+            }
+            int value = 0;
+            for (int steps = 1; ; ++steps) {
+                try {
+                    Object result = cx.resumeContinuation(continuation, scope,
+                        Integer.valueOf(value + 1));
+                    assertEquals("xtrueundefined80.5", result);
+                    assertEquals(3, steps);
+                    break;
+                } catch (ContinuationPending p) {
+                    // Later snapshots are written in the current format
+                    continuation = read(write(p.getContinuation(), null),
+                                        null);
+                    value = ((Integer)p.getApplicationState()).intValue();
+                }
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static class LazyFactory extends ContextFactory
+    {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex)
+        {
+            if (featureIndex == Context.FEATURE_LAZY_FUNCTION_COMPILATION) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    }
+
+    public void testLazyFunctionsOutsideContext()
+        throws Exception
+    {
+        final Object[] result = new Object[1];
+        final Throwable[] failure = new Throwable[1];
+        // A new thread has no Context left entered by other tests
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = writeLazyFunction();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        if (failure[0] != null) {
+            throw new RuntimeException(failure[0]);
+        }
+        Context cx = Context.enter();
+        try {
+            Script copy = compile(cx, COUNTER_SOURCE);
+            Function counter = (Function)read((byte[])result[0], copy);
+            Function next = (Function)counter.call(cx, scope, scope,
+                new Object[] { Integer.valueOf(5) });
+            assertEquals(Double.valueOf(7), next.call(cx, scope, scope,
+                new Object[] { Integer.valueOf(2) }));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private static final String COUNTER_SOURCE =
+        "function counter(start) {\n" +
+        "  var n = start;\n" +
+        "  return function(step) { n += step; return n; };\n" +
+        "}\n";
+
+    private byte[] writeLazyFunction()
+        throws IOException
+    {
+        ContextFactory factory = new LazyFactory();
+        Script script;
+        Script viewed;
+        Object counter;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ScriptableOutputStream out;
+        Context cx = factory.enterContext();
+        try {
+            script = compile(cx, COUNTER_SOURCE);
+            script.exec(cx, scope);
+            counter = scope.get("counter", scope);
+            viewed = compile(cx, COUNTER_SOURCE);
+            out = new ScriptableOutputStream(bytes, scope);
+        } finally {
+            Context.exit();
+        }
+        assertNull(Context.getCurrentContext());
+        // Both need the nested functions of functions not compiled yet
+        out.addScript("main", script);
+        out.writeObject(counter);
+        out.close();
+        DebuggableScript counterView =
+            Context.getDebuggableView(viewed).getFunction(0);
+        assertEquals(1, counterView.getFunctionCount());
+        assertEquals("n", counterView.getParamOrVarName(1));
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,133 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContinuationPending;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Continuations captured repeatedly in deep chains of interpreted frames,
+ * some of which have exception handlers or activation objects.
+ */
+public class DeepContinuationTest extends TestCase
+{
+    private Scriptable scope;
+
+    public static class Suspender
+    {
+        public int suspend(int value) {
+            Context cx = Context.getCurrentContext();
+            ContinuationPending pending = cx.captureContinuation();
+            pending.setApplicationState(Integer.valueOf(value));
+            throw pending;
+        }
+    }
+
+    @Override
+    protected void setUp()
+    {
+        Context cx = Context.enter();
+        try {
+            scope = cx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "io",
+                Context.javaToJS(new Suspender(), scope));
+        } finally {
+            Context.exit();
+        }
+    }
+
+    private Object runSuspending(String source, int[] steps)
+    {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(-1);
+            Script script = cx.compileString(source, "test", 1, null);
+            ContinuationPending pending;
+            try {
+                return cx.executeScriptWithContinuations(script, scope);
+            } catch (ContinuationPending p) {
+                pending = p;
+            }
+            for (;;) {
+                ++steps[0];
+                int value = ((Integer)pending.getApplicationState()).intValue();
+                try {
+                    return cx.resumeContinuation(pending.getContinuation(),
+                                                 scope, Integer.valueOf(value * 2));
+                } catch (ContinuationPending p) {
+                    pending = p;
+                }
+            }
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public void testDeepChain()
+    {
+        int[] steps = new int[1];
+        Object result = runSuspending(
+            "function deep(n) {\n" +
+            "  if (n == 0) {\n" +
+            "    var t = 0;\n" +
+            "    for (var i = 0; i < 20; i++) t += io.suspend(i);\n" +
+            "    return t;\n" +
+            "  }\n" +
+            "  return deep(n - 1) + 1;\n" +
+            "}\n" +
+            "deep(300)", steps);
+        assertEquals(20, steps[0]);
+        assertEquals(380 + 300, ((Number)result).intValue());
+    }
+
+    public void testHandlersAndActivations()
+    {
+        int[] steps = new int[1];
+        Object result = runSuspending(
+            "var log = [];\n" +
+            "function closure(n) {\n" +
+            "  var f = function() { return n; };\n" +
+            "  return deep(n - 1) + f() * 0;\n" +
+            "}\n" +
+            "function guarded(n) {\n" +
+            "  try { return deep(n - 1); } finally { log.push(n); }\n" +
+            "}\n" +
+            "function deep(n) {\n" +
+            "  if (n == 0) {\n" +
+            "    var a = io.suspend(1), b = io.suspend(2);\n" +
+            "    if (a + b == 6) throw 'done';\n" +
+            "    return 0;\n" +
+            "  }\n" +
+            "  if (n % 50 == 0) return guarded(n);\n" +
+            "  if (n % 7 == 0) return closure(n);\n" +
+            "  return deep(n - 1);\n" +
+            "}\n" +
+            "var r;\n" +
+            "try { r = deep(200); } catch (e) { r = e; }\n" +
+            "r + ':' + log.join()", steps);
+        assertEquals(2, steps[0]);
+        // finally blocks also run when ContinuationPending passes them
+        assertEquals("done:50,100,150,200,50,100,150,200,50,100,150,200",
+                     result);
+    }
+
+    public void testExceptionThroughDeepChain()
+    {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(-1);
+            Object result = cx.evaluateString(scope,
+                "function deep(n) { if (n == 0) throw n; return deep(n - 1); }\n" +
+                "function outer() { try { deep(100); } catch (e) { return 'caught ' + e; } }\n" +
+                "var uncaught; try { deep(50); } catch (e) { uncaught = e; }\n" +
+                "outer() + ',' + uncaught",
+                "test", 1, null);
+            assertEquals("caught 0,0", result);
+        } finally {
+            Context.exit();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.FixedArityCallable;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.Undefined;
+
+/**
+ * Calls with a small number of arguments that go through the fixed arity
+ * entry points give the same results as calls with an arguments array.
+ */
+public class FixedArityCallTest extends TestCase
+{
+    private static void assertEvaluates(final Object expected,
+                                        final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "test", 1,
+                                                  null);
+                assertEquals(expected, result);
+                return null;
+            }
+        });
+    }
+
+    public void testArgumentCounts()
+    {
+        assertEvaluates("0:1:2:3:4:5,2:,3::,NaN,6,10",
+            "function count() { return arguments.length; }\n" +
+            "function two(a, b) { return b + ':' + (typeof a == 'number' ? '' : a); }\n" +
+            "function add(a, b, c) { return a + b + c; }\n" +
+            "var o = { add: add, sum: function(a, b, c, d) { return a + b + c + d; } };\n" +
+            "[[count(), count(1), count(1, 2), count(1, 2, 3),\n" +
+            "  count(1, 2, 3, 4), count(1, 2, 3, 4, 5)].join(':'),\n" +
+            " two(1, 2), two(1, 3, 4) + two('x', 1).charAt(1), add(1, 2),\n" +
+            " o.add(1, 2, 3), o.sum(1, 2, 3, 4)].join()");
+    }
+
+    public void testDirectCallTargets()
+    {
+        assertEvaluates("5,NaN,3,a-b,x-undefined",
+            "function f(a, b) { return a + b; }\n" +
+            "function s(a, b) { return a + '-' + b; }\n" +
+            "function g() { return [f(2, 3), f(1), f(1, 2, 3)]; }\n" +
+            "var h = s;\n" +
+            "g().concat([s('a', 'b'), h('x')]).join()");
+    }
+
+    public void testCallFromJava()
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Function f = (Function)cx.evaluateString(scope,
+                    "(function(a, b) { return a + ',' + b + ',' + arguments.length; })",
+                    "test", 1, null);
+                if (f instanceof FixedArityCallable) {
+                    FixedArityCallable fixed = (FixedArityCallable)f;
+                    assertEquals("undefined,undefined,0",
+                                 fixed.call0(cx, scope, scope));
+                    assertEquals("1,undefined,1",
+                                 fixed.call1(cx, scope, scope, "1"));
+                    assertEquals("1,2,4",
+                                 fixed.call4(cx, scope, scope, "1", "2",
+                                             Undefined.instance, "4"));
+                }
+                assertEquals("1,2,2", f.call(cx, scope, scope,
+                                             new Object[] { "1", "2" }));
+                return null;
+            }
+        });
+    }
+}
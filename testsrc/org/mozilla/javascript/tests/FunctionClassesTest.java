@@ -0,0 +1,99 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests that functions compiled to classes of their own behave like
+ * functions sharing the class of the enclosing script.
+ */
+public class FunctionClassesTest extends TestCase {
+
+  private static final String SCRIPT =
+      "var out = [];\n" +
+      "function add(a, b) { return a + b; }\n" +
+      "out.push(add(1, 2), add(1), add.length, add.name);\n" +
+      "var fact = function f(n) { return n <= 1 ? 1 : n * f(n - 1); };\n" +
+      "out.push(fact(5));\n" +
+      "function outer(x) {\n" +
+      "  function inner(z) { return x + z; }\n" +
+      "  return inner(1);\n" +
+      "}\n" +
+      "out.push(outer(1));\n" +
+      "var pick = out.length > 2 ? function() { return 'a'; }\n" +
+      "                          : function() { return 'b'; };\n" +
+      "out.push(pick());\n" +
+      "function Point(x) { this.x = x; }\n" +
+      "out.push(new Point(7).x);\n" +
+      "function gen() { for (var i = 0; i < 3; i++) yield i; }\n" +
+      "var it = gen(); out.push(it.next(), it.next());\n" +
+      "function re(s) { return s.replace(/a/g, 'x'); }\n" +
+      "out.push(re('abba'), [3, 1, 2].sort(function(a, b) { return a - b; }));\n" +
+      "out.push(add.call(null, 'x', 'y'), add.apply(null, [4, 5]));\n" +
+      "out.join('|');\n";
+
+  static class FunctionClassesContextFactory extends ContextFactory {
+    private final boolean functionClasses;
+
+    FunctionClassesContextFactory(boolean functionClasses) {
+      this.functionClasses = functionClasses;
+    }
+
+    @Override
+    protected boolean hasFeature(Context cx, int featureIndex) {
+      if (featureIndex == Context.FEATURE_FUNCTION_CLASSES) {
+        return functionClasses;
+      }
+      return super.hasFeature(cx, featureIndex);
+    }
+  }
+
+  private Object run(boolean functionClasses, int optLevel, String source) {
+    Context cx = new FunctionClassesContextFactory(functionClasses)
+        .enterContext();
+    try {
+      cx.setOptimizationLevel(optLevel);
+      cx.setLanguageVersion(Context.VERSION_1_8);
+      Scriptable scope = cx.initStandardObjects();
+      Object result = cx.evaluateString(scope, source, "test", 1, null);
+      return Context.toString(result);
+    } finally {
+      Context.exit();
+    }
+  }
+
+  public void testSameResults() {
+    Object expected = run(false, -1, SCRIPT);
+    assertEquals(expected, run(false, 0, SCRIPT));
+    assertEquals(expected, run(true, 0, SCRIPT));
+    assertEquals(expected, run(true, 9, SCRIPT));
+  }
+
+  public void testClassPerFunction() {
+    Context cx = new FunctionClassesContextFactory(true).enterContext();
+    try {
+      cx.setOptimizationLevel(9);
+      Scriptable scope = cx.initStandardObjects();
+      cx.evaluateString(scope,
+          "function f() { return 1; } function g() { return 2; }",
+          "test", 1, null);
+      Object f = scope.get("f", scope);
+      Object g = scope.get("g", scope);
+      assertNotSame(f.getClass(), g.getClass());
+      assertSame(f.getClass().getSuperclass(),
+                 g.getClass().getSuperclass());
+
+      Function h = cx.compileFunction(scope,
+          "function h(a) { return a * 2; }", "test", 1, null);
+      assertEquals(8, ((Number) h.call(cx, scope, scope,
+                                       new Object[] { 4 })).intValue());
+      assertTrue(h.getClass().getName().endsWith("$h_0"));
+    } finally {
+      Context.exit();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Small functions called directly from compiled code are inlined at the
+ * call site as long as the called function has not been replaced.
+ */
+public class InlineDirectCallTest extends TestCase
+{
+    private static final String FUNCTIONS =
+        "function sq(x) { return x * x; }\n" +
+        "function getX(p) { return p.x; }\n" +
+        "function clamp(v, lo, hi) { return v < lo ? lo : (v > hi ? hi : v); }\n" +
+        "function cat(a, b) { return a + b; }\n" +
+        "function isStr(a) { return typeof a == 'string'; }\n" +
+        "function el(a, i) { return a[i]; }\n" +
+        "function run(n) {\n" +
+        "  var s = 0, t = '', arr = [1, 2, 3], pts = [{x: 1}, {x: 'a'}];\n" +
+        "  for (var i = 0; i < n; i++) {\n" +
+        "    s += sq(i % 10) + clamp(i, 2, 5) + el(arr, i % 3);\n" +
+        "    t += getX(pts[i % 2]) + cat(i, 'z') + cat('q', i) + isStr(t);\n" +
+        "  }\n" +
+        "  return s + '|' + t + '|' + sq() + clamp('5', 1, 3) + sq('3');\n" +
+        "}\n";
+
+    private static void assertEvaluates(final Object expected,
+                                        final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "test", 1,
+                                                  null);
+                assertEquals(expected, result);
+                return null;
+            }
+        });
+    }
+
+    public void testInlinedResults()
+    {
+        assertEvaluates("30|10zq0truea1zq1true12zq2truea3zq3true|NaN39",
+                        FUNCTIONS + "run(4)");
+    }
+
+    public void testReplacedFunction()
+    {
+        assertEvaluates("0replaced021|10zq0true|NaN3replaced3",
+                        FUNCTIONS +
+                        "run(1);\n" +
+                        "sq = function(x) { return 'replaced' + x; };\n" +
+                        "run(1).replace('replacedundefined', 'NaN')");
+    }
+
+    public void testErrorInInlinedFunction()
+    {
+        final String source = FUNCTIONS +
+                              "function f(o) { return getX(o); }\n" +
+                              "f(null);\n";
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                try {
+                    cx.evaluateString(scope, source, "test", 1, null);
+                    fail();
+                } catch (EcmaError e) {
+                    assertEquals("TypeError", e.getName());
+                }
+                return null;
+            }
+        });
+    }
+
+    public void testInlinedCallBeforeTryCatch()
+    {
+        assertEvaluates("4,25,TypeError",
+            "function sq(x) { return x * x; }\n" +
+            "function run() {\n" +
+            "  var r = [];\n" +
+            "  var x = sq(2);\n" +
+            "  try { r.push(x); } catch (e) { r.push(e.name); }\n" +
+            "  var y = sq(5);\n" +
+            "  try { r.push(y); null.z; } catch (e) { r.push(e.name); }\n" +
+            "  return r.join();\n" +
+            "}\n" +
+            "run()");
+    }
+}
@@ -0,0 +1,238 @@
+package org.mozilla.javascript.tests;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.FunctionStatistics;
+import org.mozilla.javascript.JavaScriptException;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Calls, compilations and fallbacks to the interpreter are reported to the
+ * instrumentation of the context factory.
+ */
+public class InstrumentationTest extends TestCase
+{
+    private static final String SOURCE =
+        "function f(x) { return x + 1; }\n" +
+        "function thrower() { throw 'x'; }\n" +
+        "var s = 0, caught = 0;\n" +
+        "for (var i = 0; i < 100; i++) s = f(s);\n" +
+        "for (i = 0; i < 10; i++) { try { thrower(); } catch (e) { caught++; } }\n" +
+        "s + ',' + caught\n";
+
+    private static class SpeculativeFactory extends ContextFactory
+    {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex)
+        {
+            if (featureIndex == Context.FEATURE_SPECULATIVE_COMPILATION) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    }
+
+    /**
+     * Runs the source on a new thread, so the Context is entered with
+     * the instrumentation and not nested in one left entered on this
+     * thread.
+     */
+    private static Object run(final ContextFactory factory,
+                              final int optimizationLevel,
+                              final String source)
+        throws InterruptedException
+    {
+        final Object[] result = new Object[1];
+        final Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = factory.call(new ContextAction() {
+                        public Object run(Context cx) {
+                            cx.setOptimizationLevel(optimizationLevel);
+                            Scriptable scope = cx.initStandardObjects();
+                            return cx.evaluateString(scope, source, "test", 1,
+                                                     null);
+                        }
+                    });
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        if (failure[0] != null) {
+            throw new RuntimeException(failure[0]);
+        }
+        return result[0];
+    }
+
+    private static FunctionStatistics.Entry getEntry(
+        FunctionStatistics statistics, String prefix)
+    {
+        FunctionStatistics.Entry found = null;
+        for (FunctionStatistics.Entry entry : statistics.getEntries()) {
+            if (entry.getName().startsWith(prefix)) {
+                assertNull(entry.getName(), found);
+                found = entry;
+            }
+        }
+        assertNotNull(Arrays.asList(statistics.getFunctions()).toString(),
+                      found);
+        return found;
+    }
+
+    private static void assertCalls(int optimizationLevel,
+                                    String scriptName)
+        throws InterruptedException
+    {
+        FunctionStatistics statistics = new FunctionStatistics();
+        ContextFactory factory = new ContextFactory();
+        factory.setInstrumentation(statistics);
+        assertEquals("100,10", run(factory, optimizationLevel, SOURCE));
+        assertEquals(100, getEntry(statistics, "f (").getCallCount());
+        assertEquals(10, getEntry(statistics, "thrower (").getCallCount());
+        FunctionStatistics.Entry script = getEntry(statistics, scriptName);
+        assertEquals(1, script.getCallCount());
+        assertTrue(script.getTotalTime()
+                   >= getEntry(statistics, "f (").getTotalTime());
+        assertEquals(3, statistics.getFunctionCount());
+        assertEquals(111, statistics.getCallCount());
+        assertEquals(1, statistics.getCompilationCount());
+        assertTrue(statistics.getCompiledCodeSize() > 0);
+    }
+
+    public void testInterpretedCalls() throws InterruptedException
+    {
+        assertCalls(-1, "(script) (test:3)");
+    }
+
+    public void testCompiledCalls() throws InterruptedException
+    {
+        // Compiled scripts can not be told from anonymous functions
+        assertCalls(0, "(anonymous) (");
+        // Without instrumentation f would be called directly
+        assertCalls(9, "(anonymous) (");
+    }
+
+    public void testFallbacks() throws InterruptedException
+    {
+        FunctionStatistics statistics = new FunctionStatistics();
+        ContextFactory factory = new SpeculativeFactory();
+        factory.setInstrumentation(statistics);
+        Object result = run(factory, -1,
+            "function hot(x) { return x * 2; }\n" +
+            "function act(x) { return eval('x'); }\n" +
+            "var s = 0;\n" +
+            "for (var i = 0; i < 2000; i++) s += hot(i) + act(1);\n" +
+            "s\n");
+        assertEquals(Double.valueOf(1999 * 2000 + 2000), result);
+        List<String> fallbacks = Arrays.asList(statistics.getFallbacks());
+        assertEquals(Arrays.asList("act (test): requires activation"),
+                     fallbacks);
+        // The script, every eval and hot as bytecode
+        assertEquals(2002, statistics.getCompilationCount());
+        assertEquals(2000, getEntry(statistics, "act (").getCallCount());
+    }
+
+    public void testMBean() throws Exception
+    {
+        FunctionStatistics statistics = new FunctionStatistics();
+        ContextFactory factory = new ContextFactory();
+        factory.setInstrumentation(statistics);
+        run(factory, -1, SOURCE);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(
+            "org.mozilla.javascript:type=FunctionStatistics");
+        server.registerMBean(statistics, name);
+        try {
+            assertEquals(Long.valueOf(111),
+                         server.getAttribute(name, "CallCount"));
+            String[] functions = (String[])server.getAttribute(name,
+                                                               "Functions");
+            assertTrue(functions[0], functions[0].startsWith("(script)"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(Integer.valueOf(0),
+                         server.getAttribute(name, "FunctionCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    private static void assertCallsWithUncaughtException(
+        int optimizationLevel, String scriptName)
+        throws InterruptedException
+    {
+        FunctionStatistics statistics = new FunctionStatistics();
+        ContextFactory factory = new ContextFactory();
+        factory.setInstrumentation(statistics);
+        try {
+            run(factory, optimizationLevel,
+                "function b() { throw 1; }\n" +
+                "function a() { b(); }\n" +
+                "a();\n");
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof JavaScriptException);
+        }
+        assertEquals(1, getEntry(statistics, "a (").getCallCount());
+        assertEquals(1, getEntry(statistics, "b (").getCallCount());
+        assertEquals(1, getEntry(statistics, scriptName).getCallCount());
+        assertEquals(3, statistics.getFunctionCount());
+    }
+
+    public void testUncaughtException() throws InterruptedException
+    {
+        assertCallsWithUncaughtException(-1, "(script) (test:3)");
+        assertCallsWithUncaughtException(0, "(anonymous) (");
+    }
+
+    public void testCompiledCodeNotRetained() throws InterruptedException
+    {
+        FunctionStatistics statistics = new FunctionStatistics();
+        final ContextFactory factory = new ContextFactory();
+        factory.setInstrumentation(statistics);
+        final Object[] scriptClass = new Object[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                factory.call(new ContextAction() {
+                    public Object run(Context cx) {
+                        cx.setOptimizationLevel(0);
+                        Scriptable scope = cx.initStandardObjects();
+                        Script script = cx.compileString(
+                            "function f() {} f();", "test", 1, null);
+                        script.exec(cx, scope);
+                        scriptClass[0] = new WeakReference<Class<?>>(
+                            script.getClass());
+                        return null;
+                    }
+                });
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(1, getEntry(statistics, "f (").getCallCount());
+        WeakReference<?> ref = (WeakReference<?>)scriptClass[0];
+        for (int i = 0; i < 20 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(ref.get());
+        assertEquals(1, getEntry(statistics, "f (").getCallCount());
+    }
+}
@@ -0,0 +1,90 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Integer shortcuts for numbers give the same results as double arithmetic.
+ */
+public class IntegerFastPathTest extends TestCase
+{
+    private static void assertEvaluates(final Object expected,
+                                        final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "test", 1,
+                                                  null);
+                assertEquals(expected, result);
+                return null;
+            }
+        });
+    }
+
+    public void testModulo()
+    {
+        assertEvaluates("1,2,-2,1.5,-Infinity,Infinity,NaN,0,2147483647",
+            "function mod(a, b) { return a % b; }\n" +
+            "[mod(7, 3), mod(5, -3), mod(-5, 3), mod(7.5, 2),\n" +
+            " 1 / mod(-4, 2), 1 / mod(0, 5), mod(3, 0),\n" +
+            " mod(-2147483648, -1), mod(2147483647, -2147483648)].join()");
+    }
+
+    public void testWrapNumber()
+    {
+        assertEquals(Double.valueOf(5), ScriptRuntime.wrapNumber(5));
+        assertSame(ScriptRuntime.wrapNumber(7), ScriptRuntime.wrapNumber(7));
+        double negativeZero = ScriptRuntime.wrapNumber(-0.0).doubleValue();
+        assertTrue(1 / negativeZero < 0);
+        assertEquals(Double.valueOf(1024.5),
+                     ScriptRuntime.wrapNumber(1024.5));
+        assertEquals(Double.valueOf(-1), ScriptRuntime.wrapNumber(-1));
+        assertSame(ScriptRuntime.NaNobj,
+                   ScriptRuntime.wrapNumber(Double.NaN));
+        assertEvaluates("0,255,-Infinity",
+            "var a = []; a[0] = 0; a[1] = 255; a[2] = -0;\n" +
+            "[a[0], a[1], 1 / a[2]].join()");
+    }
+
+    public void testIncrementDecrement()
+    {
+        assertEvaluates("2147483648,-2147483649,1.5,1,-Infinity,3",
+            "function f() {\n" +
+            "  var a = 2147483647, b = -2147483648, c = 0.5, d = -0, s = '2';\n" +
+            "  a++; b--; c++;\n" +
+            "  var old = d++;\n" +
+            "  s++;\n" +
+            "  return [a, b, c, d, 1 / old, s];\n" +
+            "}\n" +
+            "f().join()");
+    }
+
+    public void testCompareAndBranch()
+    {
+        assertEvaluates("10,3,0,2,4,2",
+            "function f() {\n" +
+            "  var a = [], n = 0, x = 2147483647, o = { valueOf: function() {\n" +
+            "    return 2; } };\n" +
+            "  for (var i = 0; i < a.length + 10; i++) n++;\n" +
+            "  var m = 0;\n" +
+            "  for (var j = 0.5; j <= o.valueOf() + 1; j++) m++;\n" +
+            "  var k = 0;\n" +
+            "  while (NaN < k + 1) k++;\n" +
+            "  var p = 0;\n" +
+            "  if (x + 1 > x) p++;\n" +
+            "  if ('b' >= 'a' + '') p++;\n" +
+            "  var q = 0;\n" +
+            "  if (-0 >= 0 + 0) q++;\n" +
+            "  if (o < o * 3) q += 3;\n" +
+            "  var r = 0;\n" +
+            "  for (var y = -2147483648; y - 1 < -2147483647; y += 1) r++;\n" +
+            "  return [n, m, k, p, q, r];\n" +
+            "}\n" +
+            "f().join()");
+    }
+}
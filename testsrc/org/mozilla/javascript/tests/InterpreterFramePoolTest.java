@@ -0,0 +1,92 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Reused interpreter frames do not change the results of later calls,
+ * of generators or of stack traces of exceptions that were caught.
+ */
+public class InterpreterFramePoolTest extends TestCase
+{
+    private static void assertInterprets(final Object expected,
+                                         final String source)
+    {
+        Utils.runWithOptimizationLevel(new ContextAction() {
+            public Object run(Context cx) {
+                cx.setLanguageVersion(Context.VERSION_1_8);
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "test", 1,
+                                                  null);
+                assertEquals(expected, result);
+                return null;
+            }
+        }, -1);
+    }
+
+    public void testRecursion()
+    {
+        assertInterprets("6765,1275,1,6,1,7",
+            "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n" +
+            "function churn(n) {\n" +
+            "  var a = n, b = {}, c = [n];\n" +
+            "  return n == 0 ? 0 : churn(n - 1) + a;\n" +
+            "}\n" +
+            "function k() { const q = 1; q = 2; return q; }\n" +
+            "function v(a) { var q; q = 5; return q + a; }\n" +
+            "[fib(20), churn(50), k(), v(1), k(), v(2)].join()");
+    }
+
+    public void testExceptionStack()
+    {
+        Utils.runWithOptimizationLevel(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                cx.evaluateString(scope,
+                    "function thrower(n) {\n" +
+                    "  if (n == 0) throw new Error('x');\n" +
+                    "  return thrower(n - 1);\n" +
+                    "}\n" +
+                    "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }",
+                    "test", 1, null);
+                RhinoException saved = null;
+                try {
+                    cx.evaluateString(scope, "thrower(2)", "call", 1, null);
+                } catch (RhinoException e) {
+                    saved = e;
+                }
+                assertNotNull(saved);
+                cx.evaluateString(scope, "fib(10)", "fib", 1, null);
+                String trace = saved.getScriptStackTrace();
+                assertEquals(4, trace.split("\n").length);
+                assertTrue(trace, trace.indexOf("test:2") >= 0);
+                assertTrue(trace, trace.indexOf("test:3") >= 0);
+                assertTrue(trace, trace.indexOf("call:1") >= 0);
+                assertTrue(trace, trace.indexOf("fib") < 0);
+                return null;
+            }
+        }, -1);
+    }
+
+    public void testGenerators()
+    {
+        assertInterprets("0,1,2,g,true,0,1",
+            "function gen() {\n" +
+            "  var i = 0;\n" +
+            "  while (true) { yield i++; if (i == 3) throw 'g'; }\n" +
+            "}\n" +
+            "function fib(n) { return n < 2 ? n : fib(n - 1) + fib(n - 2); }\n" +
+            "var out = [];\n" +
+            "var g = gen(); out.push(g.next(), g.next());\n" +
+            "fib(5); out.push(g.next());\n" +
+            "try { g.next(); } catch (e) { out.push(e); }\n" +
+            "fib(10);\n" +
+            "try { g.next(); } catch (e) { out.push(e instanceof StopIteration); }\n" +
+            "var g2 = gen(); out.push(g2.next()); fib(8); out.push(g2.next());\n" +
+            "out.join()");
+    }
+}
@@ -0,0 +1,52 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Sequences the interpreter runs as superinstructions keep the semantics of
+ * the instructions they replace.
+ */
+public class InterpreterSuperinstructionsTest extends TestCase
+{
+    private static void assertEvaluates(final Object expected,
+                                        final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "test", 1,
+                                                  null);
+                assertEquals(expected, result);
+                return null;
+            }
+        });
+    }
+
+    public void testCompareAndBranch()
+    {
+        assertEvaluates("10,45,ab,false,true,false,x,2",
+            "function count(n) { var c = 0; for (var i = 0; i < n; i++) c++; return c; }\n" +
+            "function sum(a, b) { var s = 0; while (a <= b) { s += a; a++; } return s; }\n" +
+            "function order(a, b) { if (a > b) return b + a; return a + b; }\n" +
+            "function ge(a) { if (a >= -3) return true; return false; }\n" +
+            "function lt(a, b) { return a < b ? 'x' : 'y'; }\n" +
+            "function obj(o) { var r = 0; if (o < 3) r++; if (o <= 2) r++; return r; }\n" +
+            "var v = { valueOf: function() { return 2; } };\n" +
+            "[count(10), sum(0, 9), order('b', 'a'), ge(NaN), ge('-3'),\n" +
+            " ge(undefined), lt(1, 2), obj(v)].join()");
+    }
+
+    public void testSetVarAndGetProp()
+    {
+        assertEvaluates("3,5,number,true",
+            "function f(s) { var x; x = s; x = x.length; return x; }\n" +
+            "function g(a) { var o = { p: a }; var n; n = o.p + 2; return n; }\n" +
+            "function h(n) { var t = typeof n; return t; }\n" +
+            "function e(u) { try { return u.p; } catch (ex) { return ex instanceof TypeError; } }\n" +
+            "[f('abc'), g(3), h(1), e(null)].join()");
+    }
+}
@@ -0,0 +1,75 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * The arguments object behaves the same whether it is created on first
+ * access or its elements and length are read without it.
+ */
+public class LazyArgumentsTest extends TestCase
+{
+    private static void assertEvaluates(final Object expected,
+                                        final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source, "test", 1,
+                                                  null);
+                assertEquals(expected, result);
+                return null;
+            }
+        });
+    }
+
+    public void testElementsAndLength()
+    {
+        assertEvaluates("6/3/undefined,7,9:9,1,2,2,object,,1",
+            "function f(a, b) {\n" +
+            "  eval('');\n" +
+            "  var s = 0;\n" +
+            "  for (var i = 0; i < arguments.length; i++) s += arguments[i];\n" +
+            "  return s + '/' + arguments.length + '/' + arguments[5];\n" +
+            "}\n" +
+            "function g(a) { eval(''); a = 7; return arguments[0]; }\n" +
+            "function h(a) { arguments[0] = 9; return a + ':' + arguments[0]; }\n" +
+            "function k(a, a) { eval(''); return [arguments[0], arguments[1], a]; }\n" +
+            "function u(a) {\n" +
+            "  eval(''); delete arguments;\n" +
+            "  return [typeof arguments, arguments[1.5], arguments['0']];\n" +
+            "}\n" +
+            "[f(1, 2, 3), g(1), h(1), k(1, 2), u(1)].join()");
+    }
+
+    public void testShadowedArguments()
+    {
+        assertEvaluates("5,3,5,1",
+            "function m() { eval(''); var arguments = 5; return arguments; }\n" +
+            "function n(arguments) { eval(''); return arguments; }\n" +
+            "function t(a) {\n" +
+            "  eval('');\n" +
+            "  with ({arguments: [5]}) {\n" +
+            "    return arguments[0] + ',' + arguments.length;\n" +
+            "  }\n" +
+            "}\n" +
+            "[m(1), n(3), t(1, 2)].join()");
+    }
+
+    public void testEscapingArguments()
+    {
+        assertEvaluates("2,p,4,1,8,8",
+            "function p() {\n" +
+            "  return eval('arguments.length') + ',' + arguments.callee.name;\n" +
+            "}\n" +
+            "function q() {\n" +
+            "  var x = arguments; x[0] = 4;\n" +
+            "  return arguments[0] + ',' + arguments.length;\n" +
+            "}\n" +
+            "function r(a) { return r.arguments[0] + ',' + arguments[0]; }\n" +
+            "[p(1, 2), q(1), r(8)].join()");
+    }
+}
@@ -0,0 +1,183 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.EvaluatorException;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.FunctionNode;
+
+/**
+ * Tests that nested functions compiled on their first call behave like
+ * functions compiled together with the enclosing script.
+ */
+public class LazyFunctionCompilationTest extends TestCase {
+
+  private static final String SCRIPT =
+      "var out = [];\n" +
+      "function add(a, b) { return a + b; }\n" +
+      "out.push(add(1, 2), add.length, add.name);\n" +
+      "var fact = function f(n) { return n <= 1 ? 1 : n * f(n - 1); };\n" +
+      "out.push(fact(5));\n" +
+      "function outer(x) {\n" +
+      "  var y = 10;\n" +
+      "  function inner(z) { return x + y + z; }\n" +
+      "  let k = 3;\n" +
+      "  return (function() { return k * inner(1); })();\n" +
+      "}\n" +
+      "out.push(outer(1));\n" +
+      "function re(s) { return s.replace(/a/g, 'x'); }\n" +
+      "out.push(re('abba'), re('cab'));\n" +
+      "function gen() { for (var i = 0; i < 3; i++) yield i; }\n" +
+      "var it = gen(); out.push(it.next(), it.next());\n" +
+      "function blk() { if (true) { function bf() { return 'bf'; } }" +
+      " return bf(); }\n" +
+      "out.push(blk());\n" +
+      "var o = { get v() { return 42; }, m: function() { return this.v; } };\n" +
+      "out.push(o.m());\n" +
+      "function ev() { var local = 5; return eval('local + 1'); }\n" +
+      "out.push(ev());\n" +
+      "out.push(String(function(a) { return [a, arguments.length]; }));\n" +
+      "out.join('|');\n";
+
+  static class LazyContextFactory extends ContextFactory {
+    private final boolean lazy;
+
+    LazyContextFactory(boolean lazy) {
+      this.lazy = lazy;
+    }
+
+    @Override
+    protected boolean hasFeature(Context cx, int featureIndex) {
+      if (featureIndex == Context.FEATURE_LAZY_FUNCTION_COMPILATION) {
+        return lazy;
+      }
+      return super.hasFeature(cx, featureIndex);
+    }
+  }
+
+  private Object run(boolean lazy, String source) {
+    Context cx = new LazyContextFactory(lazy).enterContext();
+    try {
+      cx.setOptimizationLevel(-1);
+      cx.setLanguageVersion(Context.VERSION_1_8);
+      Scriptable scope = cx.initStandardObjects();
+      return cx.evaluateString(scope, source, "test", 1, null);
+    } finally {
+      Context.exit();
+    }
+  }
+
+  public void testSameResults() {
+    assertEquals(run(false, SCRIPT), run(true, SCRIPT));
+  }
+
+  public void testEnclosingVariables() {
+    String source =
+        "function counter() {\n" +
+        "  var n = 0;\n" +
+        "  function mid() {\n" +
+        "    return function(v) { n += v; return n++; };\n" +
+        "  }\n" +
+        "  return mid();\n" +
+        "}\n" +
+        "var c = counter(); c(1);\n" +
+        "function ev() {\n" +
+        "  var x = 'outer';\n" +
+        "  function mid() {\n" +
+        "    eval('var x = \\'mid\\'');\n" +
+        "    return (function() { return x; })();\n" +
+        "  }\n" +
+        "  return mid() + x;\n" +
+        "}\n" +
+        "[c(1), ev()].join();\n";
+    assertEquals("3,midouter", run(true, source));
+    assertEquals("3,midouter", run(false, source));
+  }
+
+  public void testLineNumbers() {
+    String source = "function f() {\n  return g();\n}\n" +
+                    "function g() {\n  null.foo;\n}\nf();";
+    try {
+      run(true, source);
+      fail();
+    } catch (EcmaError e) {
+      assertEquals(5, e.lineNumber());
+      assertTrue(e.getScriptStackTrace().contains("test:2"));
+    }
+  }
+
+  private static final String SKIPPED_SCRIPT =
+      "var out = [];\n" +
+      "function re(s) {\n" +
+      "  if (s) /[}'\"]/.test(s) && out.push('re');\n" +
+      "  return s.replace(/[{]/g, '(') + '}' + \"{\"; // }\n" +
+      "}\n" +
+      "function div(a, b) {\n" +
+      "  var c = (a + b) / 2, d = a++ / 2; c /= 2; /* { */\n" +
+      "  return [c, d, a / b / 2];\n" +
+      "}\n" +
+      "var anon = function() {};\n" +
+      "var nested = function(x) {\n" +
+      "  function inner() { return {v: x}; }\n" +
+      "  return inner().v;\n" +
+      "};\n" +
+      "out.push(re('a{b}'), div(4, 2), nested(7));\n" +
+      "out.push(String(re), String(div), String(anon), String(nested));\n" +
+      "out.join('|');\n";
+
+  public void testSkippedBodies() {
+    CompilerEnvirons env = new CompilerEnvirons();
+    env.setLazyFunctionCompilation(true);
+    env.setOptimizationLevel(-1);
+    AstRoot root = new Parser(env).parse(
+        "function f(x) { return {x: x}; } var g = function() {};",
+        "test", 1);
+    FunctionNode f = (FunctionNode)root.getFirstChild();
+    assertEquals(" return {x: x}; ", f.getSkippedBody());
+    assertNull(f.getBody().getFirstChild());
+
+    assertEquals(run(false, SKIPPED_SCRIPT), run(true, SKIPPED_SCRIPT));
+  }
+
+  public void testXmlLiteralsAreParsed() {
+    CompilerEnvirons env = new CompilerEnvirons();
+    env.setLazyFunctionCompilation(true);
+    env.setOptimizationLevel(-1);
+    AstRoot root = new Parser(env).parse(
+        "function x() { return <a>it's {1 + 1}</a>; }", "test", 1);
+    FunctionNode x = (FunctionNode)root.getFirstChild();
+    assertNull(x.getSkippedBody());
+    assertNotNull(x.getBody().getFirstChild());
+  }
+
+  public void testSyntaxErrors() {
+    // Lexical errors are found when the body is skipped
+    try {
+      run(true, "function unused() { return 'a; }");
+      fail();
+    } catch (EvaluatorException e) {
+      // expected
+    }
+    // Other errors are reported when the function is parsed on its first
+    // call
+    CompilerEnvirons env = new CompilerEnvirons();
+    env.setLazyFunctionCompilation(true);
+    env.setOptimizationLevel(-1);
+    AstRoot root = new Parser(env).parse(
+        "function unused() { return 1 +; }", "test", 1);
+    FunctionNode unused = (FunctionNode)root.getFirstChild();
+    assertEquals(" return 1 +; ", unused.getSkippedBody());
+    try {
+      run(true, "function f() { return 1 +; } f()");
+      fail();
+    } catch (EvaluatorException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.MemoryFootprint;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * The estimates of MemoryFootprint are attributed to the right categories
+ * and count shared data once.
+ */
+public class MemoryFootprintTest extends TestCase
+{
+    private ScriptableObject sharedScope;
+    private Scriptable scope;
+
+    private void evaluate(int optLevel, String source)
+    {
+        Context cx = Context.enter();
+        try {
+            cx.setOptimizationLevel(optLevel);
+            sharedScope = cx.initStandardObjects(null, true);
+            sharedScope.sealObject();
+            scope = cx.newObject(sharedScope);
+            scope.setPrototype(sharedScope);
+            scope.setParentScope(null);
+            cx.evaluateString(scope, source, "test", 1, null);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public void testSharedScopeExcluded()
+    {
+        evaluate(-1, "");
+        MemoryFootprint footprint = MemoryFootprint.measure(scope,
+                                                            sharedScope);
+        assertEquals(1, footprint.getObjectCount());
+        assertTrue(MemoryFootprint.measure(scope).getObjectCount() > 1);
+    }
+
+    public void testDenseArray()
+    {
+        evaluate(-1, "var a = []; for (var i = 0; i < 1000; i++) a.push(i + 0.5);");
+        MemoryFootprint footprint = MemoryFootprint.measure(scope,
+                                                            sharedScope);
+        long dense = footprint.getBytes(MemoryFootprint.DENSE_ARRAYS);
+        assertTrue(dense >= 1000 * 4);
+        assertTrue(footprint.getBytes(MemoryFootprint.NUMBERS) >= 1000 * 16);
+        long total = 0;
+        for (long bytes : footprint.getBytesByCategory().values()) {
+            total += bytes;
+        }
+        assertEquals(total, footprint.getTotalBytes());
+    }
+
+    public void testSharedDataCountedOnce()
+    {
+        evaluate(-1, "var s = new Array(1001).join('x');\n" +
+                     "var o = { a: s, b: s, c: [s, s] };");
+        MemoryFootprint footprint = MemoryFootprint.measure(scope,
+                                                            sharedScope);
+        long strings = footprint.getBytes(MemoryFootprint.STRINGS);
+        assertTrue(strings >= 1000);
+        assertTrue(strings < 2000 + 100);
+
+        // Adding the object again or an excluded object counts nothing
+        long total = footprint.getTotalBytes();
+        footprint.add(ScriptableObject.getProperty(scope, "o"));
+        footprint.add(sharedScope);
+        assertEquals(total, footprint.getTotalBytes());
+    }
+
+    public void testFunctionCode()
+    {
+        String source = "function f(a) { return a * 2; }";
+        evaluate(-1, source);
+        MemoryFootprint interpreted = MemoryFootprint.measure(scope,
+                                                              sharedScope);
+        assertTrue(interpreted.getBytes(MemoryFootprint.INTERPRETER_DATA) > 0);
+        assertTrue(interpreted.getBytes(MemoryFootprint.SOURCE) > 0);
+        assertEquals(0, interpreted.getBytes(MemoryFootprint.GENERATED_CLASSES));
+
+        evaluate(9, source);
+        MemoryFootprint compiled = MemoryFootprint.measure(scope, sharedScope);
+        assertEquals(0, compiled.getBytes(MemoryFootprint.INTERPRETER_DATA));
+        assertTrue(compiled.getBytes(MemoryFootprint.GENERATED_CLASSES) > 0);
+    }
+
+    public void testClosureActivation()
+    {
+        evaluate(-1, "function counter() { var n = 0, big = new Array(101).join('y');\n" +
+                     "  return function() { return ++n + big.length; }; }\n" +
+                     "var c = counter();");
+        MemoryFootprint footprint = MemoryFootprint.measure(
+            (Scriptable)ScriptableObject.getProperty(scope, "c"), sharedScope);
+        // The activation of counter keeps its variables alive
+        assertTrue(footprint.getBytes(MemoryFootprint.OTHER) > 0);
+        assertTrue(footprint.getBytes(MemoryFootprint.STRINGS) >= 100);
+    }
+
+    public void testUnknownCategory()
+    {
+        try {
+            new MemoryFootprint().getBytes("unknown");
+            fail();
+        } catch (IllegalArgumentException ex) {
+        }
+    }
+}
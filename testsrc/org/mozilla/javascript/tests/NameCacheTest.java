@@ -0,0 +1,155 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Name and property lookups cached in compiled code must see changes to
+ * the top level scope and to the objects they read and write.
+ */
+public class NameCacheTest extends TestCase
+{
+    private static void assertEvaluates(final String expected,
+                                        final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, source,
+                                                  "test", 1, null);
+                assertEquals(expected, Context.toString(result));
+                return null;
+            }
+        });
+    }
+
+    public void testRedefinedProperty()
+    {
+        assertEvaluates("1,deleted,2,3,4",
+            "var out = [];\n" +
+            "x = 1;\n" +
+            "function f() { return x; }\n" +
+            "out.push(f());\n" +
+            "delete x;\n" +
+            "try { f(); } catch (e) { out.push('deleted'); }\n" +
+            "x = 2;\n" +
+            "out.push(f());\n" +
+            "Object.defineProperty(this, 'x', { get: function() { return 3; },\n" +
+            "                                   configurable: true });\n" +
+            "out.push(f());\n" +
+            "Object.defineProperty(this, 'x', { value: 4 });\n" +
+            "out.push(f());\n" +
+            "out.join();\n");
+    }
+
+    public void testReplacedFunction()
+    {
+        assertEvaluates("1,2,1",
+            "var out = [];\n" +
+            "function h() { return 1; }\n" +
+            "function g() { return h(); }\n" +
+            "out.push(g());\n" +
+            "var old = h;\n" +
+            "h = function() { return 2; };\n" +
+            "out.push(g());\n" +
+            "h = old;\n" +
+            "out.push(h());\n" +
+            "out.join();\n");
+    }
+
+    public void testInheritedProperty()
+    {
+        assertEvaluates("5,6",
+            "var out = [];\n" +
+            "Object.prototype.y = 5;\n" +
+            "function f() { return y; }\n" +
+            "out.push(f());\n" +
+            "this.y = 6;\n" +
+            "out.push(f());\n" +
+            "out.join();\n");
+    }
+
+    public void testSameScriptInManyScopes()
+    {
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Script script = cx.compileString(
+                    "function f() { return v; } f() + v", "test", 1, null);
+                for (int i = 0; i < 20; i++) {
+                    Scriptable scope = cx.initStandardObjects();
+                    scope.put("v", scope, Integer.valueOf(i));
+                    Object result = script.exec(cx, scope);
+                    assertEquals(2.0 * i, Context.toNumber(result));
+                }
+                return null;
+            }
+        });
+    }
+
+    public void testPropertySiteSeesChanges()
+    {
+        assertEvaluates("1,2,,3,get,4,4,5",
+            "var out = [];\n" +
+            "var o = {p: 1};\n" +
+            "function get() { return o.p; }\n" +
+            "function set(v) { o.p = v; }\n" +
+            "out.push(get());\n" +
+            "set(2);\n" +
+            "out.push(get());\n" +
+            "delete o.p;\n" +
+            "out.push(get());\n" +
+            "set(3);\n" +
+            "out.push(get());\n" +
+            "Object.defineProperty(o, 'p', { get: function() { return 'get'; },\n" +
+            "                                set: function(v) { o.q = v; },\n" +
+            "                                configurable: true });\n" +
+            "out.push(get());\n" +
+            "set(4);\n" +
+            "out.push(o.q);\n" +
+            "Object.defineProperty(o, 'p', { value: 4, writable: false });\n" +
+            "set(5);\n" +
+            "out.push(get());\n" +
+            "var f = {p: 5};\n" +
+            "o = f;\n" +
+            "Object.freeze(f);\n" +
+            "set(6);\n" +
+            "out.push(get());\n" +
+            "out.join();\n");
+    }
+
+    public void testPropertySiteWithManyObjects()
+    {
+        assertEvaluates("10,55,55,20",
+            "function Point(x) { this.x = x; }\n" +
+            "Point.prototype.twice = function() { return this.x * 2; };\n" +
+            "var sum = 0, twice = 0, calls = 0;\n" +
+            "var counter = { n: 0, inc: function() { calls++; } };\n" +
+            "for (var i = 1; i <= 10; i++) {\n" +
+            "    var p = new Point(i);\n" +
+            "    p.x += 0;\n" +
+            "    sum += p.x;\n" +
+            "    twice += p.twice();\n" +
+            "    counter.inc();\n" +
+            "    counter.n += 2;\n" +
+            "}\n" +
+            "[calls, sum, twice / 2, counter.n].join();\n");
+    }
+
+    public void testPropertySiteOnPrimitives()
+    {
+        assertEvaluates("3,abc,3,1,true",
+            "var out = [];\n" +
+            "var values = ['abc', {length: 1}];\n" +
+            "for (var i = 0; i < values.length; i++) {\n" +
+            "    out.push(values[i].length);\n" +
+            "}\n" +
+            "out.unshift('abc'.toString());\n" +
+            "out.unshift(out.length);\n" +
+            "out.push(out.hasOwnProperty('length'));\n" +
+            "out.join();\n");
+    }
+}
@@ -0,0 +1,66 @@
+package org.mozilla.javascript.tests;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests number to string conversion, which uses the Grisu3 based
+ * fast path in {@link org.mozilla.javascript.v8dtoa.FastDtoa} with
+ * a fallback to DToA.
+ */
+public class NumberToStringTest extends TestCase
+{
+    public void testShortestRepresentation()
+    {
+        assertEquals("0.1", ScriptRuntime.numberToString(0.1, 10));
+        assertEquals("0.30000000000000004",
+                     ScriptRuntime.numberToString(0.1 + 0.2, 10));
+        assertEquals("1e+21", ScriptRuntime.numberToString(1e21, 10));
+        assertEquals("1e+23", ScriptRuntime.numberToString(1e23, 10));
+        assertEquals("123456789012345680000",
+                     ScriptRuntime.numberToString(123456789012345680000.0, 10));
+        assertEquals("0.000001", ScriptRuntime.numberToString(1e-6, 10));
+        assertEquals("1e-7", ScriptRuntime.numberToString(1e-7, 10));
+        assertEquals("-1.5e-7", ScriptRuntime.numberToString(-1.5e-7, 10));
+        assertEquals("5e-324", ScriptRuntime.numberToString(Double.MIN_VALUE, 10));
+        assertEquals("1.7976931348623157e+308",
+                     ScriptRuntime.numberToString(Double.MAX_VALUE, 10));
+        assertEquals("-42", ScriptRuntime.numberToString(-42.0, 10));
+    }
+
+    public void testRoundTrip()
+    {
+        Random random = new Random(12345);
+        for (int i = 0; i < 100000; i++) {
+            double d = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                continue;
+            }
+            String s = ScriptRuntime.numberToString(d, 10);
+            assertEquals(s, d, Double.parseDouble(s), 0.0);
+        }
+    }
+
+    public void testNumberPrototypeMethods()
+    {
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope,
+                    "[(9.995).toFixed(2), (1.005).toFixed(2), (2.5).toFixed(0)," +
+                    " (0.000001).toFixed(7), (1e21).toFixed(2)," +
+                    " (123.456).toPrecision(4), (0.00001234).toPrecision(2)," +
+                    " (1234.5678).toExponential(3), (-1.45).toFixed(1)].join()",
+                    "test", 1, null);
+            assertEquals("9.99,1.00,3,0.0000010,1e+21,123.5,0.000012," +
+                         "1.235e+3,-1.4", result);
+        } finally {
+            Context.exit();
+        }
+    }
+}
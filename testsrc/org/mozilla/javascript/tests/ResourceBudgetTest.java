@@ -0,0 +1,147 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.ResourceBudgetException;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * CPU time and allocation of a Context are accounted and bounded by its
+ * budgets.
+ */
+public class ResourceBudgetTest extends TestCase
+{
+    private static class AccountingFactory extends ContextFactory
+    {
+        @Override
+        protected boolean hasFeature(Context cx, int featureIndex)
+        {
+            if (featureIndex == Context.FEATURE_RESOURCE_ACCOUNTING) {
+                return true;
+            }
+            return super.hasFeature(cx, featureIndex);
+        }
+    }
+
+    /**
+     * Runs the action on a new thread, so accounting starts with a
+     * Context that is not nested in one left entered on this thread.
+     */
+    private static void runOnNewThread(final Runnable action)
+        throws InterruptedException
+    {
+        final Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    action.run();
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        if (failure[0] instanceof Error) {
+            throw (Error)failure[0];
+        } else if (failure[0] != null) {
+            throw (RuntimeException)failure[0];
+        }
+    }
+
+    private static void assertExceedsBudget(final long cpuTimeBudget,
+                                            final long allocationBudget,
+                                            final String source)
+        throws InterruptedException
+    {
+        runOnNewThread(new Runnable() {
+            public void run() {
+                runWithBudgets(cpuTimeBudget, allocationBudget, source);
+            }
+        });
+    }
+
+    private static void runWithBudgets(final long cpuTimeBudget,
+                                       final long allocationBudget,
+                                       final String source)
+    {
+        Utils.runWithAllOptimizationLevels(new AccountingFactory(),
+                                           new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                cx.setCpuTimeBudget(cpuTimeBudget);
+                cx.setAllocationBudget(allocationBudget);
+                try {
+                    cx.evaluateString(scope, source, "test", 1, null);
+                    fail("Should throw ResourceBudgetException");
+                } catch (ResourceBudgetException e) {
+                    // expected
+                }
+                if (cpuTimeBudget != 0) {
+                    assertTrue(cx.getCpuTime() > cpuTimeBudget);
+                }
+                if (allocationBudget != 0) {
+                    assertTrue(cx.getAllocatedBytes() > allocationBudget);
+                }
+                return null;
+            }
+        });
+    }
+
+    public void testCpuTimeBudget() throws InterruptedException
+    {
+        assertExceedsBudget(20000000L, 0,
+            "function spin() { for (;;) {} }\n" +
+            "try { spin(); } catch (e) { 'caught'; }");
+    }
+
+    public void testAllocationBudget() throws InterruptedException
+    {
+        assertExceedsBudget(0, 4000000L,
+            "var a = []; while (true) a.push({ n: a.length });");
+    }
+
+    public void testTotalsAfterCall() throws InterruptedException
+    {
+        runOnNewThread(new Runnable() {
+            public void run() {
+                checkTotalsAfterCall();
+            }
+        });
+    }
+
+    private static void checkTotalsAfterCall()
+    {
+        final long[] totals = new long[2];
+        ContextFactory factory = new AccountingFactory();
+        factory.addListener(new ContextFactory.Listener() {
+            public void contextCreated(Context cx) { }
+            public void contextReleased(Context cx) {
+                totals[0] = cx.getCpuTime();
+                totals[1] = cx.getAllocatedBytes();
+            }
+        });
+        factory.call(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                return cx.evaluateString(scope,
+                    "var s = ''; for (var i = 0; i < 1000; i++) s += i; s",
+                    "test", 1, null);
+            }
+        });
+        assertTrue(totals[0] > 0);
+        assertTrue(totals[1] > 0);
+
+        new ContextFactory().call(new ContextAction() {
+            public Object run(Context cx) {
+                assertEquals(-1, cx.getCpuTime());
+                assertEquals(-1, cx.getAllocatedBytes());
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,104 @@
+package org.mozilla.javascript.tests;
+
+import java.io.StringWriter;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.SamplingProfiler;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * The sampling profiler records the stacks of interpreted and compiled
+ * functions.
+ */
+public class SamplingProfilerTest extends TestCase
+{
+    private static final String SOURCE =
+        "function leaf(n) { var s = 0; for (var i = 0; i < n; i++) s += i % 7; return s; }\n" +
+        "function outer(n) { return leaf(n); }\n" +
+        "var end = new Date().getTime() + 300;\n" +
+        "while (new Date().getTime() < end) outer(1000);\n";
+
+    /**
+     * Runs the script on a new thread, so samples are not taken in a
+     * Context that is nested in one left entered on this thread.
+     */
+    private static SamplingProfiler profile(final int optimizationLevel)
+        throws InterruptedException
+    {
+        final SamplingProfiler profiler = new SamplingProfiler(5);
+        final ContextFactory factory = new ContextFactory();
+        factory.setProfiler(profiler);
+        final Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    factory.call(new ContextAction() {
+                        public Object run(Context cx) {
+                            cx.setOptimizationLevel(optimizationLevel);
+                            Scriptable scope = cx.initStandardObjects();
+                            cx.evaluateString(scope, SOURCE, "prof.js", 1,
+                                              null);
+                            return null;
+                        }
+                    });
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        };
+        profiler.start();
+        thread.start();
+        thread.join();
+        profiler.stop();
+        if (failure[0] != null) {
+            throw new RuntimeException(failure[0]);
+        }
+        return profiler;
+    }
+
+    private static void assertSampled(SamplingProfiler profiler)
+    {
+        assertTrue(profiler.getSampleCount() > 0);
+        boolean leafSeen = false;
+        for (Map.Entry<String,Integer> e : profiler.getStacks().entrySet()) {
+            String stack = e.getKey();
+            assertTrue(stack, stack.startsWith("(anonymous) (prof.js)"));
+            if (stack.endsWith(
+                    ";outer (prof.js);leaf (prof.js)")) {
+                leafSeen = true;
+            }
+        }
+        assertTrue(profiler.getStacks().toString(), leafSeen);
+    }
+
+    public void testInterpreted() throws InterruptedException
+    {
+        assertSampled(profile(-1));
+    }
+
+    public void testCompiled() throws InterruptedException
+    {
+        assertSampled(profile(9));
+    }
+
+    public void testOutput() throws Exception
+    {
+        SamplingProfiler profiler = profile(0);
+        StringWriter collapsed = new StringWriter();
+        profiler.writeCollapsedStacks(collapsed);
+        String text = collapsed.toString();
+        assertTrue(text, text.matches(
+            "(?s)(\\(anonymous\\) \\(prof.js\\)[^\n]* \\d+\n)+"));
+        StringWriter svg = new StringWriter();
+        profiler.writeFlameGraph(svg);
+        assertTrue(svg.toString().contains("<title>leaf (prof.js)"));
+        profiler.reset();
+        assertEquals(0, profiler.getSampleCount());
+    }
+}
@@ -0,0 +1,168 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests that interpreted functions compiled after many calls and loops
+ * continued in compiled code behave like interpreted ones, also when calls
+ * break the assumptions they were compiled with.
+ */
+public class SpeculativeCompilationTest extends TestCase {
+
+  private static final String SCRIPT =
+      "var out = [], i, j;\n" +
+      "function sq(x) { return x * x; }\n" +
+      "var s = 0;\n" +
+      "for (i = 0; i < 3000; i++) s += sq(i);\n" +
+      "out.push(s, sq('3'), sq('a'), sq(), sq(2.5));\n" +
+      "for (i = 0; i < 500; i++) s += sq(String(i));\n" +
+      "out.push(s, sq(4));\n" +
+      "function self() { return self; }\n" +
+      "for (i = 0; i < 2000; i++) self();\n" +
+      "out.push(self() === self);\n" +
+      "function mk(n) { return function(x) { return x + n; }; }\n" +
+      "var adders = [];\n" +
+      "for (i = 0; i < 10; i++) adders.push(mk(i));\n" +
+      "var t = 0;\n" +
+      "for (j = 0; j < 300; j++)\n" +
+      "  for (i = 0; i < 10; i++) t += adders[i](j);\n" +
+      "out.push(t, adders[3]('x'));\n" +
+      "function cat(a, b) { a = a + b; return a; }\n" +
+      "for (i = 0; i < 2000; i++) cat(i, 1);\n" +
+      "out.push(cat('x', 1), cat(1, 'x'), cat(1, 2));\n" +
+      "function second(a, b) { return typeof b; }\n" +
+      "for (i = 0; i < 2000; i++) second(i, i);\n" +
+      "out.push(second(1));\n" +
+      "var o = { v: 2, m: function(x) { return this.v * x; } };\n" +
+      "for (i = 0; i < 2000; i++) o.m(i);\n" +
+      "out.push(o.m(21), o.m.call({ v: 3 }, 2), o.m.apply(o, [5]));\n" +
+      "var fact = function(n) { return n <= 1 ? 1 : n * fact(n - 1); };\n" +
+      "for (i = 0; i < 200; i++) fact(10);\n" +
+      "out.push(fact(12));\n" +
+      "out.join('|');\n";
+
+  private static final String LOOP_SCRIPT =
+      "var out = [], s = 0;\n" +
+      "for (var i = 0; i < 50000; i++) { s += i % 7; }\n" +
+      "out.push(s);\n" +
+      "function f(n) {\n" +
+      "  var t = 0, k;\n" +
+      "  for (k = 0; k < n; k++) { t += k; if (k == 20000) t += 'x'; }\n" +
+      "  return t + typeof k;\n" +
+      "}\n" +
+      "out.push(f(30000));\n" +
+      "function g(n) {\n" +
+      "  var r = [];\n" +
+      "  for (var j = 0; j < n; j++) r.push(function() { return j; });\n" +
+      "  return r.length + r[0]();\n" +
+      "}\n" +
+      "out.push(g(30000));\n" +
+      "function h(n) {\n" +
+      "  var c = 0;\n" +
+      "  try { for (var q = 0; q < n; q++) c++; } catch (e) {}\n" +
+      "  return c;\n" +
+      "}\n" +
+      "out.push(h(30000));\n" +
+      "function nested(n) {\n" +
+      "  var z = 0;\n" +
+      "  for (var a = 0; a < n; a++) for (var b = 0; b < 100; b++) z += b;\n" +
+      "  return z;\n" +
+      "}\n" +
+      "out.push(nested(300));\n" +
+      "var w = 0;\n" +
+      "while (w < 50000) { w++; if (w == 40000) out.push('w' + w); }\n" +
+      "out.push(out.join('|'));\n" +
+      "for (i = 0; i < 30000; i++) s = i;\n";
+
+  static class SpeculativeContextFactory extends ContextFactory {
+    private final boolean speculative;
+
+    SpeculativeContextFactory(boolean speculative) {
+      this.speculative = speculative;
+    }
+
+    @Override
+    protected boolean hasFeature(Context cx, int featureIndex) {
+      if (featureIndex == Context.FEATURE_SPECULATIVE_COMPILATION) {
+        return speculative;
+      }
+      return super.hasFeature(cx, featureIndex);
+    }
+  }
+
+  private Object run(boolean speculative, String source) {
+    Context cx = new SpeculativeContextFactory(speculative).enterContext();
+    try {
+      cx.setOptimizationLevel(-1);
+      Scriptable scope = cx.initStandardObjects();
+      return cx.evaluateString(scope, source, "test", 1, null);
+    } finally {
+      Context.exit();
+    }
+  }
+
+  public void testSameResults() {
+    assertEquals(run(false, SCRIPT), run(true, SCRIPT));
+  }
+
+  public void testLoopsSameResults() {
+    assertEquals(run(false, LOOP_SCRIPT), run(true, LOOP_SCRIPT));
+  }
+
+  private static boolean hasCompiledFrame(Throwable e, String function) {
+    for (StackTraceElement element : e.getStackTrace()) {
+      if (element.getMethodName().startsWith("_c_" + function + "_")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void testErrorInCompiledFunction() {
+    String source = "function f(a) {\n  if (a == 5000) null.foo;\n" +
+                    "  return a * 2;\n}\n" +
+                    "for (var i = 0; i < 2000; i++) f(i);\n" +
+                    "f(5000);\n";
+    try {
+      run(true, source);
+      fail();
+    } catch (EcmaError e) {
+      assertTrue(hasCompiledFrame(e, "f"));
+      assertEquals(2, e.lineNumber());
+      assertTrue(e.getScriptStackTrace().contains("test:2"));
+    }
+  }
+
+  public void testGuardFailureIsInterpreted() {
+    String source = "function f(a) {\n  if (a == 5000) null.foo;\n" +
+                    "  return a * 2;\n}\n" +
+                    "for (var i = 0; i < 2000; i++) f(i);\n" +
+                    "f('5000');\n";
+    try {
+      run(true, source);
+      fail();
+    } catch (EcmaError e) {
+      assertFalse(hasCompiledFrame(e, "f"));
+      assertEquals(2, e.lineNumber());
+    }
+  }
+
+  public void testErrorInCompiledLoop() {
+    String source = "function f(n) {\n  for (var i = 0; i < n; i++)\n" +
+                    "    if (i == 20000) null.foo;\n}\n" +
+                    "f(30000);\n";
+    try {
+      run(true, source);
+      fail();
+    } catch (EcmaError e) {
+      assertTrue(hasCompiledFrame(e, "f"));
+      assertEquals(3, e.lineNumber());
+      assertTrue(e.getScriptStackTrace().contains("test:3"));
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package org.mozilla.javascript.tests;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextAction;
+import org.mozilla.javascript.JavaScriptException;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Scripts and functions too large for a single Java method are compiled
+ * into a chain of methods.
+ */
+public class SplitMethodTest extends TestCase
+{
+    private static String largeScript()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("var sum = 0, rules = [];\n");
+        for (int i = 0; i < 3000; i++) {
+            sb.append("rules.push({id: ").append(i).append(", score: ")
+              .append(i).append(" * 2}); sum += rules[").append(i)
+              .append("].score;\n");
+        }
+        sb.append("function large(n) {\n");
+        sb.append("  var acc = 0;\n");
+        sb.append("  function inc(x) { return x + 1; }\n");
+        for (int i = 0; i < 2000; i++) {
+            sb.append("  acc = inc(acc);\n");
+        }
+        sb.append("  if (n < 0) throw 'negative';\n");
+        sb.append("  if (n > 0) return acc + n;\n");
+        for (int i = 0; i < 1000; i++) {
+            sb.append("  acc = inc(acc);\n");
+        }
+        sb.append("  return acc;\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    public void testLargeScript()
+    {
+        final String script = largeScript()
+            + "sum + ',' + large(0) + ',' + large(5) + ',' + rules.length";
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, script,
+                                                  "large.js", 1, null);
+                assertEquals("8997000,3000,2005,3000", result);
+                return null;
+            }
+        });
+    }
+
+    public void testLargePlainFunction()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("function plain(a, b) {\n");
+        sb.append("  var x = a, s = '', o = {p: 0};\n");
+        for (int i = 0; i < 4000; i++) {
+            sb.append("  x = x + ").append(i % 7).append(";");
+            sb.append(" o.p = o.p + b;\n");
+        }
+        sb.append("  for (var i = 0; i < 3; i++) s += i;\n");
+        sb.append("  return x + ',' + o.p + ',' + s;\n");
+        sb.append("}\n");
+        sb.append("plain(1, 2) + ';' + plain(10, -1)");
+        final String script = sb.toString();
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, script,
+                                                  "plain.js", 1, null);
+                assertEquals("11995,8000,012;12004,-4000,012", result);
+                return null;
+            }
+        });
+    }
+
+    public void testExceptionInLaterPart()
+    {
+        final String script = largeScript()
+            + "var caught;\n"
+            + "try { large(-1); } catch (e) { caught = e; }\n"
+            + "caught + ',' + large(1)\n";
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                Object result = cx.evaluateString(scope, script,
+                                                  "large.js", 1, null);
+                assertEquals("negative,2001", result);
+                return null;
+            }
+        });
+    }
+
+    public void testScriptStackTrace()
+    {
+        final String script = largeScript() + "large(-1);\n";
+        Utils.runWithAllOptimizationLevels(new ContextAction() {
+            public Object run(Context cx) {
+                Scriptable scope = cx.initStandardObjects();
+                try {
+                    cx.evaluateString(scope, script, "large.js", 1, null);
+                    fail();
+                } catch (JavaScriptException e) {
+                    String[] lines = e.getScriptStackTrace().split("\n");
+                    assertEquals(2, lines.length);
+                    assertTrue(lines[0], lines[0].contains("large.js:5005"));
+                    assertTrue(lines[1], lines[1].contains("large.js:6009"));
+                }
+                return null;
+            }
+        });
+    }
+}
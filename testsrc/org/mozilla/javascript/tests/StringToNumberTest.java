@@ -0,0 +1,65 @@
+package org.mozilla.javascript.tests;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ScriptRuntime;
+import org.mozilla.javascript.Scriptable;
+
+/**
+ * Tests string to number conversion, including the fast path for plain
+ * decimal numbers that avoids creating substrings.
+ */
+public class StringToNumberTest extends TestCase
+{
+    public void testPlainDecimals()
+    {
+        assertEquals(42.0, ScriptRuntime.toNumber(" 42 "), 0.0);
+        assertEquals(-42.5, ScriptRuntime.toNumber("\t-42.5\n"), 0.0);
+        assertEquals(0.5, ScriptRuntime.toNumber(".5"), 0.0);
+        assertEquals(5.0, ScriptRuntime.toNumber("+5."), 0.0);
+        assertEquals(0.1, ScriptRuntime.toNumber("0.1"), 0.0);
+        assertEquals(9007199254740993.0,
+                     ScriptRuntime.toNumber("9007199254740993"), 0.0);
+        assertEquals(1e-30, ScriptRuntime.toNumber("0.000000000000000000000000000001"), 0.0);
+        assertEquals(Double.doubleToLongBits(-0.0),
+                     Double.doubleToLongBits(ScriptRuntime.toNumber("-0")));
+        assertTrue(Double.isNaN(ScriptRuntime.toNumber(".")));
+        assertTrue(Double.isNaN(ScriptRuntime.toNumber("1.2.3")));
+        assertTrue(Double.isNaN(ScriptRuntime.toNumber("--1")));
+        assertEquals(0.0, ScriptRuntime.toNumber("   "), 0.0);
+    }
+
+    public void testSameAsJavaConversion()
+    {
+        Random random = new Random(4711);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            String digits = Long.toString(Math.abs(value));
+            int fraction = random.nextInt(Math.min(digits.length(), 24));
+            String s = (value < 0 ? "-" : "") +
+                digits.substring(0, digits.length() - fraction) + "." +
+                digits.substring(digits.length() - fraction);
+            assertEquals(s, Double.parseDouble(s),
+                         ScriptRuntime.toNumber(s), 0.0);
+        }
+    }
+
+    public void testParseFloat()
+    {
+        Context cx = Context.enter();
+        try {
+            Scriptable scope = cx.initStandardObjects();
+            Object result = cx.evaluateString(scope,
+                    "[parseFloat(' 3.25abc'), parseFloat('-.5'), " +
+                    "parseFloat('1e3'), parseFloat('1.5e'), parseFloat('.')," +
+                    " parseFloat('12.34.56')].join()",
+                    "test", 1, null);
+            assertEquals("3.25,-0.5,1000,1.5,NaN,12.34", result);
+        } finally {
+            Context.exit();
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package org.mozilla.javascript.tests.json;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.NativeArray;
@@ -192,6 +197,60 @@ public class JsonParserTest {
         parser.parseValue("[1 ");
     }
 
+    @Test
+    public void shouldParseObjectsWithSharedKeyLayout() throws Exception {
+        NativeArray actual = (NativeArray) parser.parseValue("[" +
+                "{\"id\":1,\"name\":\"a\",\"2\":true}," +
+                "{\"id\":2,\"name\":\"b\",\"2\":false}," +
+                "{\"id\":3,\"n\\u0061me\":\"c\",\"x\":null}," +
+                "{\"i\":4,\"name\":\"d\",\"z\":0}," +
+                "{\"id\":5}]");
+        assertEquals(5, actual.getLength());
+        NativeObject second = (NativeObject) actual.get(1, actual);
+        assertEquals(2, second.get("id", second));
+        assertEquals("b", second.get("name", second));
+        assertEquals(false, second.get(2, second));
+        NativeObject third = (NativeObject) actual.get(2, actual);
+        assertEquals("c", third.get("name", third));
+        assertEquals(null, third.get("x", third));
+        NativeObject fourth = (NativeObject) actual.get(3, actual);
+        assertEquals(4, fourth.get("i", fourth));
+        assertEquals("d", fourth.get("name", fourth));
+        assertEquals(0, fourth.get("z", fourth));
+        NativeObject fifth = (NativeObject) actual.get(4, actual);
+        assertEquals(5, fifth.get("id", fifth));
+        assertEquals(1, fifth.getIds().length);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldParseJavaValues() throws Exception {
+        String json = "{" +
+                "\"b\" : 2, " +
+                "\"a\" : [1, 1.5, \"x\", null, true], " +
+                "\"1\" : {} " +
+                "}";
+        Map<String, Object> actual = (Map<String, Object>) parser.parseJavaValue(json);
+        assertEquals(Arrays.asList("b", "a", "1"),
+                Arrays.asList(actual.keySet().toArray()));
+        assertEquals(2, actual.get("b"));
+        assertEquals(Arrays.asList(1, 1.5, "x", null, true), actual.get("a"));
+        assertTrue(actual.get("1") instanceof Map);
+        assertEquals(0, ((List<Object>) parser.parseJavaValue("[]")).size());
+        assertEquals("hello", parser.parseJavaValue("\"hello\""));
+    }
+
+    @Test
+    public void shouldParseJavaValuesWithoutContext() throws Exception {
+        JsonParser javaParser = new JsonParser(null, null);
+        assertEquals(Arrays.asList(1, 2), javaParser.parseJavaValue("[1,2]"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void shouldFailToParseInvalidJavaValues() throws Exception {
+        parser.parseJavaValue("{\"a\":}");
+    }
+
     private String str(char... chars) {
         return new String(chars);
     }
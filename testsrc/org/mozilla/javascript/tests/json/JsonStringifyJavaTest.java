@@ -0,0 +1,80 @@
+package org.mozilla.javascript.tests.json;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.EcmaError;
+import org.mozilla.javascript.NativeJSON;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import org.junit.Before;
+import org.junit.After;
+import org.junit.Test;
+
+public class JsonStringifyJavaTest {
+    private Context cx;
+    private Scriptable scope;
+
+    @Before
+    public void setUp() {
+        cx = Context.enter();
+        scope = cx.initStandardObjects();
+    }
+
+    @After
+    public void tearDown() {
+        Context.exit();
+    }
+
+    private Map<String, Object> sample() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        List<Object> list = new ArrayList<Object>();
+        list.add(1);
+        list.add("two");
+        list.add(null);
+        map.put("list", list);
+        map.put("array", new int[] {3, 4});
+        map.put("char", 'c');
+        map.put("bool", Boolean.TRUE);
+        return map;
+    }
+
+    @Test
+    public void shouldStringifyUnwrappedJavaValues() {
+        assertEquals("{\"list\":[1,\"two\",null],\"array\":[3,4]," +
+                     "\"char\":\"c\",\"bool\":true}",
+                     NativeJSON.stringify(cx, scope, sample(), null, null));
+    }
+
+    @Test
+    public void shouldStringifyWrappedJavaValues() {
+        ScriptableObject.putProperty(scope, "map",
+                                     Context.javaToJS(sample(), scope));
+        Object result = cx.evaluateString(scope,
+                "JSON.stringify(map, null, 1)", "test", 1, null);
+        assertEquals("{\n \"list\": [\n  1,\n  \"two\",\n  null\n ],\n" +
+                     " \"array\": [\n  3,\n  4\n ],\n \"char\": \"c\",\n" +
+                     " \"bool\": true\n}", result);
+    }
+
+    @Test
+    public void shouldRoundTripJavaValues() throws Exception {
+        String json = "{\"a\":[1,2.5,{\"b\":\"c\"}],\"d\":null}";
+        Object value = new org.mozilla.javascript.json.JsonParser(cx, scope)
+                .parseJavaValue(json);
+        assertEquals(json, NativeJSON.stringify(cx, scope, value, null, null));
+    }
+
+    @Test(expected = EcmaError.class)
+    public void shouldDetectCyclicJavaValues() {
+        List<Object> list = new ArrayList<Object>();
+        list.add(list);
+        NativeJSON.stringify(cx, scope, list, null, null);
+    }
+}
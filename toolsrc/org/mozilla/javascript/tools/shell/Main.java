@@ -44,11 +44,14 @@
 package org.mozilla.javascript.tools.shell;
 
 import java.io.BufferedReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.lang.reflect.UndeclaredThrowableException;
@@ -68,6 +71,7 @@ import org.mozilla.javascript.GeneratedClassLoader;
 import org.mozilla.javascript.Kit;
 import org.mozilla.javascript.NativeArray;
 import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.SamplingProfiler;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
 import org.mozilla.javascript.ScriptableObject;
@@ -96,6 +100,9 @@ public class Main
     static boolean processStdin = true;
     static List<String> fileList = new ArrayList<String>();
     private static SecurityProxy securityImpl;
+    private static SamplingProfiler profiler;
+    private static String profileFile;
+    private static int profileInterval = 10;
     private final static ScriptCache scriptCache = new ScriptCache(32);
 
     static {
@@ -187,9 +194,41 @@ public class Main
         iproxy.args = args;
         shellContextFactory.call(iproxy);
 
+        if (profiler != null) {
+            writeProfile();
+        }
         return exitCode;
     }
 
+    /**
+     * Write the samples of the profiler started by the -profile option,
+     * as a flame graph if the file name ends with .svg and as collapsed
+     * stacks otherwise.
+     */
+    private static void writeProfile()
+    {
+        profiler.stop();
+        shellContextFactory.setProfiler(null);
+        try {
+            Writer out = new OutputStreamWriter(
+                new FileOutputStream(profileFile), "UTF-8");
+            try {
+                if (profileFile.endsWith(".svg")) {
+                    profiler.writeFlameGraph(out);
+                } else {
+                    profiler.writeCollapsedStacks(out);
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException ioe) {
+            global.getErr().println(ToolErrorReporter.getMessage(
+                "msg.couldnt.write.profile", profileFile, ioe.toString()));
+            exitCode = EXITCODE_FILE_NOT_FOUND;
+        }
+        profiler = null;
+    }
+
     static void processFiles(Context cx, String[] args)
     {
         // define "arguments" array in the top-level object:
@@ -316,6 +355,38 @@ public class Main
                 fileList.add(args[i].equals("-") ? null : args[i]);
                 continue;
             }
+            if (arg.equals("-profile-interval")) {
+                if (++i == args.length) {
+                    usageError = arg;
+                    break goodUsage;
+                }
+                try {
+                    profileInterval = Integer.parseInt(args[i]);
+                } catch (NumberFormatException ex) {
+                    usageError = args[i];
+                    break goodUsage;
+                }
+                if (profileInterval <= 0) {
+                    usageError = args[i];
+                    break goodUsage;
+                }
+                continue;
+            }
+            if (arg.equals("-profile")) {
+                if (++i == args.length) {
+                    usageError = arg;
+                    break goodUsage;
+                }
+                profileFile = args[i];
+                // compiled functions need line numbers to show in samples
+                shellContextFactory.setGeneratingDebug(true);
+                if (profiler == null) {
+                    profiler = new SamplingProfiler(profileInterval);
+                    shellContextFactory.setProfiler(profiler);
+                    profiler.start();
+                }
+                continue;
+            }
             if (arg.equals("-sealedlib")) {
                 global.setSealedStdLib(true);
                 continue;